@@ -19,6 +19,21 @@ repositories {
   mavenCentral()
 }
 
+sourceSets {
+  create("jmh") {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+  }
+}
+
+val jmhImplementation: Configuration by configurations.getting {
+  extendsFrom(configurations.implementation.get())
+}
+
+val jmhRuntimeOnly: Configuration by configurations.getting {
+  extendsFrom(configurations.runtimeOnly.get())
+}
+
 java {
   sourceCompatibility = JavaVersion.VERSION_11
   targetCompatibility = JavaVersion.VERSION_11
@@ -49,6 +64,14 @@ dependencies {
   testRuntimeOnly(libs.rhino.engine) {
     because("Required by TeX/AsciiMath conversion in Java 15+")
   }
+
+  jmhImplementation(libs.jmh.core)
+  jmhAnnotationProcessor(libs.jmh.generator.annprocess)
+  jmhRuntimeOnly(libs.slf4j.simple)
+  jmhRuntimeOnly(libs.saxon.he)
+  jmhRuntimeOnly(libs.rhino.engine) {
+    because("Required by TeX/AsciiMath conversion in Java 15+")
+  }
 }
 
 sonar {
@@ -84,6 +107,21 @@ tasks.test {
   finalizedBy(tasks.jacocoTestReport)
 }
 
+// Run with `./gradlew jmh` (add `--offline` once dependencies are cached),
+// use -Pjmh.includes=<regex> to select benchmarks, e.g. -Pjmh.includes=Diff
+tasks.register<JavaExec>("jmh") {
+  description = "Runs the JMH benchmarks."
+  group = "verification"
+  classpath = sourceSets["jmh"].runtimeClasspath
+  mainClass.set("org.openjdk.jmh.Main")
+  val results = layout.buildDirectory.file("reports/jmh/results.json")
+  val includes = findProperty("jmh.includes") as String?
+  args(listOfNotNull(includes) + listOf("-rf", "json", "-rff", results.get().asFile.absolutePath))
+  doFirst {
+    results.get().asFile.parentFile.mkdirs()
+  }
+}
+
 tasks.jacocoTestReport {
   dependsOn(tasks.test)
   reports {
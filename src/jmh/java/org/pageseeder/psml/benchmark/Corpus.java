@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+
+import org.pageseeder.psml.toc.DocumentTree;
+import org.pageseeder.psml.toc.DocumentTreeHandler;
+import org.pageseeder.psml.toc.PublicationConfig;
+import org.pageseeder.psml.toc.PublicationTree;
+import org.pageseeder.psml.toc.TitleCollapse;
+import org.pageseeder.psml.xml.XML;
+import org.xml.sax.SAXException;
+
+/**
+ * Generates the PSML and Markdown content used by the benchmarks.
+ *
+ * <p>The content is generated from a fixed seed so that every run measures the same input,
+ * and its size is controlled by the number of fragments or blocks so that each benchmark
+ * can be run on several sizes.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class Corpus {
+
+  /**
+   * URI ID of the root document of generated publications.
+   */
+  public static final long ROOT_ID = 1L;
+
+  /**
+   * URI ID of the first document referenced by the root.
+   */
+  public static final long FIRST_ID = 1000L;
+
+  /**
+   * Number of documents from the first which are the targets of cross references.
+   */
+  public static final int XREF_TARGETS = 10;
+
+  private static final String[] WORDS = {
+      "the", "contract", "party", "shall", "provide", "notice", "within", "thirty", "days", "of",
+      "any", "change", "to", "terms", "agreement", "and", "schedule", "under", "clause", "this",
+      "document", "applies", "where", "services", "are", "delivered", "in", "accordance", "with", "law",
+      "payment", "must", "be", "made", "by", "invoice", "each", "month", "for", "fees",
+      "records", "kept", "at", "premises", "during", "period", "liability", "limited", "amount", "paid"
+  };
+
+  private Corpus() {
+  }
+
+  /**
+   * Returns a portable PSML document.
+   *
+   * @param id        The URI ID of the document
+   * @param fragments The number of fragments
+   * @param seed      The seed for the generated text
+   *
+   * @return the PSML
+   */
+  public static String document(long id, int fragments, long seed) {
+    Random random = new Random(seed);
+    StringBuilder psml = new StringBuilder(fragments * 600);
+    psml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    psml.append("<document id=\"").append(id).append("\" level=\"portable\" type=\"default\">\n");
+    psml.append("<documentinfo><uri id=\"").append(id).append("\" title=\"Document ").append(id).append("\">");
+    psml.append("<displaytitle>Document ").append(id).append("</displaytitle></uri>");
+    if (id != ROOT_ID) {
+      psml.append("<reversexrefs><reversexref uriid=\"").append(ROOT_ID).append("\" forwardtype=\"embed\"")
+          .append(" documenttype=\"default\" href=\"root.psml\">Root</reversexref></reversexrefs>");
+    }
+    psml.append("</documentinfo>\n");
+    psml.append("<section id=\"title\"><fragment id=\"1\"><heading level=\"1\">Document ").append(id)
+        .append("</heading></fragment></section>\n");
+    psml.append("<section id=\"content\">\n");
+    for (int i = 2; i <= fragments + 1; i++) {
+      fragment(psml, i, random);
+    }
+    psml.append("</section>\n");
+    psml.append("</document>\n");
+    return psml.toString();
+  }
+
+  /**
+   * Returns a single fragment for diffing.
+   *
+   * @param paragraphs The number of paragraphs
+   * @param seed       The seed for the generated text
+   *
+   * @return the fragment XML
+   */
+  public static String fragment(int paragraphs, long seed) {
+    Random random = new Random(seed);
+    StringBuilder xml = new StringBuilder(paragraphs * 120);
+    xml.append("<fragment id=\"1\">");
+    xml.append("<heading level=\"2\">").append(sentence(random, 4)).append("</heading>");
+    for (int i = 0; i < paragraphs; i++) {
+      paragraph(xml, random);
+    }
+    xml.append("</fragment>");
+    return xml.toString();
+  }
+
+  /**
+   * Returns a copy of the XML where about one word in <code>rate</code> has been replaced.
+   *
+   * @param xml  The XML to modify
+   * @param rate The average number of words between two changes
+   * @param seed The seed for the changes
+   *
+   * @return the modified XML
+   */
+  public static String edit(String xml, int rate, long seed) {
+    Random random = new Random(seed);
+    StringBuilder out = new StringBuilder(xml.length());
+    boolean inTag = false;
+    int start = -1;
+    for (int i = 0; i < xml.length(); i++) {
+      char c = xml.charAt(i);
+      boolean letter = !inTag && Character.isLetter(c);
+      if (letter && start < 0) start = i;
+      if (!letter && start >= 0) {
+        out.append(random.nextInt(rate) == 0 ? WORDS[random.nextInt(WORDS.length)] : xml.substring(start, i));
+        start = -1;
+      }
+      if (!letter) out.append(c);
+      if (c == '<') inTag = true;
+      else if (c == '>') inTag = false;
+    }
+    return out.toString();
+  }
+
+  /**
+   * Returns a Markdown document.
+   *
+   * @param blocks The number of blocks (headings, paragraphs, lists, tables and code)
+   * @param seed   The seed for the generated text
+   *
+   * @return the Markdown text
+   */
+  public static String markdown(int blocks, long seed) {
+    Random random = new Random(seed);
+    StringBuilder md = new StringBuilder(blocks * 200);
+    for (int i = 0; i < blocks; i++) {
+      switch (i % 8) {
+        case 0:
+          md.append("## ").append(sentence(random, 4)).append("\n\n");
+          break;
+        case 3:
+          for (int j = 0; j < 4; j++) {
+            md.append("- ").append(sentence(random, 6)).append('\n');
+          }
+          md.append('\n');
+          break;
+        case 5:
+          md.append("| Term | Value | Notes |\n|---|---|---|\n");
+          for (int j = 0; j < 4; j++) {
+            md.append("| ").append(word(random)).append(" | ").append(random.nextInt(1000))
+                .append(" | ").append(sentence(random, 3)).append(" |\n");
+          }
+          md.append('\n');
+          break;
+        case 7:
+          md.append("```\n").append(sentence(random, 8)).append("\n```\n\n");
+          break;
+        default:
+          md.append(sentence(random, 12)).append(" **").append(word(random)).append("** and *")
+              .append(word(random)).append("* with [a link](https://example.org/").append(i).append(") ")
+              .append(sentence(random, 10)).append(".\n\n");
+      }
+    }
+    return md.toString();
+  }
+
+  /**
+   * Returns a publication with a root document embedding the specified number of documents.
+   *
+   * @param documents The number of documents referenced by the root
+   * @param fragments The number of fragments in each document
+   *
+   * @return the publication tree
+   *
+   * @throws SAXException If a generated document could not be parsed
+   */
+  public static PublicationTree publication(int documents, int fragments) throws SAXException {
+    PublicationTree publication = new PublicationTree(tree(ROOT_ID, root(documents)));
+    for (int i = 0; i < documents; i++) {
+      long id = FIRST_ID + i;
+      publication = publication.add(tree(id, document(id, fragments, id)));
+    }
+    return publication;
+  }
+
+  /**
+   * @return a publication config numbering headings and paragraphs.
+   *
+   * @throws IOException If the config could not be parsed
+   */
+  public static PublicationConfig config() throws IOException {
+    String config = "<publication-config>"
+        + "<toc para-indents=\"1,2\"/>"
+        + "<numbering skipped-levels=\"strip\"><schemes>"
+        + "<scheme level=\"1\" type=\"decimal\" format=\"[1.]\"/>"
+        + "<scheme level=\"2\" type=\"decimal\" format=\"[1.][2.]\"/>"
+        + "<scheme level=\"3\" type=\"decimal\" format=\"[1.][2.][3.]\"/>"
+        + "<scheme level=\"4\" type=\"loweralpha\" format=\"[(4)]\"/>"
+        + "</schemes></numbering>"
+        + "</publication-config>";
+    InputStream in = new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8));
+    return PublicationConfig.loadPublicationConfig(in);
+  }
+
+  /**
+   * Writes a root document and the documents it references to the specified folder.
+   *
+   * <p>The documents contain cross references to the first {@link #XREF_TARGETS} documents.
+   *
+   * @param folder    The folder to write to
+   * @param documents The number of documents referenced by the root
+   * @param fragments The number of fragments in each document
+   *
+   * @throws IOException If the files could not be written
+   */
+  public static void write(Path folder, int documents, int fragments) throws IOException {
+    Files.createDirectories(folder);
+    Files.writeString(folder.resolve("root.psml"), root(documents), StandardCharsets.UTF_8);
+    for (int i = 0; i < documents; i++) {
+      long id = FIRST_ID + i;
+      Files.writeString(folder.resolve(filename(id)), document(id, fragments, id), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String root(int documents) {
+    StringBuilder psml = new StringBuilder(documents * 200);
+    psml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    psml.append("<document id=\"").append(ROOT_ID).append("\" level=\"portable\" type=\"references\">\n");
+    psml.append("<documentinfo><uri id=\"").append(ROOT_ID).append("\" title=\"Root\"><displaytitle>Root</displaytitle></uri></documentinfo>\n");
+    psml.append("<section id=\"title\"><fragment id=\"1\"><heading level=\"1\">Root</heading></fragment></section>\n");
+    psml.append("<section id=\"xrefs\"><xref-fragment id=\"2\">\n");
+    for (int i = 0; i < documents; i++) {
+      long id = FIRST_ID + i;
+      psml.append("<blockxref frag=\"default\" display=\"document\" type=\"embed\" uriid=\"").append(id)
+          .append("\" href=\"").append(filename(id)).append("\" urititle=\"Document ").append(id)
+          .append("\" mediatype=\"application/vnd.pageseeder.psml+xml\" documenttype=\"default\">Document ")
+          .append(id).append("</blockxref>\n");
+    }
+    psml.append("</xref-fragment></section>\n");
+    psml.append("</document>\n");
+    return psml.toString();
+  }
+
+  private static void fragment(StringBuilder psml, int id, Random random) {
+    psml.append("<fragment id=\"").append(id).append("\">");
+    int level = 2 + random.nextInt(3);
+    psml.append("<heading level=\"").append(level).append("\">").append(sentence(random, 4)).append("</heading>");
+    switch (id % 4) {
+      case 0:
+        psml.append("<list>");
+        for (int i = 0; i < 4; i++) {
+          psml.append("<item>").append(sentence(random, 8)).append("</item>");
+        }
+        psml.append("</list>");
+        break;
+      case 1:
+        psml.append("<table><col/><col/>");
+        for (int i = 0; i < 3; i++) {
+          psml.append("<row><cell>").append(word(random)).append("</cell><cell>").append(sentence(random, 5))
+              .append("</cell></row>");
+        }
+        psml.append("</table>");
+        break;
+      case 2:
+        long target = FIRST_ID + random.nextInt(XREF_TARGETS);
+        psml.append("<para>").append(sentence(random, 10)).append(" <xref frag=\"default\" display=\"document\" type=\"none\" uriid=\"")
+            .append(target).append("\" href=\"").append(filename(target)).append("\" urititle=\"Document ")
+            .append(target).append("\">Document ").append(target).append("</xref>.</para>");
+        break;
+      default:
+        psml.append("<para numbered=\"true\">").append(sentence(random, 20)).append("</para>");
+    }
+    paragraph(psml, random);
+    psml.append("</fragment>\n");
+  }
+
+  private static void paragraph(StringBuilder xml, Random random) {
+    xml.append("<para>").append(sentence(random, 8)).append(" <bold>").append(word(random)).append("</bold> ")
+        .append(sentence(random, 6)).append(" <italic>").append(word(random)).append("</italic> ")
+        .append(sentence(random, 8)).append(".</para>");
+  }
+
+  private static String sentence(Random random, int words) {
+    StringBuilder sentence = new StringBuilder(words * 8);
+    for (int i = 0; i < words; i++) {
+      if (i > 0) sentence.append(' ');
+      sentence.append(word(random));
+    }
+    return sentence.toString();
+  }
+
+  private static String word(Random random) {
+    return WORDS[random.nextInt(WORDS.length)];
+  }
+
+  private static String filename(long id) {
+    return "doc-" + id + ".psml";
+  }
+
+  private static DocumentTree tree(long id, String psml) throws SAXException {
+    try {
+      DocumentTreeHandler handler = new DocumentTreeHandler(id);
+      SAXParser parser = XML.newSAXParserFactory().newSAXParser();
+      parser.parse(new ByteArrayInputStream(psml.getBytes(StandardCharsets.UTF_8)), handler);
+      DocumentTree tree = handler.get();
+      if (tree == null) throw new SAXException("Unable to generate tree for document " + id);
+      return tree.normalize(TitleCollapse.auto);
+    } catch (ParserConfigurationException | IOException ex) {
+      throw new SAXException(ex);
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pageseeder.diffx.DiffException;
+import org.pageseeder.psml.diff.PSMLDiffer;
+
+/**
+ * Measures the diff of a fragment with an edited copy.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark {
+
+  /**
+   * The maximum number of diff events recommended by the differ.
+   */
+  private static final int MAX_EVENTS = 4_000_000;
+
+  @Param({"5", "50", "500"})
+  public int paragraphs;
+
+  /**
+   * Average number of words between two changes.
+   */
+  @Param({"10", "100"})
+  public int rate;
+
+  private String current;
+
+  private String compare;
+
+  private PSMLDiffer differ;
+
+  @Setup
+  public void setup() {
+    this.compare = Corpus.fragment(this.paragraphs, this.paragraphs);
+    this.current = Corpus.edit(this.compare, this.rate, this.rate);
+    this.differ = new PSMLDiffer(MAX_EVENTS);
+  }
+
+  @Benchmark
+  public StringWriter diff() throws DiffException, IOException {
+    StringWriter out = new StringWriter();
+    this.differ.diff(new StringReader(this.current), new StringReader(this.compare), out);
+    return out;
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pageseeder.psml.model.Loader;
+import org.pageseeder.psml.model.PSMLElement;
+
+/**
+ * Measures the time taken to load a PSML document into the PSML model.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int fragments;
+
+  private String psml;
+
+  @Setup
+  public void setup() {
+    this.psml = Corpus.document(Corpus.FIRST_ID, this.fragments, this.fragments);
+  }
+
+  @Benchmark
+  public PSMLElement parse() throws IOException {
+    return new Loader().parse(new StringReader(this.psml));
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pageseeder.psml.md.MarkdownParser;
+import org.pageseeder.psml.md.MarkdownSerializer;
+import org.pageseeder.psml.model.PSMLElement;
+
+/**
+ * Measures the conversion of Markdown to PSML and back.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkdownBenchmark {
+
+  @Param({"16", "160", "1600"})
+  public int blocks;
+
+  private String markdown;
+
+  private PSMLElement psml;
+
+  @Setup
+  public void setup() throws IOException {
+    this.markdown = Corpus.markdown(this.blocks, this.blocks);
+    this.psml = new MarkdownParser().parse(new StringReader(this.markdown));
+  }
+
+  @Benchmark
+  public PSMLElement parse() throws IOException {
+    return new MarkdownParser().parse(new StringReader(this.markdown));
+  }
+
+  @Benchmark
+  public StringBuilder serialize() throws IOException {
+    StringBuilder out = new StringBuilder(this.markdown.length());
+    new MarkdownSerializer().serialize(this.psml, out);
+    return out;
+  }
+
+}
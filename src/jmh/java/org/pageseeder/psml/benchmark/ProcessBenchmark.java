@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pageseeder.psml.process.Process;
+import org.pageseeder.psml.process.ProcessException;
+
+/**
+ * Measures the processing of a folder of PSML documents with cross references.
+ *
+ * <p>The source documents are preserved and every invocation writes to a new empty folder
+ * so that every invocation processes the same files. The folders are deleted after each
+ * iteration rather than each invocation to keep the cleanup out of the measurements.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProcessBenchmark {
+
+  /**
+   * Number of fragments in each document.
+   */
+  private static final int FRAGMENTS = 20;
+
+  @Param({"10", "100", "500"})
+  public int documents;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private Path folder;
+
+  private File source;
+
+  private File destination;
+
+  /**
+   * Number of invocations in the current iteration, used to name the output folders.
+   */
+  private int invocation;
+
+  @Setup
+  public void setup() throws IOException {
+    this.folder = Files.createTempDirectory("psml-process-benchmark");
+    this.source = this.folder.resolve("src").toFile();
+    this.destination = this.folder.resolve("dest").toFile();
+    Corpus.write(this.source.toPath(), Math.max(this.documents, Corpus.XREF_TARGETS), FRAGMENTS);
+  }
+
+  @Setup(Level.Iteration)
+  public void clean() throws IOException {
+    delete(this.destination.toPath());
+    Files.createDirectories(this.destination.toPath());
+    this.invocation = 0;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    delete(this.folder);
+  }
+
+  @Benchmark
+  public File process() throws ProcessException, IOException {
+    // creating an empty folder is negligible compared to the process
+    File output = Files.createDirectory(this.destination.toPath().resolve(Integer.toString(this.invocation++))).toFile();
+    Process process = new Process();
+    process.setSrc(this.source);
+    process.setDest(output);
+    process.setPreserveSrc(true);
+    process.setProcessed(true);
+    process.setThreads(this.threads);
+    process.process();
+    return output;
+  }
+
+  private static void delete(Path path) throws IOException {
+    if (!Files.exists(path)) return;
+    try (Stream<Path> files = Files.walk(path)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pageseeder.psml.toc.FragmentNumbering;
+import org.pageseeder.psml.toc.PublicationConfig;
+import org.pageseeder.psml.toc.PublicationTree;
+import org.pageseeder.psml.toc.XRefLoopException;
+import org.pageseeder.xmlwriter.XML.NamespaceAware;
+import org.pageseeder.xmlwriter.XMLStringWriter;
+import org.xml.sax.SAXException;
+
+/**
+ * Measures the numbering and serialization of a publication tree.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TocBenchmark {
+
+  /**
+   * Number of fragments in each document.
+   */
+  private static final int FRAGMENTS = 20;
+
+  @Param({"10", "100", "1000"})
+  public int documents;
+
+  private PublicationTree publication;
+
+  private PublicationConfig config;
+
+  @Setup
+  public void setup() throws IOException, SAXException {
+    this.publication = Corpus.publication(this.documents, FRAGMENTS);
+    this.config = Corpus.config();
+  }
+
+  @Benchmark
+  public FragmentNumbering numbering() throws XRefLoopException {
+    return new FragmentNumbering(this.publication, this.config);
+  }
+
+  @Benchmark
+  public String toXML() throws IOException {
+    XMLStringWriter xml = new XMLStringWriter(NamespaceAware.No);
+    this.publication.toXML(xml);
+    xml.flush();
+    return xml.toString();
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.md;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pageseeder.psml.benchmark.Corpus;
+
+/**
+ * Compares the line classifier with the regular expressions previously used by the block parsers.
+ *
+ * <p>Each benchmark classifies every line of the corpus in the same order as the block parser.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineClassifierBenchmark {
+
+  @Param({"160", "1600", "16000"})
+  public int blocks;
+
+  private String[] lines;
+
+  @Setup
+  public void setup() {
+    this.lines = Corpus.markdown(this.blocks, this.blocks).split("\n");
+  }
+
+  @Benchmark
+  public int regex() {
+    int count = 0;
+    for (String line : this.lines) {
+      if (line.matches("\\s?(==+|--+)\\s*")) count++;
+      else if (line.matches("\\s*\\*\\s?\\*\\s?\\*[\\s*]*")) count += 2;
+      else if (line.matches("\\s*(-|\\+|\\*|\\d+\\.)\\s.+")) count += 3;
+      else if (line.matches("\\s{4}.*")) count += 4;
+      else if (line.matches("\\s*+>++\\s*+.*")) count += 5;
+      else if (line.matches("\\s*")) count += 6;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int classifier() {
+    int count = 0;
+    for (String line : this.lines) {
+      if (LineClassifier.isSetextUnderline(line)) count++;
+      else if (LineClassifier.isSeparator(line)) count += 2;
+      else if (LineClassifier.isListItem(line)) count += 3;
+      else if (LineClassifier.isIndented(line)) count += 4;
+      else if (LineClassifier.isQuote(line)) count += 5;
+      else if (LineClassifier.isBlank(line)) count += 6;
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.diff;
+
+import java.util.List;
+
+import org.pageseeder.diffx.token.XMLToken;
+import org.pageseeder.diffx.token.XMLTokenType;
+
+/**
+ * The common leading and trailing tokens of two sequences which do not need to be diffed.
+ *
+ * <p>The prefix and suffix are shortened if needed so that the window left in between is well
+ * formed on both sides: it starts and ends at the same element depth, never goes above it and
+ * does not split attributes from their element. This lets the XML diff algorithms process the
+ * window on its own.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class CommonWindow {
+
+  /**
+   * Number of common leading tokens.
+   */
+  final int prefix;
+
+  /**
+   * Number of common trailing tokens.
+   */
+  final int suffix;
+
+  /**
+   * Whether both sequences are identical.
+   */
+  final boolean identical;
+
+  private CommonWindow(int prefix, int suffix, boolean identical) {
+    this.prefix = prefix;
+    this.suffix = suffix;
+    this.identical = identical;
+  }
+
+  /**
+   * @return <code>true</code> if there are no common leading or trailing tokens.
+   */
+  boolean isEmpty() {
+    return this.prefix == 0 && this.suffix == 0;
+  }
+
+  /**
+   * Computes the common window of two sequences of tokens.
+   *
+   * @param a The first sequence of tokens
+   * @param b The second sequence of tokens
+   *
+   * @return the common window
+   */
+  static CommonWindow of(List<? extends XMLToken> a, List<? extends XMLToken> b) {
+    int n = a.size();
+    int m = b.size();
+    int min = Math.min(n, m);
+    int prefix = 0;
+    while (prefix < min && a.get(prefix).equals(b.get(prefix))) prefix++;
+    if (prefix == n && n == m) return new CommonWindow(n, 0, true);
+    int suffix = 0;
+    while (suffix < min - prefix && a.get(n - 1 - suffix).equals(b.get(m - 1 - suffix))) suffix++;
+    if (prefix == 0 && suffix == 0) return new CommonWindow(0, 0, false);
+
+    int[] depthA = depths(a);
+    int[] depthB = depths(b);
+    // the suffix can only be trusted if both sequences end at the same depth
+    if (depthA[n] != depthB[m]) {
+      suffix = 0;
+    }
+
+    // lowest depth reached in the window on either side
+    int lowest = Integer.MAX_VALUE;
+    for (int i = prefix; i <= n - suffix; i++) lowest = Math.min(lowest, depthA[i]);
+    for (int i = prefix; i <= m - suffix; i++) lowest = Math.min(lowest, depthB[i]);
+
+    for (int depth = lowest; depth >= 0; depth--) {
+      int start = prefix;
+      while (start > 0 && depthA[start] != depth) start--;
+      int end = n - suffix;
+      while (end < n && depthA[end] != depth) end++;
+      if (depthA[start] != depth || depthA[end] != depth) continue;
+      int trailing = n - end;
+      if (isAttribute(a, start) || isAttribute(b, start) || isAttribute(a, end) || isAttribute(b, m - trailing)) continue;
+      return new CommonWindow(start, trailing, false);
+    }
+    return new CommonWindow(0, 0, false);
+  }
+
+  /**
+   * @return the element depth before each token and at the end.
+   */
+  private static int[] depths(List<? extends XMLToken> tokens) {
+    int[] depths = new int[tokens.size() + 1];
+    int depth = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      depths[i] = depth;
+      XMLTokenType type = tokens.get(i).getType();
+      if (type == XMLTokenType.START_ELEMENT) depth++;
+      else if (type == XMLTokenType.END_ELEMENT) depth--;
+    }
+    depths[tokens.size()] = depth;
+    return depths;
+  }
+
+  private static boolean isAttribute(List<? extends XMLToken> tokens, int index) {
+    return index < tokens.size() && tokens.get(index).getType() == XMLTokenType.ATTRIBUTE;
+  }
+
+}
@@ -11,8 +11,17 @@ import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -36,7 +45,7 @@ import org.xml.sax.SAXException;
  * @author Philip Rutherford
  * @author Christophe Lauret
  *
- * @version 1.7.4
+ * @version 1.9.0
  * @since 1.0
  */
 public final class Diff {
@@ -76,6 +85,21 @@ public final class Diff {
    */
   private @Nullable IncludesExcludesMatcher filesMatcher = null;
 
+  /**
+   * Whether to parse each PSML file only once.
+   */
+  private boolean singlePass = false;
+
+  /**
+   * Number of threads used for diffing.
+   */
+  private int threads = 1;
+
+  /**
+   * Cache for the diff results.
+   */
+  private @Nullable DiffCache cache = null;
+
   /**
    * @param destination the destination to set
    */
@@ -136,6 +160,47 @@ public final class Diff {
     this.maxEvents = maxevents;
   }
 
+  /**
+   * Defines whether each PSML file should be parsed only once (default is false).
+   *
+   * <p>In single pass mode, the fragments are recorded as Diff-X tokens while the file is parsed
+   * instead of being collected as strings and parsed again by Diff-X. The result is the same but
+   * the part of the file following the first compare fragment is kept in memory.
+   *
+   * @param single <code>true</code> to parse each file only once
+   *
+   * @see SinglePassDiffHandler
+   */
+  public void setSinglePass(boolean single) {
+    this.singlePass = single;
+  }
+
+  /**
+   * Defines the number of threads used for diffing (default is 1).
+   *
+   * <p>When more than one thread is used, files are diffed concurrently and so are the fragments
+   * within each file, the {@code <diff>} elements are still written in document order.
+   *
+   * @param threads the number of threads used for diffing
+   *
+   * @throws IllegalArgumentException if the number of threads is less than 1
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+    this.threads = threads;
+  }
+
+  /**
+   * Defines the cache for the diff results (default is none).
+   *
+   * <p>When the cache has a directory, unchanged fragments are not diffed again by later runs.
+   *
+   * @param cache the cache for the diff results or <code>null</code> to disable caching.
+   */
+  public void setCache(@Nullable DiffCache cache) {
+    this.cache = cache;
+  }
+
   /**
    * Adds diff elements to portable PSML files (only if they have compare {@code <content>} elements).
    * Files under <code>[src]/WEB-INF</code> are ignored.
@@ -166,40 +231,146 @@ public final class Diff {
     Map<String, File> psml = new HashMap<>();
     collectAll(this.src, psml);
 
-    // loop through file list
-    for (Map.Entry<String, File> psmlEntry : psml.entrySet()) {
-      String relPath = psmlEntry.getKey();
-      // check pattern matching
-      boolean matches = this.filesMatcher == null || !this.filesMatcher.hasPatterns() || this.filesMatcher.matches(relPath);
-      if (!matches) continue;
-
-      this.logger.debug("Checking file {}", relPath);
-      // check if any compare fragments
-      Map<String, String> compareFragments;
-      try (InputStream input = new FileInputStream(psmlEntry.getValue())) {
-        compareFragments = comparePSML(input);
-      } catch (ParserConfigurationException | SAXException | IOException ex) {
-        this.logger.error("Failed to parse input file {}: {}", relPath, ex.getMessage());
-        throw new DiffException("Failed to parse input file "+relPath+" : "+ex.getMessage(), ex);
+    if (this.threads == 1) {
+      // loop through file list
+      for (Map.Entry<String, File> psmlEntry : psml.entrySet()) {
+        if (matches(psmlEntry.getKey())) {
+          diffFile(psmlEntry.getKey(), psmlEntry.getValue(), outputAll, null);
+        }
       }
-      if (compareFragments.isEmpty() && !outputAll) {
-        continue;
+      return;
+    }
+
+    // files and fragments use separate pools so that file tasks waiting for fragments cannot starve them
+    ExecutorService files = Executors.newFixedThreadPool(this.threads);
+    ExecutorService fragments = Executors.newFixedThreadPool(this.threads);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (Map.Entry<String, File> psmlEntry : psml.entrySet()) {
+        if (matches(psmlEntry.getKey())) {
+          results.add(files.submit(() -> {
+            diffFile(psmlEntry.getKey(), psmlEntry.getValue(), outputAll, fragments);
+            return null;
+          }));
+        }
       }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new DiffException("Interrupted while diffing files", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof DiffException) throw (DiffException) ex.getCause();
+      throw new DiffException("Failed to diff files: "+ex.getCause().getMessage(), ex.getCause());
+    } finally {
+      files.shutdownNow();
+      fragments.shutdownNow();
+    }
+  }
 
-      this.logger.debug("Diffing file {}", relPath);
+  /**
+   * @param relPath  the path of the file relative to [src]
+   *
+   * @return <code>true</code> if the file matches the file patterns
+   */
+  private boolean matches(String relPath) {
+    return this.filesMatcher == null || !this.filesMatcher.hasPatterns() || this.filesMatcher.matches(relPath);
+  }
 
-      try (InputStream input = new FileInputStream(psmlEntry.getValue())) {
-        File output = new File(this.dest, relPath);
-        // just in case
-        output.getParentFile().mkdirs();
-        if (!output.exists() && !output.createNewFile())
-          throw new DiffException("Failed to create output file "+output.getAbsolutePath());
-        try (FileOutputStream fos = new FileOutputStream(output)) {
-          diffPSML(input, new OutputStreamWriter(fos, StandardCharsets.UTF_8), compareFragments);
-        }
+  /**
+   * Adds diff elements to a single PSML file.
+   *
+   * @param relPath    the path of the file relative to [src]
+   * @param file       the PSML file
+   * @param outputAll  if <code>true</code> output the file even if no compare elements
+   * @param executor   executor for diffing fragments in parallel (null to diff inline)
+   *
+   * @throws DiffException if problem adding the elements.
+   */
+  private void diffFile(String relPath, File file, boolean outputAll, @Nullable ExecutorService executor) throws DiffException {
+    assert this.logger != null;
+    if (this.singlePass) {
+      diffFileSinglePass(relPath, file, outputAll, executor);
+      return;
+    }
+
+    this.logger.debug("Checking file {}", relPath);
+    // check if any compare fragments
+    Map<String, String> compareFragments;
+    try (InputStream input = new FileInputStream(file)) {
+      compareFragments = comparePSML(input);
+    } catch (ParserConfigurationException | SAXException | IOException ex) {
+      this.logger.error("Failed to parse input file {}: {}", relPath, ex.getMessage());
+      throw new DiffException("Failed to parse input file "+relPath+" : "+ex.getMessage(), ex);
+    }
+    if (compareFragments.isEmpty() && !outputAll) {
+      return;
+    }
+
+    this.logger.debug("Diffing file {}", relPath);
+
+    try (InputStream input = new FileInputStream(file)) {
+      File output = new File(this.dest, relPath);
+      // just in case
+      output.getParentFile().mkdirs();
+      if (!output.exists() && !output.createNewFile())
+        throw new DiffException("Failed to create output file "+output.getAbsolutePath());
+      try (FileOutputStream fos = new FileOutputStream(output)) {
+        diffPSML(input, new OutputStreamWriter(fos, StandardCharsets.UTF_8), compareFragments, executor);
+      }
+    } catch (ParserConfigurationException | SAXException | IOException ex) {
+      this.logger.error("Failed to create output file: {}", ex.getMessage(), ex);
+      throw new DiffException("Failed to create output file: "+ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Adds diff elements to a single PSML file parsing it only once.
+   *
+   * @param relPath    the path of the file relative to [src]
+   * @param file       the PSML file
+   * @param outputAll  if <code>true</code> output the file even if no compare elements
+   * @param executor   executor for diffing fragments in parallel (null to diff inline)
+   *
+   * @throws DiffException if problem adding the elements.
+   */
+  private void diffFileSinglePass(String relPath, File file, boolean outputAll, @Nullable ExecutorService executor) throws DiffException {
+    assert this.logger != null;
+    this.logger.debug("Diffing file {}", relPath);
+    File output = new File(this.dest, relPath);
+    // just in case
+    output.getParentFile().mkdirs();
+    // write next to the output, so it can be moved in place only if needed
+    Path temp;
+    try {
+      temp = Files.createTempFile(output.getParentFile().toPath(), output.getName(), ".tmp");
+    } catch (IOException ex) {
+      this.logger.error("Failed to create output file: {}", ex.getMessage(), ex);
+      throw new DiffException("Failed to create output file: "+ex.getMessage(), ex);
+    }
+    try {
+      int compared;
+      try (InputStream input = new FileInputStream(file);
+           Writer out = new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8)) {
+        compared = diffPSML(input, out, executor);
       } catch (ParserConfigurationException | SAXException | IOException ex) {
-        this.logger.error("Failed to create output file: {}", ex.getMessage(), ex);
-        throw new DiffException("Failed to create output file: "+ex.getMessage(), ex);
+        this.logger.error("Failed to parse input file {}: {}", relPath, ex.getMessage());
+        throw new DiffException("Failed to parse input file "+relPath+" : "+ex.getMessage(), ex);
+      }
+      if (compared > 0 || outputAll) {
+        try {
+          Files.move(temp, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+          this.logger.error("Failed to create output file: {}", ex.getMessage(), ex);
+          throw new DiffException("Failed to create output file: "+ex.getMessage(), ex);
+        }
+      }
+    } finally {
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException ex) {
+        this.logger.warn("Failed to delete temporary file {}: {}", temp, ex.getMessage());
       }
     }
   }
@@ -237,16 +408,58 @@ public final class Diff {
    */
   public void diffPSML(InputStream in, Writer out, Map<String,String> compareFragments)
       throws ParserConfigurationException, SAXException, IOException {
-    PSMLDiffer differ = new PSMLDiffer(this.maxEvents);
-    differ.setWhiteSpaceProcessing(this.whiteSpaceProcessing);
-    differ.setGranularity(this.textGranularity);
-    DiffHandler handler = new DiffHandler(out, compareFragments, differ);
+    diffPSML(in, out, compareFragments, null);
+  }
+
+  private void diffPSML(InputStream in, Writer out, Map<String,String> compareFragments, @Nullable ExecutorService executor)
+      throws ParserConfigurationException, SAXException, IOException {
+    PSMLDiffer differ = newDiffer();
+    DiffHandler handler = new DiffHandler(out, compareFragments, differ, executor);
     SAXParserFactory factory = XML.newSAXParserFactory();
     SAXParser parser = factory.newSAXParser();
     parser.parse(in, handler);
     out.flush();
   }
 
+  /**
+   * Adds {@code <diff>} elements for compare fragments in portable PSML parsing it only once.
+   *
+   * @param in   the PSML document
+   * @param out  the result PSML document
+   *
+   * @return the number of compare fragments found
+   *
+   * @throws ParserConfigurationException if problem getting parser
+   * @throws SAXException if problem parsing PSML
+   * @throws IOException if problem reading or writing PSML
+   */
+  public int diffPSML(InputStream in, Writer out)
+      throws ParserConfigurationException, SAXException, IOException {
+    return diffPSML(in, out, (ExecutorService) null);
+  }
+
+  private int diffPSML(InputStream in, Writer out, @Nullable ExecutorService executor)
+      throws ParserConfigurationException, SAXException, IOException {
+    PSMLDiffer differ = newDiffer();
+    SinglePassDiffHandler handler = new SinglePassDiffHandler(out, differ, executor);
+    SAXParserFactory factory = XML.newSAXParserFactory();
+    SAXParser parser = factory.newSAXParser();
+    parser.parse(in, handler);
+    out.flush();
+    return handler.getCompareCount();
+  }
+
+  /**
+   * @return a new differ with the settings of this task
+   */
+  private PSMLDiffer newDiffer() {
+    PSMLDiffer differ = new PSMLDiffer(this.maxEvents);
+    differ.setWhiteSpaceProcessing(this.whiteSpaceProcessing);
+    differ.setGranularity(this.textGranularity);
+    differ.setCache(this.cache);
+    return differ;
+  }
+
   /**
    * Collect all the PSML files from the folder provided and its sub-folders.
    *
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.diff;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.psml.util.ConcurrentCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content-addressed cache of diff results for {@link PSMLDiffer}.
+ *
+ * <p>Results are keyed by a SHA-256 hash of both normalized token sequences and of the differ
+ * settings so that an unchanged pair of fragments is never diffed twice. Results are kept in
+ * memory and, if a directory is specified, on disk so that they can be reused by later runs.
+ *
+ * <p>A cache can be shared by several differs and threads.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class DiffCache {
+
+  /**
+   * Logger for PageSeeder Diffing.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiffCache.class);
+
+  /**
+   * Included in the keys so that results are not reused if the output format changes.
+   */
+  private static final String FORMAT = "psml-diff-1";
+
+  /**
+   * Extension of the files in the disk cache.
+   */
+  private static final String EXTENSION = ".diff";
+
+  /**
+   * The memory tier.
+   */
+  private final ConcurrentCache<String, Result> memory;
+
+  /**
+   * The directory for the disk tier (null if none).
+   */
+  private final @Nullable Path directory;
+
+  /**
+   * Number of results found on disk.
+   */
+  private final AtomicLong diskHits = new AtomicLong();
+
+  /**
+   * Number of results not found.
+   */
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates a cache in memory only.
+   *
+   * @param maxEntries The maximum number of results kept in memory
+   *
+   * @throws IllegalArgumentException If the maximum number of results is less than 1
+   */
+  public DiffCache(int maxEntries) {
+    this(maxEntries, null);
+  }
+
+  /**
+   * Creates a cache in memory backed by a directory.
+   *
+   * <p>The directory is created if needed when the first result is stored.
+   *
+   * @param maxEntries The maximum number of results kept in memory
+   * @param directory  The directory for storing the results on disk (null for memory only)
+   *
+   * @throws IllegalArgumentException If the maximum number of results is less than 1
+   */
+  public DiffCache(int maxEntries, @Nullable Path directory) {
+    this.memory = new ConcurrentCache<>(maxEntries);
+    this.directory = directory;
+  }
+
+  /**
+   * @return the directory for the disk tier or <code>null</code>.
+   */
+  public @Nullable Path getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * @return the number of results found in memory.
+   */
+  public long memoryHitCount() {
+    return this.memory.hitCount();
+  }
+
+  /**
+   * @return the number of results found on disk.
+   */
+  public long diskHitCount() {
+    return this.diskHits.get();
+  }
+
+  /**
+   * @return the number of results which had to be computed.
+   */
+  public long missCount() {
+    return this.misses.get();
+  }
+
+  /**
+   * Remove all the results in memory and on disk.
+   *
+   * @throws IOException If the files could not be deleted
+   */
+  public void clear() throws IOException {
+    this.memory.clear();
+    if (this.directory == null || !Files.isDirectory(this.directory)) return;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + EXTENSION)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DiffCache{memory=" + this.memory + ", disk=" + this.directory
+        + ", diskHits=" + this.diskHits.get() + ", misses=" + this.misses.get() + "}";
+  }
+
+  /**
+   * Returns the result for the specified key looking in memory then on disk.
+   *
+   * @param key The key computed with {@link Key}
+   *
+   * @return the result or <code>null</code>
+   */
+  @Nullable Result get(String key) {
+    Result result = this.memory.get(key);
+    if (result != null) return result;
+    result = load(key);
+    if (result != null) {
+      this.diskHits.incrementAndGet();
+      this.memory.put(key, result);
+    } else {
+      this.misses.incrementAndGet();
+    }
+    return result;
+  }
+
+  /**
+   * Stores the result for the specified key in memory and on disk.
+   *
+   * @param key    The key computed with {@link Key}
+   * @param result The result
+   */
+  void put(String key, Result result) {
+    this.memory.put(key, result);
+    if (this.directory != null) store(key, result);
+  }
+
+  /**
+   * @return the result stored on disk or <code>null</code>
+   */
+  private @Nullable Result load(String key) {
+    if (this.directory == null) return null;
+    Path file = this.directory.resolve(key + EXTENSION);
+    try {
+      String data = Files.readString(file, StandardCharsets.UTF_8);
+      // first line is the changed flag followed by the engine
+      int newline = data.indexOf('\n');
+      if (newline < 2) {
+        LOGGER.warn("Ignoring invalid diff cache file {}", file);
+        return null;
+      }
+      DiffReport.Engine engine = DiffReport.Engine.valueOf(data.substring(1, newline));
+      return new Result(data.substring(newline + 1), data.charAt(0) == '1', engine);
+    } catch (IllegalArgumentException ex) {
+      LOGGER.warn("Ignoring invalid diff cache file {}", file);
+      return null;
+    } catch (NoSuchFileException ex) {
+      return null;
+    } catch (IOException ex) {
+      LOGGER.warn("Unable to read diff cache file {}: {}", file, ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Write the result to a temporary file then move it so that readers never see a partial file.
+   */
+  private void store(String key, Result result) {
+    Path directory = this.directory;
+    if (directory == null) return;
+    String data = (result.changed ? "1" : "0") + result.engine.name() + '\n' + result.output;
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, key, ".tmp");
+      try {
+        Files.writeString(temp, data, StandardCharsets.UTF_8);
+        Path file = directory.resolve(key + EXTENSION);
+        try {
+          Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+          Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException ex) {
+      LOGGER.warn("Unable to write diff cache file for {}: {}", key, ex.getMessage());
+    }
+  }
+
+  /**
+   * A diff result.
+   */
+  static final class Result {
+
+    /** The diff output */
+    final String output;
+
+    /** Whether there were changes */
+    final boolean changed;
+
+    /** The engine which computed the diff */
+    final DiffReport.Engine engine;
+
+    Result(String output, boolean changed, DiffReport.Engine engine) {
+      this.output = output;
+      this.changed = changed;
+      this.engine = engine;
+    }
+  }
+
+  /**
+   * Computes cache keys as a SHA-256 hash of strings.
+   *
+   * <p>Each string is prefixed by its length so that different sequences of strings cannot
+   * produce the same input for the hash.
+   */
+  static final class Key {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest;
+
+    Key() {
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException ex) {
+        // SHA-256 is required on all Java platforms
+        throw new IllegalStateException(ex);
+      }
+      add(FORMAT);
+    }
+
+    /**
+     * @param value The value to add to the key (may be null)
+     *
+     * @return this key
+     */
+    Key add(@Nullable String value) {
+      if (value == null) {
+        addLength(-1);
+      } else {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        addLength(bytes.length);
+        this.digest.update(bytes);
+      }
+      return this;
+    }
+
+    /**
+     * @param value The value to add to the key
+     *
+     * @return this key
+     */
+    Key add(int value) {
+      addLength(value);
+      return this;
+    }
+
+    /**
+     * @return the key as a hexadecimal string
+     */
+    String build() {
+      byte[] hash = this.digest.digest();
+      char[] hex = new char[hash.length * 2];
+      for (int i = 0; i < hash.length; i++) {
+        hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+        hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+      }
+      return new String(hex);
+    }
+
+    private void addLength(int length) {
+      this.digest.update((byte) (length >>> 24));
+      this.digest.update((byte) (length >>> 16));
+      this.digest.update((byte) (length >>> 8));
+      this.digest.update((byte) length);
+    }
+  }
+
+}
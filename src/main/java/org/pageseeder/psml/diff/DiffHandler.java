@@ -6,10 +6,13 @@ package org.pageseeder.psml.diff;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.jspecify.annotations.Nullable;
 import org.pageseeder.psml.xml.XMLStrings;
@@ -22,10 +25,13 @@ import org.xml.sax.helpers.DefaultHandler;
 /**
  * Adds {@code <diff>} elements to compare fragments in portable PSML.
  *
+ * <p>When an executor is specified, the fragments are diffed in parallel and the
+ * {@code <diff>} elements are written in document order as they complete.
+ *
  * @author Philip Rutherford
  * @author Christophe Lauret
  *
- * @version 1.7.3
+ * @version 1.9.0
  * @since 1.0.0
  */
 public final class DiffHandler extends DefaultHandler {
@@ -50,6 +56,11 @@ public final class DiffHandler extends DefaultHandler {
    */
   private final PSMLDiffer differ;
 
+  /**
+   * Executor for diffing fragments in parallel (null to diff inline)
+   */
+  private final @Nullable Executor executor;
+
   /**
    * Current state.
    */
@@ -74,9 +85,22 @@ public final class DiffHandler extends DefaultHandler {
    *
    */
   public DiffHandler(Writer out, Map<String, String> comparefragments, PSMLDiffer diff) {
-    this.xml = out;
+    this(out, comparefragments, diff, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out                for writing the result XML
+   * @param comparefragments   map of fragment ID to current fragment with a corresponding {@code <compare>} element.
+   * @param diff               differ to use for comparing fragments
+   * @param executor           executor for diffing fragments in parallel (null to diff inline)
+   */
+  public DiffHandler(Writer out, Map<String, String> comparefragments, PSMLDiffer diff, @Nullable Executor executor) {
+    this.xml = executor != null ? new SplicingWriter(out) : out;
     this.compareFragments = comparefragments;
     this.differ = diff;
+    this.executor = executor;
   }
 
   @Override
@@ -135,6 +159,29 @@ public final class DiffHandler extends DefaultHandler {
   }
 
   private void writeDiff(String current, String fragContent) throws SAXException {
+    try {
+      if (this.executor != null) {
+        ((SplicingWriter) this.xml).splice(CompletableFuture.supplyAsync(() -> {
+          try {
+            return toDiffElement(current, fragContent);
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        }, this.executor));
+      } else {
+        this.xml.write(toDiffElement(current, fragContent));
+      }
+    } catch (IOException ex) {
+      throw new SAXException("Failed to write <diff> element: "+ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Diff the fragments.
+   *
+   * @return the {@code <diff>} element or an empty string if the diff failed
+   */
+  private String toDiffElement(String current, String fragContent) throws IOException {
     try {
       StringWriter diff = new StringWriter();
       this.differ.diff(new StringReader(current), new StringReader(fragContent), diff);
@@ -143,13 +190,21 @@ public final class DiffHandler extends DefaultHandler {
       if (diffx.startsWith("<?")) {
         diffx = diffx.substring(diffx.indexOf('>')+1);
       }
-      this.xml.write("\n<diff>");
-      this.xml.write(diffx);
-      this.xml.write("</diff>\n");
+      return "\n<diff>"+diffx+"</diff>\n";
     } catch (org.pageseeder.diffx.DiffException ex) {
       LOGGER.error("Failed to diff content: {}", ex.getMessage());
-    } catch (IOException ex) {
-      throw new SAXException("Failed to write <diff> element: "+ex.getMessage(), ex);
+      return "";
+    }
+  }
+
+  @Override
+  public void endDocument() throws SAXException {
+    if (this.executor != null) {
+      try {
+        ((SplicingWriter) this.xml).finish();
+      } catch (IOException ex) {
+        throw new SAXException("Failed to write <diff> element: "+ex.getMessage(), ex);
+      }
     }
   }
 
@@ -9,27 +9,60 @@ package org.pageseeder.psml.diff;
  * @author Christophe Lauret
  *
  * @since 1.7.3
- * @version 1.7.3
+ * @version 1.9.0
  */
 public final class DiffReport {
+
+  /**
+   * The diff engine which computed the result.
+   *
+   * @since 1.9.0
+   */
+  public enum Engine {
+
+    /** No diff was needed because the sequences were identical or only inserted or deleted */
+    NONE,
+
+    /** The default Gasherbrum algorithm */
+    GASHERBRUM,
+
+    /** The matrix-based XML algorithm used when Gasherbrum fails */
+    MATRIX,
+
+    /** The linear-space algorithm used when the sequences are too large for the other algorithms */
+    LINEAR
+  }
+
   private final boolean changed;
-  private final boolean fallbackUsed;
+  private final Engine engine;
   private final long durationNanos;
+  private final boolean cached;
 
-  DiffReport(boolean changed, boolean fallbackUsed, long durationNanos) {
+  DiffReport(boolean changed, Engine engine, long durationNanos, boolean cached) {
     this.changed = changed;
-    this.fallbackUsed = fallbackUsed;
+    this.engine = engine;
     this.durationNanos = durationNanos;
+    this.cached = cached;
+  }
+
+  DiffReport(boolean changed, boolean fallbackUsed, long durationNanos) {
+    this(changed, fallbackUsed ? Engine.MATRIX : Engine.GASHERBRUM, durationNanos, false);
   }
 
   DiffReport(boolean changed, boolean fallbackUsed) {
-    this.changed = changed;
-    this.fallbackUsed = fallbackUsed;
-    this.durationNanos = 0L;
+    this(changed, fallbackUsed, 0L);
+  }
+
+  DiffReport(boolean changed, Engine engine) {
+    this(changed, engine, 0L, false);
   }
 
   DiffReport withDuration(long durationNanos) {
-    return new DiffReport(this.changed, this.fallbackUsed, durationNanos);
+    return new DiffReport(this.changed, this.engine, durationNanos, this.cached);
+  }
+
+  DiffReport withCached() {
+    return new DiffReport(this.changed, this.engine, this.durationNanos, true);
   }
 
   /**
@@ -47,7 +80,16 @@ public final class DiffReport {
    * @return {@code true} if a fallback was used, {@code false} otherwise.
    */
   public boolean fallbackUsed() {
-    return this.fallbackUsed;
+    return this.engine == Engine.MATRIX || this.engine == Engine.LINEAR;
+  }
+
+  /**
+   * Returns the diff engine which computed the result.
+   *
+   * @return the engine used.
+   */
+  public Engine engine() {
+    return this.engine;
   }
 
   /**
@@ -59,4 +101,13 @@ public final class DiffReport {
     return this.durationNanos;
   }
 
+  /**
+   * Indicates whether the result was taken from a {@link DiffCache} instead of being computed.
+   *
+   * @return {@code true} if the result came from the cache, {@code false} otherwise.
+   */
+  public boolean fromCache() {
+    return this.cached;
+  }
+
 }
\ No newline at end of file
@@ -12,7 +12,7 @@ import java.util.Set;
  * @author Christophe Lauret
  *
  * @since 1.7.2
- * @version 1.7.3
+ * @version 1.9.0
  */
 public final class LexicalNormalizer implements TextNormalizer {
 
@@ -385,6 +385,25 @@ public final class LexicalNormalizer implements TextNormalizer {
     return (xmlSpaceFolding || unicodeSpaceFolding) && out.length() > 1 ? out.toString().trim() : out.toString();
   }
 
+  /**
+   * Two lexical normalizers are equal if they apply the same features.
+   *
+   * @param obj The object to compare with
+   *
+   * @return true if the object is a lexical normalizer with the same features
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) return true;
+    if (!(obj instanceof LexicalNormalizer)) return false;
+    return this.features.equals(((LexicalNormalizer) obj).features);
+  }
+
+  @Override
+  public int hashCode() {
+    return this.features.hashCode();
+  }
+
   private static boolean isPunctuation(int cp, int type) {
     return type == Character.OTHER_PUNCTUATION
         && (cp != '"' && cp != '#' && cp != '%' && cp != '&' && cp != '\'' && cp != '*' && cp != '@');
@@ -14,17 +14,20 @@ import java.util.function.IntPredicate;
  *
  * <p>By default, the tokenizer uses Unicode spaces for tokenization.</p>
  *
+ * <p>Tokens are taken from the {@link TokenPool#shared() shared token pool} unless another pool
+ * is specified.</p>
+ *
  * @author Christophe Lauret
  *
  * @since 1.7.2
- * @version 1.7.3
+ * @version 1.9.0
  */
 public final class LexicalTokenizer implements TextTokenizer {
 
   /**
    * The token pool for reusing tokens when they are identical.
    */
-  private final Map<String, LexicalToken> pool = new HashMap<>();
+  private TokenPool pool = TokenPool.shared();
 
   /**
    * The normalizer to apply to the text when generating lexical tokens.
@@ -67,6 +70,15 @@ public final class LexicalTokenizer implements TextTokenizer {
     this.isSpace = useUnicodeSpace ? LexicalTokenizer::isUnicodeSpace : LexicalTokenizer::isXMLSpace;
   }
 
+  /**
+   * Sets the pool for reusing tokens (default is the shared pool).
+   *
+   * @param pool the token pool
+   */
+  public void setTokenPool(TokenPool pool) {
+    this.pool = Objects.requireNonNull(pool, "pool");
+  }
+
   /**
    * Returns whether to use Unicode spaces for tokenization or XML spaces.
    *
@@ -141,8 +153,7 @@ public final class LexicalTokenizer implements TextTokenizer {
 
   private void emit(List<TextToken> out, String leading, CharSequence s, int start, int end, TextNormalizer norm) {
     String original = leading + s.subSequence(start, end);
-    LexicalToken token = this.pool.computeIfAbsent(original, text -> new LexicalToken(text, norm.normalize(text)));
-    out.add(token);
+    out.add(this.pool.lexical(original, norm));
   }
 
   private static int codePointAt(CharSequence s, int i) {
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.diff;
+
+import java.util.List;
+
+import org.pageseeder.diffx.api.DiffAlgorithm;
+import org.pageseeder.diffx.api.DiffHandler;
+import org.pageseeder.diffx.api.Operator;
+import org.pageseeder.diffx.handler.XMLBalanceCheckFilter;
+import org.pageseeder.diffx.handler.XMLEventBalancer;
+import org.pageseeder.diffx.token.XMLToken;
+import org.pageseeder.psml.util.Beta;
+
+/**
+ * A diff algorithm for very large sequences of XML tokens using linear space.
+ *
+ * <p>This is the divide and conquer variant of Myers' algorithm: the middle snake of the edit
+ * path is found with two furthest reaching arrays of size <code>N+M</code> and both halves are
+ * processed recursively. The result is then balanced like the other PSML algorithms.
+ *
+ * <p>When a part is too expensive to compare, i.e. the number of differences exceeds the cost
+ * limit, the best point reached so far is used to split it instead of the middle snake. This
+ * keeps the time close to linear for unrelated content at the cost of a less minimal diff.
+ *
+ * @author Philip Rutherford
+ *
+ * @since 1.9.0
+ * @version 1.9.0
+ */
+@Beta
+public final class LinearXMLAlgorithm implements DiffAlgorithm<XMLToken> {
+
+  /**
+   * Default maximum number of differences to look for before splitting heuristically.
+   */
+  public static final int DEFAULT_COST_LIMIT = 256;
+
+  /**
+   * Approximate number of bytes used for each token of both sequences.
+   *
+   * <p>This includes the two furthest reaching arrays and the operations sent to the handler.
+   */
+  static final int BYTES_PER_TOKEN = 64;
+
+  /**
+   * Maximum number of differences to look for before splitting heuristically.
+   */
+  private final int costLimit;
+
+  /**
+   * Whether the result had to be balanced and could not.
+   */
+  private boolean hasError = false;
+
+  public LinearXMLAlgorithm() {
+    this(DEFAULT_COST_LIMIT);
+  }
+
+  /**
+   * @param costLimit Maximum number of differences to look for before splitting heuristically
+   *
+   * @throws IllegalArgumentException If the cost limit is less than 1
+   */
+  public LinearXMLAlgorithm(int costLimit) {
+    if (costLimit < 1) throw new IllegalArgumentException("Cost limit must be at least 1");
+    this.costLimit = costLimit;
+  }
+
+  /**
+   * Returns the approximate memory required to diff sequences of the specified sizes.
+   *
+   * @param from The number of tokens in the first sequence
+   * @param to   The number of tokens in the second sequence
+   *
+   * @return the number of bytes
+   */
+  public static long estimateMemory(int from, int to) {
+    return ((long) from + to) * BYTES_PER_TOKEN;
+  }
+
+  public boolean hasError() {
+    return this.hasError;
+  }
+
+  @Override
+  public void diff(List<? extends XMLToken> from, List<? extends XMLToken> to, DiffHandler<XMLToken> handler) {
+    XMLBalanceCheckFilter checker = new XMLBalanceCheckFilter(handler);
+    XMLEventBalancer balancer = new XMLEventBalancer(checker);
+    balancer.start();
+    new Run(from, to, balancer, this.costLimit).compare(0, from.size(), 0, to.size());
+    balancer.end();
+    if (!checker.isBalanced()) {
+      this.hasError = true;
+    }
+  }
+
+  /**
+   * The state of a single diff.
+   */
+  private static final class Run {
+
+    private final List<? extends XMLToken> a;
+
+    private final List<? extends XMLToken> b;
+
+    private final DiffHandler<XMLToken> handler;
+
+    private final int costLimit;
+
+    /** Furthest reaching forward paths indexed by diagonal + offset */
+    private final int[] forward;
+
+    /** Furthest reaching backward paths indexed by diagonal + offset */
+    private final int[] backward;
+
+    private final int offset;
+
+    /** The middle snake or split point: start x, start y, end x, end y */
+    private final int[] snake = new int[4];
+
+    Run(List<? extends XMLToken> a, List<? extends XMLToken> b, DiffHandler<XMLToken> handler, int costLimit) {
+      this.a = a;
+      this.b = b;
+      this.handler = handler;
+      this.costLimit = costLimit;
+      this.offset = a.size() + b.size() + 1;
+      this.forward = new int[2 * this.offset + 1];
+      this.backward = new int[2 * this.offset + 1];
+    }
+
+    /**
+     * Compare a[aLo..aHi) with b[bLo..bHi) and send the operations to the handler in order.
+     *
+     * <p>Only the part before the split point is compared recursively, the part after it is
+     * compared in the same loop so that the stack depth does not grow with the number of
+     * heuristic splits.
+     */
+    void compare(int aLo, int aHi, int bLo, int bHi) {
+      // the common suffixes found on each iteration are contiguous and sent after the rest
+      final int aLimit = aHi;
+      while (true) {
+        // common prefix
+        while (aLo < aHi && bLo < bHi && this.a.get(aLo).equals(this.b.get(bLo))) {
+          this.handler.handle(Operator.MATCH, this.a.get(aLo));
+          aLo++;
+          bLo++;
+        }
+        // common suffix
+        while (aLo < aHi && bLo < bHi && this.a.get(aHi - 1).equals(this.b.get(bHi - 1))) {
+          aHi--;
+          bHi--;
+        }
+
+        if (aLo == aHi || bLo == bHi) {
+          replace(aLo, aHi, bLo, bHi);
+          break;
+        }
+        split(aLo, aHi, bLo, bHi);
+        int x = this.snake[0];
+        int y = this.snake[1];
+        int u = this.snake[2];
+        int v = this.snake[3];
+        if ((x == aLo && y == bLo && u == aLo && v == bLo) || (x == aHi && y == bHi)) {
+          // no progress possible
+          replace(aLo, aHi, bLo, bHi);
+          break;
+        }
+        compare(aLo, x, bLo, y);
+        for (int i = x; i < u; i++) {
+          this.handler.handle(Operator.MATCH, this.a.get(i));
+        }
+        aLo = u;
+        bLo = v;
+      }
+
+      for (int i = aHi; i < aLimit; i++) {
+        this.handler.handle(Operator.MATCH, this.a.get(i));
+      }
+    }
+
+    /**
+     * Delete a[aLo..aHi) and insert b[bLo..bHi).
+     */
+    private void replace(int aLo, int aHi, int bLo, int bHi) {
+      for (int i = aLo; i < aHi; i++) {
+        this.handler.handle(Operator.DEL, this.a.get(i));
+      }
+      for (int j = bLo; j < bHi; j++) {
+        this.handler.handle(Operator.INS, this.b.get(j));
+      }
+    }
+
+    /**
+     * Find the middle snake of the shortest edit path, or the best split point reached within
+     * the cost limit.
+     *
+     * <p>Both ranges must be non-empty.
+     */
+    private void split(int aLo, int aHi, int bLo, int bHi) {
+      int n = aHi - aLo;
+      int m = bHi - bLo;
+      int delta = n - m;
+      boolean odd = (delta & 1) != 0;
+      int[] vf = this.forward;
+      int[] vb = this.backward;
+      int o = this.offset;
+      vf[o + 1] = 0;
+      vb[o + 1] = 0;
+      int max = (n + m + 1) / 2;
+      for (int d = 0; d <= max; d++) {
+        // forward paths
+        for (int k = -d; k <= d; k += 2) {
+          int x = (k == -d || (k != d && vf[o + k - 1] < vf[o + k + 1])) ? vf[o + k + 1] : vf[o + k - 1] + 1;
+          int y = x - k;
+          int xs = x;
+          int ys = y;
+          while (x < n && y < m && this.a.get(aLo + x).equals(this.b.get(bLo + y))) {
+            x++;
+            y++;
+          }
+          vf[o + k] = x;
+          int kb = delta - k;
+          if (odd && kb >= -(d - 1) && kb <= d - 1 && x + vb[o + kb] >= n) {
+            setSnake(aLo + xs, bLo + ys, aLo + x, bLo + y);
+            return;
+          }
+        }
+        // backward paths on the reversed sequences
+        for (int k = -d; k <= d; k += 2) {
+          int x = (k == -d || (k != d && vb[o + k - 1] < vb[o + k + 1])) ? vb[o + k + 1] : vb[o + k - 1] + 1;
+          int y = x - k;
+          int xs = x;
+          int ys = y;
+          while (x < n && y < m && this.a.get(aHi - 1 - x).equals(this.b.get(bHi - 1 - y))) {
+            x++;
+            y++;
+          }
+          vb[o + k] = x;
+          int kf = delta - k;
+          if (!odd && kf >= -d && kf <= d && x + vf[o + kf] >= n) {
+            setSnake(aHi - x, bHi - y, aHi - xs, bHi - ys);
+            return;
+          }
+        }
+        if (d >= this.costLimit) {
+          splitHeuristically(aLo, bLo, n, m, d);
+          return;
+        }
+      }
+      // Not reachable for non-empty ranges
+      setSnake(aLo, bLo, aLo, bLo);
+    }
+
+    /**
+     * Use the forward path which went the furthest as the split point.
+     */
+    private void splitHeuristically(int aLo, int bLo, int n, int m, int d) {
+      int best = -1;
+      int bestX = 0;
+      int bestY = 0;
+      for (int k = -d; k <= d; k += 2) {
+        int x = Math.min(this.forward[this.offset + k], n);
+        int y = x - k;
+        if (y < 0 || y > m) continue;
+        if (x + y > best) {
+          best = x + y;
+          bestX = x;
+          bestY = y;
+        }
+      }
+      setSnake(aLo + bestX, bLo + bestY, aLo + bestX, bLo + bestY);
+    }
+
+    private void setSnake(int x, int y, int u, int v) {
+      this.snake[0] = x;
+      this.snake[1] = y;
+      this.snake[2] = u;
+      this.snake[3] = v;
+    }
+  }
+
+}
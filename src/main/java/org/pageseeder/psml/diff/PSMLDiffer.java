@@ -6,9 +6,14 @@ package org.pageseeder.psml.diff;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
 
+import org.jspecify.annotations.Nullable;
 import org.pageseeder.diffx.DiffException;
 import org.pageseeder.diffx.action.Operation;
 import org.pageseeder.diffx.action.OperationsBuffer;
@@ -22,7 +27,11 @@ import org.pageseeder.diffx.format.DefaultXMLDiffOutput;
 import org.pageseeder.diffx.format.XMLDiffOutput;
 import org.pageseeder.diffx.handler.CoalescingFilter;
 import org.pageseeder.diffx.load.SAXLoader;
+import org.pageseeder.diffx.load.text.TextTokenizer;
+import org.pageseeder.diffx.load.text.TokenizerFactory;
+import org.pageseeder.diffx.token.TextToken;
 import org.pageseeder.diffx.token.XMLToken;
+import org.pageseeder.diffx.xml.Namespace;
 import org.pageseeder.diffx.xml.NamespaceSet;
 import org.pageseeder.diffx.xml.Sequence;
 import org.pageseeder.xmlwriter.UndeclaredNamespaceException;
@@ -36,7 +45,7 @@ import org.slf4j.LoggerFactory;
  * @author Philip Rutherford
  *
  * @since 0.3.7
- * @version 1.7.3
+ * @version 1.9.0
  */
 public final class PSMLDiffer {
 
@@ -45,6 +54,21 @@ public final class PSMLDiffer {
    */
   private static final Logger LOGGER = LoggerFactory.getLogger(PSMLDiffer.class);
 
+  /**
+   * The default text normalizer which leaves the text unchanged.
+   */
+  private static final TextNormalizer NO_NORMALIZATION = t -> t;
+
+  /**
+   * Default heap budget for a single diff.
+   */
+  public static final long DEFAULT_HEAP_BUDGET = 256L * 1024 * 1024;
+
+  /**
+   * Approximate number of bytes used for each diff event by the quadratic algorithms.
+   */
+  private static final int QUADRATIC_BYTES_PER_EVENT = 4;
+
   /**
    * The configuration used for Diff-X.
    */
@@ -58,14 +82,29 @@ public final class PSMLDiffer {
   /**
    * Text normalizer to apply to text tokens.
    */
-  private TextNormalizer textNormalizer = t -> t;
+  private TextNormalizer textNormalizer = NO_NORMALIZATION;
+
+  /**
+   * Cache for the diff results (null if not cached).
+   */
+  private @Nullable DiffCache cache = null;
+
+  /**
+   * Approximate memory available for a single diff in bytes.
+   */
+  private long heapBudget = DEFAULT_HEAP_BUDGET;
+
+  /**
+   * Pool for reusing text tokens.
+   */
+  private TokenPool tokenPool = TokenPool.shared();
 
   /**
    * Constructor.
    *
    * <p>Diff events are the number of elements/attributes/text in each fragment multiplied by each other.
    * When `maxEvents` is reached the diff will set the coarsest granularity (TEXT) and try again.
-   * If events is still larger than `maxEvents` an exception is generated.
+   * If events is still larger than `maxEvents` the linear-space algorithm is used within the heap budget.
    *
    * <p>For reasonable performance, a maximum of 4,000,000 is recommended.
    *
@@ -105,6 +144,45 @@ public final class PSMLDiffer {
     this.textNormalizer = normalizer;
   }
 
+  /**
+   * Defines the cache for the diff results (default is none).
+   *
+   * <p>Results are only cached when the text normalizer is a {@link LexicalNormalizer} or the
+   * default, since the settings of other normalizers cannot be included in the key.
+   *
+   * @param cache the cache for the diff results or <code>null</code> to disable caching.
+   */
+  public void setCache(@Nullable DiffCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Defines the pool for reusing text tokens (default is the pool shared across the JVM).
+   *
+   * @param pool the token pool.
+   */
+  public void setTokenPool(TokenPool pool) {
+    this.tokenPool = Objects.requireNonNull(pool, "pool");
+  }
+
+  /**
+   * Defines the approximate memory available for a single diff (default is 256MB).
+   *
+   * <p>The budget only applies to the matrix-based algorithm used when the Gasherbrum algorithm
+   * fails. When the matrix would need more memory than this budget, or more than the maximum
+   * number of events even after coalescing the text, a linear-space algorithm is used instead so
+   * that very large fragments can still be compared. An exception is only thrown if the
+   * linear-space algorithm would also exceed the budget.
+   *
+   * @param bytes the approximate memory available in bytes
+   *
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  public void setHeapBudget(long bytes) {
+    if (bytes <= 0) throw new IllegalArgumentException("Heap budget must be positive");
+    this.heapBudget = bytes;
+  }
+
   /**
    * Compares the two specified pieces of XML and prints the diff onto the given writer.
    *
@@ -150,6 +228,48 @@ public final class PSMLDiffer {
     }
   }
 
+  /**
+   * Performs the diff of token sequences recorded with {@link #newRecorder()} and returns a report.
+   *
+   * <p>This is equivalent to {@link #diffWithReport(Reader, Reader, Writer)} without parsing the XML again.
+   *
+   * @param seq1 The first sequence to compare.
+   * @param seq2 The second sequence to compare.
+   * @param out  Where the output goes
+   *
+   * @return a report (changed?, timing, fallback used, etc.)
+   *
+   * @throws org.pageseeder.diffx.DiffException If a Diff-X exception occurs or if maxEvents is reached.
+   */
+  DiffReport diffWithReport(Sequence seq1, Sequence seq2, Writer out) throws org.pageseeder.diffx.DiffException {
+    LOGGER.debug("Diff-X config: {} {}", this.config.granularity(), this.config.whitespace());
+    long start = System.nanoTime();
+    DiffReport report = normalizeAndDiffWithReport(seq2, seq1, out);
+    return report.withDuration(System.nanoTime() - start);
+  }
+
+  /**
+   * Creates a recorder producing the same tokens as the loader used by this differ.
+   *
+   * @return a new recorder
+   */
+  SequenceRecorder newRecorder() {
+    return new SequenceRecorder(newTextTokenizer());
+  }
+
+  /**
+   * @return the text tokenizer for the text normalizer or the Diff-X default using the token pool.
+   */
+  private TextTokenizer newTextTokenizer() {
+    if (this.textNormalizer instanceof LexicalNormalizer) {
+      LexicalTokenizer tokenizer = new LexicalTokenizer(this.textNormalizer);
+      tokenizer.setUseUnicodeSpace(((LexicalNormalizer) this.textNormalizer).isUnicodeWhitespaceFolding());
+      tokenizer.setTokenPool(this.tokenPool);
+      return tokenizer;
+    }
+    return this.tokenPool.wrap(TokenizerFactory.get(this.config));
+  }
+
   /**
    * Loads, normalizes, diffs, and returns a minimal report about the operation.
    */
@@ -157,19 +277,39 @@ public final class PSMLDiffer {
     // Load tokens from XML
     SAXLoader loader = new SAXLoader();
     loader.setConfig(this.config);
-    if (this.textNormalizer instanceof LexicalNormalizer) {
-      LexicalTokenizer tokenizer = new LexicalTokenizer(this.textNormalizer);
-      tokenizer.setUseUnicodeSpace(((LexicalNormalizer) this.textNormalizer).isUnicodeWhitespaceFolding());
-      loader.setTextTokenizer(tokenizer);
-    }
-    Sequence seqB = normalizeElements(loader.load(to));
-    Sequence seqA = normalizeElements(loader.load(from));
+    loader.setTextTokenizer(newTextTokenizer());
+    Sequence seqTo = loader.load(to);
+    Sequence seqFrom = loader.load(from);
+    return normalizeAndDiffWithReport(seqFrom, seqTo, out);
+  }
+
+  /**
+   * Normalizes, diffs, and returns a minimal report about the operation.
+   */
+  private DiffReport normalizeAndDiffWithReport(Sequence from, Sequence to, Writer out) throws org.pageseeder.diffx.DiffException {
+    Sequence seqB = normalizeElements(to);
+    Sequence seqA = normalizeElements(from);
     LOGGER.debug("Sequence A: {} (granularity={})", seqA.size(), this.config.granularity());
     LOGGER.debug("Sequence B: {} (granularity={})", seqB.size(), this.config.granularity());
 
     // Diff sequences
     try {
-      return diff(seqA, seqB, out);
+      DiffCache cache = this.cache;
+      String key = cache != null ? cacheKey(seqA, seqB) : null;
+      if (cache == null || key == null) return diff(seqA, seqB, out);
+      DiffCache.Result cached = cache.get(key);
+      if (cached != null) {
+        LOGGER.debug("Diff found in cache {}", key);
+        out.write(cached.output);
+        return new DiffReport(cached.changed, cached.engine).withCached();
+      }
+      StringWriter result = new StringWriter();
+      DiffReport report = diff(seqA, seqB, result);
+      cache.put(key, new DiffCache.Result(result.toString(), report.hasChanges(), report.engine()));
+      out.write(result.toString());
+      return report;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
     } catch (DataLengthException ex) {
       throw new org.pageseeder.diffx.DiffException(
           "There are over " + ex.getThreshold() + " points of comparison (" + ex.getSize() + ") reducing the fragment size will allow the comparison to be calculated."
@@ -179,6 +319,58 @@ public final class PSMLDiffer {
     }
   }
 
+  /**
+   * Computes the cache key from the normalized sequences and the settings of this differ.
+   *
+   * @return the key or <code>null</code> if the text normalizer settings are unknown
+   */
+  private @Nullable String cacheKey(Sequence from, Sequence to) {
+    DiffCache.Key key = new DiffCache.Key()
+        .add(this.config.granularity().name())
+        .add(this.config.whitespace().name())
+        .add(this.maxEvents)
+        .add(Long.toString(this.heapBudget));
+    if (this.textNormalizer instanceof LexicalNormalizer) {
+      LexicalNormalizer normalizer = (LexicalNormalizer) this.textNormalizer;
+      key.add(new TreeSet<>(normalizer.features()).toString());
+      key.add(normalizer.isUnicodeWhitespaceFolding() ? 1 : 0);
+    } else if (this.textNormalizer == NO_NORMALIZATION) {
+      key.add("none");
+    } else {
+      return null;
+    }
+    addToKey(key, from);
+    addToKey(key, to);
+    return key.build();
+  }
+
+  /**
+   * Adds the tokens of the sequence to the key.
+   *
+   * <p>The value of a lexical token is its normalized text which is only used for matching,
+   * the output uses the original characters so they must be part of the key.
+   */
+  private static void addToKey(DiffCache.Key key, Sequence sequence) {
+    key.add(sequence.size());
+    for (XMLToken token : sequence.tokens()) {
+      key.add(token.getType().ordinal())
+         .add(token.getClass().getName())
+         .add(token.getNamespaceURI())
+         .add(token.getName());
+      if (token instanceof TextToken) {
+        key.add(((TextToken) token).getCharacters()).add(token.getValue());
+      } else {
+        key.add(token.getValue());
+      }
+    }
+    NamespaceSet namespaces = sequence.getNamespaces();
+    if (namespaces != null) {
+      for (Namespace namespace : namespaces) {
+        key.add(namespace.getUri()).add(namespace.getPrefix());
+      }
+    }
+  }
+
   /**
    * Compares the two specified pieces of XML and prints the diff onto the given writer.
    *
@@ -186,7 +378,7 @@ public final class PSMLDiffer {
    * @param to   The modified XML sequence.
    * @param out  Where the output goes.
    */
-  private DiffReport diff(Sequence from, Sequence to, Writer out) throws DataLengthException {
+  private DiffReport diff(Sequence from, Sequence to, Writer out) throws org.pageseeder.diffx.DiffException {
     DefaultXMLDiffOutput output = new DefaultXMLDiffOutput(out);
     output.setWriteXMLDeclaration(false);
     NamespaceSet namespaces = NamespaceSet.merge(to.getNamespaces(), from.getNamespaces());
@@ -197,24 +389,60 @@ public final class PSMLDiffer {
   /**
    * Compares two XML sequences and outputs their differences using a fallback mechanism.
    *
+   * <p>Identical sequences are matched straight away, otherwise the common leading and trailing
+   * tokens are matched and only the window in between is diffed.
+   *
    * <p>First attempts the Gasherbrum algorithm, and if it fails, falls back to
-   * a matrix-based diff algorithm. The results are applied to the provided output.
+   * a matrix-based diff algorithm. When the matrix would exceed the heap budget or the maximum
+   * number of events even after coalescing, the linear-space algorithm is used instead.
+   * The results are applied to the provided output.
    *
    * @param from   The original XML sequence.
    * @param to     The modified XML sequence.
    * @param output The output where the computed differences will be written.
+   *
+   * @throws org.pageseeder.diffx.DiffException If the linear-space algorithm exceeds the heap budget or
+   *                                            could not produce balanced XML
    */
-  private DiffReport diffWithFallback(Sequence from, Sequence to, XMLDiffOutput output) {
+  private DiffReport diffWithFallback(Sequence from, Sequence to, XMLDiffOutput output) throws org.pageseeder.diffx.DiffException {
+    CommonWindow window = CommonWindow.of(from, to);
     OperationsBuffer<XMLToken> buffer = new OperationsBuffer<>();
-    boolean successful = diffGasherbrum(from, to, buffer);
-    if (!successful) {
-      LOGGER.info("Gasherbrum diff failed! Falling back to matrix-based diff");
-      buffer = new OperationsBuffer<>();
-      diffMatrixXML(from, to, buffer, false);
+    DiffReport.Engine engine = DiffReport.Engine.NONE;
+    if (window.identical) {
+      LOGGER.debug("Sequences are identical");
+      for (XMLToken token : from) buffer.handle(Operator.MATCH, token);
+    } else {
+      List<? extends XMLToken> a = from.subList(window.prefix, from.size() - window.suffix);
+      List<? extends XMLToken> b = to.subList(window.prefix, to.size() - window.suffix);
+      LOGGER.debug("Diffing window of {} and {} tokens", a.size(), b.size());
+      OperationsBuffer<XMLToken> middle = new OperationsBuffer<>();
+      if (a.isEmpty() || b.isEmpty()) {
+        for (XMLToken token : a) middle.handle(Operator.DEL, token);
+        for (XMLToken token : b) middle.handle(Operator.INS, token);
+      } else {
+        engine = DiffReport.Engine.GASHERBRUM;
+        if (!diffGasherbrum(a, b, middle)) {
+          LOGGER.info("Gasherbrum diff failed! Falling back to matrix-based diff");
+          middle = new OperationsBuffer<>();
+          engine = DiffReport.Engine.MATRIX;
+          if (!diffMatrixXML(a, b, middle, false)) {
+            LOGGER.info("Matrix-based diff not computable! Falling back to linear diff");
+            engine = DiffReport.Engine.LINEAR;
+            middle = diffLinear(a, b, false);
+          }
+        }
+      }
+      if (window.isEmpty()) {
+        buffer = middle;
+      } else {
+        for (XMLToken token : from.subList(0, window.prefix)) buffer.handle(Operator.MATCH, token);
+        for (Operation<XMLToken> op : middle.getOperations()) buffer.handle(op.operator(), op.token());
+        for (XMLToken token : from.subList(from.size() - window.suffix, from.size())) buffer.handle(Operator.MATCH, token);
+      }
     }
     // Apply the results from to the buffer
     buffer.applyTo(new ElementDenormalizer(new CoalescingFilter(output)));
-    return new DiffReport(hasChanges(buffer), !successful);
+    return new DiffReport(hasChanges(buffer), engine);
   }
 
   /**
@@ -236,29 +464,69 @@ public final class PSMLDiffer {
   /**
    * Computes the differences between two sequences of XML tokens using the matrix
    * diff algorithm. Handles cases where the diff computation exceeds a defined threshold
-   * by coalescing the input sequences or throwing an exception if the threshold is still exceeded.
+   * by coalescing the input sequences.
    *
    * @param from       The original list of XML tokens to compare.
    * @param to         The modified list of XML tokens to compare.
    * @param handler    The handler responsible for processing the diff output.
    * @param coalesced  Indicates whether the input sequences have already been coalesced
    *                   to a coarser granularity.
+   *
+   * @return {@code true} if the diff was computed, {@code false} if the threshold or the heap budget
+   *         is still exceeded after coalescing (nothing is sent to the handler).
    */
-  private void diffMatrixXML(List<? extends XMLToken> from, List<? extends XMLToken> to, DiffHandler<XMLToken> handler, boolean coalesced) {
+  private boolean diffMatrixXML(List<? extends XMLToken> from, List<? extends XMLToken> to, DiffHandler<XMLToken> handler, boolean coalesced) {
     MatrixXMLAlgorithm algorithm = new MatrixXMLAlgorithm();
     algorithm.setThreshold(this.maxEvents);
-    if (algorithm.isDiffComputable(from, to)) {
+    boolean withinBudget = (long) from.size() * to.size() * QUADRATIC_BYTES_PER_EVENT <= this.heapBudget;
+    if (withinBudget && algorithm.isDiffComputable(from, to)) {
       handler.start();
       algorithm.diff(from, to, handler);
       handler.end();
+      return true;
     } else if (!coalesced) {
       LOGGER.debug("Coalescing content to");
       List<? extends XMLToken> a = CoalescingFilter.coalesce(from);
       List<? extends XMLToken> b = CoalescingFilter.coalesce(to);
-      diffMatrixXML(a, b, handler, true);
-    } else {
-      throw new DataLengthException(from.size() * to.size(), this.maxEvents);
+      return diffMatrixXML(a, b, handler, true);
+    }
+    return false;
+  }
+
+  /**
+   * Computes the differences between two sequences of XML tokens using the linear-space
+   * algorithm. The input sequences are coalesced if they need more memory than the heap budget
+   * or if the result is not balanced XML.
+   *
+   * @param from       The original list of XML tokens to compare.
+   * @param to         The modified list of XML tokens to compare.
+   * @param coalesced  Indicates whether the input sequences have already been coalesced
+   *                   to a coarser granularity.
+   *
+   * @return the operations computed by the algorithm
+   *
+   * @throws org.pageseeder.diffx.DiffException If the sequences still need more memory than the heap budget
+   *                                            or the result is still unbalanced XML after coalescing
+   */
+  private OperationsBuffer<XMLToken> diffLinear(List<? extends XMLToken> from, List<? extends XMLToken> to, boolean coalesced)
+      throws org.pageseeder.diffx.DiffException {
+    if (LinearXMLAlgorithm.estimateMemory(from.size(), to.size()) <= this.heapBudget) {
+      OperationsBuffer<XMLToken> buffer = new OperationsBuffer<>();
+      LinearXMLAlgorithm algorithm = new LinearXMLAlgorithm();
+      algorithm.diff(from, to, buffer);
+      if (!algorithm.hasError()) return buffer;
+      if (coalesced) throw new org.pageseeder.diffx.DiffException("Linear diff produced unbalanced XML");
+      LOGGER.info("Linear diff produced unbalanced XML! Retrying with coalesced content");
+    } else if (coalesced) {
+      throw new org.pageseeder.diffx.DiffException(
+          "The comparison needs about " + LinearXMLAlgorithm.estimateMemory(from.size(), to.size())
+          + " bytes which exceeds the heap budget of " + this.heapBudget + " bytes, reducing the fragment size will allow the comparison to be calculated."
+      );
     }
+    LOGGER.debug("Coalescing content to");
+    List<? extends XMLToken> a = CoalescingFilter.coalesce(from);
+    List<? extends XMLToken> b = CoalescingFilter.coalesce(to);
+    return diffLinear(a, b, true);
   }
 
   /**
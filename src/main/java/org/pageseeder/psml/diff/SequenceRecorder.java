@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.diff;
+
+import org.pageseeder.diffx.load.text.TextTokenizer;
+import org.pageseeder.diffx.token.AttributeToken;
+import org.pageseeder.diffx.token.StartElementToken;
+import org.pageseeder.diffx.token.TextToken;
+import org.pageseeder.diffx.token.impl.XMLAttribute;
+import org.pageseeder.diffx.token.impl.XMLEndElement;
+import org.pageseeder.diffx.token.impl.XMLStartElement;
+import org.pageseeder.diffx.xml.Sequence;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+
+/**
+ * Records the SAX events of an XML fragment directly as a sequence of Diff-X tokens.
+ *
+ * <p>This produces the same tokens as serializing the fragment and loading it with the
+ * Diff-X <code>SAXLoader</code>: the events are expected from a parser which is not namespace
+ * aware, namespace declarations are resolved here, attributes are sorted by name and text is
+ * tokenized when an element starts or ends.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class SequenceRecorder {
+
+  /**
+   * Sort attributes by namespace URI then name like Diff-X.
+   */
+  private static final Comparator<AttributeToken> ATTRIBUTE_ORDER =
+      Comparator.comparing(AttributeToken::getNamespaceURI).thenComparing(AttributeToken::getName);
+
+  /**
+   * Used to tokenize the text.
+   */
+  private final TextTokenizer tokenizer;
+
+  /**
+   * The recorded tokens.
+   */
+  private final Sequence sequence = new Sequence();
+
+  /**
+   * The open elements.
+   */
+  private final Deque<StartElementToken> elements = new ArrayDeque<>();
+
+  /**
+   * The text since the last element event.
+   */
+  private final StringBuilder text = new StringBuilder();
+
+  /**
+   * The namespaces in scope.
+   */
+  private final NamespaceSupport namespaces = new NamespaceSupport();
+
+  /**
+   * Parts of a qualified name resolved by the namespace support.
+   */
+  private final String[] parts = new String[3];
+
+  /**
+   * @param tokenizer Used to tokenize the text
+   */
+  SequenceRecorder(TextTokenizer tokenizer) {
+    this.tokenizer = tokenizer;
+  }
+
+  /**
+   * Record the start of an element and its attributes.
+   *
+   * @param qName The qualified name of the element
+   * @param atts  The attributes of the element
+   */
+  void startElement(String qName, Attributes atts) {
+    flushText();
+    this.namespaces.pushContext();
+    int count = 0;
+    for (int i = 0; i < atts.getLength(); i++) {
+      String name = atts.getQName(i);
+      if ("xmlns".equals(name) || name.startsWith("xmlns:")) {
+        String prefix = name.length() == 5 ? "" : name.substring(6);
+        this.namespaces.declarePrefix(prefix, atts.getValue(i));
+        this.sequence.addNamespace(atts.getValue(i), prefix);
+      } else {
+        count++;
+      }
+    }
+    StartElementToken start = new XMLStartElement(uri(qName, false), localName(qName));
+    this.sequence.addToken(start);
+    this.elements.push(start);
+    AttributeToken[] attributes = new AttributeToken[count];
+    int j = 0;
+    for (int i = 0; i < atts.getLength(); i++) {
+      String name = atts.getQName(i);
+      if ("xmlns".equals(name) || name.startsWith("xmlns:")) continue;
+      attributes[j++] = new XMLAttribute(uri(name, true), localName(name), atts.getValue(i));
+    }
+    if (count > 1) Arrays.sort(attributes, ATTRIBUTE_ORDER);
+    for (AttributeToken attribute : attributes) {
+      this.sequence.addToken(attribute);
+    }
+  }
+
+  /**
+   * Record the end of the current element.
+   */
+  void endElement() {
+    flushText();
+    this.sequence.addToken(new XMLEndElement(this.elements.pop()));
+    this.namespaces.popContext();
+  }
+
+  /**
+   * Record some text.
+   *
+   * @param ch     The characters
+   * @param start  The start position in the array
+   * @param length The number of characters
+   */
+  void characters(char[] ch, int start, int length) {
+    this.text.append(ch, start, length);
+  }
+
+  /**
+   * @return the tokens recorded
+   */
+  Sequence getSequence() {
+    flushText();
+    return this.sequence;
+  }
+
+  /**
+   * Tokenize the text recorded so far.
+   */
+  private void flushText() {
+    if (this.text.length() == 0) return;
+    for (TextToken token : this.tokenizer.tokenize(this.text)) {
+      this.sequence.addToken(token);
+    }
+    this.text.setLength(0);
+  }
+
+  /**
+   * @return the namespace URI for a qualified name ("" if none or undeclared)
+   */
+  private String uri(String qName, boolean attribute) {
+    String[] resolved = this.namespaces.processName(qName, this.parts, attribute);
+    return resolved == null ? "" : resolved[0];
+  }
+
+  /**
+   * @return the local name for a qualified name
+   */
+  private static String localName(String qName) {
+    return qName.substring(qName.indexOf(':') + 1);
+  }
+
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.diff;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.diffx.xml.Sequence;
+import org.pageseeder.psml.xml.XMLStrings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Adds {@code <diff>} elements to compare fragments in portable PSML parsing it only once.
+ *
+ * <p>This produces the same output as {@link CompareHandler} followed by {@link DiffHandler}, but
+ * the compare and current fragments are recorded as Diff-X tokens while the PSML is parsed instead
+ * of being serialized and parsed again.
+ *
+ * <p>Since the compare fragments come before the current fragments in portable PSML, the output
+ * following the first {@code <compare>} element is buffered until the end of the document. When an
+ * executor is specified, the fragments are diffed in parallel as soon as the current fragment is found.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class SinglePassDiffHandler extends DefaultHandler {
+
+  /**
+   * Logger for PageSeeder Diffing.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SinglePassDiffHandler.class);
+
+  /**
+   * Where the result XML goes.
+   */
+  private final SplicingWriter out;
+
+  /**
+   * Differ to use for comparing fragments
+   */
+  private final PSMLDiffer differ;
+
+  /**
+   * Executor for diffing fragments in parallel (null to diff inline)
+   */
+  private final @Nullable Executor executor;
+
+  /**
+   * Current state.
+   */
+  private final Deque<String> elements = new ArrayDeque<>();
+
+  /**
+   * All the compare fragments in document order.
+   */
+  private final List<FragmentDiff> compares = new ArrayList<>();
+
+  /**
+   * Map of fragment ID to diff for compare fragments.
+   */
+  private final Map<String, FragmentDiff> diffs = new HashMap<>();
+
+  /**
+   * Current compare fragment ID
+   */
+  private @Nullable String compareId = null;
+
+  /**
+   * Recorder for the current compare or current fragment
+   */
+  private @Nullable SequenceRecorder recorder = null;
+
+  /**
+   * Diff for the current fragment
+   */
+  private @Nullable FragmentDiff current = null;
+
+  /**
+   * Diff for the compare fragment to write after the content element
+   */
+  private @Nullable FragmentDiff compare = null;
+
+  /**
+   * Depth of the element in the fragment being recorded.
+   */
+  private int depth = 0;
+
+  /**
+   * Number of fragments diffed.
+   */
+  private final AtomicInteger diffCount = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param out   for writing the result XML
+   * @param diff  differ to use for comparing fragments
+   */
+  public SinglePassDiffHandler(Writer out, PSMLDiffer diff) {
+    this(out, diff, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out       for writing the result XML
+   * @param diff      differ to use for comparing fragments
+   * @param executor  executor for diffing fragments in parallel (null to diff inline)
+   */
+  public SinglePassDiffHandler(Writer out, PSMLDiffer diff, @Nullable Executor executor) {
+    this.out = new SplicingWriter(out);
+    this.differ = diff;
+    this.executor = executor;
+  }
+
+  /**
+   * @return the number of {@code <compare>} fragments found so far.
+   */
+  public int getCompareCount() {
+    return this.diffs.size();
+  }
+
+  /**
+   * @return the number of {@code <diff>} elements written.
+   */
+  public int getDiffCount() {
+    return this.diffCount.get();
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+    if ("document".equals(qName) && !"portable".equals(atts.getValue("level"))) {
+      throw new SAXException("Diff is only supported for PSML with level=\"portable\"");
+    }
+
+    if (isFragment(qName) && this.recorder == null) {
+      String id = atts.getValue("id");
+      if ("content".equals(this.elements.peek())) {
+        this.compareId = id;
+        this.recorder = this.differ.newRecorder();
+      } else if (id != null && this.diffs.containsKey(id)) {
+        this.current = this.diffs.get(id);
+        this.recorder = this.differ.newRecorder();
+      }
+    }
+    if (this.recorder != null) {
+      this.recorder.startElement(qName, atts);
+      this.depth++;
+    }
+
+    // Write the start tag
+    StringBuilder tag = new StringBuilder();
+    tag.append('<').append(qName);
+    for (int i = 0; i < atts.getLength(); i++) {
+      tag.append(' ').append(atts.getQName(i)).append("=\"").append(XMLStrings.nullableAttribute(atts.getValue(i))).append('"');
+    }
+    tag.append('>');
+    write(tag);
+    this.elements.push(qName);
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    this.elements.pop();
+    write("</"+qName+">");
+    if (this.recorder != null) {
+      this.recorder.endElement();
+      if (--this.depth == 0) {
+        Sequence sequence = this.recorder.getSequence();
+        if (this.current != null) {
+          startDiff(this.current, sequence);
+        } else {
+          this.compare = new FragmentDiff(sequence);
+          this.compares.add(this.compare);
+          if (this.compareId != null) this.diffs.put(this.compareId, this.compare);
+        }
+        this.current = null;
+        this.compareId = null;
+        this.recorder = null;
+      }
+    }
+    // the diff goes after the content element
+    if ("content".equals(qName) && this.compare != null) {
+      try {
+        this.out.splice(this.compare.result);
+      } catch (IOException ex) {
+        throw new SAXException("Failed to write <diff> element: "+ex.getMessage(), ex);
+      }
+      this.compare = null;
+    }
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) throws SAXException {
+    if (this.recorder != null) this.recorder.characters(ch, start, length);
+    write(XMLStrings.text(ch, start, length));
+  }
+
+  @Override
+  public void endDocument() throws SAXException {
+    for (FragmentDiff fragment : this.compares) {
+      CompletableFuture<String> diff = fragment.diff;
+      if (diff != null) {
+        // pass on failures so that they are thrown when the output is written
+        diff.whenComplete((xml, ex) -> {
+          if (ex != null) fragment.result.completeExceptionally(ex);
+          else fragment.result.complete(xml);
+        });
+      } else {
+        LOGGER.debug("No current fragment to diff with");
+        fragment.result.complete("");
+      }
+    }
+    try {
+      this.out.finish();
+    } catch (IOException ex) {
+      throw new SAXException("Failed to write <diff> element: "+ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Diff the current fragment with the compare fragment inline or using the executor.
+   */
+  private void startDiff(FragmentDiff fragment, Sequence current) {
+    // if the ID is repeated, the last current fragment is used
+    if (this.executor != null) {
+      fragment.diff = CompletableFuture.supplyAsync(() -> toDiffElement(current, fragment.compare), this.executor);
+    } else {
+      fragment.diff = CompletableFuture.completedFuture(toDiffElement(current, fragment.compare));
+    }
+  }
+
+  /**
+   * Diff the fragments.
+   *
+   * @return the {@code <diff>} element or an empty string if the diff failed
+   */
+  private String toDiffElement(Sequence current, Sequence compare) {
+    try {
+      StringWriter diff = new StringWriter();
+      this.differ.diffWithReport(current, compare, diff);
+      String diffx = diff.toString();
+      // remove XML declaration
+      if (diffx.startsWith("<?")) {
+        diffx = diffx.substring(diffx.indexOf('>')+1);
+      }
+      this.diffCount.incrementAndGet();
+      return "\n<diff>"+diffx+"</diff>\n";
+    } catch (org.pageseeder.diffx.DiffException ex) {
+      LOGGER.error("Failed to diff content: {}", ex.getMessage());
+      return "";
+    }
+  }
+
+  /**
+   * Write to the output, it is buffered while diffs are pending.
+   */
+  private void write(CharSequence xml) throws SAXException {
+    try {
+      this.out.write(xml.toString());
+    } catch (IOException ex) {
+      throw new SAXException("Failed to write XML", ex);
+    }
+  }
+
+  /**
+   * Checks if element is a PSML fragment.
+   *
+   * @param qName  the element name
+   *
+   * @return <code>true</code> if element is a PSML fragment.
+   */
+  private boolean isFragment(String qName) {
+    return "fragment".equals(qName) ||
+      "media-fragment".equals(qName) ||
+      "xref-fragment".equals(qName) ||
+      "properties-fragment".equals(qName);
+  }
+
+  /**
+   * The sequences to diff for a compare fragment.
+   */
+  private static final class FragmentDiff {
+
+    /** The compare fragment */
+    private final Sequence compare;
+
+    /** The {@code <diff>} element spliced into the output, completed at the end of the document */
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+
+    /** The diff with the last current fragment found */
+    private @Nullable CompletableFuture<String> diff = null;
+
+    private FragmentDiff(Sequence compare) {
+      this.compare = compare;
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.diff;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A writer which lets content computed later be spliced into the output in document order.
+ *
+ * <p>Text is written straight through until a part is spliced in, it is then buffered until
+ * all the parts before it are completed.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class SplicingWriter extends Writer {
+
+  /**
+   * Where the output goes.
+   */
+  private final Writer out;
+
+  /**
+   * Buffered text and parts waiting to be completed in document order.
+   */
+  private final Deque<Object> parts = new ArrayDeque<>();
+
+  /**
+   * Text written after the last part spliced in.
+   */
+  private final StringBuilder tail = new StringBuilder();
+
+  /**
+   * @param out Where the output goes
+   */
+  SplicingWriter(Writer out) {
+    this.out = out;
+  }
+
+  /**
+   * Splice a part at the current position in the output.
+   *
+   * <p>The part must complete with the text to write or exceptionally with an
+   * {@link UncheckedIOException}.
+   *
+   * @param part the text to write when completed
+   *
+   * @throws IOException If thrown while writing the output ready to be written
+   */
+  void splice(CompletableFuture<String> part) throws IOException {
+    if (this.tail.length() > 0) {
+      this.parts.add(this.tail.toString());
+      this.tail.setLength(0);
+    }
+    this.parts.add(part);
+    drain();
+  }
+
+  /**
+   * Wait for all the parts to complete and write them to the output.
+   *
+   * @throws IOException If thrown while writing the output or computing a part
+   */
+  void finish() throws IOException {
+    while (!this.parts.isEmpty()) {
+      writePart(this.parts.remove());
+    }
+    writeTail();
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    if (this.parts.isEmpty()) {
+      this.out.write(cbuf, off, len);
+    } else {
+      this.tail.append(cbuf, off, len);
+    }
+  }
+
+  @Override
+  public void write(String str) throws IOException {
+    if (this.parts.isEmpty()) {
+      this.out.write(str);
+    } else {
+      this.tail.append(str);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    drain();
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+    this.out.close();
+  }
+
+  /**
+   * Write the parts at the head of the queue which are already completed.
+   */
+  private void drain() throws IOException {
+    while (!this.parts.isEmpty()) {
+      Object head = this.parts.peek();
+      if (head instanceof CompletableFuture && !((CompletableFuture<?>) head).isDone()) return;
+      writePart(this.parts.remove());
+    }
+    writeTail();
+  }
+
+  private void writeTail() throws IOException {
+    if (this.tail.length() > 0) {
+      this.out.write(this.tail.toString());
+      this.tail.setLength(0);
+    }
+  }
+
+  private void writePart(Object part) throws IOException {
+    if (part instanceof String) {
+      this.out.write((String) part);
+      return;
+    }
+    CompletableFuture<?> future = (CompletableFuture<?>) part;
+    try {
+      this.out.write((String) future.get());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for diff");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+}
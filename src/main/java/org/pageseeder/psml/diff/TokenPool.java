@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.diffx.load.text.TextTokenizer;
+import org.pageseeder.diffx.token.TextToken;
+import org.pageseeder.psml.util.ConcurrentCache;
+
+/**
+ * A bounded pool of immutable text tokens so that identical tokens are only created once.
+ *
+ * <p>The same words and spaces occur over and over again in the fragments of a document and
+ * across documents. Sharing a pool between differs and threads avoids allocating a new token
+ * for each of them, which reduces the memory used by large sequences and the work of the
+ * garbage collector when many fragments are diffed.
+ *
+ * <p>The pool keeps the most recently used tokens up to its maximum size. Lexical tokens are
+ * pooled by original text and normalizer, so normalizers should be immutable and implement
+ * <code>equals</code> to be shared, like {@link LexicalNormalizer}. Other text tokens are
+ * pooled by class, characters and value.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class TokenPool {
+
+  /**
+   * Default maximum number of tokens in the shared pool.
+   */
+  public static final int DEFAULT_MAX_SIZE = 65536;
+
+  /**
+   * The pool shared by all differs unless another is specified.
+   */
+  private static final TokenPool SHARED = new TokenPool(DEFAULT_MAX_SIZE);
+
+  /**
+   * The pooled tokens.
+   */
+  private final ConcurrentCache<Key, TextToken> tokens;
+
+  /**
+   * Creates a new pool.
+   *
+   * @param maxSize The maximum number of tokens in the pool
+   *
+   * @throws IllegalArgumentException If the maximum size is less than 1
+   */
+  public TokenPool(int maxSize) {
+    this.tokens = new ConcurrentCache<>(maxSize);
+  }
+
+  /**
+   * @return the pool shared across the JVM.
+   */
+  public static TokenPool shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the lexical token for the specified text, creating it if not in the pool.
+   *
+   * @param text       The original text
+   * @param normalizer The normalizer for the text
+   *
+   * @return the pooled lexical token
+   */
+  public LexicalToken lexical(String text, TextNormalizer normalizer) {
+    return (LexicalToken) this.tokens.computeIfAbsent(new Key(normalizer, text, null),
+        key -> new LexicalToken(text, normalizer.normalize(text)));
+  }
+
+  /**
+   * Returns the pooled token equivalent to the specified token.
+   *
+   * @param token The token to intern
+   *
+   * @return the pooled token or the specified token if not pooled yet
+   */
+  public TextToken intern(TextToken token) {
+    return this.tokens.computeIfAbsent(new Key(token.getClass(), token.getCharacters(), token.getValue()), key -> token);
+  }
+
+  /**
+   * Returns a tokenizer returning the pooled tokens of the specified tokenizer.
+   *
+   * <p>The tokens must be immutable.
+   *
+   * @param tokenizer The tokenizer to wrap
+   *
+   * @return a tokenizer using this pool
+   */
+  public TextTokenizer wrap(TextTokenizer tokenizer) {
+    return text -> {
+      List<TextToken> tokens = tokenizer.tokenize(text);
+      List<TextToken> pooled = new ArrayList<>(tokens.size());
+      for (TextToken token : tokens) {
+        pooled.add(intern(token));
+      }
+      return pooled;
+    };
+  }
+
+  /**
+   * @return the number of tokens in the pool.
+   */
+  public int size() {
+    return this.tokens.size();
+  }
+
+  /**
+   * @return the maximum number of tokens in the pool.
+   */
+  public int maxSize() {
+    return this.tokens.maxSize();
+  }
+
+  /**
+   * @return the number of tokens found in the pool.
+   */
+  public long hitCount() {
+    return this.tokens.hitCount();
+  }
+
+  /**
+   * @return the number of tokens which had to be created.
+   */
+  public long missCount() {
+    return this.tokens.missCount();
+  }
+
+  /**
+   * @return the number of tokens removed because the pool was full.
+   */
+  public long evictionCount() {
+    return this.tokens.evictionCount();
+  }
+
+  /**
+   * @return the ratio of tokens found in the pool (1 if none was requested)
+   */
+  public double hitRate() {
+    return this.tokens.hitRate();
+  }
+
+  /**
+   * Remove all the tokens from the pool (statistics are not reset).
+   */
+  public void clear() {
+    this.tokens.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "TokenPool[size=" + size() + "/" + maxSize() + ", hits=" + hitCount() +
+        ", misses=" + missCount() + ", evictions=" + evictionCount() + "]";
+  }
+
+  /**
+   * The key of a pooled token.
+   */
+  private static final class Key {
+
+    /** The normalizer for lexical tokens or the class of other tokens */
+    private final Object kind;
+
+    /** The original text */
+    private final String text;
+
+    /** The value of other tokens */
+    private final @Nullable String value;
+
+    private final int hash;
+
+    private Key(Object kind, String text, @Nullable String value) {
+      this.kind = kind;
+      this.text = text;
+      this.value = value;
+      this.hash = 31 * (31 * kind.hashCode() + text.hashCode()) + Objects.hashCode(value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) return true;
+      if (!(obj instanceof Key)) return false;
+      Key other = (Key) obj;
+      return this.hash == other.hash
+          && this.text.equals(other.text)
+          && this.kind.equals(other.kind)
+          && Objects.equals(this.value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+  }
+
+}
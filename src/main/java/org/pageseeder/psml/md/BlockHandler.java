@@ -0,0 +1,80 @@
+/*
+ * Copyright 2025 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.psml.md;
+
+import java.io.IOException;
+
+import org.pageseeder.psml.model.PSMLElement;
+
+/**
+ * Receives the PSML elements produced when Markdown is parsed in streaming mode.
+ *
+ * <p>Elements are passed to the handler as soon as they are committed by the parser, so
+ * that the whole document never needs to be kept in memory.
+ *
+ * <p>Containers which are too large to be kept in memory, the wrapping document or fragment
+ * and the sections in document mode, are not passed as complete elements. Instead, the
+ * handler is notified when they start and end, and each committed child is passed in between.
+ * Elements passed to {@link #startElement(PSMLElement)} have their attributes but no children.
+ *
+ * <p>For example, a document is received as:
+ * <pre>
+ *   startElement(document)
+ *     element(documentinfo)
+ *     startElement(section)
+ *       element(fragment)
+ *       element(fragment)
+ *     endElement(section)
+ *   endElement(document)
+ * </pre>
+ *
+ * @see MarkdownParser#parse(java.io.Reader, BlockHandler)
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public interface BlockHandler {
+
+  /**
+   * Receives the start of a container element.
+   *
+   * @param element The container with its attributes but without children
+   *
+   * @throws IOException If thrown while handling the element
+   */
+  void startElement(PSMLElement element) throws IOException;
+
+  /**
+   * Receives a complete element.
+   *
+   * @param element The element, including all its descendants
+   *
+   * @throws IOException If thrown while handling the element
+   */
+  void element(PSMLElement element) throws IOException;
+
+  /**
+   * Receives the end of a container element.
+   *
+   * @param element The same element as passed to the matching start
+   *
+   * @throws IOException If thrown while handling the element
+   */
+  void endElement(PSMLElement element) throws IOException;
+
+}
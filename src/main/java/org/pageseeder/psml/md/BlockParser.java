@@ -15,6 +15,10 @@
  */
 package org.pageseeder.psml.md;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -45,7 +49,7 @@ import org.pageseeder.psml.util.NilDiagnosticCollector;
  *
  * @author Christophe Lauret
  *
- * @version 1.8.5
+ * @version 1.9.0
  * @since 1.0
  */
 @SuppressWarnings("java:S1192")
@@ -104,6 +108,35 @@ public class BlockParser {
     return parse(lines, this.options, collector);
   }
 
+  /**
+   * Read the lines one at a time and pass the PSML elements to the handler as soon as they
+   * are committed.
+   *
+   * <p>Only the current line and the next one are held in memory, the parser keeps the elements
+   * which are not committed yet, typically the current block.
+   *
+   * @param reader    The reader providing the Markdown (not closed by this method)
+   * @param collector Capture warnings and errors
+   * @param handler   Receives the elements as they are committed
+   *
+   * @throws IOException If thrown by the reader or the handler
+   */
+  public void parse(Reader reader, DiagnosticCollector collector, BlockHandler handler) throws IOException {
+    BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    State state = new State(collector, handler);
+    try {
+      String line = lines.readLine();
+      while (line != null) {
+        String next = lines.readLine();
+        processLine(line, next, state, this.options);
+        line = next;
+      }
+      state.commitAll();
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
   /**
    * Retrieves the current Markdown input options used for parsing.
    *
@@ -170,7 +203,7 @@ public class BlockParser {
     state.line++;
 
     // Lines made entirely of '=' or '-' are used for heading 1 and 2
-    if (line.matches("\\s?(==+|--+)\\s*")) {
+    if (LineClassifier.isSetextUnderline(line)) {
       // DO nothing, we've already handled it
 
       // Ensure that metadata is committed before we start with content
@@ -180,7 +213,7 @@ public class BlockParser {
     }
 
     // Separators
-    else if (line.matches("\\s*\\*\\s?\\*\\s?\\*[\\s*]*")) {
+    else if (LineClassifier.isSeparator(line)) {
       if (options.isDocument()) {
         state.ensureFragment();
         state.newFragment();
@@ -188,12 +221,12 @@ public class BlockParser {
     }
 
     // Empty lines are used to separate the different kinds of blocks, except inside fenced (```) code
-    else if (line.matches("\\s*") && !state.isCodeFenced()) {
+    else if (LineClassifier.isBlank(line) && !state.isCodeFenced()) {
       state.commitUpToBlockOrFragment();
     }
 
     // New list items starting with '+', '-', '*' or number followed by a '.'
-    else if (line.matches("\\s*(-|\\+|\\*|\\d+\\.)\\s.+")) {
+    else if (LineClassifier.isListItem(line)) {
       processListItem(line, state, options);
     }
 
@@ -208,7 +241,7 @@ public class BlockParser {
     }
 
     // Lines starting with four spaces: preformatted code
-    else if (line.matches("\\s{4}.*") && !state.isCodeFenced()) {
+    else if (LineClassifier.isIndented(line) && !state.isCodeFenced()) {
       if (options.isDocument()) {
         state.ensureFragment();
       }
@@ -231,7 +264,7 @@ public class BlockParser {
     }
 
     // Lines starting with '>': quoted content
-    else if (line.matches("\\s*+>++\\s*+.*") && !state.isElement(Name.PREFORMAT)) {
+    else if (LineClassifier.isQuote(line) && !state.isElement(Name.PREFORMAT)) {
       processQuotedContent(line, state, options);
     }
 
@@ -241,7 +274,7 @@ public class BlockParser {
     }
 
     // Metadata (document mode only, and only before any content has been committed)
-    else if (options.isDocument() && !state.isContentStarted() && line.matches("^[^:]+:\\s.*")) {
+    else if (options.isDocument() && !state.isContentStarted() && LineClassifier.isProperty(line)) {
       processMetadataProperty(line, state, options);
     }
 
@@ -332,7 +365,7 @@ public class BlockParser {
   private static PSMLElement resolveSetextElement(@Nullable String next, State state, MarkdownInputOptions options) {
     if (next == null) return new PSMLElement(Name.PARA);
 
-    if (next.matches("\\s*==+\\s*")) {
+    if (LineClassifier.isSetextHeading1(next)) {
       // We use the '====' as a marker for a new section
       if (options.isDocument() && !state.isEmpty()) {
         state.newSection();
@@ -342,7 +375,7 @@ public class BlockParser {
       return element;
     }
 
-    if (next.matches("\\s*--+\\s*")) {
+    if (LineClassifier.isSetextHeading2(next)) {
       // We use the '---' as a marker for a new fragment
       if (options.isDocument() && !state.isEmpty()) {
         state.newFragment();
@@ -380,7 +413,7 @@ public class BlockParser {
         state.commitUpToBlockOrFragment();
         // And create a new list
         PSMLElement list;
-        if (no.matches("\\d+\\.")) {
+        if (no.endsWith(".")) {
           list = new PSMLElement(Name.NLIST);
           String initial = no.substring(0, no.length()-1);
           if (!"1".equals(initial)) {
@@ -411,7 +444,7 @@ public class BlockParser {
       if (last instanceof PSMLElement) {
         PSMLElement lastElement = (PSMLElement) last;
         if (lastElement.isElement(Name.PARA)) {
-          if (text.matches("\\s*")) {
+          if (LineClassifier.isBlank(text)) {
             current.addNode(new PSMLElement(Name.PARA));
           } else {
             lastElement.addText((lastElement.getText().isEmpty() ? "" : " ")+text);
@@ -439,7 +472,7 @@ public class BlockParser {
     String[] columns = line.trim().substring(1).split("\\|");
     boolean inTable = state.isDescendantOf(Name.TABLE);
     boolean isHeaderRow = false;
-    if (!inTable && next != null && next.startsWith("|") && next.trim().matches("^\\|([\\s:-]+\\|){"+columns.length+"}")) {
+    if (!inTable && next != null && next.startsWith("|") && LineClassifier.isTableDelimiter(next.trim(), columns.length)) {
       state.commitUpToBlockOrFragment();
       PSMLElement table = new PSMLElement(Name.TABLE);
       String[] cols = next.trim().substring(1).split("\\|");
@@ -455,14 +488,14 @@ public class BlockParser {
     }
 
     if (inTable) {
-      if (!line.trim().matches("^\\|([\\s:-]+\\|){"+columns.length+"}")) {
+      if (!LineClassifier.isTableDelimiter(line.trim(), columns.length)) {
         PSMLElement row = new PSMLElement(Name.ROW);
         if (isHeaderRow) row.setAttribute("part", "header");
         state.push(row);
 
         for (String col : columns) {
           String text = col.trim();
-          if (isHeaderRow && text.matches("^\\*\\*(.*)\\*\\*$")) {
+          if (isHeaderRow && LineClassifier.isStrong(text)) {
             text = text.substring(2, text.length() - 2);
           }
           state.push(Name.CELL, text);
@@ -617,6 +650,21 @@ public class BlockParser {
 
     private final DiagnosticCollector collector;
 
+    /**
+     * Receives the committed elements instead of the list when streaming.
+     */
+    private final @Nullable BlockHandler handler;
+
+    /**
+     * The section started on the handler, its committed children are not kept.
+     */
+    private @Nullable PSMLElement streamedSection = null;
+
+    /**
+     * Whether children of the streamed section were passed to the handler.
+     */
+    private boolean sectionStreamed = false;
+
     /**
      * List of elements that have been committed.
      */
@@ -675,11 +723,24 @@ public class BlockParser {
     private int fencedLabel = 0;
 
     public State() {
-      this.collector = new NilDiagnosticCollector();
+      this(new NilDiagnosticCollector());
     }
 
     public State(DiagnosticCollector collector) {
+      this(collector, null);
+    }
+
+    /**
+     * Create a new state passing the elements to the handler as soon as they are committed.
+     *
+     * <p>Any {@link IOException} thrown by the handler is rethrown as an {@link UncheckedIOException}.
+     *
+     * @param collector Capture warnings and errors
+     * @param handler   Receives the committed elements, if <code>null</code> they are kept by this state
+     */
+    public State(DiagnosticCollector collector, @Nullable BlockHandler handler) {
       this.collector = collector;
+      this.handler = handler;
     }
 
     public void warn(String message) {
@@ -725,6 +786,7 @@ public class BlockParser {
 
     public boolean isEmpty() {
       PSMLElement element = current();
+      if (element != null && element == this.streamedSection) return !this.sectionStreamed && element.isEmpty();
       return element == null || element.isEmpty();
     }
 
@@ -838,6 +900,11 @@ public class BlockParser {
      * @param element The element to push
      */
     public void push(PSMLElement element) {
+      if (this.handler != null && this.context.isEmpty() && element.isElement(Name.SECTION)) {
+        handle(() -> this.handler.startElement(element));
+        this.streamedSection = element;
+        this.sectionStreamed = false;
+      }
       this.context.add(element);
       this.text = null;
     }
@@ -870,13 +937,7 @@ public class BlockParser {
       commitText();
       int size = this.context.size();
       while (size > 0) {
-        PSMLElement current = this.context.remove(size-1);
-        if (size > 1) {
-          PSMLElement parent = this.context.get(size-2);
-          parent.addNode(current);
-        } else {
-          this.elements.add(current);
-        }
+        attach(this.context.remove(size-1));
         size = this.context.size();
       }
     }
@@ -899,13 +960,7 @@ public class BlockParser {
         if (isElement(name)) {
           break;
         }
-        PSMLElement current = this.context.remove(size-1);
-        if (size > 1) {
-          PSMLElement parent = this.context.get(size-2);
-          parent.addNode(current);
-        } else {
-          this.elements.add(current);
-        }
+        attach(this.context.remove(size-1));
         size = this.context.size();
       }
     }
@@ -918,13 +973,7 @@ public class BlockParser {
       commitText();
       int size = this.context.size();
       if (size > 0) {
-        PSMLElement current = this.context.remove(size-1);
-        if (size > 1) {
-          PSMLElement parent = this.context.get(size-2);
-          parent.addNode(current);
-        } else {
-          this.elements.add(current);
-        }
+        attach(this.context.remove(size-1));
       }
     }
 
@@ -953,6 +1002,42 @@ public class BlockParser {
       this.text = new StringBuilder();
     }
 
+    /**
+     * Attach an element removed from the context to its parent, or pass it to the handler
+     * if it is at the top level or in the streamed section.
+     */
+    private void attach(PSMLElement element) {
+      PSMLElement parent = current();
+      if (this.handler == null) {
+        if (parent != null) parent.addNode(element);
+        else this.elements.add(element);
+      } else if (parent == null && element == this.streamedSection) {
+        this.streamedSection = null;
+        handle(() -> this.handler.endElement(element));
+      } else if (parent == null || parent == this.streamedSection) {
+        if (parent != null) this.sectionStreamed = true;
+        handle(() -> this.handler.element(element));
+      } else {
+        parent.addNode(element);
+      }
+    }
+
+    private static void handle(HandlerCall call) {
+      try {
+        call.run();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+  }
+
+  /**
+   * A call to the handler which may throw an I/O exception.
+   */
+  @FunctionalInterface
+  private interface HandlerCall {
+    void run() throws IOException;
   }
 
 }
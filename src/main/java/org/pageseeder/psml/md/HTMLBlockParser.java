@@ -32,7 +32,7 @@ import org.pageseeder.psml.html.HTMLNode;
  *
  * @author Christophe Lauret
  *
- * @version 1.7.4
+ * @version 1.9.0
  * @since 1.0
  */
 public class HTMLBlockParser {
@@ -124,12 +124,12 @@ public class HTMLBlockParser {
    */
   public static void processLine(String line, @Nullable String next, State state, MarkdownInputOptions options) {
     // Lines made entirely of '=' or '-' are used for heading 1 and 2
-    if (line.matches("\\s?(==+|--+)\\s*")) {
+    if (LineClassifier.isSetextUnderline(line)) {
       // DO nothing, we've already handled it
     }
 
     // Separators
-    else if (line.matches("\\s*\\*\\s?\\*\\s?\\*[\\s\\*]*")) {
+    else if (LineClassifier.isSeparator(line)) {
       if (options.isDocument()) {
         state.ensureFragment();
         state.newFragment();
@@ -137,12 +137,12 @@ public class HTMLBlockParser {
     }
 
     // Empty lines are used to separate the different kinds of blocks, except inside fenced (```) code
-    else if (line.matches("\\s*") && !state.isFenced()) {
+    else if (LineClassifier.isBlank(line) && !state.isFenced()) {
       state.commitUpto(Name.SECTION);
     }
 
     // New list items starting with '+', '-', '*' or number followed by a '.'
-    else if (line.matches("\\s*(-|\\+|\\*|\\d+\\.)\\s.+")) {
+    else if (LineClassifier.isListItem(line)) {
       processListItem(line, state, options);
     }
 
@@ -157,7 +157,7 @@ public class HTMLBlockParser {
     }
 
     // Lines starting with four spaces: preformatted code
-    else if (line.matches("\\s{4}.*") && !state.isFenced()) {
+    else if (LineClassifier.isIndented(line) && !state.isFenced()) {
       if (options.isDocument()) {
         state.ensureFragment();
       }
@@ -180,7 +180,7 @@ public class HTMLBlockParser {
     }
 
     // Lines starting with '>': quoted content
-    else if (line.matches("\\s*+>++\\s*+.*") && !state.isElement(Name.PRE)) {
+    else if (LineClassifier.isQuote(line) && !state.isElement(Name.PRE)) {
       processQuoteBlock(line, state, options);
     }
 
@@ -190,7 +190,7 @@ public class HTMLBlockParser {
     }
 
     // Metadata (document mode only)
-    else if (options.isDocument() && !state.isDescendantOf(Name.SECTION) && line.matches("^\\w+:\\s.*")) {
+    else if (options.isDocument() && !state.isDescendantOf(Name.SECTION) && LineClassifier.isWordProperty(line)) {
       processMetadataDefinition(line, state, options);
     }
 
@@ -225,7 +225,7 @@ public class HTMLBlockParser {
           // Assume paragraph, but check whether we have a heading using SetExt style
           HTMLElement element = new HTMLElement(Name.P);
           if (next != null) {
-            if (next.matches("\\s*==+\\s*")) {
+            if (LineClassifier.isSetextHeading1(next)) {
               // We use the '====' as a marker for a new section
               if (options.isDocument() && !state.current().isEmpty()) {
                 state.newSection();
@@ -240,7 +240,7 @@ public class HTMLBlockParser {
                 }
               }
 
-            } else if (next.matches("\\s*--+\\s*")) {
+            } else if (LineClassifier.isSetextHeading2(next)) {
               // We use the '----' as a marker for a new fragment
               if (options.isDocument() && !state.current().isEmpty()) {
                 state.newFragment();
@@ -307,7 +307,7 @@ public class HTMLBlockParser {
         state.commitUpto(Name.SECTION);
         // An create a new list
         HTMLElement list;
-        if (no.matches("\\d+\\.")) {
+        if (no.endsWith(".")) {
           list = new HTMLElement(Name.OL);
           String initial = no.substring(0, no.length()-1);
           if (!"1".equals(initial)) {
@@ -380,7 +380,7 @@ public class HTMLBlockParser {
       if (last instanceof HTMLElement) {
         HTMLElement lastElement = (HTMLElement) last;
         if (lastElement.isElement(Name.P)) {
-          if (text.matches("\\s*")) {
+          if (LineClassifier.isBlank(text)) {
             current.addNode(new HTMLElement(Name.P));
           } else {
             lastElement.addText((lastElement.getText().isEmpty() ? "" : " ")+text);
@@ -417,7 +417,7 @@ public class HTMLBlockParser {
     String[] columns = line.substring(1).split("\\|");
     boolean inTable = state.isDescendantOf(Name.TABLE);
     boolean isHeaderRow = false;
-    if (!inTable && next != null && next.startsWith("|") && next.matches("^\\|([\\s:-]+\\|){"+columns.length+"}")) {
+    if (!inTable && next != null && next.startsWith("|") && LineClassifier.isTableDelimiter(next, columns.length)) {
       HTMLElement table = new HTMLElement(Name.TABLE);
       String[] cols = next.substring(1).split("\\|");
       for (String col : cols) {
@@ -432,13 +432,13 @@ public class HTMLBlockParser {
     }
 
     if (inTable) {
-      if (!line.matches("^\\|([\\s:-]+\\|){"+columns.length+"}")) {
+      if (!LineClassifier.isTableDelimiter(line, columns.length)) {
         HTMLElement row = new HTMLElement(Name.TR);
         state.push(row);
 
         for (String col : columns) {
           String text = col.trim();
-          if (isHeaderRow && text.matches("^\\*\\*(.*)\\*\\*$")) {
+          if (isHeaderRow && LineClassifier.isStrong(text)) {
             text = text.substring(2, text.length() - 2);
           }
           state.push(isHeaderRow ? Name.TH : Name.TD, text);
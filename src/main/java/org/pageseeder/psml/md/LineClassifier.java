@@ -0,0 +1,289 @@
+/*
+ * Copyright 2025 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.psml.md;
+
+/**
+ * Classifies the lines of Markdown for the block parsers.
+ *
+ * <p>Each method scans the line once without backtracking or allocating, and matches
+ * exactly the same lines as the regular expression given in its documentation, where
+ * <code>\s</code> is any of <code>[ \t\n\x0B\f\r]</code>, <code>\d</code> is
+ * <code>[0-9]</code> and <code>.</code> is any character except a line terminator.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class LineClassifier {
+
+  private LineClassifier() {
+  }
+
+  /**
+   * <pre>\s*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line is empty or only contains white space
+   */
+  static boolean isBlank(CharSequence line) {
+    return skipSpace(line, 0) == line.length();
+  }
+
+  /**
+   * <pre>\s?(==+|--+)\s*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line underlines a SetExt heading
+   */
+  static boolean isSetextUnderline(CharSequence line) {
+    int start = line.length() > 0 && isSpace(line.charAt(0)) ? 1 : 0;
+    return isRule(line, start, '=') || isRule(line, start, '-');
+  }
+
+  /**
+   * <pre>\s*==+\s*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line turns the previous line into a heading 1
+   */
+  static boolean isSetextHeading1(CharSequence line) {
+    return isRule(line, skipSpace(line, 0), '=');
+  }
+
+  /**
+   * <pre>\s*--+\s*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line turns the previous line into a heading 2
+   */
+  static boolean isSetextHeading2(CharSequence line) {
+    return isRule(line, skipSpace(line, 0), '-');
+  }
+
+  /**
+   * <pre>\s*\*\s?\*\s?\*[\s*]*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line is a separator made of asterisks
+   */
+  static boolean isSeparator(CharSequence line) {
+    int length = line.length();
+    int i = skipSpace(line, 0);
+    for (int star = 0; star < 3; star++) {
+      if (star > 0 && i < length && isSpace(line.charAt(i))) i++;
+      if (i >= length || line.charAt(i) != '*') return false;
+      i++;
+    }
+    for (; i < length; i++) {
+      char c = line.charAt(i);
+      if (c != '*' && !isSpace(c)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * <pre>\s*(-|\+|\*|\d+\.)\s.+</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line starts a list item
+   */
+  static boolean isListItem(CharSequence line) {
+    int length = line.length();
+    int i = skipSpace(line, 0);
+    if (i >= length) return false;
+    char c = line.charAt(i);
+    if (c == '-' || c == '+' || c == '*') {
+      i++;
+    } else {
+      int digits = skipDigits(line, i);
+      if (digits == i || digits >= length || line.charAt(digits) != '.') return false;
+      i = digits + 1;
+    }
+    return i + 1 < length && isSpace(line.charAt(i)) && isText(line, i + 1);
+  }
+
+  /**
+   * <pre>\s{4}.*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line is indented for preformatted code
+   */
+  static boolean isIndented(CharSequence line) {
+    if (line.length() < 4) return false;
+    for (int i = 0; i < 4; i++) {
+      if (!isSpace(line.charAt(i))) return false;
+    }
+    return isText(line, 4);
+  }
+
+  /**
+   * <pre>\s*+>++\s*+.*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line is quoted content
+   */
+  static boolean isQuote(CharSequence line) {
+    int length = line.length();
+    int i = skipSpace(line, 0);
+    if (i >= length || line.charAt(i) != '>') return false;
+    while (i < length && line.charAt(i) == '>') i++;
+    return isText(line, skipSpace(line, i));
+  }
+
+  /**
+   * <pre>[^:]+:\s.*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line is a metadata property
+   */
+  static boolean isProperty(CharSequence line) {
+    int length = line.length();
+    int colon = 0;
+    while (colon < length && line.charAt(colon) != ':') colon++;
+    return colon > 0 && isPropertyValue(line, colon);
+  }
+
+  /**
+   * <pre>\w+:\s.*</pre>
+   *
+   * @param line The line to check
+   *
+   * @return <code>true</code> if the line is a metadata property with a word as name
+   */
+  static boolean isWordProperty(CharSequence line) {
+    int length = line.length();
+    int colon = 0;
+    while (colon < length && isWord(line.charAt(colon))) colon++;
+    return colon > 0 && isPropertyValue(line, colon);
+  }
+
+  /**
+   * <pre>\|([\s:-]+\|){columns}</pre>
+   *
+   * @param line    The line to check
+   * @param columns The expected number of columns
+   *
+   * @return <code>true</code> if the line is the delimiter row of a table with the number of columns
+   */
+  static boolean isTableDelimiter(CharSequence line, int columns) {
+    int length = line.length();
+    if (length == 0 || line.charAt(0) != '|') return false;
+    int count = 0;
+    int cell = 0;
+    for (int i = 1; i < length; i++) {
+      char c = line.charAt(i);
+      if (c == '|') {
+        if (cell == 0) return false;
+        count++;
+        cell = 0;
+      } else if (c == ':' || c == '-' || isSpace(c)) {
+        cell++;
+      } else {
+        return false;
+      }
+    }
+    return cell == 0 && count == columns;
+  }
+
+  /**
+   * <pre>\*\*(.*)\*\*</pre>
+   *
+   * @param text The text to check
+   *
+   * @return <code>true</code> if the text is wrapped in double asterisks
+   */
+  static boolean isStrong(CharSequence text) {
+    int length = text.length();
+    return length >= 4
+        && text.charAt(0) == '*' && text.charAt(1) == '*'
+        && text.charAt(length - 2) == '*' && text.charAt(length - 1) == '*'
+        && isText(text, 0);
+  }
+
+  /**
+   * @return <code>true</code> if the character matches <code>\s</code>
+   */
+  static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  /**
+   * @return whether the line matches <code>(==+|--+)\s*</code> from the index
+   */
+  private static boolean isRule(CharSequence line, int start, char c) {
+    int length = line.length();
+    int i = start;
+    while (i < length && line.charAt(i) == c) i++;
+    return i - start >= 2 && skipSpace(line, i) == length;
+  }
+
+  /**
+   * @return whether the line matches <code>:\s.*</code> from the colon
+   */
+  private static boolean isPropertyValue(CharSequence line, int colon) {
+    return colon + 1 < line.length()
+        && line.charAt(colon) == ':'
+        && isSpace(line.charAt(colon + 1))
+        && isText(line, colon + 2);
+  }
+
+  /**
+   * @return whether the line matches <code>.*</code> from the index
+   */
+  private static boolean isText(CharSequence line, int start) {
+    for (int i = start; i < line.length(); i++) {
+      if (isLineTerminator(line.charAt(i))) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return the index of the first character which is not white space from the index
+   */
+  private static int skipSpace(CharSequence line, int start) {
+    int i = start;
+    while (i < line.length() && isSpace(line.charAt(i))) i++;
+    return i;
+  }
+
+  /**
+   * @return the index of the first character which is not a digit from the index
+   */
+  private static int skipDigits(CharSequence line, int start) {
+    int i = start;
+    while (i < line.length() && line.charAt(i) >= '0' && line.charAt(i) <= '9') i++;
+    return i;
+  }
+
+  private static boolean isWord(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+}
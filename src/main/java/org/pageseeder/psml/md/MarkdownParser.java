@@ -19,21 +19,24 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.jspecify.annotations.Nullable;
 import org.pageseeder.psml.html.HTMLElement;
 import org.pageseeder.psml.model.PSMLElement;
 import org.pageseeder.psml.model.PSMLElement.Name;
 import org.pageseeder.psml.spi.Parser;
 import org.pageseeder.psml.util.DiagnosticCollector;
 import org.pageseeder.psml.util.NilDiagnosticCollector;
+import org.pageseeder.xmlwriter.XMLWriter;
 
 /**
  * A parser for Markdown
  *
  * @author Christophe Lauret
  *
- * @version 1.6.1
+ * @version 1.9.0
  * @since 1.0
  */
 public class MarkdownParser extends Parser {
@@ -106,18 +109,77 @@ public class MarkdownParser extends Parser {
     List<PSMLElement> elements = parser.parse(lines, collector);
 
     // Wrap the element based on the configuration
-    PSMLElement wrapper;
-    if (this.config.isFragment()) {
-      wrapper = new PSMLElement(Name.FRAGMENT);
-    } else {
-      wrapper = new PSMLElement(Name.DOCUMENT);
-      wrapper.setAttribute("level", "portable");
-    }
+    PSMLElement wrapper = newWrapper();
     wrapper.addNodes(elements);
 
     return wrapper;
   }
 
+  /**
+   * Parses the content provided by a Reader and passes the PSML elements to the handler as
+   * soon as they are committed.
+   *
+   * <p>The lines are read lazily, so that neither the Markdown nor the PSML needs to be held
+   * in memory entirely. The handler receives the start and end of the wrapping document
+   * or fragment and the elements in between, see {@link BlockHandler}.
+   *
+   * <p>Unlike {@link #parse(Reader)}, the reader is not closed by this method, it remains the
+   * responsibility of the caller.
+   *
+   * @param reader  The reader providing the content to be parsed (not closed by this method).
+   * @param handler The handler receiving the elements.
+   * @throws IOException If an error occurs while reading or thrown by the handler.
+   */
+  public void parse(Reader reader, BlockHandler handler) throws IOException {
+    parse(reader, new NilDiagnosticCollector(), handler);
+  }
+
+  /**
+   * Parses the content provided by a Reader and passes the PSML elements to the handler as
+   * soon as they are committed.
+   *
+   * @param reader    The reader providing the content to be parsed (not closed by this method).
+   * @param collector The DiagnosticCollector for collecting parsing diagnostics or errors.
+   * @param handler   The handler receiving the elements.
+   * @throws IOException If an error occurs while reading or thrown by the handler.
+   */
+  public void parse(Reader reader, DiagnosticCollector collector, BlockHandler handler) throws IOException {
+    PSMLElement wrapper = newWrapper();
+    handler.startElement(wrapper);
+    BlockParser parser = new BlockParser(this.config.toMarkdownInputOptions());
+    parser.parse(reader, collector, handler);
+    handler.endElement(wrapper);
+  }
+
+  /**
+   * Parses the content provided by a Reader and writes the PSML to the XML writer as the
+   * elements are committed.
+   *
+   * <p>The output is the same as writing the element returned by {@link #parse(Reader)}, but
+   * the reader is not closed by this method.
+   *
+   * @param reader The reader providing the content to be parsed (not closed by this method).
+   * @param xml    The XML writer receiving the PSML.
+   * @throws IOException If an error occurs while reading or writing.
+   */
+  public void parse(Reader reader, XMLWriter xml) throws IOException {
+    parse(reader, new NilDiagnosticCollector(), xml);
+  }
+
+  /**
+   * Parses the content provided by a Reader and writes the PSML to the XML writer as the
+   * elements are committed.
+   *
+   * @param reader    The reader providing the content to be parsed (not closed by this method).
+   * @param collector The DiagnosticCollector for collecting parsing diagnostics or errors.
+   * @param xml       The XML writer receiving the PSML.
+   * @throws IOException If an error occurs while reading or writing.
+   */
+  public void parse(Reader reader, DiagnosticCollector collector, XMLWriter xml) throws IOException {
+    parse(reader, collector, new XMLBlockHandler(xml));
+    xml.flush();
+  }
+
   /**
    * Parses the contents provided by a reader into an HTML representation.
    * The method processes the input to produce a structured hierarchy of HTML elements.
@@ -144,6 +206,18 @@ public class MarkdownParser extends Parser {
     return wrapper;
   }
 
+  /**
+   * @return a new document or fragment to wrap the elements based on the configuration.
+   */
+  private PSMLElement newWrapper() {
+    if (this.config.isFragment()) {
+      return new PSMLElement(Name.FRAGMENT);
+    }
+    PSMLElement wrapper = new PSMLElement(Name.DOCUMENT);
+    wrapper.setAttribute("level", "portable");
+    return wrapper;
+  }
+
   /**
    * Converts the content read from a Reader into a list of lines.
    * Each line corresponds to a single line of text read from the input source.
@@ -158,4 +232,56 @@ public class MarkdownParser extends Parser {
     }
   }
 
+  /**
+   * Writes the elements to an XML writer as they are received.
+   *
+   * <p>The start tag of a container is only written once it has children so that empty
+   * containers are written the same way as in the complete PSML.
+   */
+  private static final class XMLBlockHandler implements BlockHandler {
+
+    private final XMLWriter xml;
+
+    /**
+     * The container started but not written yet.
+     */
+    private @Nullable PSMLElement pending = null;
+
+    XMLBlockHandler(XMLWriter xml) {
+      this.xml = xml;
+    }
+
+    @Override
+    public void startElement(PSMLElement element) throws IOException {
+      writePending();
+      this.pending = element;
+    }
+
+    @Override
+    public void element(PSMLElement element) throws IOException {
+      writePending();
+      element.toXML(this.xml);
+    }
+
+    @Override
+    public void endElement(PSMLElement element) throws IOException {
+      if (this.pending == element) {
+        this.pending = null;
+        element.toXML(this.xml);
+      } else {
+        this.xml.closeElement();
+      }
+    }
+
+    private void writePending() throws IOException {
+      PSMLElement container = this.pending;
+      if (container == null) return;
+      this.xml.openElement(container.getElement().element(), true);
+      for (Map.Entry<String, String> attribute : container.getAttributes().entrySet()) {
+        this.xml.attribute(attribute.getKey(), attribute.getValue());
+      }
+      this.pending = null;
+    }
+  }
+
 }
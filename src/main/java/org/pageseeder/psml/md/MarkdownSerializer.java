@@ -16,6 +16,7 @@
 package org.pageseeder.psml.md;
 
 import org.jspecify.annotations.Nullable;
+import org.pageseeder.psml.model.Loader;
 import org.pageseeder.psml.model.PSMLElement;
 import org.pageseeder.psml.model.PSMLElement.Name;
 import org.pageseeder.psml.model.PSMLNode;
@@ -24,7 +25,14 @@ import org.pageseeder.psml.util.DiagnosticCollector;
 import org.pageseeder.psml.util.NilDiagnosticCollector;
 import org.pageseeder.psml.util.Subscripts;
 import org.pageseeder.psml.util.Superscripts;
-
+import org.pageseeder.psml.xml.XML;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -33,7 +41,7 @@ import java.util.*;
 /**
  * This class is responsible for serializing PSML content into Markdown format.
  *
- * @version 1.6.9
+ * @version 1.9.0
  * @since 1.0
  */
 @SuppressWarnings("java:S1192")
@@ -95,6 +103,67 @@ public class MarkdownSerializer {
     instance.serialize(element, out);
   }
 
+  /**
+   * Serializes the PSML read from the input source into Markdown format without loading
+   * the whole document.
+   *
+   * @param source the input source providing the PSML
+   * @param out the {@code Appendable} where the serialized Markdown output will be written
+   * @throws IOException if an I/O error occurs while reading the PSML or during serialization
+   *
+   * @see #newHandler(Appendable, DiagnosticCollector)
+   */
+  public void serialize(InputSource source, Appendable out) throws IOException {
+    serialize(source, out, new NilDiagnosticCollector());
+  }
+
+  /**
+   * Serializes the PSML read from the input source into Markdown format without loading
+   * the whole document.
+   *
+   * @param source the input source providing the PSML
+   * @param out the {@code Appendable} where the serialized Markdown output will be written
+   * @param collector the {@code DiagnosticCollector} used to collect diagnostic
+   *                  messages during the serialization process
+   * @throws IOException if an I/O error occurs while reading the PSML or during serialization
+   *
+   * @see #newHandler(Appendable, DiagnosticCollector)
+   */
+  public void serialize(InputSource source, Appendable out, DiagnosticCollector collector) throws IOException {
+    try {
+      SAXParserFactory factory = XML.newSAXParserFactory();
+      factory.setNamespaceAware(true);
+      factory.newSAXParser().parse(source, newHandler(out, collector));
+    } catch (SAXException ex) {
+      if (ex.getException() instanceof IOException) throw (IOException) ex.getException();
+      throw new IOException(ex);
+    } catch (ParserConfigurationException ex) {
+      throw new IOException(ex);
+    }
+  }
+
+  /**
+   * Returns a SAX handler which writes the Markdown as it receives the PSML.
+   *
+   * <p>The output is the same as serializing the element loaded by the {@link Loader}, but only
+   * the current block is kept in memory: the document, its sections and fragments are written
+   * as their content is received, lists are written one item at a time and tables are kept
+   * until complete since the width of their columns depends on all the rows.
+   *
+   * <p>The document information and metadata are written when the first section starts, so
+   * they are ignored if they come after a section.
+   *
+   * <p>Any {@link IOException} thrown by the {@code Appendable} is wrapped in a {@link SAXException}.
+   *
+   * @param out the {@code Appendable} where the serialized Markdown output will be written
+   * @param collector the {@code DiagnosticCollector} used to collect diagnostic
+   *                  messages during the serialization process
+   * @return a new handler for a single PSML document
+   */
+  public DefaultHandler newHandler(Appendable out, DiagnosticCollector collector) {
+    return new StreamHandler(new Instance(this.options, collector), out);
+  }
+
   /**
    * Normalizes the input text by collapsing consecutive whitespace characters into a single space.
    */
@@ -472,37 +541,42 @@ public class MarkdownSerializer {
       }
     }
 
-    @SuppressWarnings("java:S3776")
     private void serializeDocument(PSMLElement document, Appendable out) throws IOException {
-      // Include metadata as Yaml section at start of document
-      if (this.options.metadata()) {
-        String status = document.getAttribute("status");
-        PSMLElement documentInfo = document.getFirstChildElement(Name.DOCUMENTINFO);
-        PSMLElement metadata = document.getFirstChildElement(Name.METADATA);
-        // Check if documentinfo or metadata first
-        if (documentInfo != null || metadata != null) {
-          out.append("---\n");
-          if (documentInfo != null) {
-            serialize(documentInfo, out);
-          }
-          if (status != null) {
-            out.append("Status: ").append(status).append('\n');
-          }
-          if (metadata != null) {
-            serialize(metadata, out);
-          }
-          out.append("---\n");
-        }
-      }
+      serializeFrontMatter(document.getAttribute("status"), document.getFirstChildElement(Name.DOCUMENTINFO),
+          document.getFirstChildElement(Name.METADATA), out);
       // Iterate over the sections
       boolean firstSection = true;
       for (PSMLElement section : document.getChildElements(Name.SECTION)) {
         if (firstSection) firstSection = false;
-        else out.append("\n---\n");
+        else serializeSectionSeparator(out);
         processChildren(section, out);
       }
     }
 
+    /**
+     * Include metadata as Yaml section at start of document.
+     */
+    private void serializeFrontMatter(@Nullable String status, @Nullable PSMLElement documentInfo,
+                                      @Nullable PSMLElement metadata, Appendable out) throws IOException {
+      // Check if documentinfo or metadata first
+      if (!this.options.metadata() || (documentInfo == null && metadata == null)) return;
+      out.append("---\n");
+      if (documentInfo != null) {
+        serialize(documentInfo, out);
+      }
+      if (status != null) {
+        out.append("Status: ").append(status).append('\n');
+      }
+      if (metadata != null) {
+        serialize(metadata, out);
+      }
+      out.append("---\n");
+    }
+
+    private void serializeSectionSeparator(Appendable out) throws IOException {
+      out.append("\n---\n");
+    }
+
     private void serializeDocumentInfo(PSMLElement documentInfo, Appendable out) throws IOException {
       PSMLElement uri = documentInfo.getFirstChildElement(Name.URI);
       if (uri != null) {
@@ -620,18 +694,27 @@ public class MarkdownSerializer {
       int level = state.listLevel();
       out.append('\n');
       for (PSMLElement item : items) {
-        state.push(Name.ITEM);
-        for (int i = 0; i < level; i++) {
-          out.append("    ");
-        }
-        out.append("- ");
-        // TODO multiple paragraph, blocks
-        processChildren(item, out);
-        out.append('\n');
-        state.pop();
+        serializeItem(item, level, "- ", out);
       }
     }
 
+    /**
+     * @param item   The item of a list
+     * @param level  The level of the list
+     * @param marker The bullet or number of the item followed by a space
+     */
+    private void serializeItem(PSMLElement item, int level, String marker, Appendable out) throws IOException {
+      state.push(Name.ITEM);
+      for (int i = 0; i < level; i++) {
+        out.append("    ");
+      }
+      out.append(marker);
+      // TODO multiple paragraph, blocks
+      processChildren(item, out);
+      out.append('\n');
+      state.pop();
+    }
+
     private void serializeMediaFragment(PSMLElement fragment, Appendable out) throws IOException {
       out.append("\n```");
       String mediatype = fragment.getAttribute("mediatype");
@@ -655,14 +738,7 @@ public class MarkdownSerializer {
       out.append('\n');
       int start = nlist.getAttributeOrElse("start", 1);
       for (PSMLElement item : items) {
-        state.push(Name.ITEM);
-        for (int i = 0; i < level; i++) {
-          out.append("    ");
-        }
-        out.append(Integer.toString(start++)).append(". ");
-        processChildren(item, out);
-        out.append('\n');
-        state.pop();
+        serializeItem(item, level, (start++) + ". ", out);
       }
     }
 
@@ -946,5 +1022,243 @@ public class MarkdownSerializer {
 
   }
 
+  /**
+   * Writes the Markdown from SAX events using the same instance as for a loaded element.
+   *
+   * <p>Containers (document, sections, fragments and lists in fragments) are written as their
+   * children are received; any other element is loaded with its descendants and serialized
+   * as soon as it ends.
+   */
+  private static final class StreamHandler extends DefaultHandler {
+
+    private final Instance instance;
+
+    private final Appendable out;
+
+    /**
+     * The containers being written, the current one first.
+     */
+    private final Deque<Container> containers = new ArrayDeque<>();
+
+    /**
+     * Text directly within the current container.
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Loads the element being buffered if any.
+     */
+    private Loader.@Nullable Handler buffer = null;
+
+    /**
+     * Depth of the SAX events within the buffered element.
+     */
+    private int depth = 0;
+
+    /**
+     * The document information of the document kept for the front matter.
+     */
+    private @Nullable PSMLElement documentInfo = null;
+
+    /**
+     * The metadata of the document kept for the front matter.
+     */
+    private @Nullable PSMLElement metadata = null;
+
+    /**
+     * Whether the front matter of the document was already written.
+     */
+    private boolean frontMatter = false;
+
+    /**
+     * The number of sections in the document so far.
+     */
+    private int sections = 0;
+
+    StreamHandler(Instance instance, Appendable out) {
+      this.instance = instance;
+      this.out = out;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+      Loader.Handler loader = this.buffer;
+      if (loader != null) {
+        loader.startElement(uri, localName, qName, attributes);
+        this.depth++;
+        return;
+      }
+      try {
+        flushText();
+        Name name = Name.forElement(qName);
+        Container parent = this.containers.peek();
+        if (isContainer(name, parent)) {
+          PSMLElement element = new PSMLElement(name);
+          for (int i = 0; i < attributes.getLength(); i++) {
+            element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+          }
+          startContainer(element, parent);
+        } else {
+          loader = new Loader.Handler(false);
+          loader.startElement(uri, localName, qName, attributes);
+          this.buffer = loader;
+          this.depth = 1;
+        }
+      } catch (IOException ex) {
+        throw new SAXException(ex);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+      try {
+        Loader.Handler loader = this.buffer;
+        if (loader != null) {
+          loader.endElement(uri, localName, qName);
+          if (--this.depth == 0) {
+            this.buffer = null;
+            write(loader.getResult());
+          }
+          return;
+        }
+        flushText();
+        Container container = this.containers.pop();
+        if (container.element.isElement(Name.DOCUMENT)) {
+          // In case the document has no section
+          writeFrontMatter(container.element);
+        }
+        if (container.pushed) {
+          this.instance.state.pop();
+        }
+      } catch (IOException ex) {
+        throw new SAXException(ex);
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+      Loader.Handler loader = this.buffer;
+      if (loader != null) {
+        loader.characters(ch, start, length);
+      } else {
+        this.text.append(ch, start, length);
+      }
+    }
+
+    /**
+     * Indicates whether the element is written as its children are received.
+     */
+    private static boolean isContainer(Name name, @Nullable Container parent) {
+      if (parent == null) return name == Name.DOCUMENT || name == Name.SECTION || name == Name.FRAGMENT || name == Name.XREF_FRAGMENT;
+      switch (parent.element.getElement()) {
+        case DOCUMENT:
+          return name == Name.SECTION;
+        case SECTION:
+          return name == Name.FRAGMENT || name == Name.XREF_FRAGMENT;
+        case FRAGMENT:
+        case XREF_FRAGMENT:
+          return name == Name.LIST || name == Name.NLIST;
+        default:
+          return false;
+      }
+    }
+
+    private void startContainer(PSMLElement element, @Nullable Container parent) throws IOException {
+      // The sections of a document are processed without being pushed on the state
+      boolean isDocumentSection = element.isElement(Name.SECTION) && parent != null;
+      if (isDocumentSection) {
+        writeFrontMatter(parent.element);
+        if (this.sections++ > 0) this.instance.serializeSectionSeparator(this.out);
+      } else {
+        this.instance.state.push(element.getElement());
+      }
+      Container container = new Container(element, !isDocumentSection);
+      if (element.isAnyElement(Name.LIST, Name.NLIST)) {
+        container.level = this.instance.state.listLevel();
+        container.number = element.getAttributeOrElse("start", 1);
+        this.out.append('\n');
+      }
+      this.containers.push(container);
+    }
+
+    /**
+     * Write an element loaded with its descendants.
+     */
+    private void write(PSMLElement element) throws IOException {
+      Container parent = this.containers.peek();
+      if (parent == null) {
+        this.instance.serialize(element, this.out);
+      } else if (parent.element.isElement(Name.DOCUMENT)) {
+        // Only the document information and metadata are used outside sections
+        if (!this.frontMatter && element.isElement(Name.DOCUMENTINFO) && this.documentInfo == null) {
+          this.documentInfo = element;
+        } else if (!this.frontMatter && element.isElement(Name.METADATA) && this.metadata == null) {
+          this.metadata = element;
+        }
+      } else if (parent.element.isAnyElement(Name.LIST, Name.NLIST)) {
+        if (element.isElement(Name.ITEM)) {
+          writeItem(parent, element);
+        }
+      } else {
+        this.instance.serialize(element, this.out);
+      }
+    }
+
+    private void writeItem(Container list, PSMLElement item) throws IOException {
+      String marker = list.element.isElement(Name.NLIST) ? (list.number++) + ". " : "- ";
+      this.instance.serializeItem(item, list.level, marker, this.out);
+    }
+
+    private void writeFrontMatter(PSMLElement document) throws IOException {
+      if (this.frontMatter) return;
+      this.frontMatter = true;
+      this.instance.serializeFrontMatter(document.getAttribute("status"), this.documentInfo, this.metadata, this.out);
+      this.documentInfo = null;
+      this.metadata = null;
+    }
+
+    /**
+     * Only text directly in the sections of a document is written, other containers ignore it.
+     */
+    private void flushText() throws IOException {
+      if (this.text.length() == 0) return;
+      Container container = this.containers.peek();
+      if (container != null && !container.pushed && !isWhiteSpace(this.text)) {
+        this.out.append(normalizeText(this.text.toString()));
+      }
+      this.text.setLength(0);
+    }
+
+    private static boolean isWhiteSpace(CharSequence text) {
+      for (int i = 0; i < text.length(); i++) {
+        if (!Character.isWhitespace(text.charAt(i))) return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * An element written as its children are received.
+   */
+  private static final class Container {
+
+    /** The element with its attributes only */
+    private final PSMLElement element;
+
+    /** Whether the element was pushed on the state */
+    private final boolean pushed;
+
+    /** The level of a list */
+    private int level = 0;
+
+    /** The number of the next item of a numbered list */
+    private int number = 1;
+
+    Container(PSMLElement element, boolean pushed) {
+      this.element = element;
+      this.pushed = pushed;
+    }
+  }
+
 }
 
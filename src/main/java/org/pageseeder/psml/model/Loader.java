@@ -40,7 +40,7 @@ import org.xml.sax.helpers.DefaultHandler;
  *
  * @author Christophe Lauret
  *
- * @version 1.7.4
+ * @version 1.9.0
  * @since 1.0
  */
 public final class Loader {
@@ -188,6 +188,15 @@ public final class Loader {
       this.text.append(ch, start, length);
     }
 
+    /**
+     * @return the element loaded once the root element has ended.
+     *
+     * @since 1.9.0
+     */
+    public PSMLElement getResult() {
+      return this.result;
+    }
+
     /**
      * @return The current element in the stack.
      */
@@ -34,7 +34,7 @@ import org.pageseeder.xmlwriter.XMLWriter;
  *
  * @author Christophe Lauret
  *
- * @version 1.6.9
+ * @version 1.9.0
  * @since 1.0
  */
 @SuppressWarnings("java:S1192")
@@ -739,6 +739,18 @@ public class PSMLElement implements PSMLNode {
     }
   }
 
+  /**
+   * Returns the attributes of this element.
+   *
+   * @return an unmodifiable view of the attributes (never <code>null</code>)
+   *
+   * @since 1.9.0
+   */
+  public Map<String, String> getAttributes() {
+    if (this.attributes == null) return Collections.emptyMap();
+    return Collections.unmodifiableMap(this.attributes);
+  }
+
   /**
    * Sets the attribute value of the specified attribute.
    *
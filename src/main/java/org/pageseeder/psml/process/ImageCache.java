@@ -3,17 +3,11 @@
  */
 package org.pageseeder.psml.process;
 
-import org.jspecify.annotations.Nullable;
 import org.pageseeder.psml.process.config.Images.ImageSrc;
-import org.pageseeder.psml.process.util.XMLUtils;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ImageCache is responsible for managing and providing new paths for images
@@ -23,9 +17,19 @@ import java.util.Set;
  * based on specific source  rewriting strategies, and to construct folder paths
  * or unique filenames.
  *
+ * <p>This class is thread-safe so that a single cache can be shared by documents
+ * processed concurrently. New paths are computed under a lock so that unique
+ * filenames are never allocated twice.
+ *
+ * <p>The URI details of images are looked up in an {@link ImageMetadataIndex} when
+ * available, the metadata file is only parsed for images which are not indexed.
+ *
+ * <p>The filenames of the cached images are indexed so that building a unique
+ * filename takes constant time regardless of the number of images.
+ *
  * @author Jean-Baptiste Reure
  *
- * @version 1.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class ImageCache {
@@ -38,13 +42,52 @@ public final class ImageCache {
   /**
    * The cache.
    */
-  private final Map<String, String> cache = new HashMap<>();
+  private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+  /**
+   * Number of cached images by filename.
+   */
+  private final Map<String, Integer> filenames = new ConcurrentHashMap<>();
+
+  /**
+   * Number of cached images by filename prefix before each '-' (e.g. "a" and "a-b" for "a-b-c.png").
+   */
+  private final Map<String, Integer> prefixes = new ConcurrentHashMap<>();
+
+  /**
+   * Receives the timings of metadata lookups.
+   */
+  private final ProcessListener listener;
+
+  /**
+   * The index of image metadata files.
+   */
+  private final ImageMetadataIndex index;
 
   /**
    * @param metaInf The folder where the metadata files are located.
    */
   public ImageCache(File metaInf) {
+    this(metaInf, ProcessListener.NONE);
+  }
+
+  /**
+   * @param metaInf  The folder where the metadata files are located.
+   * @param listener Receives the timings of metadata lookups.
+   */
+  public ImageCache(File metaInf, ProcessListener listener) {
+    this(metaInf, listener, ImageMetadataIndex.empty());
+  }
+
+  /**
+   * @param metaInf  The folder where the metadata files are located.
+   * @param listener Receives the timings of metadata lookups.
+   * @param index    The index of the metadata files in the folder.
+   */
+  public ImageCache(File metaInf, ProcessListener listener, ImageMetadataIndex index) {
     this.metaInfFolder = metaInf;
+    this.listener = listener;
+    this.index = index;
   }
 
   /**
@@ -80,28 +123,49 @@ public final class ImageCache {
    * @throws ProcessException if loading the metadata file failed
    */
   public String getImageNewPath(String relativePath, ImageSrc src) throws ProcessException {
+    long start = System.nanoTime();
     String newpath = this.cache.get(relativePath);
-    if (newpath == null) {
-      // ok find the metadata file
-      File metadata = new File(this.metaInfFolder, relativePath+".psml");
-      if (!metadata.exists() || !metadata.isFile())
-        throw new ProcessException("Image metadata file not found "+relativePath);
-      // load path from the metadata file
-      MetadataFileHandler handler = new MetadataFileHandler();
-      XMLUtils.parse(metadata, handler);
-      if (src == ImageSrc.FILENAME) {
-        int lastSlash = relativePath.lastIndexOf('/');
-        String filename = lastSlash != -1 ? relativePath.substring(lastSlash + 1) : relativePath;
-        newpath = buildUniqueFilename(filename);
-        if (src == ImageSrc.FILENAMEENCODE) {
-          newpath = PSMLProcessHandler.URLEncodeFilepath(newpath);
-        }
-      } else if (src == ImageSrc.URIIDFOLDERS) {
-        newpath = buildURIIDFoldersPath(handler.getUriID()) + handler.getUriID() + '.' + handler.getUriExtension();
+    if (newpath != null) {
+      this.listener.imageMetadata(relativePath, true, System.nanoTime() - start);
+    } else {
+      String uriid;
+      String extension;
+      ImageMetadataIndex.Metadata indexed = this.index.get(relativePath);
+      if (indexed != null) {
+        uriid = indexed.getUriID();
+        extension = indexed.getExtension();
       } else {
-        newpath = handler.getUriID() + '.' + handler.getUriExtension();
+        // ok find the metadata file
+        File metadata = new File(this.metaInfFolder, relativePath+".psml");
+        if (!metadata.exists() || !metadata.isFile())
+          throw new ProcessException("Image metadata file not found "+relativePath);
+        // load path from the metadata file (outside the lock, it may be slow)
+        ImageMetadataIndex.MetadataFileHandler handler = ImageMetadataIndex.read(metadata);
+        uriid = handler.getUriID();
+        extension = handler.getUriExtension();
+      }
+      synchronized (this) {
+        // another thread may have computed it in the meantime
+        newpath = this.cache.get(relativePath);
+        if (newpath != null) {
+          this.listener.imageMetadata(relativePath, true, System.nanoTime() - start);
+          return newpath;
+        }
+        if (src == ImageSrc.FILENAME) {
+          int lastSlash = relativePath.lastIndexOf('/');
+          String filename = lastSlash != -1 ? relativePath.substring(lastSlash + 1) : relativePath;
+          newpath = buildUniqueFilename(filename);
+          if (src == ImageSrc.FILENAMEENCODE) {
+            newpath = PSMLProcessHandler.URLEncodeFilepath(newpath);
+          }
+        } else if (src == ImageSrc.URIIDFOLDERS) {
+          newpath = buildURIIDFoldersPath(uriid) + uriid + '.' + extension;
+        } else {
+          newpath = uriid + '.' + extension;
+        }
+        put(relativePath, newpath);
       }
-      this.cache.put(relativePath, newpath);
+      this.listener.imageMetadata(relativePath, false, System.nanoTime() - start);
     }
     return newpath;
   }
@@ -115,8 +179,10 @@ public final class ImageCache {
    *
    * @return the new path
    */
-  public String getImageNewPath(String relativePath, ImageSrc src, String uriid) {
+  public synchronized String getImageNewPath(String relativePath, ImageSrc src, String uriid) {
+    long start = System.nanoTime();
     String newpath = this.cache.get(relativePath);
+    boolean cached = newpath != null;
     if (newpath == null) {
       int lastDot = relativePath.lastIndexOf('.');
       String extension = lastDot != -1 ? relativePath.substring(lastDot) : "";
@@ -132,8 +198,9 @@ public final class ImageCache {
       } else {
         newpath = uriid + extension;
       }
-      this.cache.put(relativePath, newpath);
+      put(relativePath, newpath);
     }
+    this.listener.imageMetadata(relativePath, cached, System.nanoTime() - start);
     return newpath;
   }
 
@@ -142,8 +209,24 @@ public final class ImageCache {
    *
    * @param relativePath the image's relative path
    */
-  public void cacheImagePath(String relativePath) {
-    this.cache.put(relativePath, relativePath);
+  public synchronized void cacheImagePath(String relativePath) {
+    put(relativePath, relativePath);
+  }
+
+  /**
+   * Cache the new path of an image and index its filename if it was not cached yet.
+   *
+   * @param relativePath the image's relative path
+   * @param newpath      the new path
+   */
+  private void put(String relativePath, String newpath) {
+    if (this.cache.put(relativePath, newpath) != null) return;
+    int lastSlash = relativePath.lastIndexOf('/');
+    String filename = lastSlash != -1 ? relativePath.substring(lastSlash + 1) : relativePath;
+    this.filenames.merge(filename, 1, Integer::sum);
+    for (int dash = filename.indexOf('-'); dash != -1; dash = filename.indexOf('-', dash + 1)) {
+      this.prefixes.merge(filename.substring(0, dash), 1, Integer::sum);
+    }
   }
 
   /**
@@ -181,75 +264,14 @@ public final class ImageCache {
    *
    *  @return the unique filename
    */
-  public String buildUniqueFilename(String filename) {
+  public synchronized String buildUniqueFilename(String filename) {
     int lastDot = filename.lastIndexOf('.');
     String extension = lastDot != -1 ? filename.substring(lastDot) : "";
     String name = lastDot != -1 ? filename.substring(0, lastDot) : filename;
-    String namePrefix = name + "-";
-    Set<String> keys = this.cache.keySet();
-    int count = 0;
-    for (String key : keys) {
-      int lastSlash = key.lastIndexOf('/');
-      String keyname = lastSlash != -1 ? key.substring(lastSlash + 1) : key;
-      // count same name or name with potential clash
-      if (keyname.equals(filename) || keyname.startsWith(namePrefix)) count++;
-    }
+    // count same name or name with potential clash
+    int count = this.filenames.getOrDefault(filename, 0) + this.prefixes.getOrDefault(name, 0);
     if (count == 0) return filename;
-    return namePrefix + (count + 1) + extension;
+    return name + "-" + (count + 1) + extension;
   }
 
-  /**
-   * Handler used to load URI details from an image metadata file.
-   */
-  private static class MetadataFileHandler extends DefaultHandler {
-
-    /**
-     * The URI ID.
-     */
-    private @Nullable String uriID = null;
-
-    /**
-     * The URI extension, loaded from the URI path.
-     */
-    private @Nullable String uriExtension = null;
-
-    /**
-     * Current state.
-     */
-    private boolean inDocInfo = false;
-
-    @Override
-    public void startElement(String uri, String localName, String qName,
-        Attributes attributes) throws SAXException {
-      if ("documentinfo".equals(qName)) this.inDocInfo = true;
-      else if (this.inDocInfo && "uri".equals(qName)) {
-        this.uriID = attributes.getValue("id");
-        String path = attributes.getValue("path");
-        if (path != null) {
-          String[] parts = path.split("/");
-          String last = parts[parts.length - 1];
-          this.uriExtension = last.substring(last.lastIndexOf('.') + 1);
-        }
-      }
-    }
-
-    @Override
-    public void endElement(String uri, String localName, String qName) throws SAXException {
-      if ("documentinfo".equals(qName)) this.inDocInfo = false;
-    }
-
-    /**
-     * @return The URI extension, loaded from the URI path.
-     */
-    public @Nullable String getUriExtension() {
-      return this.uriExtension;
-    }
-
-    /**
-     * @return The URI ID.
-     */
-    public @Nullable String getUriID() {
-      return this.uriID;
-    }
-  }
 }
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.psml.process.util.XMLUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An index of the URI details of the images found in the metadata files of a META-INF folder.
+ *
+ * <p>The metadata files are parsed concurrently when the index is loaded so that looking up
+ * the URI ID and extension of an image does not require any parsing while processing
+ * documents. The index is keyed by the path of the image relative to the source folder,
+ * that is the path of its metadata file relative to the META-INF folder without
+ * the <code>.psml</code> extension.
+ *
+ * <p>Only the metadata files of images with a common image extension (see {@link #isImage(String)})
+ * are parsed, the metadata of documents and other files is left out. Images with other
+ * extensions are not indexed and their metadata file is read when they are used.
+ *
+ * <p>The index can be saved in a sidecar file {@value #SIDECAR} in the META-INF folder
+ * and is reused by the next process as long as the path, size and modification time of
+ * every metadata file are unchanged.
+ *
+ * <p>This class is immutable and thread-safe.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class ImageMetadataIndex {
+
+  /**
+   * The name of the sidecar file in the META-INF folder.
+   */
+  public static final String SIDECAR = ".image-index";
+
+  /**
+   * The first line of the sidecar file, followed by the fingerprint of the folder.
+   */
+  private static final String HEADER = "psml-image-index/1 ";
+
+  /**
+   * The extensions of the images indexed (lower case).
+   */
+  private static final Set<String> IMAGE_EXTENSIONS = new HashSet<>(Arrays.asList(
+      "avif", "bmp", "gif", "ico", "jpeg", "jpg", "png", "svg", "tif", "tiff", "webp"));
+
+  /**
+   * The logger.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImageMetadataIndex.class);
+
+  /**
+   * An empty index.
+   */
+  private static final ImageMetadataIndex EMPTY = new ImageMetadataIndex(Collections.emptyMap(), 0, false);
+
+  /**
+   * The URI details by image path.
+   */
+  private final Map<String, Metadata> images;
+
+  /**
+   * The fingerprint of the metadata files indexed.
+   */
+  private final long fingerprint;
+
+  /**
+   * Whether the index was loaded from the sidecar file.
+   */
+  private final boolean reused;
+
+  private ImageMetadataIndex(Map<String, Metadata> images, long fingerprint, boolean reused) {
+    this.images = images;
+    this.fingerprint = fingerprint;
+    this.reused = reused;
+  }
+
+  /**
+   * @return an index without any image.
+   */
+  public static ImageMetadataIndex empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Load the index of the metadata files in the META-INF folder.
+   *
+   * <p>The sidecar file is used if it is still valid, otherwise all the image metadata files
+   * are parsed using the number of threads specified. Metadata files which cannot be
+   * parsed are left out of the index.
+   *
+   * @param metaInf the META-INF folder
+   * @param threads the number of threads used to parse the metadata files
+   * @param save    whether to save the index to the sidecar file if it was not reused
+   *
+   * @return the index
+   *
+   * @throws IllegalArgumentException if the number of threads is less than 1
+   * @throws ProcessException if parsing was interrupted
+   */
+  public static ImageMetadataIndex load(File metaInf, int threads, boolean save) throws ProcessException {
+    if (threads < 1)
+      throw new IllegalArgumentException("Number of threads must be at least 1");
+    if (!metaInf.isDirectory()) return EMPTY;
+    Map<String, File> files = new HashMap<>();
+    long fingerprint = collect(metaInf, "", files) + files.size();
+    File sidecar = new File(metaInf, SIDECAR);
+    Map<String, Metadata> images = readSidecar(sidecar, fingerprint);
+    if (images != null) {
+      LOGGER.debug("Reusing image metadata index of {} image(s)", images.size());
+      return new ImageMetadataIndex(images, fingerprint, true);
+    }
+    images = parse(files, threads);
+    LOGGER.debug("Indexed {} image(s) from {} metadata file(s)", images.size(), files.size());
+    ImageMetadataIndex index = new ImageMetadataIndex(images, fingerprint, false);
+    if (save) {
+      try {
+        index.save(sidecar);
+      } catch (IOException ex) {
+        LOGGER.warn("Unable to save image metadata index {}: {}", sidecar.getAbsolutePath(), ex.getMessage());
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @param path the path of the image relative to the source folder
+   *
+   * @return the URI details of the image or <code>null</code> if not indexed
+   */
+  public @Nullable Metadata get(String path) {
+    return this.images.get(path);
+  }
+
+  /**
+   * @return the number of images indexed
+   */
+  public int size() {
+    return this.images.size();
+  }
+
+  /**
+   * @return <code>true</code> if the index was loaded from the sidecar file
+   */
+  public boolean isReused() {
+    return this.reused;
+  }
+
+  /**
+   * Save the index to the file specified.
+   *
+   * <p>The index is written to a temporary file first so that an incomplete
+   * sidecar file is never read.
+   *
+   * @param file the sidecar file
+   *
+   * @throws IOException if the file could not be written
+   */
+  public void save(File file) throws IOException {
+    File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try (BufferedWriter out = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+      out.write(HEADER + Long.toHexString(this.fingerprint));
+      out.newLine();
+      for (Map.Entry<String, Metadata> entry : this.images.entrySet()) {
+        Metadata metadata = entry.getValue();
+        out.write(entry.getKey());
+        out.write('\t');
+        out.write(metadata.getUriID());
+        if (metadata.getExtension() != null) {
+          out.write('\t');
+          out.write(metadata.getExtension());
+        }
+        out.newLine();
+      }
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Read the URI details from an image metadata file.
+   *
+   * @param file the metadata file
+   *
+   * @return the handler holding the URI details, the URI ID is <code>null</code> if not found
+   *
+   * @throws ProcessException if the file could not be parsed
+   */
+  static MetadataFileHandler read(File file) throws ProcessException {
+    MetadataFileHandler handler = new MetadataFileHandler();
+    XMLUtils.parse(file, handler);
+    return handler;
+  }
+
+  /**
+   * Collect the image metadata files of a folder and compute their fingerprint.
+   *
+   * @param folder the folder
+   * @param prefix the path of the folder relative to META-INF with a trailing '/'
+   * @param files  receives the metadata files by image path
+   *
+   * @return the fingerprint of the metadata files in the folder
+   */
+  private static long collect(File folder, String prefix, Map<String, File> files) {
+    File[] all = folder.listFiles();
+    if (all == null) return 0;
+    long fingerprint = 0;
+    for (File f : all) {
+      String name = f.getName();
+      if (f.isDirectory()) {
+        fingerprint += collect(f, prefix + name + '/', files);
+      } else if (name.endsWith(".psml") && isImage(name.substring(0, name.length() - 5))) {
+        String path = prefix + name.substring(0, name.length() - 5);
+        files.put(path, f);
+        // order independent so that the listing order does not matter
+        long h = path.hashCode();
+        h = 31 * h + f.length();
+        h = 31 * h + f.lastModified();
+        fingerprint += h * 0x9E3779B97F4A7C15L;
+      }
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Parse the metadata files concurrently.
+   *
+   * @param files   the metadata files by image path
+   * @param threads the number of threads
+   *
+   * @return the URI details by image path
+   *
+   * @throws ProcessException if the parsing was interrupted
+   */
+  private static Map<String, Metadata> parse(Map<String, File> files, int threads) throws ProcessException {
+    Map<String, Metadata> images = new ConcurrentHashMap<>(files.size() * 2);
+    Map<String, String> extensions = new ConcurrentHashMap<>();
+    int poolSize = Math.max(1, Math.min(threads, files.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+    try {
+      List<Future<?>> tasks = new ArrayList<>(files.size());
+      for (Map.Entry<String, File> entry : files.entrySet()) {
+        tasks.add(executor.submit(() -> {
+          String path = entry.getKey();
+          if (!isIndexable(path)) return;
+          try {
+            MetadataFileHandler handler = read(entry.getValue());
+            String uriid = handler.getUriID();
+            String extension = handler.getUriExtension();
+            if (uriid != null && isIndexable(uriid) && (extension == null || isIndexable(extension))) {
+              images.put(path, new Metadata(uriid, extension == null ? null : extensions.computeIfAbsent(extension, e -> e)));
+            }
+          } catch (ProcessException ex) {
+            // left out of the index, the error is reported if the image is used
+            LOGGER.debug("Unable to index image metadata {}: {}", path, ex.getMessage());
+          }
+        }));
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ProcessException("Interrupted while indexing image metadata", ex);
+    } catch (ExecutionException ex) {
+      throw new ProcessException("Failed to index image metadata: " + ex.getCause().getMessage(), ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return images;
+  }
+
+  /**
+   * @param sidecar     the sidecar file
+   * @param fingerprint the current fingerprint of the metadata files
+   *
+   * @return the URI details by image path or <code>null</code> if the sidecar file is missing or out of date
+   */
+  private static @Nullable Map<String, Metadata> readSidecar(File sidecar, long fingerprint) {
+    if (!sidecar.isFile()) return null;
+    try (BufferedReader in = Files.newBufferedReader(sidecar.toPath(), StandardCharsets.UTF_8)) {
+      String header = in.readLine();
+      if (header == null || !header.equals(HEADER + Long.toHexString(fingerprint))) return null;
+      Map<String, Metadata> images = new HashMap<>();
+      Map<String, String> extensions = new HashMap<>();
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] parts = line.split("\t", -1);
+        if (parts.length < 2 || parts.length > 3) return null;
+        String extension = parts.length == 3 ? extensions.computeIfAbsent(parts[2], e -> e) : null;
+        images.put(parts[0], new Metadata(parts[1], extension));
+      }
+      return images;
+    } catch (IOException ex) {
+      LOGGER.debug("Unable to read image metadata index {}: {}", sidecar.getAbsolutePath(), ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @param name the name of a file
+   *
+   * @return <code>true</code> if the file has one of the image extensions indexed
+   */
+  static boolean isImage(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot != -1 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * @param value a value to save in the sidecar file
+   *
+   * @return <code>true</code> if the value does not include a separator
+   */
+  private static boolean isIndexable(String value) {
+    return value.indexOf('\t') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1;
+  }
+
+  /**
+   * The URI details of an image.
+   */
+  public static final class Metadata {
+
+    /**
+     * The URI ID.
+     */
+    private final String uriID;
+
+    /**
+     * The URI extension, loaded from the URI path.
+     */
+    private final @Nullable String extension;
+
+    Metadata(String uriID, @Nullable String extension) {
+      this.uriID = uriID;
+      this.extension = extension;
+    }
+
+    /**
+     * @return The URI ID.
+     */
+    public String getUriID() {
+      return this.uriID;
+    }
+
+    /**
+     * @return The URI extension, loaded from the URI path.
+     */
+    public @Nullable String getExtension() {
+      return this.extension;
+    }
+  }
+
+  /**
+   * Handler used to load URI details from an image metadata file.
+   */
+  static final class MetadataFileHandler extends DefaultHandler {
+
+    /**
+     * The URI ID.
+     */
+    private @Nullable String uriID = null;
+
+    /**
+     * The URI extension, loaded from the URI path.
+     */
+    private @Nullable String uriExtension = null;
+
+    /**
+     * Current state.
+     */
+    private boolean inDocInfo = false;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      if ("documentinfo".equals(qName)) this.inDocInfo = true;
+      else if (this.inDocInfo && "uri".equals(qName)) {
+        this.uriID = attributes.getValue("id");
+        String path = attributes.getValue("path");
+        if (path != null) {
+          String[] parts = path.split("/");
+          String last = parts[parts.length - 1];
+          this.uriExtension = last.substring(last.lastIndexOf('.') + 1);
+        }
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      if ("documentinfo".equals(qName)) this.inDocInfo = false;
+    }
+
+    /**
+     * @return The URI extension, loaded from the URI path.
+     */
+    public @Nullable String getUriExtension() {
+      return this.uriExtension;
+    }
+
+    /**
+     * @return The URI ID.
+     */
+    public @Nullable String getUriID() {
+      return this.uriID;
+    }
+  }
+
+}
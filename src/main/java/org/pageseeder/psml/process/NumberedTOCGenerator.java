@@ -9,6 +9,7 @@ import org.pageseeder.psml.toc.FragmentNumbering.Prefix;
 import org.pageseeder.psml.util.RelativePaths;
 import org.pageseeder.xmlwriter.XMLWriter;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
@@ -17,7 +18,7 @@ import java.util.*;
  *
  * @author Philip Rutherford
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public class NumberedTOCGenerator {
@@ -37,6 +38,11 @@ public class NumberedTOCGenerator {
    */
   private final Map<Long,DocumentTree> addTrees = new HashMap<>();
 
+  /**
+   * Document trees built before processing keyed on file (see {@link #toKey(File)})
+   */
+  private Map<String,DocumentTree> documentTrees = Collections.emptyMap();
+
   /**
    * Whether the first toc element has been reached
    */
@@ -106,9 +112,9 @@ public class NumberedTOCGenerator {
   }
 
   /**
-   * @return the fragmentNumbering
+   * @return the fragmentNumbering (null if it has not been computed for the current publication tree)
    */
-  public FragmentNumbering fragmentNumbering() {
+  public @Nullable FragmentNumbering fragmentNumbering() {
     return this.fragmentNumbering;
   }
 
@@ -118,15 +124,58 @@ public class NumberedTOCGenerator {
    * @param tree  the tree to add
    */
   public void addTree(DocumentTree tree) {
-    this.addTrees.put(tree.id(), tree);
+    // trees built before processing are already in the publication
+    if (this.publicationTree.tree(tree.id()) != tree) this.addTrees.put(tree.id(), tree);
+  }
+
+  /**
+   * Add the document trees built before processing to the publication.
+   *
+   * @param trees document trees built before processing keyed on file (see {@link #toKey(File)})
+   */
+  public void setDocumentTrees(Map<String,DocumentTree> trees) {
+    this.documentTrees = trees;
+    long rootid = this.publicationTree.root().id();
+    Map<Long,DocumentTree> byId = new HashMap<>();
+    for (DocumentTree tree : trees.values()) {
+      if (tree.id() != rootid) byId.put(tree.id(), tree);
+    }
+    this.publicationTree = this.publicationTree.modify(Collections.emptyList(), byId, rootid);
+  }
+
+  /**
+   * @param file the document file
+   *
+   * @return the document tree built before processing or <code>null</code>
+   */
+  public @Nullable DocumentTree getDocumentTree(File file) {
+    return this.documentTrees.get(toKey(file));
+  }
+
+  /**
+   * @param file the document file
+   *
+   * @return the key for the document tree of this file
+   */
+  static String toKey(File file) {
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException ex) {
+      return file.getAbsolutePath();
+    }
   }
 
   /**
    * Update the publication with added trees.
+   *
+   * <p>If any tree was added, the fragment numbering is reset as it must be computed again.
    */
   public void updatePublication() {
+    if (this.addTrees.isEmpty()) return;
     this.publicationTree = this.publicationTree.modify(
         Collections.emptyList(), this.addTrees, this.publicationTree.root().id());
+    this.addTrees.clear();
+    this.fragmentNumbering = null;
   }
 
   /**
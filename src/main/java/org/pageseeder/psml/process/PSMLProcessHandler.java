@@ -16,16 +16,19 @@ import org.pageseeder.psml.process.math.TexConverter;
 import org.pageseeder.psml.process.util.XMLUtils;
 import org.pageseeder.psml.toc.DocumentTree;
 import org.pageseeder.psml.toc.DocumentTreeHandler;
+import org.pageseeder.psml.toc.FragmentNumbering;
 import org.pageseeder.psml.toc.PublicationConfig;
 import org.pageseeder.psml.toc.PublicationTree;
+import org.pageseeder.psml.toc.XRefLoopException;
 import org.pageseeder.psml.util.RelativePaths;
 import org.pageseeder.psml.xml.XMLStrings;
 import org.pageseeder.xmlwriter.XML.NamespaceAware;
 import org.pageseeder.xmlwriter.XMLStringWriter;
 import org.pageseeder.xmlwriter.XMLWriter;
 import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -42,7 +45,7 @@ import java.util.*;
  * @author Philip Rutherford
  * @author Christophe Lauret
  *
- * @version 1.7.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class PSMLProcessHandler extends DefaultHandler {
@@ -152,11 +155,26 @@ public final class PSMLProcessHandler extends DefaultHandler {
    */
   private @Nullable PublicationConfig publicationConfig = null;
 
+  /**
+   * Documents transcluded by the publication root, found when parsing the publication config.
+   */
+  private List<File> publicationTargets = Collections.emptyList();
+
   /**
    * Image cache where URI details for images are loaded from.
    */
   private @Nullable ImageCache imageCache = null;
 
+  /**
+   * Cache of parsed documents for transcluded XRef targets.
+   */
+  private @Nullable TransclusionCache transclusionCache = null;
+
+  /**
+   * Receives the timings of transclusions and math conversions.
+   */
+  private ProcessListener listener = ProcessListener.NONE;
+
   /**
    * Site prefix, used to rewrite images paths to permalink
    * [siteprefix]/uri/[uriid].[extension].
@@ -568,15 +586,16 @@ public final class PSMLProcessHandler extends DefaultHandler {
    * @throws ProcessException  if problem parsing root file
    */
   public void setPublicationConfig(PublicationConfig config, File root, boolean toc) throws ProcessException {
-    // process transclusions
-    XMLStringWriter out = new XMLStringWriter(NamespaceAware.No);
-    TransclusionHandler thandler = new TransclusionHandler(out, "default", true, this);
-    XMLUtils.parse(root, thandler);
+    // process transclusions and send them straight to the document tree handler
+    DocumentTreeHandler tochandler = new DocumentTreeHandler();
+    TransclusionHandler thandler = new TransclusionHandler(tochandler, "default", true, this);
+    // collect the documents transcluded at the same time for the prescan
+    PublicationScanner.TargetCollector collector = new PublicationScanner.TargetCollector(this.transcluder);
+    collector.setContentHandler(thandler);
+    XMLUtils.parse(root, collector);
+    this.publicationTargets = collector.targets();
     // load metadata now so it can be used in compare content
     this.publicationMetadata = thandler.getPublicationMetadata();
-    // parse document tree
-    DocumentTreeHandler tochandler = new DocumentTreeHandler();
-    XMLUtils.parse(new InputSource(new StringReader(out.toString())), tochandler, null, null);
     DocumentTree tree = tochandler.get();
     if (tree != null) {
       tree = tree.normalize(config.getTocTitleCollapse());
@@ -586,6 +605,94 @@ public final class PSMLProcessHandler extends DefaultHandler {
     }
   }
 
+  /**
+   * Build the publication tree and its fragment numbering from all the documents transcluded
+   * from this publication root before it is processed, so that each tree is only built once.
+   *
+   * <p>This has no effect if this handler has no publication or does not transclude any XRef.
+   * The first pass only builds the trees missing from the scan, in which case the numbering
+   * is computed again after the first pass.
+   *
+   * @param threads the number of threads to use
+   */
+  void prescanPublication(int threads) {
+    PublicationConfig config = this.publicationConfig;
+    NumberedTOCGenerator generator = this.numberingAndTOC;
+    if (generator == null || config == null || !this.transcluder.isTranscluding()) return;
+    PublicationScanner scanner = new PublicationScanner(this, threads);
+    generator.setDocumentTrees(scanner.scan(this.sourceFile, this.publicationTargets));
+    try {
+      generator.setFragmentNumbering(new FragmentNumbering(generator.publicationTree(), config));
+    } catch (XRefLoopException ex) {
+      // reported when the publication is numbered after the first pass
+    }
+  }
+
+  /**
+   * Build the normalized document tree of a document, including one level of transclusions.
+   *
+   * <p>The document is sent straight to the document tree handler without being serialized.
+   *
+   * @param target the document, this handler must have been created for it
+   * @param strict whether to return <code>null</code> if a transcluded document could not be parsed
+   *
+   * @return the document tree or <code>null</code>
+   *
+   * @throws ProcessException if the document could not be parsed
+   */
+  @Nullable DocumentTree buildDocumentTree(File target, boolean strict) throws ProcessException {
+    return buildDocumentTree(target, strict, null);
+  }
+
+  /**
+   * Build the normalized document tree of a document, including one level of transclusions,
+   * and collect the documents it transcludes in the same parse.
+   *
+   * @param target    the document, this handler must have been created for it
+   * @param strict    whether to return <code>null</code> if a transcluded document could not be parsed
+   * @param collector receives the events of the document before transclusion (may be null)
+   *
+   * @return the document tree or <code>null</code>
+   *
+   * @throws ProcessException if the document could not be parsed
+   */
+  @Nullable DocumentTree buildDocumentTree(File target, boolean strict,
+      PublicationScanner.@Nullable TargetCollector collector) throws ProcessException {
+    DocumentTreeHandler tochandler = new DocumentTreeHandler();
+    TransclusionHandler thandler = new TransclusionHandler(tochandler, "default", true, this);
+    if (collector != null) {
+      collector.setContentHandler(thandler);
+      parseXRefTarget(target, collector);
+    } else {
+      parseXRefTarget(target, thandler);
+    }
+    if (strict && thandler.hasTransclusionFailed()) return null;
+    DocumentTree tree = tochandler.get();
+    return tree == null ? null : tree.normalize(this.publicationConfig.getTocTitleCollapse());
+  }
+
+  /**
+   * Create a handler used to scan a document of the publication, it shares the publication
+   * settings of this handler, does not log or output anything and fails on any error.
+   *
+   * @param toScan the document to scan
+   *
+   * @return the handler
+   */
+  PSMLProcessHandler cloneForScan(File toScan) {
+    PSMLProcessHandler handler = new PSMLProcessHandler(Writer.nullWriter(), this, toScan, this.psmlRoot,
+        this.binaryRepository);
+    handler.setLogger(NOPLogger.NOP_LOGGER);
+    handler.setFailOnError(true);
+    handler.setXRefsHandling(this.transcluder.xrefsTranscludeTypes,
+        this.transcluder.excludeXRefFragment, this.transcluder.onlyXRefFrament, true, false);
+    handler.setPlaceholders(this.placeholders);
+    handler.setPublicationMetadata(this.publicationMetadata);
+    handler.setTransclusionCache(this.transclusionCache);
+    handler.publicationConfig = this.publicationConfig;
+    return handler;
+  }
+
   /**
    * Set the image handling details. Note that if one of the flag is true, the
    * cache cannot be null and site prefix must be specified for permalinks.
@@ -615,6 +722,43 @@ public final class PSMLProcessHandler extends DefaultHandler {
     this.transcluder.setTranscludeImages(embedMetadata);
   }
 
+  /**
+   * @param cache the cache of parsed documents for transcluded XRef targets (may be null)
+   */
+  public void setTransclusionCache(@Nullable TransclusionCache cache) {
+    this.transclusionCache = cache;
+  }
+
+  /**
+   * @param listener receives the timings of transclusions and math conversions
+   */
+  public void setListener(ProcessListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @return the listener for the timings of transclusions and math conversions
+   */
+  public ProcessListener getListener() {
+    return this.listener;
+  }
+
+  /**
+   * Parse a transcluded XRef target, using the transclusion cache if there is one.
+   *
+   * @param target  the target document
+   * @param handler the XML handler
+   *
+   * @throws ProcessException if the parsing failed
+   */
+  void parseXRefTarget(File target, ContentHandler handler) throws ProcessException {
+    if (this.transclusionCache != null) {
+      this.transclusionCache.parse(target, handler);
+    } else {
+      XMLUtils.parse(target, handler);
+    }
+  }
+
   /**
    * @param resolve  if placeholder elements are resolved
    */
@@ -1004,12 +1148,12 @@ public final class PSMLProcessHandler extends DefaultHandler {
     try {
       if ((this.convertAsciiMath || this.convertTex) && (uri == null || uri.isEmpty()) && "inline".equals(qName) && this.convertContent != null) {
         write("<xref frag=\"media\" type=\"math\" config=\"mathml\"><media-fragment id=\"media\" mediatype=\"application/mathml+xml\">");
-        write(this.convertingAsciimath ? AsciiMathConverter.convert(this.convertContent.toString()) : TexConverter.convert(this.convertContent.toString()));
+        write(convertMath(this.convertContent.toString()));
         write("</media-fragment></xref>");
         this.convertContent = null;
         return;
       } else if ((this.convertAsciiMath || this.convertTex) && (uri == null || uri.isEmpty()) && "media-fragment".equals(qName) && this.convertContent != null) {
-        write(this.convertingAsciimath ? AsciiMathConverter.convert(this.convertContent.toString()) : TexConverter.convert(this.convertContent.toString()));
+        write(convertMath(this.convertContent.toString()));
         write("</media-fragment>");
         this.convertContent = null;
         if (this.fragmentToLoad != null && !this.inPreTranscluded) {
@@ -1107,6 +1251,8 @@ public final class PSMLProcessHandler extends DefaultHandler {
     handler.setIncludeXMLDeclaration(false);
     handler.setImageHandling(this.imageCache, this.imageSrc, this.errorImageNotFound,
             this.warnImageNotFound, this.sitePrefix, this.embedImageMetadata);
+    handler.setTransclusionCache(this.transclusionCache);
+    handler.setListener(this.listener);
     handler.setStrip(this.strip);
     handler.setLogger(this.logger);
     handler.setFailOnError(this.failOnError);
@@ -1187,6 +1333,19 @@ public final class PSMLProcessHandler extends DefaultHandler {
   // --------------------------------- Private Helpers
   // --------------------------------------------
 
+  /**
+   * Convert the ascii math or tex content to MathML and report the time taken.
+   *
+   * @param content the content to convert
+   * @return the MathML
+   */
+  private String convertMath(String content) {
+    long start = System.nanoTime();
+    String mathml = this.convertingAsciimath ? AsciiMathConverter.convert(content) : TexConverter.convert(content);
+    this.listener.mathConversion(this.convertingAsciimath ? "asciimath" : "tex", System.nanoTime() - start);
+    return mathml;
+  }
+
   /**
    * @param qName the name of the element
    * @param atts  the attributes of the element
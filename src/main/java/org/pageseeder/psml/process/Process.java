@@ -6,8 +6,8 @@ package org.pageseeder.psml.process;
 import org.jspecify.annotations.Nullable;
 import org.pageseeder.psml.process.config.*;
 import org.pageseeder.psml.process.config.Images.ImageSrc;
-import org.pageseeder.psml.process.math.AsciiMathConverter;
 import org.pageseeder.psml.process.util.IncludesExcludesMatcher;
+import org.pageseeder.psml.process.util.SpillWriter;
 import org.pageseeder.psml.process.util.XMLUtils;
 import org.pageseeder.psml.process.util.XSLTTransformer;
 import org.pageseeder.psml.toc.FragmentNumbering;
@@ -21,6 +21,11 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Perform the process task.
@@ -41,6 +46,11 @@ public final class Process {
    */
   private static final int BUFFER_SIZE = 12 * 1024;
 
+  /**
+   * The default number of characters of the first pass output kept in memory (4M chars).
+   */
+  public static final int DEFAULT_MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
   /**
    * The logger.
    */
@@ -161,6 +171,36 @@ public final class Process {
    */
   private @Nullable WarningHandling warning = null;
 
+  /**
+   * The number of threads used to process PSML documents (1 means sequential).
+   */
+  private int threads = 1;
+
+  /**
+   * Receives the timings and counters of the process.
+   */
+  private ProcessListener listener = ProcessListener.NONE;
+
+  /**
+   * The maximum number of characters of the first pass output kept in memory for each document.
+   */
+  private int memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+
+  /**
+   * The maximum weight of the cache of parsed documents for transcluded XRef targets.
+   */
+  private long transclusionCacheSize = TransclusionCache.DEFAULT_MAX_WEIGHT;
+
+  /**
+   * Whether the image metadata index is saved to the source META-INF folder.
+   */
+  private boolean saveImageIndex = false;
+
+  /**
+   * Whether the publication tree and numbering are built before the first pass.
+   */
+  private boolean prescanPublication = true;
+
   /**
    * @param fail the failOnError to set
    */
@@ -168,6 +208,100 @@ public final class Process {
     this.failOnError = fail;
   }
 
+  /**
+   * Sets the number of threads used to process the PSML documents concurrently.
+   *
+   * <p>The same number of threads is used to index the image metadata files.
+   *
+   * <p>The default is <code>1</code> which processes documents sequentially.
+   *
+   * @param threads the number of threads (must be at least 1)
+   *
+   * @throws IllegalArgumentException if the number of threads is less than 1
+   */
+  public void setThreads(int threads) {
+    if (threads < 1)
+      throw new IllegalArgumentException("Number of threads must be at least 1");
+    this.threads = threads;
+  }
+
+  /**
+   * Sets the maximum size of the output of the first pass kept in memory for each document.
+   *
+   * <p>The output of the first pass is handed over to the second pass in memory, larger
+   * documents are written to a temporary file instead. Use <code>0</code> to always use
+   * a temporary file. In both cases, the second pass parses the output of the first pass.
+   *
+   * @param threshold the number of characters, defaults to {@link #DEFAULT_MEMORY_THRESHOLD}
+   *
+   * @throws IllegalArgumentException if the threshold is negative
+   */
+  public void setMemoryThreshold(int threshold) {
+    if (threshold < 0)
+      throw new IllegalArgumentException("Memory threshold cannot be negative");
+    this.memoryThreshold = threshold;
+  }
+
+  /**
+   * Sets the maximum size of the cache of parsed documents used when transcluding XRef targets.
+   *
+   * <p>Transcluded documents are parsed at most once per process as long as they fit in the
+   * cache. Use <code>0</code> to disable the cache.
+   *
+   * @param size the approximate number of characters, defaults to {@link TransclusionCache#DEFAULT_MAX_WEIGHT}
+   *
+   * @throws IllegalArgumentException if the size is negative
+   */
+  public void setTransclusionCacheSize(long size) {
+    if (size < 0)
+      throw new IllegalArgumentException("Transclusion cache size cannot be negative");
+    this.transclusionCacheSize = size;
+  }
+
+  /**
+   * Sets whether the index of the image metadata files is saved to the META-INF folder
+   * of the source so that the next process on the same source does not parse them again.
+   *
+   * <p>An index saved previously is always reused if still valid. The index is only
+   * saved if the source documents are preserved.
+   *
+   * @param save <code>true</code> to save the index, defaults to <code>false</code>
+   *
+   * @see ImageMetadataIndex#SIDECAR
+   */
+  public void setSaveImageIndex(boolean save) {
+    this.saveImageIndex = save;
+  }
+
+  /**
+   * Sets whether the publication tree and numbering are built before the first pass
+   * of the publication root, the document trees are built concurrently when more than
+   * one thread is used.
+   *
+   * <p>Each transcluded document is parsed once for its tree either way, without the prescan
+   * the first pass builds the trees as documents are transcluded. Use the
+   * {@link ProcessListener.Stage#PRESCAN} stage to check the time spent on a publication.
+   *
+   * @param prescan <code>true</code> to pre-scan the publication, defaults to <code>true</code>
+   *
+   * @see #setThreads(int)
+   */
+  public void setPrescanPublication(boolean prescan) {
+    this.prescanPublication = prescan;
+  }
+
+  /**
+   * Sets the listener receiving the timings and counters of the process.
+   *
+   * <p>The listener must be thread-safe if documents are processed concurrently,
+   * see {@link ProcessMetrics} for a listener producing a summary report.
+   *
+   * @param listener the listener (null for none)
+   */
+  public void setListener(@Nullable ProcessListener listener) {
+    this.listener = listener == null ? ProcessListener.NONE : listener;
+  }
+
   /**
    * @param processed the processed value to set
    */
@@ -372,151 +506,187 @@ public final class Process {
     if (this.logger == null) this.logger = LoggerFactory.getLogger(Process.class);
 
     // collect files
-    this.logger.debug("Collecting PSML files from {}", this.src.getAbsolutePath());
-    Map<String, File> psml = new HashMap<>();
-    Map<String, File> rest = new HashMap<>();
-    collectAll(this.src, psml, null, rest);
-
-    String processID = "P"+System.currentTimeMillis();
-    // start processing
-    this.logger.info("Found {} PSML file(s) and {} non PSML file(s)", psml.size(), rest.size());
-
-    // create manifest first
-    File manifestFile = null;
-    if (this.manifestCreator != null) {
-      this.logger.info("Creating manifest document");
-      this.manifestCreator.setLog(this.logger);
-      manifestFile = this.manifestCreator.createManifest(psml, this.src);
-      // add it to the list of PSML source
-      if (manifestFile != null) {
-        psml.put(RelativePaths.computeCanonical(manifestFile, this.src), manifestFile);
-      }
-    }
-
-    String tempFolder = System.getProperty("java.io.tmpdir");
-    List<File> tempFoldersToDelete = new ArrayList<>();
-    File[] ffiles = this.dest.listFiles();
-    List<File> originalFilesInDestination = ffiles == null ? new ArrayList<>() : Arrays.asList(ffiles);
+    long start = System.nanoTime();
+    ProcessListener.@Nullable Stage stage = ProcessListener.Stage.COLLECT;
     try {
-      // run pre transform
-      File currentSource = this.src;
-      if (this.preTransform != null) {
-        this.logger.info("Running Pre Transform with {}", this.preTransform.getXSLT());
-        this.preTransform.setLog(this.logger);
-        this.preTransform.setPreserveSrc(this.preserveSrc);
-        this.preTransform.setFailOnError(this.failOnError);
-        boolean useOutputToTempDir = this.processXML || this.postTransform != null;
-        File output;
-        if (useOutputToTempDir) {
-          output = new File(tempFolder, "pretransform-"+processID);
-          this.logger.debug("Creating temp output folder {}", output.getAbsolutePath());
-          output.mkdirs();
-          tempFoldersToDelete.add(output);
-        } else {
-          output = this.dest;
-        }
-        this.preTransform.transform(psml, output);
-        // reload psml source if needed
-        if (useOutputToTempDir) {
-          psml.clear();
-          collectPSML(output, psml);
-          currentSource = output;
+      this.logger.debug("Collecting PSML files from {}", this.src.getAbsolutePath());
+      Map<String, File> psml = new HashMap<>();
+      Map<String, File> rest = new HashMap<>();
+      collectAll(this.src, psml, null, rest);
+      this.listener.stage(ProcessListener.Stage.COLLECT, System.nanoTime() - start);
+
+      String processID = "P"+System.currentTimeMillis();
+      // start processing
+      this.logger.info("Found {} PSML file(s) and {} non PSML file(s)", psml.size(), rest.size());
+
+      // create manifest first
+      File manifestFile = null;
+      if (this.manifestCreator != null) {
+        stage = ProcessListener.Stage.MANIFEST;
+        long stageStart = System.nanoTime();
+        this.logger.info("Creating manifest document");
+        this.manifestCreator.setLog(this.logger);
+        manifestFile = this.manifestCreator.createManifest(psml, this.src);
+        // add it to the list of PSML source
+        if (manifestFile != null) {
+          psml.put(RelativePaths.computeCanonical(manifestFile, this.src), manifestFile);
         }
+        this.listener.stage(ProcessListener.Stage.MANIFEST, System.nanoTime() - stageStart);
       }
 
-      // build an image cache so that their details are not copmuted multiple times
-      ImageCache imageCache = new ImageCache(new File(this.src, "META-INF"));
-      boolean parseMetadata = this.strip != null;
-      // process PSML
-      if (this.processXML) {
-        this.logger.info("Processing content PSML (XRefs, images, strip, numbering)");
-        boolean useOutputToTempDir = this.postTransform != null;
-        File output;
-        if (useOutputToTempDir) {
-          output = new File(tempFolder, "process-"+processID);
-          this.logger.debug("Creating temp output folder {}", output.getAbsolutePath());
-          output.mkdirs();
-          tempFoldersToDelete.add(output);
-        } else {
-          output = this.dest;
-        }
-        process(psml, currentSource, output, this.src, imageCache);
-        // reload psml source if needed
-        if (useOutputToTempDir) {
-          psml.clear();
-          collectPSML(output, psml);
+      String tempFolder = System.getProperty("java.io.tmpdir");
+      List<File> tempFoldersToDelete = new ArrayList<>();
+      File[] ffiles = this.dest.listFiles();
+      List<File> originalFilesInDestination = ffiles == null ? new ArrayList<>() : Arrays.asList(ffiles);
+      try {
+        // run pre transform
+        File currentSource = this.src;
+        if (this.preTransform != null) {
+          stage = ProcessListener.Stage.PRE_TRANSFORM;
+          long stageStart = System.nanoTime();
+          this.logger.info("Running Pre Transform with {}", this.preTransform.getXSLT());
+          this.preTransform.setLog(this.logger);
+          this.preTransform.setPreserveSrc(this.preserveSrc);
+          this.preTransform.setFailOnError(this.failOnError);
+          boolean useOutputToTempDir = this.processXML || this.postTransform != null;
+          File output;
+          if (useOutputToTempDir) {
+            output = new File(tempFolder, "pretransform-"+processID);
+            this.logger.debug("Creating temp output folder {}", output.getAbsolutePath());
+            output.mkdirs();
+            tempFoldersToDelete.add(output);
+          } else {
+            output = this.dest;
+          }
+          this.preTransform.transform(psml, output);
+          // reload psml source if needed
+          if (useOutputToTempDir) {
+            psml.clear();
+            collectPSML(output, psml);
+            currentSource = output;
+          }
+          this.listener.stage(ProcessListener.Stage.PRE_TRANSFORM, System.nanoTime() - stageStart);
         }
-      }
 
-      // run post transform
-      if (this.postTransform != null) {
-        this.logger.info("Running Post Transform with {}", this.postTransform.getXSLT());
-        this.postTransform.setLog(this.logger);
-        this.postTransform.setPreserveSrc(this.preserveSrc);
-        this.postTransform.setFailOnError(this.failOnError);
-        this.postTransform.transform(psml, this.dest);
-      } else if (this.preTransform == null && !this.processXML) {
-        // move PSML files manually
-        this.logger.info("Moving {} PSML content file(s)", psml.size());
-        for (Map.Entry<String, File> fileEntry : psml.entrySet()) {
-          moveFile(fileEntry.getValue(), new File(this.dest, fileEntry.getKey()));
+        // build an image cache so that their details are not copmuted multiple times
+        File metaInf = new File(this.src, "META-INF");
+        ImageMetadataIndex imageIndex = ImageMetadataIndex.empty();
+        if (this.processXML && this.imageHandling != null && this.imageHandling.getSrc() != ImageSrc.LOCATION) {
+          stage = ProcessListener.Stage.IMAGE_INDEX;
+          long stageStart = System.nanoTime();
+          imageIndex = ImageMetadataIndex.load(metaInf, this.threads,
+              this.saveImageIndex && this.preserveSrc);
+          this.logger.info("{} image metadata index of {} image(s)", imageIndex.isReused() ? "Reusing" : "Built", imageIndex.size());
+          this.listener.stage(ProcessListener.Stage.IMAGE_INDEX, System.nanoTime() - stageStart);
         }
-      }
-
-      // move other files, including images to maybe a new location
-      boolean moveImages = this.imageHandling != null && this.imageHandling.getLocation() != null;
-      this.logger.info("Moving {} non PSML file(s)", rest.size());
-      if (moveImages) this.logger.info("Moving images to {}", this.imageHandling.getLocation());
-      for (Map.Entry<String, File> fileEntry : rest.entrySet()) {
-        String relPath = fileEntry.getKey();
-        // Strip manifest?
-        if ("META-INF/manifest.xml".equals(relPath) && this.strip != null && this.strip.stripManifest()) continue;
-        File other = fileEntry.getValue();
-        File target;
-        if (moveImages && imageCache.isCached(relPath)) {
-          String newPath = this.imageHandling.getSrc() == ImageSrc.LOCATION ? relPath : imageCache.getImageNewPath(relPath);
-          target = new File(this.imageHandling.getLocation(), newPath);
-        } else {
-          target = new File(this.dest, relPath);
+        ImageCache imageCache = new ImageCache(metaInf, this.listener, imageIndex);
+        boolean parseMetadata = this.strip != null;
+        // process PSML
+        if (this.processXML) {
+          this.logger.info("Processing content PSML (XRefs, images, strip, numbering)");
+          boolean useOutputToTempDir = this.postTransform != null;
+          File output;
+          if (useOutputToTempDir) {
+            output = new File(tempFolder, "process-"+processID);
+            this.logger.debug("Creating temp output folder {}", output.getAbsolutePath());
+            output.mkdirs();
+            tempFoldersToDelete.add(output);
+          } else {
+            output = this.dest;
+          }
+          // the passes are reported for each document
+          stage = null;
+          process(psml, currentSource, output, this.src, imageCache);
+          // reload psml source if needed
+          if (useOutputToTempDir) {
+            psml.clear();
+            collectPSML(output, psml);
+          }
         }
-        moveFile(other, target);
-      }
 
-      // remove temp folders
-      if (!tempFoldersToDelete.isEmpty()) {
-        this.logger.debug("Removing {} temp folder(s)", tempFoldersToDelete.size());
-        for (File folder : tempFoldersToDelete) {
-          if (!deleteDirectory(folder, true))
-            this.logger.warn("Failed to remove temp folder {}", folder.getAbsolutePath());
+        // run post transform
+        long stageStart = System.nanoTime();
+        if (this.postTransform != null) {
+          stage = ProcessListener.Stage.POST_TRANSFORM;
+          this.logger.info("Running Post Transform with {}", this.postTransform.getXSLT());
+          this.postTransform.setLog(this.logger);
+          this.postTransform.setPreserveSrc(this.preserveSrc);
+          this.postTransform.setFailOnError(this.failOnError);
+          this.postTransform.transform(psml, this.dest);
+          this.listener.stage(ProcessListener.Stage.POST_TRANSFORM, System.nanoTime() - stageStart);
+          stageStart = System.nanoTime();
+        } else if (this.preTransform == null && !this.processXML) {
+          // move PSML files manually
+          stage = ProcessListener.Stage.MOVE_FILES;
+          this.logger.info("Moving {} PSML content file(s)", psml.size());
+          for (Map.Entry<String, File> fileEntry : psml.entrySet()) {
+            moveFile(fileEntry.getValue(), new File(this.dest, fileEntry.getKey()));
+          }
         }
-      }
 
-      // remove the source psml documents
-      if (!this.preserveSrc) {
-        this.logger.debug("Removing source document(s)");
-        if (!deleteDirectory(this.src, false))
-          throw new ProcessException("Failed to delete source files");
-      } else if (manifestFile != null) {
-        // remove manifest file that was created in the source folder
-        if (!manifestFile.delete())
-          throw new ProcessException("Failed to delete manifest file "+manifestFile.getAbsolutePath());
-      }
+        // move other files, including images to maybe a new location
+        stage = ProcessListener.Stage.MOVE_FILES;
+        boolean moveImages = this.imageHandling != null && this.imageHandling.getLocation() != null;
+        this.logger.info("Moving {} non PSML file(s)", rest.size());
+        if (moveImages) this.logger.info("Moving images to {}", this.imageHandling.getLocation());
+        for (Map.Entry<String, File> fileEntry : rest.entrySet()) {
+          String relPath = fileEntry.getKey();
+          // Strip manifest?
+          if ("META-INF/manifest.xml".equals(relPath) && this.strip != null && this.strip.stripManifest()) continue;
+          // Index of a previous process
+          if (("META-INF/" + ImageMetadataIndex.SIDECAR).equals(relPath)) continue;
+          File other = fileEntry.getValue();
+          File target;
+          if (moveImages && imageCache.isCached(relPath)) {
+            String newPath = this.imageHandling.getSrc() == ImageSrc.LOCATION ? relPath : imageCache.getImageNewPath(relPath);
+            target = new File(this.imageHandling.getLocation(), newPath);
+          } else {
+            target = new File(this.dest, relPath);
+          }
+          moveFile(other, target);
+        }
+        this.listener.stage(ProcessListener.Stage.MOVE_FILES, System.nanoTime() - stageStart);
+
+        // remove temp folders
+        if (!tempFoldersToDelete.isEmpty()) {
+          this.logger.debug("Removing {} temp folder(s)", tempFoldersToDelete.size());
+          for (File folder : tempFoldersToDelete) {
+            if (!deleteDirectory(folder, true))
+              this.logger.warn("Failed to remove temp folder {}", folder.getAbsolutePath());
+          }
+        }
 
-    } catch (ProcessException ex) {
-      // revert created files
-      // first manifest
-      if (manifestFile != null && manifestFile.exists() && !manifestFile.delete())
-        this.logger.warn("Failed to delete manifest file {}", manifestFile.getAbsolutePath());
-      // then compare current destination files with original ones
-      if (ffiles != null) for (File f : ffiles) {
-        if (!originalFilesInDestination.contains(f)) {
-          if (f.isFile()) {
-            if (!f.delete())
-              this.logger.warn("Failed to delete created file {}", f.getName());
-          } else if (!deleteDirectory(f, true))
-            this.logger.warn("Failed to delete created folder {}", f.getName());
+        // remove the source psml documents
+        if (!this.preserveSrc) {
+          this.logger.debug("Removing source document(s)");
+          if (!deleteDirectory(this.src, false))
+            throw new ProcessException("Failed to delete source files");
+        } else if (manifestFile != null) {
+          // remove manifest file that was created in the source folder
+          if (!manifestFile.delete())
+            throw new ProcessException("Failed to delete manifest file "+manifestFile.getAbsolutePath());
+        }
+        this.listener.complete(System.nanoTime() - start);
+
+      } catch (ProcessException ex) {
+        // revert created files
+        // first manifest
+        if (manifestFile != null && manifestFile.exists() && !manifestFile.delete())
+          this.logger.warn("Failed to delete manifest file {}", manifestFile.getAbsolutePath());
+        // then compare current destination files with original ones
+        if (ffiles != null) for (File f : ffiles) {
+          if (!originalFilesInDestination.contains(f)) {
+            if (f.isFile()) {
+              if (!f.delete())
+                this.logger.warn("Failed to delete created file {}", f.getName());
+            } else if (!deleteDirectory(f, true))
+              this.logger.warn("Failed to delete created folder {}", f.getName());
+          }
         }
+        throw ex;
       }
+    } catch (ProcessException | RuntimeException ex) {
+      this.listener.failed(stage, ex);
       throw ex;
     }
   }
@@ -524,6 +694,9 @@ public final class Process {
   /**
    * Process the XRefs using the XML parser.
    *
+   * <p>If the number of threads is greater than one, independent documents are processed
+   * concurrently, see {@link #setThreads(int)}.
+   *
    * @param psmlFiles     the list of files to process
    * @param source        where the source PSML files are located
    * @param destination   where to save the output files
@@ -536,93 +709,205 @@ public final class Process {
                       ImageCache cache) throws ProcessException {
     // make sure we've got something to do
     if (!this.processXML) return;
-    AsciiMathConverter.reset();
     IncludesExcludesMatcher xrefsMatcher = this.xrefs == null ? null : this.xrefs.buildMatcher();
-    for (Map.Entry<String, File> fileEntry : psmlFiles.entrySet()) {
-      String relPath = fileEntry.getKey();
-      // log
-      this.logger.debug("Processing file {}", relPath);
-      // create temp output file
-      FileOutputStream fos;
-      File tempOutput;
-      try {
-        tempOutput = File.createTempFile("temp", ".psml");
-        fos = new FileOutputStream(tempOutput);
-      } catch (IOException e) {
-        this.logger.error("Failed to create temp output file: {}", e.getMessage(), e);
-        throw new ProcessException("Failed to create temp output file: "+e.getMessage(), e);
+    TransclusionCache documents = this.transclusionCacheSize > 0 ? new TransclusionCache(this.transclusionCacheSize) : null;
+    if (this.threads > 1 && psmlFiles.size() > 1 && !hasOrderDependentImagePaths()) {
+      processConcurrently(psmlFiles, source, destination, binaries, cache, documents, xrefsMatcher);
+    } else {
+      for (Map.Entry<String, File> fileEntry : psmlFiles.entrySet()) {
+        processFile(fileEntry.getKey(), fileEntry.getValue(), source, destination, binaries, cache, documents, xrefsMatcher);
+      }
+    }
+    // log
+    if (documents != null)
+      this.logger.debug("Transclusion cache: {} document(s) parsed, {} replayed", documents.misses(), documents.hits());
+    this.logger.debug("Complete");
+  }
+
+  /**
+   * Process the PSML files using a fixed pool of threads.
+   *
+   * <p>Each document is processed independently and writes to its own output file, so the
+   * output is the same as when processing sequentially. Errors are reported in the order of
+   * the relative paths: the first error is thrown and any other is added as suppressed.
+   * When <code>failOnError</code> is set, documents not yet started are skipped after the
+   * first error.
+   *
+   * @param psmlFiles     the list of files to process
+   * @param source        where the source PSML files are located
+   * @param destination   where to save the output files
+   * @param binaries      where the binary files are located
+   * @param cache         the image metadata cache
+   * @param documents     the cache of parsed documents for transclusions (may be null)
+   * @param xrefsMatcher  the matcher for files to process xrefs for
+   *
+   * @throws ProcessException if anything goes wrong
+   */
+  private void processConcurrently(Map<String, File> psmlFiles, File source, File destination, File binaries,
+                                   ImageCache cache, @Nullable TransclusionCache documents,
+                                   @Nullable IncludesExcludesMatcher xrefsMatcher)
+      throws ProcessException {
+    int poolSize = Math.min(this.threads, psmlFiles.size());
+    this.logger.debug("Processing {} PSML file(s) using {} threads", psmlFiles.size(), poolSize);
+    ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+    AtomicBoolean aborted = new AtomicBoolean(false);
+    Map<String, Future<?>> tasks = new TreeMap<>();
+    try {
+      for (Map.Entry<String, File> fileEntry : new TreeMap<>(psmlFiles).entrySet()) {
+        String relPath = fileEntry.getKey();
+        File psml = fileEntry.getValue();
+        tasks.put(relPath, executor.submit(() -> {
+          if (aborted.get()) return null;
+          try {
+            processFile(relPath, psml, source, destination, binaries, cache, documents, xrefsMatcher);
+          } catch (ProcessException | RuntimeException ex) {
+            aborted.set(true);
+            throw ex;
+          }
+          return null;
+        }));
       }
-      File psml = fileEntry.getValue();
-      // create handler
-      PSMLProcessHandler handler1 = new PSMLProcessHandler(new OutputStreamWriter(fos, UTF8), null, psml, source, binaries);
-      // set error handling details
-      handler1.setLogger(this.logger);
-      handler1.setFailOnError(this.failOnError);
-      handler1.setProcessed(this.processed);
-      handler1.setConvertMarkdown(this.convertMarkdown);
-      handler1.setConvertAsciiMath(this.convertAsciiMath);
-      handler1.setConvertTex(this.convertTex);
-      handler1.setPlaceholders(this.placeholders);
-      // add xrefs handling details
-      List<String> xrefsTypes = null;
-      boolean excludeXRefFrag = false;
-      boolean onlyXRefFrag = false;
-
-      // make sure the path matches
-      if (this.xrefs != null && this.xrefs.getTypes() != null && (xrefsMatcher == null ||
-          !xrefsMatcher.hasPatterns() ||
-          xrefsMatcher.matches(relPath))) {
-        xrefsTypes = Arrays.asList(this.xrefs.getTypes().toLowerCase().split(","));
-        excludeXRefFrag = this.xrefs.excludeXRefsInXRefFragment();
-        onlyXRefFrag = this.xrefs.onlyXRefsInXRefFragment();
-        if (!this.xrefs.getLevels()) {
-          this.logger.error("XRef levels option is no longer supported, use publication config instead.");
+      // collect errors in a predictable order
+      ProcessException error = null;
+      for (Map.Entry<String, Future<?>> task : tasks.entrySet()) {
+        try {
+          task.getValue().get();
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          ProcessException pex = cause instanceof ProcessException ? (ProcessException) cause :
+              new ProcessException("Failed to process " + task.getKey() + ": " + cause.getMessage(), cause);
+          if (error == null) error = pex;
+          else error.addSuppressed(pex);
         }
       }
-      handler1.setXRefsHandling(xrefsTypes, excludeXRefFrag, onlyXRefFrag,
-              this.error != null && this.error.getXrefNotFound(),
-              this.warning == null || this.warning.getXrefNotFound());
-      handler1.setEmbedLinkMetadata(this.embedLinkMetadata);
-      // add images paths processing details
-      boolean embedMetadata = false;
-      ImageCache thecache = null;
-      ImageSrc imageSrc = ImageSrc.LOCATION;
-      String siteprefix = null;
-      if (this.imageHandling != null && (this.imageMatcher == null ||
-          !this.imageMatcher.hasPatterns() ||
-          this.imageMatcher.matches(relPath))) {
-        // set proper values
-        thecache            = cache;
-        imageSrc            = this.imageHandling.getSrc();
-        siteprefix          = this.imageHandling.getSitePrefix();
-        embedMetadata       = this.imageHandling.isMetadataEmbedded();
+      if (error != null) throw error;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ProcessException("Interrupted while processing PSML files", ex);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Unique image filenames are allocated in the order images are found, so documents
+   * must be processed sequentially for the output to be predictable.
+   *
+   * @return <code>true</code> if the image paths depend on the order the documents are processed
+   */
+  private boolean hasOrderDependentImagePaths() {
+    if (this.imageHandling == null) return false;
+    ImageSrc imageSrc = this.imageHandling.getSrc();
+    if (imageSrc == ImageSrc.FILENAME || imageSrc == ImageSrc.FILENAMEENCODE) {
+      this.logger.info("Image src {} requires documents to be processed sequentially", imageSrc);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Process a single PSML file in two passes.
+   *
+   * @param relPath       the path of the file relative to the source folder
+   * @param psml          the file to process
+   * @param source        where the source PSML files are located
+   * @param destination   where to save the output files
+   * @param binaries      where the binary files are located
+   * @param cache         the image metadata cache
+   * @param documents     the cache of parsed documents for transclusions (may be null)
+   * @param xrefsMatcher  the matcher for files to process xrefs for
+   *
+   * @throws ProcessException if anything goes wrong
+   */
+  private void processFile(String relPath, File psml, File source, File destination, File binaries,
+                           ImageCache cache, @Nullable TransclusionCache documents,
+                           @Nullable IncludesExcludesMatcher xrefsMatcher) throws ProcessException {
+    // log
+    this.logger.debug("Processing file {}", relPath);
+    long start = System.nanoTime();
+    // time spent on the prescan, reported separately from the first pass
+    long prescan = 0;
+    // keep first pass output in memory unless it is too large
+    SpillWriter tempOutput = new SpillWriter(this.memoryThreshold);
+    // create handler
+    PSMLProcessHandler handler1 = new PSMLProcessHandler(tempOutput, null, psml, source, binaries);
+    // set error handling details
+    handler1.setLogger(this.logger);
+    handler1.setFailOnError(this.failOnError);
+    handler1.setProcessed(this.processed);
+    handler1.setConvertMarkdown(this.convertMarkdown);
+    handler1.setConvertAsciiMath(this.convertAsciiMath);
+    handler1.setConvertTex(this.convertTex);
+    handler1.setPlaceholders(this.placeholders);
+    handler1.setTransclusionCache(documents);
+    handler1.setListener(this.listener);
+    // add xrefs handling details
+    List<String> xrefsTypes = null;
+    boolean excludeXRefFrag = false;
+    boolean onlyXRefFrag = false;
+
+    // make sure the path matches
+    if (this.xrefs != null && this.xrefs.getTypes() != null && (xrefsMatcher == null ||
+        !xrefsMatcher.hasPatterns() ||
+        xrefsMatcher.matches(relPath))) {
+      xrefsTypes = Arrays.asList(this.xrefs.getTypes().toLowerCase().split(","));
+      excludeXRefFrag = this.xrefs.excludeXRefsInXRefFragment();
+      onlyXRefFrag = this.xrefs.onlyXRefsInXRefFragment();
+      if (!this.xrefs.getLevels()) {
+        this.logger.error("XRef levels option is no longer supported, use publication config instead.");
       }
-      handler1.setImageHandling(thecache, imageSrc,
-              this.error != null && this.error.getImageNotFound(),
-              this.warning == null || this.warning.getImageNotFound(),
-              siteprefix, embedMetadata);
-      // add publication config
-      try {
-        if (this.publicationConfig != null && this.publicationRoot.equals(relPath)) {
-          handler1.setPublicationConfig(this.publicationConfig, psml, this.generateToc);
-        }
-        // add elements stripping details
-        handler1.setStrip(this.strip);
-        // parse XML input
-        XMLUtils.parse(psml, handler1);
-      } catch (ProcessException e) {
-        if (this.failOnError) throw e;
-        else this.logger.error(e.getMessage());
-      } catch (Throwable e) {
-        throw new ProcessException("Failed to process " + relPath + ": " + e.getMessage(), e);
-      } finally {
-        try {
-          fos.close();
-        } catch (IOException ex) {
-          throw new ProcessException("Failed to close output stream: "+ex.getMessage(), ex);
+    }
+    handler1.setXRefsHandling(xrefsTypes, excludeXRefFrag, onlyXRefFrag,
+            this.error != null && this.error.getXrefNotFound(),
+            this.warning == null || this.warning.getXrefNotFound());
+    handler1.setEmbedLinkMetadata(this.embedLinkMetadata);
+    // add images paths processing details
+    boolean embedMetadata = false;
+    ImageCache thecache = null;
+    ImageSrc imageSrc = ImageSrc.LOCATION;
+    String siteprefix = null;
+    if (this.imageHandling != null && (this.imageMatcher == null ||
+        !this.imageMatcher.hasPatterns() ||
+        this.imageMatcher.matches(relPath))) {
+      // set proper values
+      thecache            = cache;
+      imageSrc            = this.imageHandling.getSrc();
+      siteprefix          = this.imageHandling.getSitePrefix();
+      embedMetadata       = this.imageHandling.isMetadataEmbedded();
+    }
+    handler1.setImageHandling(thecache, imageSrc,
+            this.error != null && this.error.getImageNotFound(),
+            this.warning == null || this.warning.getImageNotFound(),
+            siteprefix, embedMetadata);
+    // add publication config
+    try {
+      if (this.publicationConfig != null && this.publicationRoot.equals(relPath)) {
+        handler1.setPublicationConfig(this.publicationConfig, psml, this.generateToc);
+        if (this.prescanPublication) {
+          long prescanStart = System.nanoTime();
+          handler1.prescanPublication(this.threads);
+          prescan = System.nanoTime() - prescanStart;
+          this.listener.stage(ProcessListener.Stage.PRESCAN, prescan);
         }
       }
-      // removed as isDebugEnabled may not be reliable
+      // add elements stripping details
+      handler1.setStrip(this.strip);
+      // parse XML input
+      XMLUtils.parse(psml, handler1);
+    } catch (ProcessException e) {
+      if (this.failOnError) throw e;
+      else this.logger.error(e.getMessage());
+    } catch (Throwable e) {
+      throw new ProcessException("Failed to process " + relPath + ": " + e.getMessage(), e);
+    } finally {
+      try {
+        tempOutput.close();
+      } catch (IOException ex) {
+        tempOutput.delete();
+        throw new ProcessException("Failed to close output stream: "+ex.getMessage(), ex);
+      }
+    }
+    // removed as isDebugEnabled may not be reliable
 //      if (this.logger.isDebugEnabled()) {
 //        Map<String, Map<String, Integer[]>> ids = handler1.getHierarchyUriFragIDs();
 //        Set<String> keys = ids.keySet();
@@ -637,69 +922,78 @@ public final class Process {
 //        }
 //      }
 //      try {
-//        if (fileEntry.getValue().getName().equals("transclude.psml"))
+//        if (psml.getName().equals("transclude.psml"))
 //          System.out.println(Files.readString(tempOutput.toPath()));
 //      } catch (IOException e) {
 //        throw new RuntimeException(e);
 //      }
-      // ok second pass now
-      this.logger.debug("Second pass file {}", relPath);
-      try {
-        File output = new File(destination, relPath);
-        // just in case
-        output.getParentFile().mkdirs();
-        if (!output.exists() && !output.createNewFile())
-          throw new ProcessException("Failed to create output file "+output.getAbsolutePath());
-        fos = new FileOutputStream(output);
-      } catch (IOException e) {
-        this.logger.error("Failed to create output file: "+e.getMessage(), e);
-        throw new ProcessException("Failed to create output file: "+e.getMessage(), e);
-      }
-      // create parser
-      PSMLProcessHandler2 handler2 = new PSMLProcessHandler2(new OutputStreamWriter(fos, UTF8), relPath);
-      handler2.setLogger(this.logger);
-      handler2.setFailOnError(this.failOnError);
-      handler2.setErrorOnAmbiguous(this.error != null && this.error.getXrefAmbiguous());
-      handler2.setWarnOnAmbiguous(this.warning == null || this.warning.getXrefAmbiguous());
-      handler2.setHierarchyUriFragIDs(handler1.getHierarchyUriFragIDs());
-      handler2.setRelativiseImagePaths(imageSrc == ImageSrc.LOCATION);
-      handler2.setProcessed(this.processed);
-      handler2.setProcessXRefs(xrefsTypes != null);
-      try {
-        // generate numbering
-        NumberedTOCGenerator numberingAndTOC = handler1.getNumberedTOCGenerator();
-        if (numberingAndTOC != null) {
-          numberingAndTOC.updatePublication();
+    long secondPassStart = System.nanoTime();
+    this.listener.stage(ProcessListener.Stage.FIRST_PASS, secondPassStart - start - prescan);
+    // ok second pass now
+    this.logger.debug("Second pass file {}", relPath);
+    FileOutputStream fos;
+    try {
+      File output = new File(destination, relPath);
+      // just in case
+      output.getParentFile().mkdirs();
+      if (!output.exists() && !output.createNewFile())
+        throw new ProcessException("Failed to create output file "+output.getAbsolutePath());
+      fos = new FileOutputStream(output);
+    } catch (IOException e) {
+      tempOutput.delete();
+      this.logger.error("Failed to create output file: "+e.getMessage(), e);
+      throw new ProcessException("Failed to create output file: "+e.getMessage(), e);
+    }
+    // create parser
+    PSMLProcessHandler2 handler2 = new PSMLProcessHandler2(new OutputStreamWriter(fos, UTF8), relPath);
+    handler2.setLogger(this.logger);
+    handler2.setFailOnError(this.failOnError);
+    handler2.setErrorOnAmbiguous(this.error != null && this.error.getXrefAmbiguous());
+    handler2.setWarnOnAmbiguous(this.warning == null || this.warning.getXrefAmbiguous());
+    handler2.setHierarchyUriFragIDs(handler1.getHierarchyUriFragIDs());
+    handler2.setRelativiseImagePaths(imageSrc == ImageSrc.LOCATION);
+    handler2.setProcessed(this.processed);
+    handler2.setProcessXRefs(xrefsTypes != null);
+    try {
+      // generate numbering
+      NumberedTOCGenerator numberingAndTOC = handler1.getNumberedTOCGenerator();
+      if (numberingAndTOC != null) {
+        numberingAndTOC.updatePublication();
+        // keep the numbering computed by the prescan unless the first pass added trees
+        if (numberingAndTOC.fragmentNumbering() == null) {
           numberingAndTOC.setFragmentNumbering(
               new FragmentNumbering(numberingAndTOC.publicationTree(), this.publicationConfig));
-          handler2.setPublicationConfig(this.publicationConfig, numberingAndTOC, this.generateToc);
-          //Map<String,Prefix> prefixes = numberingAndTOC.fragmentNumbering().getAllPrefixes();
-          //String result = prefixes.entrySet()
-          //    .stream().sorted(Map.Entry.comparingByKey())
-          //    .map(entry -> entry.getKey() + " - " + entry.getValue())
-          //    .collect(Collectors.joining("\n"));
-          //System.out.println(result);
-        }
-        // parse XML input
-        XMLUtils.parse(tempOutput, handler2);
-      } catch (XRefLoopException e) {
-        throw new ProcessException(e.getMessage(), e);
-      } catch (ProcessException e) {
-        if (this.failOnError) throw e;
-        else this.logger.error(e.getMessage());
-      } finally {
-        // try to remove temp file
-        tempOutput.delete();
-        // close stream
-        try {
-          fos.close();
-        } catch (IOException ex) {
-          throw new ProcessException("Failed to close output stream: "+ex.getMessage(), ex);
         }
+        handler2.setPublicationConfig(this.publicationConfig, numberingAndTOC, this.generateToc);
+        //Map<String,Prefix> prefixes = numberingAndTOC.fragmentNumbering().getAllPrefixes();
+        //String result = prefixes.entrySet()
+        //    .stream().sorted(Map.Entry.comparingByKey())
+        //    .map(entry -> entry.getKey() + " - " + entry.getValue())
+        //    .collect(Collectors.joining("\n"));
+        //System.out.println(result);
+      }
+      // parse XML input
+      XMLUtils.parse(tempOutput.getReader(), handler2);
+    } catch (IOException e) {
+      throw new ProcessException("Failed to read first pass output: "+e.getMessage(), e);
+    } catch (XRefLoopException e) {
+      throw new ProcessException(e.getMessage(), e);
+    } catch (ProcessException e) {
+      if (this.failOnError) throw e;
+      else this.logger.error(e.getMessage());
+    } finally {
+      // release buffer and try to remove temp file
+      tempOutput.delete();
+      // close stream
+      try {
+        fos.close();
+      } catch (IOException ex) {
+        throw new ProcessException("Failed to close output stream: "+ex.getMessage(), ex);
       }
     }
-    // log
-    this.logger.debug("Complete");
+    long end = System.nanoTime();
+    this.listener.stage(ProcessListener.Stage.SECOND_PASS, end - secondPassStart);
+    this.listener.document(relPath, end - start);
   }
 
   /*
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+
+/**
+ * Receives the timings and counters of a {@link Process} to find where the time goes.
+ *
+ * <p>All durations are in nanoseconds. When documents are processed concurrently, the methods
+ * are called from several threads so implementations must be thread-safe.
+ *
+ * <p>All methods do nothing by default so that implementations only need to override the
+ * events they are interested in.
+ *
+ * <p>Each process ends with exactly one call to either {@link #complete(long)} or
+ * {@link #failed(Stage, Exception)}, so a stage which was started but not reported has failed.
+ *
+ * @see ProcessMetrics
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public interface ProcessListener {
+
+  /**
+   * A listener which ignores all events.
+   */
+  ProcessListener NONE = new ProcessListener() {};
+
+  /**
+   * The stages of a process.
+   */
+  enum Stage {
+
+    /** Collecting the files in the source folder */
+    COLLECT,
+
+    /** Creating the manifest document */
+    MANIFEST,
+
+    /** Running the XSLT transformation before processing */
+    PRE_TRANSFORM,
+
+    /** Indexing the image metadata files */
+    IMAGE_INDEX,
+
+    /** Building the document trees of the publication before its first pass */
+    PRESCAN,
+
+    /** First pass of a document: transclusions, images, strip and numbering */
+    FIRST_PASS,
+
+    /** Second pass of a document: XRef resolution and numbering output */
+    SECOND_PASS,
+
+    /** Running the XSLT transformation after processing */
+    POST_TRANSFORM,
+
+    /** Moving the files to the destination */
+    MOVE_FILES
+  }
+
+  /**
+   * Called when a stage has completed.
+   *
+   * <p>The first and second passes are reported for each document, so they are reported
+   * as many times as there are documents.
+   *
+   * @param stage The stage
+   * @param nanos The duration
+   */
+  default void stage(Stage stage, long nanos) {
+  }
+
+  /**
+   * Called when a document has been processed in both passes.
+   *
+   * @param path  The path of the document relative to the source folder
+   * @param nanos The duration including transclusions
+   */
+  default void document(String path, long nanos) {
+  }
+
+  /**
+   * Called when an XRef target has been transcluded.
+   *
+   * @param source The document containing the XRef
+   * @param target The document transcluded
+   * @param nanos  The duration including nested transclusions
+   */
+  default void transclusion(File source, File target, long nanos) {
+  }
+
+  /**
+   * Called when the metadata of an image has been looked up.
+   *
+   * @param path   The path of the image relative to the source folder
+   * @param cached Whether the metadata was already cached
+   * @param nanos  The duration
+   */
+  default void imageMetadata(String path, boolean cached, long nanos) {
+  }
+
+  /**
+   * Called when math content has been converted to MathML.
+   *
+   * @param format The format of the source: "asciimath" or "tex"
+   * @param nanos  The duration
+   */
+  default void mathConversion(String format, long nanos) {
+  }
+
+  /**
+   * Called when the process has completed successfully.
+   *
+   * @param nanos The duration of the whole process
+   */
+  default void complete(long nanos) {
+  }
+
+  /**
+   * Called when the process has failed, instead of {@link #complete(long)}.
+   *
+   * <p>The stage is <code>null</code> if a document failed to process, since both passes
+   * are reported for each document.
+   *
+   * @param stage The stage which failed
+   * @param ex    The exception thrown by the process
+   */
+  default void failed(@Nullable Stage stage, Exception ex) {
+  }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A process listener collecting the timings and counters of a process into a summary report.
+ *
+ * <p>For example:
+ * <pre>{@code
+ * ProcessMetrics metrics = new ProcessMetrics();
+ * process.setListener(metrics);
+ * process.process();
+ * logger.info(metrics.report());
+ * }</pre>
+ *
+ * <p>The report lists the time spent in each stage and the slowest documents and transcluded
+ * documents. Times of documents processed concurrently are added so the total of a stage can
+ * be greater than the duration of the process. If the last process failed, the report starts
+ * with the failure instead of the duration.
+ *
+ * <p>This class is thread-safe and can be used for several processes to add their metrics.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class ProcessMetrics implements ProcessListener {
+
+  /**
+   * Default number of slowest documents listed in the report.
+   */
+  public static final int DEFAULT_SLOWEST = 10;
+
+  /**
+   * Number of slowest documents listed in the report.
+   */
+  private final int slowest;
+
+  /**
+   * Time and count of each stage.
+   */
+  private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+
+  /**
+   * Time of each document processed.
+   */
+  private final Map<String, Timer> documents = new ConcurrentHashMap<>();
+
+  /**
+   * Time of each transcluded document.
+   */
+  private final Map<File, Timer> transclusions = new ConcurrentHashMap<>();
+
+  /**
+   * Time of image metadata lookups.
+   */
+  private final Timer images = new Timer();
+
+  /**
+   * Number of image metadata lookups found in the cache.
+   */
+  private final LongAdder cachedImages = new LongAdder();
+
+  /**
+   * Time of math conversions by source format.
+   */
+  private final Map<String, Timer> math = new ConcurrentHashMap<>();
+
+  /**
+   * Duration of the last process completed.
+   */
+  private final AtomicLong total = new AtomicLong();
+
+  /**
+   * Failure of the last process or <code>null</code> if it completed.
+   */
+  private final AtomicReference<@Nullable String> failure = new AtomicReference<>();
+
+  /**
+   * Creates new metrics listing the default number of slowest documents.
+   */
+  public ProcessMetrics() {
+    this(DEFAULT_SLOWEST);
+  }
+
+  /**
+   * Creates new metrics.
+   *
+   * @param slowest The number of slowest documents listed in the report
+   *
+   * @throws IllegalArgumentException If the number is negative
+   */
+  public ProcessMetrics(int slowest) {
+    if (slowest < 0) throw new IllegalArgumentException("Number of slowest documents cannot be negative");
+    this.slowest = slowest;
+    for (Stage stage : Stage.values()) {
+      this.stages.put(stage, new Timer());
+    }
+  }
+
+  @Override
+  public void stage(Stage stage, long nanos) {
+    this.stages.get(stage).add(nanos);
+  }
+
+  @Override
+  public void document(String path, long nanos) {
+    this.documents.computeIfAbsent(path, p -> new Timer()).add(nanos);
+  }
+
+  @Override
+  public void transclusion(File source, File target, long nanos) {
+    this.transclusions.computeIfAbsent(target, t -> new Timer()).add(nanos);
+  }
+
+  @Override
+  public void imageMetadata(String path, boolean cached, long nanos) {
+    this.images.add(nanos);
+    if (cached) this.cachedImages.increment();
+  }
+
+  @Override
+  public void mathConversion(String format, long nanos) {
+    this.math.computeIfAbsent(format, f -> new Timer()).add(nanos);
+  }
+
+  @Override
+  public void complete(long nanos) {
+    this.total.set(nanos);
+    this.failure.set(null);
+  }
+
+  @Override
+  public void failed(@Nullable Stage stage, Exception ex) {
+    this.failure.set((stage == null ? "" : " in stage " + stage) + ": " + ex.getMessage());
+  }
+
+  /**
+   * @param stage The stage
+   *
+   * @return the total time spent in the stage in nanoseconds.
+   */
+  public long getStageTime(Stage stage) {
+    return this.stages.get(stage).nanos.sum();
+  }
+
+  /**
+   * @return the number of documents processed.
+   */
+  public int getDocumentCount() {
+    return this.documents.size();
+  }
+
+  /**
+   * @param path The path of the document relative to the source folder
+   *
+   * @return the time spent processing the document in nanoseconds (0 if not processed).
+   */
+  public long getDocumentTime(String path) {
+    Timer timer = this.documents.get(path);
+    return timer == null ? 0 : timer.nanos.sum();
+  }
+
+  /**
+   * @return the number of transclusions.
+   */
+  public long getTransclusionCount() {
+    long count = 0;
+    for (Timer timer : this.transclusions.values()) count += timer.count.sum();
+    return count;
+  }
+
+  /**
+   * @return the number of image metadata lookups.
+   */
+  public long getImageMetadataCount() {
+    return this.images.count.sum();
+  }
+
+  /**
+   * @return the number of image metadata lookups found in the cache.
+   */
+  public long getCachedImageMetadataCount() {
+    return this.cachedImages.sum();
+  }
+
+  /**
+   * @return the number of math conversions.
+   */
+  public long getMathConversionCount() {
+    long count = 0;
+    for (Timer timer : this.math.values()) count += timer.count.sum();
+    return count;
+  }
+
+  /**
+   * @return the duration of the last process completed in nanoseconds.
+   */
+  public long getTotalTime() {
+    return this.total.get();
+  }
+
+  /**
+   * @return <code>true</code> if the last process failed.
+   */
+  public boolean isFailed() {
+    return this.failure.get() != null;
+  }
+
+  /**
+   * @return the paths of the slowest documents, slowest first.
+   */
+  public List<String> getSlowestDocuments() {
+    List<String> paths = new ArrayList<>();
+    for (Map.Entry<String, Timer> entry : slowest(this.documents)) {
+      paths.add(entry.getKey());
+    }
+    return paths;
+  }
+
+  /**
+   * @return a summary report of the metrics on several lines.
+   */
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    String failed = this.failure.get();
+    if (failed != null) {
+      report.append("Process failed").append(failed).append('\n');
+    } else {
+      report.append("Process completed in ").append(millis(this.total.get())).append('\n');
+    }
+    report.append("Stages:\n");
+    for (Map.Entry<Stage, Timer> entry : this.stages.entrySet()) {
+      Timer timer = entry.getValue();
+      if (timer.count.sum() == 0) continue;
+      report.append(String.format(Locale.ROOT, "  %-15s %12s", entry.getKey(), millis(timer.nanos.sum())));
+      if (timer.count.sum() > 1) {
+        report.append(" (").append(timer.count.sum()).append(" times, max ").append(millis(timer.max.get())).append(')');
+      }
+      report.append('\n');
+    }
+    report.append("Documents: ").append(this.documents.size()).append('\n');
+    for (Map.Entry<String, Timer> entry : slowest(this.documents)) {
+      report.append(String.format(Locale.ROOT, "  %12s  %s%n", millis(entry.getValue().nanos.sum()), entry.getKey()));
+    }
+    report.append("Transclusions: ").append(getTransclusionCount()).append('\n');
+    for (Map.Entry<File, Timer> entry : slowest(this.transclusions)) {
+      Timer timer = entry.getValue();
+      report.append(String.format(Locale.ROOT, "  %12s  %s (%d times)%n", millis(timer.nanos.sum()), entry.getKey().getPath(), timer.count.sum()));
+    }
+    report.append("Image metadata: ").append(this.images.count.sum()).append(" lookups, ")
+        .append(this.cachedImages.sum()).append(" cached, ").append(millis(this.images.nanos.sum())).append('\n');
+    report.append("Math conversions: ").append(getMathConversionCount());
+    for (Map.Entry<String, Timer> entry : this.math.entrySet()) {
+      Timer timer = entry.getValue();
+      report.append(", ").append(entry.getKey()).append(' ').append(timer.count.sum())
+          .append(" in ").append(millis(timer.nanos.sum()));
+    }
+    report.append('\n');
+    return report.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "ProcessMetrics[documents=" + this.documents.size() + ", transclusions=" + getTransclusionCount()
+        + ", images=" + getImageMetadataCount() + ", math=" + getMathConversionCount()
+        + ", total=" + millis(this.total.get()) + (isFailed() ? ", failed" : "") + "]";
+  }
+
+  /**
+   * @return the slowest entries, slowest first.
+   */
+  private <K> List<Map.Entry<K, Timer>> slowest(Map<K, Timer> timers) {
+    List<Map.Entry<K, Timer>> entries = new ArrayList<>(timers.entrySet());
+    entries.sort(Comparator.comparingLong((Map.Entry<K, Timer> entry) -> entry.getValue().nanos.sum()).reversed());
+    return entries.subList(0, Math.min(this.slowest, entries.size()));
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000.0);
+  }
+
+  /**
+   * A count and duration updated concurrently.
+   */
+  private static final class Timer {
+
+    /** Number of times */
+    private final LongAdder count = new LongAdder();
+
+    /** Total duration in nanoseconds */
+    private final LongAdder nanos = new LongAdder();
+
+    /** Longest duration in nanoseconds */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private void add(long duration) {
+      this.count.increment();
+      this.nanos.add(duration);
+      this.max.accumulate(duration);
+    }
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.psml.toc.DocumentTree;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the document trees of all the documents transcluded from a publication root
+ * before the publication is processed.
+ *
+ * <p>Documents are scanned one level of transclusion at a time, the documents of a level
+ * are scanned concurrently when more than one thread is used. Each document is parsed once,
+ * the documents it transcludes are collected while its tree is built.
+ *
+ * <p>Any document which cannot be scanned is ignored: its tree is built again when the
+ * publication is processed so that errors are reported as usual.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class PublicationScanner {
+
+  /**
+   * The handler for the publication root.
+   */
+  private final PSMLProcessHandler root;
+
+  /**
+   * The number of threads to use.
+   */
+  private final int threads;
+
+  /**
+   * @param root    the handler for the publication root
+   * @param threads the number of threads to use
+   */
+  PublicationScanner(PSMLProcessHandler root, int threads) {
+    this.root = root;
+    this.threads = threads;
+  }
+
+  /**
+   * Scan all the documents transcluded from the file.
+   *
+   * @param file    the publication root
+   * @param targets the documents transcluded by the publication root
+   *
+   * @return the document trees keyed by file (see {@link NumberedTOCGenerator#toKey(File)})
+   */
+  Map<String, DocumentTree> scan(File file, List<File> targets) {
+    Map<String, DocumentTree> trees = new HashMap<>();
+    Set<String> seen = new HashSet<>();
+    seen.add(NumberedTOCGenerator.toKey(file));
+    List<File> level = new ArrayList<>();
+    for (File target : targets) {
+      if (seen.add(NumberedTOCGenerator.toKey(target))) level.add(target);
+    }
+    ExecutorService executor = this.threads > 1 ? Executors.newFixedThreadPool(this.threads) : null;
+    try {
+      while (!level.isEmpty()) {
+        List<Result> results = new ArrayList<>(level.size());
+        if (executor != null && level.size() > 1) {
+          List<Future<Result>> tasks = new ArrayList<>(level.size());
+          for (File target : level) {
+            tasks.add(executor.submit(() -> scanDocument(target)));
+          }
+          for (Future<Result> task : tasks) {
+            results.add(task.get());
+          }
+        } else {
+          for (File target : level) {
+            results.add(scanDocument(target));
+          }
+        }
+        // next level, in document order
+        List<File> next = new ArrayList<>();
+        for (Result result : results) {
+          if (result.tree != null) trees.put(NumberedTOCGenerator.toKey(result.file), result.tree);
+          for (File target : result.targets) {
+            if (seen.add(NumberedTOCGenerator.toKey(target))) next.add(target);
+          }
+        }
+        level = next;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      this.root.getLogger().warn("Interrupted while scanning publication {}", file.getName());
+    } catch (ExecutionException ex) {
+      this.root.getLogger().warn("Unable to scan publication {}: {}", file.getName(), ex.getCause().getMessage());
+    } finally {
+      if (executor != null) executor.shutdownNow();
+    }
+    this.root.getLogger().debug("Scanned {} document(s) in publication {}", trees.size(), file.getName());
+    return trees;
+  }
+
+  /**
+   * Build the tree of a document and find the documents it transcludes.
+   *
+   * @param file the document
+   *
+   * @return the result of the scan
+   */
+  private Result scanDocument(File file) {
+    PSMLProcessHandler handler = this.root.cloneForScan(file);
+    TargetCollector collector = new TargetCollector(handler.getTranscluder());
+    DocumentTree tree = null;
+    try {
+      tree = handler.buildDocumentTree(file, true, collector);
+    } catch (ProcessException | RuntimeException ex) {
+      // ignore, the tree will be built again when processing the publication
+    }
+    return new Result(file, tree, collector.targets());
+  }
+
+  /**
+   * The result of scanning a document.
+   */
+  private static final class Result {
+
+    /**
+     * The document scanned.
+     */
+    private final File file;
+
+    /**
+     * The document tree (null if it could not be built).
+     */
+    private final @Nullable DocumentTree tree;
+
+    /**
+     * The documents transcluded.
+     */
+    private final List<File> targets;
+
+    /**
+     * @param file    the document scanned
+     * @param tree    the document tree
+     * @param targets the documents transcluded
+     */
+    Result(File file, @Nullable DocumentTree tree, List<File> targets) {
+      this.file = file;
+      this.tree = tree;
+      this.targets = targets;
+    }
+  }
+
+  /**
+   * Collects the PSML documents targeted by the XRefs which would be transcluded
+   * and passes all events on to the handler building the document tree.
+   */
+  static final class TargetCollector extends XMLFilterImpl {
+
+    /**
+     * The transcluder used to resolve the targets.
+     */
+    private final XRefTranscluder transcluder;
+
+    /**
+     * The targets found.
+     */
+    private final List<File> targets = new ArrayList<>();
+
+    /**
+     * Number of xref-fragment elements currently open.
+     */
+    private int inXRefFragment = 0;
+
+    /**
+     * @param transcluder the transcluder used to resolve the targets
+     */
+    TargetCollector(XRefTranscluder transcluder) {
+      this.transcluder = transcluder;
+    }
+
+    /**
+     * @return the targets found in the order they are referenced
+     */
+    List<File> targets() {
+      return this.targets;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+      if ("xref-fragment".equals(qName)) {
+        this.inXRefFragment++;
+      } else if ("xref".equals(qName) || "blockxref".equals(qName)) {
+        try {
+          File target = this.transcluder.findTranscludedTarget(atts, this.inXRefFragment > 0, false, false, false);
+          // only PSML documents have a tree
+          if (target != null && !XRefTranscluder.isMathTarget(atts.getValue("type"), atts)) {
+            this.targets.add(target);
+          }
+        } catch (XRefTranscluder.XRefNotFoundException ex) {
+          // reported when the XRef is transcluded
+        }
+      }
+      super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+      if ("xref-fragment".equals(qName)) this.inXRefFragment--;
+      super.endElement(uri, localName, qName);
+    }
+  }
+
+}
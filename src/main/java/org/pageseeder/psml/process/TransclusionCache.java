@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.psml.process.util.SAXRecording;
+import org.pageseeder.psml.process.util.XMLUtils;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed documents used when transcluding XRef targets.
+ *
+ * <p>Each document is parsed once into a {@link SAXRecording} which is then replayed
+ * to the handlers instead of parsing the file again. Entries are keyed by canonical
+ * path and are invalidated if the file was modified since it was recorded.
+ *
+ * <p>The cache is bounded by the total weight of the recordings (approximately the number
+ * of characters they hold), the least recently used documents are evicted first.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class TransclusionCache {
+
+  /**
+   * The default maximum weight (32M characters).
+   */
+  public static final long DEFAULT_MAX_WEIGHT = 32L * 1024 * 1024;
+
+  /**
+   * The maximum total weight of the recordings.
+   */
+  private final long maxWeight;
+
+  /**
+   * The recordings by canonical path in access order.
+   */
+  private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+  /**
+   * The current total weight of the recordings.
+   */
+  private long weight = 0;
+
+  /**
+   * Number of times a document was replayed from the cache.
+   */
+  private final AtomicLong hits = new AtomicLong();
+
+  /**
+   * Number of times a document had to be parsed.
+   */
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param maxWeight the maximum total weight of the recordings
+   */
+  public TransclusionCache(long maxWeight) {
+    if (maxWeight <= 0) throw new IllegalArgumentException("Maximum weight must be positive");
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Parse the file using the handler provided, replaying the recorded events if
+   * the file was already parsed.
+   *
+   * @param file     the XML file
+   * @param handler  the XML handler
+   *
+   * @throws ProcessException if the parsing failed
+   */
+  public void parse(File file, ContentHandler handler) throws ProcessException {
+    String key = toKey(file);
+    long modified = file.lastModified();
+    SAXRecording recording = get(key, modified);
+    if (recording == null) {
+      this.misses.incrementAndGet();
+      recording = new SAXRecording();
+      try {
+        XMLUtils.parse(file, recording);
+      } catch (ProcessException ex) {
+        // let the handler receive the events and report the error as if it had not been cached
+        XMLUtils.parse(file, handler);
+        throw ex;
+      }
+      put(key, new Entry(modified, recording));
+    } else {
+      this.hits.incrementAndGet();
+    }
+    try {
+      recording.replay(handler);
+    } catch (SAXException ex) {
+      throw new ProcessException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * @return the number of times a document was replayed from the cache
+   */
+  public long hits() {
+    return this.hits.get();
+  }
+
+  /**
+   * @return the number of times a document had to be parsed
+   */
+  public long misses() {
+    return this.misses.get();
+  }
+
+  /**
+   * @return the number of documents currently in the cache
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * @return the current total weight of the recordings
+   */
+  public synchronized long weight() {
+    return this.weight;
+  }
+
+  /**
+   * Remove all the recordings.
+   */
+  public synchronized void clear() {
+    this.entries.clear();
+    this.weight = 0;
+  }
+
+  /**
+   * @param key      the canonical path
+   * @param modified when the file was last modified
+   *
+   * @return the recording if still valid
+   */
+  private synchronized @Nullable SAXRecording get(String key, long modified) {
+    Entry entry = this.entries.get(key);
+    if (entry == null) return null;
+    if (entry.modified == modified) return entry.recording;
+    this.entries.remove(key);
+    this.weight -= entry.recording.weight();
+    return null;
+  }
+
+  /**
+   * Add the recording and evict the least recently used entries if needed.
+   *
+   * @param key   the canonical path
+   * @param entry the entry to cache
+   */
+  private synchronized void put(String key, Entry entry) {
+    long w = entry.recording.weight();
+    if (w > this.maxWeight) return;
+    Entry previous = this.entries.put(key, entry);
+    if (previous != null) this.weight -= previous.recording.weight();
+    this.weight += w;
+    Iterator<Entry> it = this.entries.values().iterator();
+    while (this.weight > this.maxWeight && it.hasNext()) {
+      Entry eldest = it.next();
+      it.remove();
+      this.weight -= eldest.recording.weight();
+    }
+  }
+
+  /**
+   * @param file the file
+   *
+   * @return the canonical path or the absolute path if it could not be computed
+   */
+  private static String toKey(File file) {
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException ex) {
+      return file.getAbsolutePath();
+    }
+  }
+
+  /**
+   * A recording and the modification time of the file it was recorded from.
+   */
+  private static final class Entry {
+
+    /**
+     * When the file was last modified.
+     */
+    private final long modified;
+
+    /**
+     * The recorded events.
+     */
+    private final SAXRecording recording;
+
+    /**
+     * @param modified  when the file was last modified
+     * @param recording the recorded events
+     */
+    Entry(long modified, SAXRecording recording) {
+      this.modified = modified;
+      this.recording = recording;
+    }
+  }
+
+}
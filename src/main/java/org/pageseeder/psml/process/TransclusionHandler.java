@@ -4,25 +4,30 @@
 package org.pageseeder.psml.process;
 
 import org.jspecify.annotations.Nullable;
-import org.pageseeder.psml.process.util.XMLUtils;
 import org.pageseeder.xmlwriter.XMLWriter;
 import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Transcludes one level of {@code <blockxref>} with type="transclude" and href ending in ".psml".
  *
+ * <p>The result can be written to an XML writer or sent as SAX events to another content handler.
+ *
  * @author Philip Rutherford
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public class TransclusionHandler extends DefaultHandler {
@@ -43,9 +48,9 @@ public class TransclusionHandler extends DefaultHandler {
   private final boolean transclude;
 
   /**
-   * The XML writer where XML content is stored
+   * Where the resulting XML content is sent
    */
-  private final XMLWriter xml;
+  private final Output xml;
 
   /**
    * A flag to specifiy if characters should be outputed (for resolved transclusions)
@@ -82,6 +87,11 @@ public class TransclusionHandler extends DefaultHandler {
    */
   private Map<String,String> documentMetadata = new HashMap<>();
 
+  /**
+   * Whether a transclusion could not be parsed
+   */
+  private boolean transclusionFailed = false;
+
   /**
    * @param out        where the resulting XML should be written.
    * @param fragment   the fragment to include or "default" for whole document
@@ -90,6 +100,30 @@ public class TransclusionHandler extends DefaultHandler {
    */
   public TransclusionHandler(XMLWriter out, String fragment, boolean transclude,
       PSMLProcessHandler parent) {
+    this(new WriterOutput(out), fragment, transclude, parent);
+  }
+
+  /**
+   * Sends the resulting XML directly to another handler, no document events are sent.
+   *
+   * @param out        the handler receiving the resulting XML as SAX events.
+   * @param fragment   the fragment to include or "default" for whole document
+   * @param transclude whether to transclude next level
+   * @param parent     the parent handler.
+   */
+  public TransclusionHandler(ContentHandler out, String fragment, boolean transclude,
+      PSMLProcessHandler parent) {
+    this(new SAXOutput(out), fragment, transclude, parent);
+  }
+
+  /**
+   * @param out        where the resulting XML should be sent.
+   * @param fragment   the fragment to include or "default" for whole document
+   * @param transclude whether to transclude next level
+   * @param parent     the parent handler.
+   */
+  private TransclusionHandler(Output out, String fragment, boolean transclude,
+      PSMLProcessHandler parent) {
     this.xml = out;
     this.fragment = fragment;
     this.transclude = transclude;
@@ -100,6 +134,13 @@ public class TransclusionHandler extends DefaultHandler {
     }
   }
 
+  /**
+   * @return <code>true</code> if a transcluded document could not be parsed
+   */
+  public boolean hasTransclusionFailed() {
+    return this.transclusionFailed;
+  }
+
   /**
    * @return Publication metadata
    */
@@ -181,6 +222,7 @@ public class TransclusionHandler extends DefaultHandler {
         this.ignoreText = resolveTransclusion(atts.getValue("href"), atts.getValue("frag"));
       } catch (TransclusionException ex) {
         this.parentHandler.getLogger().error(ex.getMessage(), ex);
+        this.transclusionFailed = true;
         // handle it normally then
         this.ignoreText = false;
       }
@@ -254,7 +296,7 @@ public class TransclusionHandler extends DefaultHandler {
     TransclusionHandler handler = new TransclusionHandler(this.xml, fragment, false, this.parentHandler);
     handler.documentMetadata = this.documentMetadata;
     try {
-      XMLUtils.parse(target, handler);
+      this.parentHandler.parseXRefTarget(target, handler);
     } catch (ProcessException ex) {
       throw new TransclusionException("Error parsing XRef target for path: " + href, ex);
     }
@@ -286,4 +328,130 @@ public class TransclusionHandler extends DefaultHandler {
       super(msg, cause);
     }
   }
+
+  /**
+   * Where the resulting XML is sent.
+   */
+  private interface Output {
+
+    void openElement(String name, boolean hasChildren) throws IOException, SAXException;
+
+    void attribute(String name, String value) throws IOException, SAXException;
+
+    void writeText(String text) throws IOException, SAXException;
+
+    void writeText(char[] text, int start, int length) throws IOException, SAXException;
+
+    void closeElement() throws IOException, SAXException;
+  }
+
+  /**
+   * Writes the resulting XML to an XML writer.
+   */
+  private static final class WriterOutput implements Output {
+
+    /**
+     * The XML writer where XML content is stored
+     */
+    private final XMLWriter xml;
+
+    WriterOutput(XMLWriter xml) {
+      this.xml = xml;
+    }
+
+    @Override
+    public void openElement(String name, boolean hasChildren) throws IOException {
+      this.xml.openElement(name, hasChildren);
+    }
+
+    @Override
+    public void attribute(String name, String value) throws IOException {
+      this.xml.attribute(name, value);
+    }
+
+    @Override
+    public void writeText(String text) throws IOException {
+      this.xml.writeText(text);
+    }
+
+    @Override
+    public void writeText(char[] text, int start, int length) throws IOException {
+      this.xml.writeText(text, start, length);
+    }
+
+    @Override
+    public void closeElement() throws IOException {
+      this.xml.closeElement();
+    }
+  }
+
+  /**
+   * Sends the resulting XML as SAX events, start elements are deferred until all attributes are known.
+   */
+  private static final class SAXOutput implements Output {
+
+    /**
+     * The handler receiving the events
+     */
+    private final ContentHandler handler;
+
+    /**
+     * The names of the elements currently open
+     */
+    private final Deque<String> elements = new ArrayDeque<>();
+
+    /**
+     * The attributes of the element not yet sent
+     */
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    /**
+     * The name of the element not yet sent
+     */
+    private @Nullable String pending = null;
+
+    SAXOutput(ContentHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void openElement(String name, boolean hasChildren) throws SAXException {
+      flush();
+      this.pending = name;
+      this.elements.push(name);
+    }
+
+    @Override
+    public void attribute(String name, String value) {
+      this.attributes.addAttribute("", "", name, "CDATA", value);
+    }
+
+    @Override
+    public void writeText(String text) throws SAXException {
+      writeText(text.toCharArray(), 0, text.length());
+    }
+
+    @Override
+    public void writeText(char[] text, int start, int length) throws SAXException {
+      flush();
+      this.handler.characters(text, start, length);
+    }
+
+    @Override
+    public void closeElement() throws SAXException {
+      flush();
+      this.handler.endElement("", "", this.elements.pop());
+    }
+
+    /**
+     * Send the pending start element if any.
+     */
+    private void flush() throws SAXException {
+      if (this.pending != null) {
+        this.handler.startElement("", "", this.pending, this.attributes);
+        this.attributes.clear();
+        this.pending = null;
+      }
+    }
+  }
 }
@@ -5,19 +5,13 @@ package org.pageseeder.psml.process;
 
 import org.jspecify.annotations.Nullable;
 import org.pageseeder.psml.process.math.TexConverter;
-import org.pageseeder.psml.process.util.XMLUtils;
 import org.pageseeder.psml.toc.DocumentTree;
-import org.pageseeder.psml.toc.DocumentTreeHandler;
 import org.pageseeder.psml.util.RelativePaths;
-import org.pageseeder.xmlwriter.XML.NamespaceAware;
-import org.pageseeder.xmlwriter.XMLStringWriter;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
@@ -32,7 +26,7 @@ import java.util.Map;
  *
  * @author Jean-Baptiste Reure
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class XRefTranscluder {
@@ -180,26 +174,12 @@ public final class XRefTranscluder {
    */
   public boolean transcludeXRef(Attributes atts, boolean inXrefFragment, boolean image,
                                 boolean link, boolean inEmbedHierarchy, boolean convertTex) throws ProcessException {
-    // should transclude?
-    if (!image && !link &&
-       ((inXrefFragment && this.excludeXRefFragment) ||
-       (!inXrefFragment && this.onlyXRefFrament))) return false;
+    File target = findTranscludedTarget(atts, inXrefFragment, image, link, convertTex);
     String href = atts.getValue(image ? "src" : "href");
     String type = image ? "image" : link ? "link" : atts.getValue("type");
     String uriid = atts.getValue("uriid");
-    boolean transclude = image ? this.transcludeImages : link ? this.transcludeLinks : this.xrefsTranscludeTypes.contains(type);
-    if (transclude && !"true".equals(atts.getValue("external")) &&
-        !"true".equals(atts.getValue("unresolved")) && uriid != null) {
-      File target = findXRefTarget(href, uriid, link);
-      // make sure it's valid
-      if (target == null || !target.exists() ||!target.isFile()) {
-        throw new XRefNotFoundException();
-      }
-      boolean mathTarget = "math".equalsIgnoreCase(type) && "default".equals(atts.getValue("frag"));
-      // ensure PSML or mathml for math xrefs
-      if ((!mathTarget && !target.getName().endsWith(".psml")) ||
-          (mathTarget  && !target.getName().endsWith(".mml") && !target.getName().endsWith(".mathml") && !(convertTex && target.getName().endsWith(".tex"))))
-        return false;
+    if (target != null) {
+      boolean mathTarget = isMathTarget(type, atts);
       // check for depth
       if (this.parentFiles.size() > MAX_DEPTH)
         throw new TooDeepException();
@@ -222,7 +202,11 @@ public final class XRefTranscluder {
           this.parentHandler.write("<media-fragment id=\"media\" mediatype=\"application/mathml+xml\">");
           if (convertTex && target.getName().endsWith(".tex")) {
             try {
-              this.parentHandler.write(TexConverter.convert(String.join("", java.nio.file.Files.readAllLines(target.toPath()))));
+              String tex = String.join("", java.nio.file.Files.readAllLines(target.toPath()));
+              long start = System.nanoTime();
+              String mathml = TexConverter.convert(tex);
+              this.parentHandler.getListener().mathConversion("tex", System.nanoTime() - start);
+              this.parentHandler.write(mathml);
             } catch (IOException ex) {
               throw new ProcessException("Failed to read contents of file "+target.getName()+": "+ex.getMessage(), ex);
             } catch (IllegalArgumentException ex) {
@@ -258,27 +242,73 @@ public final class XRefTranscluder {
           "alternate".equals(type) || this.parentHandler.inAlternateXRef());
       handler.getTranscluder().parentFiles.putAll(this.parentFiles);
       // parse now
-      XMLUtils.parse(target, handler);
+      long start = System.nanoTime();
+      this.parentHandler.parseXRefTarget(target, handler);
+      this.parentHandler.getListener().transclusion(this.parentHandler.getSourceFile(), target, System.nanoTime() - start);
       // if publication then parse TOC
       if (numberingAndTOC != null) {
-        // process transclusions
-        XMLStringWriter out = new XMLStringWriter(NamespaceAware.No);
-        TransclusionHandler thandler = new TransclusionHandler(out, "default", true, handler);
-        XMLUtils.parse(target, thandler);
-        // parse document tree
-        DocumentTreeHandler tochandler = new DocumentTreeHandler();
-        XMLUtils.parse(new InputSource(new StringReader(out.toString())), tochandler, null, null);
-        DocumentTree tree = tochandler.get();
-        if (tree != null) {
-          tree = tree.normalize(this.parentHandler.getPublicationConfig().getTocTitleCollapse());
-          numberingAndTOC.addTree(tree);
-        }
+        // use the tree built when scanning the publication if possible
+        DocumentTree tree = numberingAndTOC.getDocumentTree(target);
+        if (tree == null) tree = handler.buildDocumentTree(target, false);
+        if (tree != null) numberingAndTOC.addTree(tree);
       }
       return true;
     }
     return false;
   }
 
+  /**
+   * Find the target of an XRef if it is transcluded.
+   *
+   * <p>This is also used when scanning a publication so that the document trees are built
+   * for the same documents as the ones transcluded.
+   *
+   * @param atts           The attributes on the XRef
+   * @param inXrefFragment If this XRef is in an XRefFragment
+   * @param image          If this is an image
+   * @param link           If this is a link
+   * @param convertTex     If xrefs to .tex should be converted
+   *
+   * @return the target file or <code>null</code> if the XRef is not transcluded
+   *
+   * @throws XRefNotFoundException if the XRef is transcluded but the target does not exist
+   */
+  @Nullable File findTranscludedTarget(Attributes atts, boolean inXrefFragment, boolean image,
+                                       boolean link, boolean convertTex) throws XRefNotFoundException {
+    // should transclude?
+    if (!image && !link &&
+       ((inXrefFragment && this.excludeXRefFragment) ||
+       (!inXrefFragment && this.onlyXRefFrament))) return null;
+    String type = image ? "image" : link ? "link" : atts.getValue("type");
+    String uriid = atts.getValue("uriid");
+    boolean transclude = image ? this.transcludeImages : link ? this.transcludeLinks : this.xrefsTranscludeTypes.contains(type);
+    if (!transclude || "true".equals(atts.getValue("external")) ||
+        "true".equals(atts.getValue("unresolved")) || uriid == null) return null;
+    File target = findXRefTarget(atts.getValue(image ? "src" : "href"), uriid, link);
+    // make sure it's valid
+    if (target == null || !target.exists() ||!target.isFile()) {
+      throw new XRefNotFoundException();
+    }
+    // ensure PSML or mathml for math xrefs
+    String name = target.getName();
+    if (isMathTarget(type, atts)) {
+      if (!name.endsWith(".mml") && !name.endsWith(".mathml") && !(convertTex && name.endsWith(".tex"))) return null;
+    } else if (!name.endsWith(".psml")) {
+      return null;
+    }
+    return target;
+  }
+
+  /**
+   * @param type The type of XRef
+   * @param atts The attributes on the XRef
+   *
+   * @return <code>true</code> if the XRef is to a math document, <code>false</code> if it is to a PSML document
+   */
+  static boolean isMathTarget(@Nullable String type, Attributes atts) {
+    return "math".equalsIgnoreCase(type) && "default".equals(atts.getValue("frag"));
+  }
+
   /**
    * @param href the href attribute of the xref.
    * @param uriid The URI ID of the xref
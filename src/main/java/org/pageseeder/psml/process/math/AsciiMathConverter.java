@@ -2,13 +2,12 @@ package org.pageseeder.psml.process.math;
 
 import org.jspecify.annotations.Nullable;
 import org.pageseeder.psml.process.util.WrappingReader;
-import org.pageseeder.psml.util.PSCache;
+import org.pageseeder.psml.util.ConcurrentCache;
 
 import javax.script.*;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Collections;
-import java.util.Map;
+import java.time.Duration;
 
 /**
  * A utility class for converting AsciiMath expressions to MathML.
@@ -18,24 +17,29 @@ import java.util.Map;
  * performance.
  *
  * <p>The class is thread-safe, ensuring that concurrent access to shared resources does not
- * create inconsistencies. It uses a synchronized cache and synchronized blocks to manage access
- * to the JavaScript engine.
+ * create inconsistencies. It uses a concurrent cache and a pool of JavaScript engines, each used
+ * by one thread at a time, so that several threads can convert at the same time.
  *
  * <p>This class is not instantiable.
  *
  * @author Jean-Baptiste Reure
  * @author Philip Rutherford
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class AsciiMathConverter {
 
   private static final String JS_SCRIPT = "/org/pageseeder/psml/process/math/ASCIIMathML.js";
 
-  private static @Nullable Invocable script = null;
+  private static final ScriptPool pool = new ScriptPool(AsciiMathConverter::load, ScriptPool.DEFAULT_SIZE);
 
-  private static final Map<String, String> cache = Collections.synchronizedMap(new PSCache<>(200));
+  /**
+   * Default maximum number of conversions cached.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 200;
+
+  private static volatile ConcurrentCache<String, String> cache = new ConcurrentCache<>(DEFAULT_CACHE_SIZE);
 
   private AsciiMathConverter() {}
 
@@ -62,9 +66,7 @@ public final class AsciiMathConverter {
 
       // invoke the function named "parse" with the ascii math as the argument
       try {
-        synchronized (AsciiMathConverter.class) {
-          result = script().invokeFunction("parse", am).toString();
-        }
+        result = pool.invokeFunction("parse", am).toString();
         cache.put(am, result);
       } catch (ScriptException | NoSuchMethodException | IOException ex) {
         throw new IllegalArgumentException(
@@ -75,21 +77,72 @@ public final class AsciiMathConverter {
   }
 
   /**
-   * Clears the script engine.
-   * This should be done before each process,
-   * otherwise the conversion will get slower over time.
+   * Clears the script engines, they are created again when needed.
+   *
+   * <p>The engines are kept between processes so that they stay warm, call this method
+   * to release them.
    */
   public static void reset() {
-    synchronized (AsciiMathConverter.class) {
-      script = null;
-    }
+    pool.reset();
+  }
+
+  /**
+   * Replace the cache of converted expressions, the expressions already cached are discarded.
+   *
+   * @param size the maximum number of expressions cached (default is {@value #DEFAULT_CACHE_SIZE})
+   * @param ttl  how long expressions stay in the cache after they are converted (zero for no expiry, the default)
+   *
+   * @throws IllegalArgumentException If the size is less than 1 or the time to live is negative
+   */
+  public static void setCache(int size, Duration ttl) {
+    cache = new ConcurrentCache<>(size, ttl);
   }
 
-  private static Invocable script() throws ScriptException, IOException {
-    synchronized (AsciiMathConverter.class) {
-      if (script != null) return script;
+  /**
+   * @return the maximum number of converted expressions cached.
+   */
+  public static int getCacheSize() {
+    return cache.maxSize();
+  }
+
+  /**
+   * Set the maximum number of script engines used for concurrent conversions.
+   *
+   * @param size the pool size (default is the number of processors up to 4)
+   *
+   * @throws IllegalArgumentException If the size is less than 1
+   */
+  public static void setPoolSize(int size) {
+    pool.setSize(size);
+  }
+
+  /**
+   * @return the maximum number of script engines used for concurrent conversions.
+   */
+  public static int getPoolSize() {
+    return pool.size();
+  }
+
+  /**
+   * Load the script in all the engines of the pool so that the first conversions are not delayed.
+   *
+   * @throws IllegalStateException If the script could not be loaded
+   */
+  public static void warmUp() {
+    try {
+      pool.warmUp();
+    } catch (ScriptException | IOException ex) {
+      throw new IllegalStateException("Failed to load ASCIIMath to MathML JS script: " + ex.getMessage(), ex);
     }
+  }
 
+  /**
+   * Create a script engine with the AsciiMath script loaded and its symbols initialised.
+   *
+   * <p>The symbols are only initialised once per engine as <code>initSymbols()</code> adds
+   * the TeX symbols again each time it is called.
+   */
+  static Invocable load() throws ScriptException, IOException {
     // load script
     ScriptEngineManager manager = new ScriptEngineManager();
     ScriptEngine engine = manager.getEngineByName("rhino");
@@ -99,11 +152,11 @@ public final class AsciiMathConverter {
     try {
       CompiledScript cscript = cengine.compile(new WrappingReader(
           new InputStreamReader(AsciiMathConverter.class.getResourceAsStream(JS_SCRIPT)),
-          prefix(), "var parse = function(str) {asciimath.initSymbols(); return asciimath.parseMath(str, false).toXML();};"));
+          prefix(), "asciimath.initSymbols();" +
+          "var parse = function(str) {return asciimath.parseMath(str, false).toXML();};"));
       cscript.eval();
       // create an Invocable object by casting the script engine object
-      script = (Invocable) cscript.getEngine();
-      return (Invocable) cscript.getEngine(); // don't return SCRIPT as it may have been reset by another thread
+      return (Invocable) cscript.getEngine();
     } catch (ScriptException | IOException ex) {
       System.err.println("Failed to load ASCIIMath to MathML JS script: "+ex.getMessage());
       throw ex;
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process.math;
+
+import javax.script.Invocable;
+import javax.script.ScriptException;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of script engines with the same script loaded so that scripts can be invoked from
+ * several threads at the same time.
+ *
+ * <p>Engines are created when needed up to the pool size, threads wait for an engine to be
+ * returned to the pool when they are all in use.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class ScriptPool {
+
+  /**
+   * Time to wait for an engine before checking the pool again.
+   */
+  private static final long WAIT_MILLIS = 100;
+
+  /**
+   * Default maximum number of engines.
+   */
+  static final int DEFAULT_SIZE = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Creates a script engine with the script loaded.
+   */
+  @FunctionalInterface
+  interface Loader {
+
+    /**
+     * @return a new script engine with the script loaded
+     *
+     * @throws ScriptException If the script could not be compiled or evaluated
+     * @throws IOException If the script could not be read
+     */
+    Invocable load() throws ScriptException, IOException;
+  }
+
+  /**
+   * Creates the engines.
+   */
+  private final Loader loader;
+
+  /**
+   * Engines available for use.
+   */
+  private final BlockingQueue<Engine> available = new LinkedBlockingQueue<>();
+
+  /**
+   * Maximum number of engines.
+   */
+  private int size;
+
+  /**
+   * Number of engines created for the current generation.
+   */
+  private int created = 0;
+
+  /**
+   * Incremented when the pool is reset so that engines in use are discarded when returned.
+   */
+  private int generation = 0;
+
+  /**
+   * @param loader Creates the engines
+   * @param size   Maximum number of engines
+   */
+  ScriptPool(Loader loader, int size) {
+    this.loader = loader;
+    this.size = checkSize(size);
+  }
+
+  /**
+   * @return the maximum number of engines
+   */
+  synchronized int size() {
+    return this.size;
+  }
+
+  /**
+   * Set the maximum number of engines, extra engines are discarded when returned to the pool.
+   *
+   * @param size the maximum number of engines
+   *
+   * @throws IllegalArgumentException If the size is less than 1
+   */
+  void setSize(int size) {
+    synchronized (this) {
+      this.size = checkSize(size);
+    }
+    // discard extra idle engines
+    while (true) {
+      synchronized (this) {
+        if (this.created <= this.size) return;
+        if (this.available.poll() == null) return;
+        this.created--;
+      }
+    }
+  }
+
+  /**
+   * Create engines until the pool is full.
+   *
+   * @throws ScriptException If the script could not be compiled or evaluated
+   * @throws IOException If the script could not be read
+   */
+  void warmUp() throws ScriptException, IOException {
+    int generation;
+    while ((generation = reserve()) != -1) {
+      release(create(generation));
+    }
+  }
+
+  /**
+   * Discard all engines, engines in use are discarded when they are returned.
+   */
+  synchronized void reset() {
+    this.generation++;
+    this.created = 0;
+    this.available.clear();
+  }
+
+  /**
+   * Invoke a function on one of the engines of the pool.
+   *
+   * @param name The name of the function
+   * @param args The arguments of the function
+   *
+   * @return the value returned by the function
+   *
+   * @throws ScriptException If thrown while invoking the function
+   * @throws NoSuchMethodException If there is no function with the specified name
+   * @throws IOException If the script could not be loaded
+   */
+  Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException, IOException {
+    Engine engine = borrow();
+    try {
+      return engine.invocable.invokeFunction(name, args);
+    } finally {
+      release(engine);
+    }
+  }
+
+  /**
+   * @return an engine from the pool or a new one if allowed
+   */
+  private Engine borrow() throws ScriptException, IOException {
+    try {
+      while (true) {
+        Engine engine = this.available.poll();
+        if (engine != null) return engine;
+        int generation = reserve();
+        if (generation != -1) return create(generation);
+        // check again periodically in case the pool was reset or resized
+        engine = this.available.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        if (engine != null) return engine;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for script engine", ex);
+    }
+  }
+
+  /**
+   * Return an engine to the pool unless it was reset or is now too large.
+   */
+  private synchronized void release(Engine engine) {
+    if (engine.generation != this.generation) return;
+    if (this.created > this.size) {
+      this.created--;
+    } else {
+      this.available.add(engine);
+    }
+  }
+
+  /**
+   * Reserve the creation of a new engine.
+   *
+   * @return the current generation or -1 if the pool is full
+   */
+  private synchronized int reserve() {
+    if (this.created >= this.size) return -1;
+    this.created++;
+    return this.generation;
+  }
+
+  /**
+   * Create a new engine, releasing the reservation if it fails.
+   */
+  private Engine create(int generation) throws ScriptException, IOException {
+    boolean ok = false;
+    try {
+      Engine engine = new Engine(this.loader.load(), generation);
+      ok = true;
+      return engine;
+    } finally {
+      if (!ok) {
+        synchronized (this) {
+          if (generation == this.generation) this.created--;
+        }
+      }
+    }
+  }
+
+  private static int checkSize(int size) {
+    if (size < 1) throw new IllegalArgumentException("Pool size must be at least 1");
+    return size;
+  }
+
+  /**
+   * A script engine with the generation of the pool it was created for.
+   */
+  private static final class Engine {
+
+    /** The script engine */
+    private final Invocable invocable;
+
+    /** The generation of the pool */
+    private final int generation;
+
+    private Engine(Invocable invocable, int generation) {
+      this.invocable = invocable;
+      this.generation = generation;
+    }
+  }
+
+}
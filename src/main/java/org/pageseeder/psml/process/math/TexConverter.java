@@ -2,14 +2,13 @@ package org.pageseeder.psml.process.math;
 
 import org.jspecify.annotations.Nullable;
 import org.pageseeder.psml.process.util.WrappingReader;
-import org.pageseeder.psml.util.PSCache;
+import org.pageseeder.psml.util.ConcurrentCache;
 
 import javax.script.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Collections;
-import java.util.Map;
+import java.time.Duration;
 
 /**
  * A utility class for converting TeX strings into MathML format using the KaTeX JavaScript library.
@@ -18,11 +17,14 @@ import java.util.Map;
  * (Least Recently Used) cache to optimize performance by avoiding repeated conversions for the
  * same input.
  *
+ * <p>Conversions use a pool of script engines so that several threads can convert at the same
+ * time. Call {@link #warmUp()} to load the script in all the engines in advance.
+ *
  * <p>Note: This class is not instantiable and provides utility functions only.
  *
  * @author Jean-Baptiste Reure
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class TexConverter {
@@ -36,9 +38,14 @@ public final class TexConverter {
   /**
    * Note: The script doesn't need to be reset as it does not seem to get slower over time
    */
-  private static @Nullable Invocable script = null;
+  private static final ScriptPool pool = new ScriptPool(TexConverter::load, ScriptPool.DEFAULT_SIZE);
 
-  private static final Map<String, String> cache = Collections.synchronizedMap(new PSCache<>(200));
+  /**
+   * Default maximum number of conversions cached.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 200;
+
+  private static volatile ConcurrentCache<String, String> cache = new ConcurrentCache<>(DEFAULT_CACHE_SIZE);
 
   /**
    * Convert the provided TeX string to mathml content
@@ -59,9 +66,7 @@ public final class TexConverter {
 
       // invoke the function named "parse" with the TeX math as the argument
       try {
-        synchronized (TexConverter.class) {
-          result = script().invokeFunction("parse", input).toString();
-        }
+        result = pool.invokeFunction("parse", input).toString();
         // extract mathml from HTML result
         result = extractMathML(result);
         cache.put(input, result);
@@ -72,6 +77,56 @@ public final class TexConverter {
     return result;
   }
 
+  /**
+   * Replace the cache of converted expressions, the expressions already cached are discarded.
+   *
+   * @param size the maximum number of expressions cached (default is {@value #DEFAULT_CACHE_SIZE})
+   * @param ttl  how long expressions stay in the cache after they are converted (zero for no expiry, the default)
+   *
+   * @throws IllegalArgumentException If the size is less than 1 or the time to live is negative
+   */
+  public static void setCache(int size, Duration ttl) {
+    cache = new ConcurrentCache<>(size, ttl);
+  }
+
+  /**
+   * @return the maximum number of converted expressions cached.
+   */
+  public static int getCacheSize() {
+    return cache.maxSize();
+  }
+
+  /**
+   * Set the maximum number of script engines used for concurrent conversions.
+   *
+   * @param size the pool size (default is the number of processors up to 4)
+   *
+   * @throws IllegalArgumentException If the size is less than 1
+   */
+  public static void setPoolSize(int size) {
+    pool.setSize(size);
+  }
+
+  /**
+   * @return the maximum number of script engines used for concurrent conversions.
+   */
+  public static int getPoolSize() {
+    return pool.size();
+  }
+
+  /**
+   * Load the script in all the engines of the pool so that the first conversions are not delayed.
+   *
+   * @throws IllegalStateException If the script could not be loaded
+   */
+  public static void warmUp() {
+    try {
+      pool.warmUp();
+    } catch (ScriptException | IOException ex) {
+      throw new IllegalStateException("Failed to load KaTex to MathML JS script: " + ex.getMessage(), ex);
+    }
+  }
+
   /**
    * Look for mathml content in the string provided
    *
@@ -100,18 +155,14 @@ public final class TexConverter {
   }
 
   /**
-   * Load the script from the internal resource
+   * Load the script from the internal resource in a new engine
    *
    * @return the script ready to be invoked
    *
    * @throws ScriptException If loading the script failed
    * @throws IOException If loading the script failed
    */
-  private static Invocable script() throws ScriptException, IOException {
-    synchronized (TexConverter.class) {
-      if (script != null) return script;
-    }
-
+  private static Invocable load() throws ScriptException, IOException {
     // load script
     ScriptEngineManager manager = new ScriptEngineManager();
     ScriptEngine engine = manager.getEngineByName("rhino");
@@ -127,8 +178,7 @@ public final class TexConverter {
         CompiledScript cscript = cengine.compile(new WrappingReader(new InputStreamReader(in), scriptPrefix, scriptSuffix));
         cscript.eval();
         // create an Invocable object by casting the script engine object
-        script = (Invocable) cscript.getEngine();
-        return script;
+        return (Invocable) cscript.getEngine();
       } else {
         throw new IllegalArgumentException("Failed to load KaTex to MathML JS script");
       }
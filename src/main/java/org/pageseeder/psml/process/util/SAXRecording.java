@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process.util;
+
+import org.jspecify.annotations.Nullable;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A content handler recording SAX events so that they can be replayed to any
+ * number of other content handlers without parsing the document again.
+ *
+ * <p>The position of the document locator is recorded with each event and a locator is set
+ * on the handlers receiving the events so that they can report the line and column numbers
+ * as when the document is parsed. Handlers receiving the events must not modify the character
+ * arrays passed to them as they are shared between replays.
+ *
+ * <p>Once the document has been recorded, the recording is immutable and can be
+ * replayed by multiple threads at the same time.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class SAXRecording implements ContentHandler {
+
+  /**
+   * The overhead counted for each event when computing the weight.
+   */
+  private static final int EVENT_WEIGHT = 8;
+
+  /**
+   * The recorded events.
+   */
+  private final List<Event> events = new ArrayList<>();
+
+  /**
+   * The line and column numbers of the locator for each event.
+   */
+  private int[] positions = new int[64];
+
+  /**
+   * The public identifier of the document recorded.
+   */
+  private @Nullable String publicId;
+
+  /**
+   * The system identifier of the document recorded.
+   */
+  private @Nullable String systemId;
+
+  /**
+   * The locator of the parser while recording.
+   */
+  private @Nullable Locator locator;
+
+  /**
+   * An approximation of the number of characters held by this recording.
+   */
+  private long weight = 0;
+
+  /**
+   * Replay all the events recorded to the specified handler.
+   *
+   * @param handler the handler receiving the events
+   *
+   * @throws SAXException if thrown by the handler
+   */
+  public void replay(ContentHandler handler) throws SAXException {
+    LocatorImpl locator = new LocatorImpl();
+    locator.setPublicId(this.publicId);
+    locator.setSystemId(this.systemId);
+    locator.setLineNumber(-1);
+    locator.setColumnNumber(-1);
+    handler.setDocumentLocator(locator);
+    for (int i = 0; i < this.events.size(); i++) {
+      locator.setLineNumber(this.positions[i * 2]);
+      locator.setColumnNumber(this.positions[i * 2 + 1]);
+      this.events.get(i).replay(handler);
+    }
+  }
+
+  /**
+   * @return the number of events recorded
+   */
+  public int size() {
+    return this.events.size();
+  }
+
+  /**
+   * @return an approximation of the number of characters held by this recording
+   */
+  public long weight() {
+    return this.weight;
+  }
+
+  @Override
+  public void setDocumentLocator(Locator locator) {
+    this.locator = locator;
+    this.publicId = locator.getPublicId();
+    this.systemId = locator.getSystemId();
+  }
+
+  @Override
+  public void startDocument() {
+    add(ContentHandler::startDocument, 0);
+  }
+
+  @Override
+  public void endDocument() {
+    add(ContentHandler::endDocument, 0);
+    // the locator is only valid during the parse
+    this.locator = null;
+  }
+
+  @Override
+  public void startPrefixMapping(String prefix, String uri) {
+    add(h -> h.startPrefixMapping(prefix, uri), prefix.length() + uri.length());
+  }
+
+  @Override
+  public void endPrefixMapping(String prefix) {
+    add(h -> h.endPrefixMapping(prefix), prefix.length());
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes atts) {
+    AttributesImpl copy = new AttributesImpl(atts);
+    int length = qName.length();
+    for (int i = 0; i < copy.getLength(); i++) {
+      length += copy.getQName(i).length() + copy.getValue(i).length();
+    }
+    add(h -> h.startElement(uri, localName, qName, copy), length);
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    add(h -> h.endElement(uri, localName, qName), 0);
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    char[] text = Arrays.copyOfRange(ch, start, start + length);
+    add(h -> h.characters(text, 0, text.length), length);
+  }
+
+  @Override
+  public void ignorableWhitespace(char[] ch, int start, int length) {
+    char[] text = Arrays.copyOfRange(ch, start, start + length);
+    add(h -> h.ignorableWhitespace(text, 0, text.length), length);
+  }
+
+  @Override
+  public void processingInstruction(String target, @Nullable String data) {
+    add(h -> h.processingInstruction(target, data), target.length() + (data != null ? data.length() : 0));
+  }
+
+  @Override
+  public void skippedEntity(String name) {
+    add(h -> h.skippedEntity(name), name.length());
+  }
+
+  /**
+   * Record an event.
+   *
+   * @param event  the event
+   * @param length the number of characters in the event
+   */
+  private void add(Event event, int length) {
+    int index = this.events.size() * 2;
+    if (index + 1 >= this.positions.length) {
+      this.positions = Arrays.copyOf(this.positions, this.positions.length * 2);
+    }
+    Locator locator = this.locator;
+    this.positions[index] = locator != null ? locator.getLineNumber() : -1;
+    this.positions[index + 1] = locator != null ? locator.getColumnNumber() : -1;
+    this.events.add(event);
+    this.weight += length + EVENT_WEIGHT;
+  }
+
+  /**
+   * A recorded event.
+   */
+  @FunctionalInterface
+  private interface Event {
+
+    /**
+     * @param handler the handler receiving the event
+     *
+     * @throws SAXException if thrown by the handler
+     */
+    void replay(ContentHandler handler) throws SAXException;
+  }
+
+}
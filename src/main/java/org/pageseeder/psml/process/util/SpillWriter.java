@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.process.util;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A writer which keeps its content in memory until it reaches a threshold and
+ * then spills it to a temporary file.
+ *
+ * <p>This is used to hand over the output of the first processing pass to the
+ * second one without going through the disk for most documents. The second pass
+ * still parses this output as XML: the first pass writes markup as text, including
+ * converted MathML, Markdown and transcluded content, so it has no SAX events to hand over.
+ *
+ * <p>Once the writer is closed, the content can be read back with {@link #getReader()}
+ * as many times as needed. Call {@link #delete()} to release the memory or temporary file.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class SpillWriter extends Writer {
+
+  /**
+   * The maximum number of characters to keep in memory.
+   */
+  private final int threshold;
+
+  /**
+   * The in-memory buffer (null once spilled to disk).
+   */
+  private char @Nullable[] buffer = new char[1024];
+
+  /**
+   * The number of characters in the buffer.
+   */
+  private int count = 0;
+
+  /**
+   * The temporary file (only set once spilled to disk).
+   */
+  private @Nullable File file = null;
+
+  /**
+   * The writer to the temporary file (only set once spilled to disk).
+   */
+  private @Nullable Writer out = null;
+
+  /**
+   * @param threshold the maximum number of characters to keep in memory, 0 to always use a temporary file
+   */
+  public SpillWriter(int threshold) {
+    if (threshold < 0) throw new IllegalArgumentException("Threshold must be positive");
+    this.threshold = threshold;
+  }
+
+  @Override
+  public void write(char[] chars, int off, int len) throws IOException {
+    if (this.out == null && this.count + len > this.threshold) spill();
+    if (this.out != null) {
+      this.out.write(chars, off, len);
+    } else {
+      ensureCapacity(this.count + len);
+      System.arraycopy(chars, off, this.buffer, this.count, len);
+      this.count += len;
+    }
+  }
+
+  @Override
+  public void write(String s, int off, int len) throws IOException {
+    if (this.out == null && this.count + len > this.threshold) spill();
+    if (this.out != null) {
+      this.out.write(s, off, len);
+    } else {
+      ensureCapacity(this.count + len);
+      s.getChars(off, off + len, this.buffer, this.count);
+      this.count += len;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (this.out != null) this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (this.out != null) this.out.close();
+  }
+
+  /**
+   * @return <code>true</code> if the content was written to a temporary file
+   */
+  public boolean isSpilled() {
+    return this.file != null;
+  }
+
+  /**
+   * Returns a reader over the content written so far.
+   *
+   * <p>The writer must be closed before the content of a temporary file can be read.
+   *
+   * @return a new reader over the content
+   *
+   * @throws IOException if the temporary file could not be opened
+   */
+  public Reader getReader() throws IOException {
+    if (this.file != null)
+      return new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8);
+    char[] chars = this.buffer != null ? this.buffer : new char[0];
+    return new CharArrayReader(chars, 0, this.count);
+  }
+
+  /**
+   * Release the in-memory buffer and delete the temporary file if any.
+   *
+   * @return <code>false</code> if the temporary file could not be deleted
+   */
+  public boolean delete() {
+    this.buffer = null;
+    this.count = 0;
+    return this.file == null || this.file.delete();
+  }
+
+  /**
+   * Move the content to a temporary file, subsequent writes go to the file.
+   *
+   * @throws IOException if the temporary file could not be created
+   */
+  private void spill() throws IOException {
+    File temp = File.createTempFile("temp", ".psml");
+    this.file = temp;
+    this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+    if (this.buffer != null) this.out.write(this.buffer, 0, this.count);
+    this.buffer = null;
+    this.count = 0;
+  }
+
+  /**
+   * Grow the buffer if needed.
+   *
+   * @param capacity the minimum capacity
+   */
+  private void ensureCapacity(int capacity) {
+    char[] chars = this.buffer;
+    if (chars == null) throw new IllegalStateException("Writer was deleted");
+    if (capacity > chars.length) {
+      this.buffer = Arrays.copyOf(chars, Math.min(Math.max(chars.length * 2, capacity), Math.max(this.threshold, capacity)));
+    }
+  }
+
+}
@@ -270,6 +270,22 @@ public final class XMLUtils {
     }
 }
 
+  /**
+   * Parse the XML input using the handler provided.
+   *
+   * @param in       the XML input (will be closed!)
+   * @param handler  the XML handler
+   *
+   * @throws ProcessException if the parsing failed
+   */
+  public static void parse(Reader in, ContentHandler handler) throws ProcessException {
+    try (in) {
+      parse(new InputSource(in), handler, null, null);
+    } catch (IOException ex) {
+      throw new ProcessException("Failed to close PSML: " + ex.getMessage(), ex);
+    }
+  }
+
   /**
    * Parse the XML input using the handler provided.
    *
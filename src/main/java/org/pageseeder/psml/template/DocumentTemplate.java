@@ -17,6 +17,8 @@ package org.pageseeder.psml.template;
 
 import org.jspecify.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -28,9 +30,12 @@ import java.util.Map;
 /**
  * A PSML template.
  *
+ * <p>The static text of the template is also pre-encoded in its charset so that generating
+ * a document to an output stream only encodes the values.
+ *
  * @author Christophe Lauret
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class DocumentTemplate implements Template {
@@ -50,6 +55,11 @@ public final class DocumentTemplate implements Template {
    */
   private final Map<String, TFragment> fragments;
 
+  /**
+   * The tokens with the static text encoded in the charset.
+   */
+  private final EncodedChunks chunks;
+
   /**
    * Create a new template.
    *
@@ -61,6 +71,7 @@ public final class DocumentTemplate implements Template {
     this.tokens = new ArrayList<>(tokens);
     this.fragments = new HashMap<>(fragments);
     this.charset = charset;
+    this.chunks = EncodedChunks.encode(this.tokens, charset);
   }
 
   /**
@@ -96,14 +107,39 @@ public final class DocumentTemplate implements Template {
   @Override
   public void process(PrintWriter psml, Map<String, String> values, boolean failOnError) throws TemplateException {
     // If fail on error scan for any error reported during parsing
-    if (failOnError) {
-      for (Token token : this.tokens) {
-        if (token instanceof TError) throw new TemplateException(((TError)token).message());
-      }
-    }
+    if (failOnError) checkErrors();
     process(psml, values);
   }
 
+  /**
+   * Generate a new PSML document by writing the pre-encoded bytes of the template and
+   * encoding only the values.
+   *
+   * <p>The stream is flushed but not closed, use a buffered stream for best performance.
+   *
+   * @param psml   Where the PSML is written
+   * @param values The values to use for the place holders
+   * @param failOnError When true the process will fail if an error occurs
+   *
+   * @throws IOException If thrown by the output stream
+   * @throws TemplateException If a fatal error occurs during processing
+   */
+  @Override
+  public void process(OutputStream psml, Map<String, String> values, boolean failOnError) throws IOException, TemplateException {
+    if (failOnError) checkErrors();
+    this.chunks.write(psml, values);
+    psml.flush();
+  }
+
+  /**
+   * @throws TemplateException If an error was reported during parsing
+   */
+  private void checkErrors() throws TemplateException {
+    for (Token token : this.tokens) {
+      if (token instanceof TError) throw new TemplateException(((TError)token).message());
+    }
+  }
+
   /**
    * @return the fragment types from the template
    */
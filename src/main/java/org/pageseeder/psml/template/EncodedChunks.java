@@ -0,0 +1,184 @@
+/*
+ * Copyright 2025 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.psml.template;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The output of a template as alternating chunks of static bytes and tokens depending on values.
+ *
+ * <p>The static text of the template is encoded once when the template is compiled, so that
+ * only the values need to be encoded for each instance.
+ *
+ * <p>Chunks are added using the {@link Token#encode(EncodedChunks)} method of each token, once
+ * {@link #build() built} they are immutable and thread-safe.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class EncodedChunks {
+
+  /**
+   * The charset of the template.
+   */
+  private final Charset charset;
+
+  /**
+   * The static text, one more than the tokens (possibly empty).
+   */
+  private final List<byte[]> statics = new ArrayList<>();
+
+  /**
+   * The tokens depending on values, printed between the static text.
+   */
+  private final List<Token> tokens = new ArrayList<>();
+
+  /**
+   * The static text not encoded yet.
+   */
+  private final StringBuilder text = new StringBuilder();
+
+  /**
+   * Whether chunks can still be added.
+   */
+  private boolean built = false;
+
+  /**
+   * @param charset The charset of the template
+   */
+  EncodedChunks(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Encodes the tokens using the specified charset.
+   *
+   * @param tokens  The tokens of the template
+   * @param charset The charset of the template
+   *
+   * @return the chunks for the tokens
+   */
+  static EncodedChunks encode(List<Token> tokens, Charset charset) {
+    EncodedChunks chunks = new EncodedChunks(charset);
+    for (Token token : tokens) {
+      token.encode(chunks);
+    }
+    return chunks.build();
+  }
+
+  /**
+   * @return the charset of the template
+   */
+  Charset charset() {
+    return this.charset;
+  }
+
+  /**
+   * Adds text to write out verbatim.
+   *
+   * @param text The text already escaped for the charset
+   */
+  void text(CharSequence text) {
+    checkNotBuilt();
+    this.text.append(text);
+  }
+
+  /**
+   * Adds a token which does not depend on values as static text.
+   *
+   * @param token The token to print once
+   */
+  void constant(Token token) {
+    StringWriter printed = new StringWriter();
+    PrintWriter psml = new PrintWriter(printed);
+    token.print(psml, Collections.emptyMap(), this.charset);
+    psml.flush();
+    text(printed.toString());
+  }
+
+  /**
+   * Adds a token printed for each instance.
+   *
+   * @param token The token depending on values
+   */
+  void token(Token token) {
+    checkNotBuilt();
+    flushText();
+    this.tokens.add(token);
+  }
+
+  /**
+   * Encodes the remaining text and prevents any further changes.
+   *
+   * @return these chunks
+   */
+  EncodedChunks build() {
+    if (!this.built) {
+      flushText();
+      this.built = true;
+    }
+    return this;
+  }
+
+  /**
+   * Writes the chunks using the supplied values.
+   *
+   * @param out    Where the bytes are written
+   * @param values The values to use for the placeholders
+   *
+   * @throws IOException If thrown by the output stream
+   */
+  void write(OutputStream out, Map<String, String> values) throws IOException {
+    if (!this.built) throw new IllegalStateException("Chunks must be built first");
+    StringWriter buffer = new StringWriter();
+    PrintWriter value = new PrintWriter(buffer);
+    for (int i = 0; i < this.tokens.size(); i++) {
+      out.write(this.statics.get(i));
+      buffer.getBuffer().setLength(0);
+      this.tokens.get(i).print(value, values, this.charset);
+      value.flush();
+      out.write(buffer.toString().getBytes(this.charset));
+    }
+    out.write(this.statics.get(this.tokens.size()));
+  }
+
+  /**
+   * @return the number of tokens depending on values
+   */
+  int tokenCount() {
+    return this.tokens.size();
+  }
+
+  private void flushText() {
+    this.statics.add(this.text.toString().getBytes(this.charset));
+    this.text.setLength(0);
+  }
+
+  private void checkNotBuilt() {
+    if (this.built) throw new IllegalStateException("Chunks are already built");
+  }
+
+}
@@ -15,14 +15,20 @@
  */
 package org.pageseeder.psml.template;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.jspecify.annotations.Nullable;
@@ -42,9 +48,17 @@ import org.xml.sax.InputSource;
  * p.process(template, psml, values);
  * }</pre>
  *
+ * <p>Templates are compiled once and kept in a {@link TemplateCache}, the shared cache is used
+ * unless another is specified. To generate many documents from the same template, compile it
+ * first and use the batch methods:
+ * <pre>{@code
+ * Template t = p.compile(template);
+ * List<String> instances = p.processAll(t, values);
+ * }</pre>
+ *
  * @author Christophe Lauret
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class Processor {
@@ -64,6 +78,11 @@ public final class Processor {
    */
   private boolean failOnError = false;
 
+  /**
+   * The cache of compiled templates, if any.
+   */
+  private @Nullable TemplateCache cache = TemplateCache.shared();
+
   /**
    * Creates a new processor.
    */
@@ -94,6 +113,51 @@ public final class Processor {
     this.fragment = fragment;
   }
 
+  /**
+   * Sets the cache of compiled templates, defaults to the {@link TemplateCache#shared() shared} cache.
+   *
+   * @param cache the cache to use or <code>null</code> to parse the template every time
+   */
+  public void setCache(@Nullable TemplateCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Compiles the template for the charset and fragment of this processor.
+   *
+   * @param template The file containing the template
+   *
+   * @return the compiled template which can be processed any number of times
+   *
+   * @throws IOException Should an I/O error occur while reading the XML.
+   * @throws TemplateException Should an error occur while parsing the XML.
+   */
+  public Template compile(File template) throws IOException, TemplateException {
+    if (this.cache != null) return this.cache.get(template, this.charset, this.fragment);
+    return compile(new InputSource(template.toURI().toASCIIString()));
+  }
+
+  /**
+   * Compiles the template for the charset and fragment of this processor.
+   *
+   * <p>The template is only cached if the input source is identified by a file URI.
+   *
+   * @param template An XML input source the template to process
+   *
+   * @return the compiled template which can be processed any number of times
+   *
+   * @throws IOException Should an I/O error occur while reading the XML.
+   * @throws TemplateException Should an error occur while parsing the XML.
+   */
+  public Template compile(InputSource template) throws IOException, TemplateException {
+    if (this.cache != null) return this.cache.get(template, this.charset, this.fragment);
+    TemplateFactory factory = new TemplateFactory(this.charset);
+    factory.setFragment(this.fragment);
+    Template t = factory.parse(template);
+    if (t == null) throw new TemplateException("No matching template");
+    return t;
+  }
+
   /**
    * Processes the template and write out the corresponding PSML.
    *
@@ -126,9 +190,10 @@ public final class Processor {
    * @throws TemplateException Should an error occur while parsing the XML.
    */
   public void process(File template, File psml, Map<String, String> values) throws IOException, TemplateException {
-    InputSource source = new InputSource(template.toURI().toASCIIString());
-    PrintWriter out = new PrintWriter(psml, this.charset);
-    process(source, out, values);
+    Template t = compile(template);
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(psml))) {
+      t.process(out, values, this.failOnError);
+    }
   }
 
   /**
@@ -160,11 +225,62 @@ public final class Processor {
    * @throws TemplateException Should an error occur while procesing the template.
    */
   public void process(InputSource template, PrintWriter psml, Map<String, String> values) throws IOException, TemplateException {
-    TemplateFactory factory = new TemplateFactory(this.charset);
-    factory.setFragment(this.fragment);
-    Template t = factory.parse(template);
-    if (t == null) throw new TemplateException("No matching template");
-    t.process(psml, values, this.failOnError);
+    process(compile(template), psml, values);
+  }
+
+  /**
+   * Process a compiled template and generate the PSML using the specified values.
+   *
+   * @param template The compiled template
+   * @param psml A writer for the target PSML file to generate
+   * @param values The parameters to use in the template for processing
+   *
+   * @throws TemplateException Should an error occur while procesing the template.
+   */
+  public void process(Template template, PrintWriter psml, Map<String, String> values) throws TemplateException {
+    template.process(psml, values, this.failOnError);
+  }
+
+  /**
+   * Process a compiled template once for each map of values.
+   *
+   * @param template The compiled template
+   * @param values The parameters to use for each PSML document to generate
+   *
+   * @return the PSML generated for each map of values in the same order
+   *
+   * @throws TemplateException Should an error occur while procesing the template.
+   */
+  public List<String> processAll(Template template, List<? extends Map<String, String>> values) throws TemplateException {
+    List<String> instances = new ArrayList<>(values.size());
+    StringWriter raw = new StringWriter();
+    PrintWriter psml = new PrintWriter(raw);
+    for (Map<String, String> v : values) {
+      raw.getBuffer().setLength(0);
+      process(template, psml, v);
+      instances.add(raw.toString());
+    }
+    return instances;
+  }
+
+  /**
+   * Process a compiled template once for each PSML file to generate.
+   *
+   * <p>The files are written using the charset of the template, the static text of
+   * document templates is only encoded once.
+   *
+   * @param template The compiled template
+   * @param instances The parameters to use for each target PSML file to generate
+   *
+   * @throws IOException Should an I/O error occur while writing a file.
+   * @throws TemplateException Should an error occur while procesing the template.
+   */
+  public void processAll(Template template, Map<File, ? extends Map<String, String>> instances) throws IOException, TemplateException {
+    for (Map.Entry<File, ? extends Map<String, String>> instance : instances.entrySet()) {
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(instance.getKey()))) {
+        template.process(out, instance.getValue(), this.failOnError);
+      }
+    }
   }
 
   public static void main(String[] args) throws IOException, TemplateException {
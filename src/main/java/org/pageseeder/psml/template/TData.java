@@ -28,7 +28,7 @@ import java.util.Objects;
  *
  * @author Christophe Lauret
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 final class TData implements Token {
@@ -59,4 +59,9 @@ final class TData implements Token {
       psml.print(this.data);
     }
   }
+
+  @Override
+  public void encode(EncodedChunks chunks) {
+    chunks.constant(this);
+  }
 }
@@ -28,7 +28,7 @@ import java.util.Objects;
  *
  * @author Christophe Lauret
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 final class TError implements Token {
@@ -66,4 +66,9 @@ final class TError implements Token {
       psml.print("<!-- Template error: "+this.message+" -->");
     }
   }
+
+  @Override
+  public void encode(EncodedChunks chunks) {
+    chunks.constant(this);
+  }
 }
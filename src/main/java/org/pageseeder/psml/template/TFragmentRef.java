@@ -24,7 +24,7 @@ import java.util.Map;
  *
  * @author Christophe Lauret
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 final class TFragmentRef implements Token {
@@ -49,17 +49,33 @@ final class TFragmentRef implements Token {
 
   @Override
   public void print(PrintWriter psml, Map<String, String> values, Charset charset) {
-    String element = this.fragment.kind();
-    psml.append('<').append(element)
+    psml.append(startTag());
+    for (Token token : this.fragment.tokens()) {
+      token.print(psml, values, charset);
+    }
+    psml.append("</").append(this.fragment.kind()).append('>');
+  }
+
+  @Override
+  public void encode(EncodedChunks chunks) {
+    chunks.text(startTag());
+    for (Token token : this.fragment.tokens()) {
+      token.encode(chunks);
+    }
+    chunks.text("</" + this.fragment.kind() + '>');
+  }
+
+  /**
+   * @return the start tag of the fragment
+   */
+  private StringBuilder startTag() {
+    StringBuilder tag = new StringBuilder();
+    tag.append('<').append(this.fragment.kind())
         .append(" id=\"").append(this.id).append('"')
         .append(" type=\"").append(this.fragment.type()).append('"');
     if (this.fragment.mediatype() != null) {
-      psml.append(" mediatype=\"").append(this.fragment.mediatype()).append('"');
-    }
-    psml.append('>');
-    for (Token token : this.fragment.tokens()) {
-      token.print(psml, values, charset);
+      tag.append(" mediatype=\"").append(this.fragment.mediatype()).append('"');
     }
-    psml.append("</").append(element).append('>');
+    return tag.append('>');
   }
 }
\ No newline at end of file
@@ -15,7 +15,13 @@
  */
 package org.pageseeder.psml.template;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.Map;
 
@@ -27,7 +33,7 @@ import java.util.Map;
  *
  * @author Christophe Lauret
  *
- * @version 1.6.0
+ * @version 1.9.0
  * @since 1.0
  */
 public interface Template {
@@ -58,4 +64,41 @@ public interface Template {
    */
   void process(PrintWriter psml, Map<String, String> values, boolean failOnError) throws TemplateException;
 
+  /**
+   * Generate a new PSML document by writing the bytes in the charset used by the template.
+   *
+   * <p>The stream is flushed but not closed.
+   *
+   * @param psml   Where the PSML is written
+   * @param values The values to use for the placeholders
+   * @param failOnError When true the process will fail if an error occurs
+   *
+   * @throws IOException If thrown by the output stream
+   * @throws TemplateException If a fatal error occurs during processing
+   */
+  default void process(OutputStream psml, Map<String, String> values, boolean failOnError) throws IOException, TemplateException {
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(psml, charset()));
+    process(out, values, failOnError);
+    out.flush();
+    if (out.checkError()) throw new IOException("Unable to write PSML");
+  }
+
+  /**
+   * Generate a new PSML document by writing the bytes in the charset used by the template.
+   *
+   * <p>The channel is not closed.
+   *
+   * @param psml   Where the PSML is written
+   * @param values The values to use for the placeholders
+   * @param failOnError When true the process will fail if an error occurs
+   *
+   * @throws IOException If thrown by the channel
+   * @throws TemplateException If a fatal error occurs during processing
+   */
+  default void process(WritableByteChannel psml, Map<String, String> values, boolean failOnError) throws IOException, TemplateException {
+    OutputStream out = new BufferedOutputStream(Channels.newOutputStream(psml));
+    process(out, values, failOnError);
+    out.flush();
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2025 Allette Systems (Australia)
+ * http://www.allette.com.au
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.pageseeder.psml.template;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.psml.util.ConcurrentCache;
+import org.xml.sax.InputSource;
+
+/**
+ * A cache of compiled templates so that the same template file is only parsed once.
+ *
+ * <p>Templates are keyed by the canonical path of their file, the charset and the fragment
+ * type. A template is parsed again if its file was modified since it was cached. Templates
+ * which do not come from a file cannot be identified and are parsed every time.
+ *
+ * <p>Compiled templates are immutable, so the same template can be processed by several
+ * threads at once. This class is thread-safe.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class TemplateCache {
+
+  /**
+   * Default maximum number of templates in the shared cache.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  /**
+   * The cache shared by all processors unless another is specified.
+   */
+  private static final TemplateCache SHARED = new TemplateCache(DEFAULT_MAX_SIZE);
+
+  /**
+   * The compiled templates.
+   */
+  private final ConcurrentCache<Key, Entry> templates;
+
+  /**
+   * Number of times a template was found in the cache.
+   */
+  private final AtomicLong hits = new AtomicLong();
+
+  /**
+   * Number of times a template had to be parsed.
+   */
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxSize The maximum number of templates in the cache
+   *
+   * @throws IllegalArgumentException If the maximum size is less than 1
+   */
+  public TemplateCache(int maxSize) {
+    this.templates = new ConcurrentCache<>(maxSize);
+  }
+
+  /**
+   * @return the cache shared across the JVM.
+   */
+  public static TemplateCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the compiled template for the specified file, parsing it if not cached
+   * or if the file was modified.
+   *
+   * @param template The file containing the template
+   * @param charset  The charset of the template
+   * @param fragment The type of fragment or <code>null</code> for the document
+   *
+   * @return the compiled template
+   *
+   * @throws IOException Should an I/O error occur while reading the template.
+   * @throws TemplateException Should an error occur while parsing the template.
+   */
+  public Template get(File template, Charset charset, @Nullable String fragment) throws IOException, TemplateException {
+    Key key = new Key(template.getCanonicalPath(), charset, fragment);
+    long modified = template.lastModified();
+    long length = template.length();
+    Entry entry = this.templates.get(key);
+    if (entry != null && entry.modified == modified && entry.length == length) {
+      this.hits.incrementAndGet();
+      return entry.template;
+    }
+    this.misses.incrementAndGet();
+    Template compiled = parse(new InputSource(template.toURI().toASCIIString()), charset, fragment);
+    this.templates.put(key, new Entry(compiled, modified, length));
+    return compiled;
+  }
+
+  /**
+   * Returns the compiled template for the specified input source.
+   *
+   * <p>The template is only cached if the system ID of the source is a file URI.
+   *
+   * @param template The input source of the template
+   * @param charset  The charset of the template
+   * @param fragment The type of fragment or <code>null</code> for the document
+   *
+   * @return the compiled template
+   *
+   * @throws IOException Should an I/O error occur while reading the template.
+   * @throws TemplateException Should an error occur while parsing the template.
+   */
+  public Template get(InputSource template, Charset charset, @Nullable String fragment) throws IOException, TemplateException {
+    File file = toFile(template);
+    if (file != null) return get(file, charset, fragment);
+    this.misses.incrementAndGet();
+    return parse(template, charset, fragment);
+  }
+
+  /**
+   * @return the number of templates in the cache
+   */
+  public int size() {
+    return this.templates.size();
+  }
+
+  /**
+   * @return the number of times a template was found in the cache
+   */
+  public long hits() {
+    return this.hits.get();
+  }
+
+  /**
+   * @return the number of times a template had to be parsed
+   */
+  public long misses() {
+    return this.misses.get();
+  }
+
+  /**
+   * Remove all the templates from the cache.
+   */
+  public void clear() {
+    this.templates.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "TemplateCache[size=" + size() + ", hits=" + hits() + ", misses=" + misses() + "]";
+  }
+
+  /**
+   * Parse the template with a new factory (factories are not thread-safe).
+   */
+  private static Template parse(InputSource source, Charset charset, @Nullable String fragment)
+      throws IOException, TemplateException {
+    TemplateFactory factory = new TemplateFactory(charset);
+    factory.setFragment(fragment);
+    Template template = factory.parse(source);
+    if (template == null) throw new TemplateException("No matching template");
+    return template;
+  }
+
+  /**
+   * @return the file of the input source if it is only identified by a file URI
+   */
+  private static @Nullable File toFile(InputSource source) {
+    String systemId = source.getSystemId();
+    if (systemId == null || !systemId.startsWith("file:")) return null;
+    if (source.getCharacterStream() != null || source.getByteStream() != null) return null;
+    try {
+      return new File(new URI(systemId));
+    } catch (URISyntaxException | IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * The key of a compiled template.
+   */
+  private static final class Key {
+
+    /** The canonical path of the template file */
+    private final String path;
+
+    /** The charset of the template */
+    private final Charset charset;
+
+    /** The type of fragment if any */
+    private final @Nullable String fragment;
+
+    private Key(String path, Charset charset, @Nullable String fragment) {
+      this.path = path;
+      this.charset = charset;
+      this.fragment = fragment;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) return true;
+      if (!(obj instanceof Key)) return false;
+      Key other = (Key) obj;
+      return this.path.equals(other.path)
+          && this.charset.equals(other.charset)
+          && Objects.equals(this.fragment, other.fragment);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * this.path.hashCode() + this.charset.hashCode()) + Objects.hashCode(this.fragment);
+    }
+  }
+
+  /**
+   * A compiled template and the state of the file it was parsed from.
+   */
+  private static final class Entry {
+
+    /** The compiled template */
+    private final Template template;
+
+    /** When the file was last modified */
+    private final long modified;
+
+    /** The length of the file */
+    private final long length;
+
+    private Entry(Template template, long modified, long length) {
+      this.template = template;
+      this.modified = modified;
+      this.length = length;
+    }
+  }
+
+}
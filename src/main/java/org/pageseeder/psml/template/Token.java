@@ -24,7 +24,7 @@ import java.util.Map;
  *
  * @author Christophe Lauret
  *
- * @version 1.0
+ * @version 1.9.0
  * @since 1.0
  */
 interface Token {
@@ -38,4 +38,15 @@ interface Token {
    */
   void print(PrintWriter psml, Map<String, String> values, Charset charset);
 
+  /**
+   * Adds this token to the chunks of a pre-encoded template.
+   *
+   * <p>By default, the token is printed for each instance.
+   *
+   * @param chunks The chunks of the template
+   */
+  default void encode(EncodedChunks chunks) {
+    chunks.token(this);
+  }
+
 }
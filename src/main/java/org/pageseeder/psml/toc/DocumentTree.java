@@ -160,6 +160,32 @@ public final class DocumentTree implements Tree, Serializable, XMLWritable {
   public DocumentTree(long id, int level, String title, String labels, List<Long> reverse, String titlefragment, boolean numbered,
       String prefix, String blocklabel, OffsetDateTime lastedited, String path,
       List<Part<?>> parts, Map<String,String> fragmentheadings, Map<String,Integer> fragmentlevels) {
+    this(id, level, title, labels, reverse, titlefragment, numbered, prefix, blocklabel, lastedited, path,
+        parts, fragmentheadings, true, fragmentlevels);
+  }
+
+  /**
+   * Full constructor used when reading a tree back.
+   *
+   * @param id                The URI ID of the document.
+   * @param level             The level of the first part of the tree.
+   * @param title             The title the document.
+   * @param labels            The document labels
+   * @param reverse           The list of reverse references.
+   * @param titlefragment     The fragment ID of first (title) heading (only if numbered or prefixed)
+   * @param numbered          Whether the heading is auto-numbered
+   * @param prefix            Any prefix given to the title.
+   * @param blocklabel        The parent block label (from first heading)
+   * @param lastedited        The document's last edited date (including transclusion edited dates)
+   * @param path              The document's path
+   * @param parts             The list of parts.
+   * @param fragmentheadings  Map of fragment ID to the heading for the fragment
+   * @param xmlheadings       Whether the fragment headings are unescaped XML
+   * @param fragmentlevels    Map of fragment ID to the level of the fragment
+   */
+  DocumentTree(long id, int level, String title, String labels, List<Long> reverse, String titlefragment, boolean numbered,
+      String prefix, String blocklabel, @Nullable OffsetDateTime lastedited, String path, List<Part<?>> parts,
+      Map<String,String> fragmentheadings, boolean xmlheadings, Map<String,Integer> fragmentlevels) {
     this._id = id;
     this._title = title;
     this._labels = labels;
@@ -173,7 +199,7 @@ public final class DocumentTree implements Tree, Serializable, XMLWritable {
     this._lastedited = lastedited;
     this._path = path;
     this._fragmentheadings = Collections.unmodifiableMap(fragmentheadings);
-    this._xmlheadings = true;
+    this._xmlheadings = xmlheadings;
     this._fragmentlevels = Collections.unmodifiableMap(fragmentlevels);
   }
 
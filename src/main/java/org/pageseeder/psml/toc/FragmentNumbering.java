@@ -17,7 +17,7 @@ import java.util.Map.Entry;
  * @author Philip Rutherford
  * @author Christophe Lauret
  *
- * @version 1.7.1
+ * @version 1.9.0
  * @since 1.0
  */
 public final class FragmentNumbering implements Serializable {
@@ -26,7 +26,7 @@ public final class FragmentNumbering implements Serializable {
   private static final Logger LOGGER = LoggerFactory.getLogger(FragmentNumbering.class);
 
   /** As per requirement for Serialization*/
-  private static final long serialVersionUID = 20180213L;
+  private static final long serialVersionUID = 20250101L;
 
   /** When there is no prefix */
   public static final String NO_PREFIX = "";
@@ -68,24 +68,129 @@ public final class FragmentNumbering implements Serializable {
       this.uriid = uriid;
       this.position = position;
     }
+
+    /**
+     * @return a copy of this location
+     */
+    private Location copy() {
+      Location copy = new Location(this.uriid, this.position);
+      copy.fragment = this.fragment;
+      copy.index = this.index;
+      copy.transclusions = this.transclusions;
+      return copy;
+    }
+
+    /**
+     * @param other another location
+     *
+     * @return whether the other location is the same
+     */
+    private boolean isSame(Location other) {
+      return this.uriid == other.uriid && this.position == other.position &&
+          this.fragment.equals(other.fragment) && this.index == other.index &&
+          this.transclusions == other.transclusions;
+    }
+  }
+
+  /**
+   * The numbering state before a top level part of the publication root
+   * and the references counted while numbering that part.
+   */
+  private static final class Checkpoint {
+
+    /**
+     * Numbering generators keyed on document-label
+     */
+    private final Map<String, NumberingGenerator> numbers;
+
+    /**
+     * Location in the root tree
+     */
+    private final Location location;
+
+    /**
+     * Map of [uriid], [number of uses] for the references in the part (0 if a reference is not counted)
+     */
+    private final Map<Long,Integer> references = new HashMap<>();
+
+    /**
+     * Constructor copying the current state.
+     */
+    private Checkpoint(Map<String, NumberingGenerator> numbers, Location location) {
+      this.numbers = copy(numbers);
+      this.location = location.copy();
+    }
+
+    /**
+     * @return whether the current state is the same as this checkpoint's
+     */
+    private boolean isSame(Map<String, NumberingGenerator> numbers, Location location) {
+      if (!this.location.isSame(location) || !this.numbers.keySet().equals(numbers.keySet())) return false;
+      for (Entry<String, NumberingGenerator> number : this.numbers.entrySet()) {
+        if (!number.getValue().hasSameLevels(numbers.get(number.getKey()))) return false;
+      }
+      return true;
+    }
+
+    /**
+     * @return a copy of the numbering generators
+     */
+    private static Map<String, NumberingGenerator> copy(Map<String, NumberingGenerator> numbers) {
+      Map<String, NumberingGenerator> copy = new HashMap<>();
+      for (Entry<String, NumberingGenerator> number : numbers.entrySet()) {
+        copy.put(number.getKey(), number.getValue().copy());
+      }
+      return copy;
+    }
   }
 
   /**
-   * Map of [uriid]-[position]-[fragment][-index]], [prefix]
+   * Index of [uriid], [position], [fragment], [index] to [prefix]
    * where position is the number of times the document has been used (1 or greater)
-   * and index is the index of the heading/para in the fragment (1 or greater).
+   * and index is the index of the heading/para in the fragment (1 or greater, 0 for default fragment).
    */
-  private final Map<String,Prefix> numbering = new HashMap<>();
+  private final PrefixIndex numbering = new PrefixIndex();
 
 
   /**
    * Numbering for transcluded content in context of parent fragment.
    *
-   * Map of [uriid]-[position]-[fragment][-index]], [prefix]
+   * Index of [uriid], [position], [fragment], [index] to [prefix]
    * where position is the number of times the document has been used (1 or greater)
    * and index is the index of the heading/para in the fragment (1 or greater).
    */
-  private final Map<String,Prefix> transcludedNumbering = new HashMap<>();
+  private final PrefixIndex transcludedNumbering = new PrefixIndex();
+
+  /**
+   * Interned fragment number keyed on fragment ID.
+   */
+  private final Map<String,Integer> fragmentNumbers = new HashMap<>();
+
+  /**
+   * Fragment IDs by interned fragment number.
+   */
+  private final List<String> fragmentIds = new ArrayList<>();
+
+  /**
+   * The numbering state before each top level part of the root, only recorded
+   * if the numbering can be updated (not serialized).
+   */
+  private transient @Nullable List<Checkpoint> checkpoints = null;
+
+  /**
+   * The publication config used to generate this numbering (not serialized).
+   */
+  private transient @Nullable PublicationConfig config = null;
+
+  /**
+   * The ID of the publication root.
+   */
+  private long rootId = -1;
+
+  /**
+   * The top level part of the root currently being numbered (-1 if none).
+   */
+  private transient int part = -1;
 
   /**
    * Constructor for blank instance
@@ -118,15 +223,33 @@ public final class FragmentNumbering implements Serializable {
    */
   public FragmentNumbering(PublicationTree pub, PublicationConfig config,
       List<Long> unusedIds, Map<Long,List<Long>> transclusions) throws XRefLoopException {
-    Map<Long,Integer> doccount = new HashMap<>();
+    this(pub, config, unusedIds, transclusions, false);
+  }
+
+  /**
+   * Constructor returning unused IDs and transclusions.
+   *
+   * @param pub              The publication tree
+   * @param config           The publication config
+   * @param unusedIds        Any tree IDs that are unreachable will be added to this list (supply empty list)
+   * @param transclusions    Map of transcluded Id to a list of it's parent Ids.
+   * @param updatable        Whether to record the numbering state needed by {@link #update}
+   *
+   * @throws XRefLoopException if an XRef loop is detected
+   */
+  private FragmentNumbering(PublicationTree pub, PublicationConfig config,
+      List<Long> unusedIds, Map<Long,List<Long>> transclusions, boolean updatable) throws XRefLoopException {
     DocumentTree root = pub.root();
     if (root != null) {
       // store prefix on default fragment of root with level as an adjustment to the first heading in the document
-      this.numbering.put(root.id() + "-1-default", new Prefix("", null, 2 - root.level(), null));
+      this.numbering.put(root.id(), 1, intern(Reference.DEFAULT_FRAGMENT), 0, new Prefix("", null, 2 - root.level(), null), -1);
       // mark root as embedded
       addTransclusionParents(root.id(), -1, transclusions);
-      processTree(pub, root.id(), 1, 1, config, getNumberingGenerators(config),
-          doccount, 1, new ArrayList<>(), Reference.DEFAULT_FRAGMENT, transclusions);
+      this.rootId = root.id();
+      this.config = config;
+      if (updatable) this.checkpoints = new ArrayList<>();
+      processRoot(pub, config, getNumberingGenerators(config), new HashMap<>(), new Location(root.id(), 1),
+          0, null, -1, transclusions);
     }
     List<Long> allIds = new ArrayList<>(pub.ids());
     // remove IDs that are not transcluded from transclusions map
@@ -146,6 +269,162 @@ public final class FragmentNumbering implements Serializable {
     unusedIds.addAll(allIds);
   }
 
+  /**
+   * Creates a numbering which can be updated incrementally using {@link #update}.
+   *
+   * <p>The numbering state is recorded before each top level part of the root, so this
+   * numbering uses more memory than one created with the constructor.
+   *
+   * @param pub     The publication tree
+   * @param config  The publication config
+   *
+   * @return the numbering
+   *
+   * @throws XRefLoopException if an XRef loop is detected
+   */
+  public static FragmentNumbering updatable(PublicationTree pub, PublicationConfig config) throws XRefLoopException {
+    return new FragmentNumbering(pub, config, new ArrayList<>(), new HashMap<>(), true);
+  }
+
+  /**
+   * Returns the numbering for a publication modified from the one this numbering was generated for.
+   *
+   * <p>Only the top level parts of the root from the first one referencing a changed document are
+   * numbered again, until the numbering state is the same as it was before the next unchanged part.
+   * The prefixes of all other parts are reused. The whole publication is numbered again if the root,
+   * the config or the top level parts of the root have changed, or if this numbering was not created
+   * with {@link #updatable} or returned by this method.
+   *
+   * <p>Unlike the constructor, this method does not compute unused IDs and transclusions.
+   *
+   * @param pub         The modified publication tree
+   * @param config      The publication config used for this numbering
+   * @param changedIds  The IDs of the document trees which were added, removed or modified
+   *
+   * @return the numbering for the modified publication which can also be updated (this numbering is not modified)
+   *
+   * @throws XRefLoopException if an XRef loop is detected
+   */
+  public FragmentNumbering update(PublicationTree pub, PublicationConfig config, Collection<Long> changedIds)
+      throws XRefLoopException {
+    DocumentTree root = pub.root();
+    List<Checkpoint> previous = this.checkpoints;
+    if (root == null || previous == null || config != this.config || root.id() != this.rootId ||
+        changedIds.contains(root.id()) || root.parts().size() != previous.size()) {
+      return updatable(pub, config);
+    }
+    // find the first and last parts referencing a changed document
+    int from = -1;
+    int last = -1;
+    for (int i = 0; i < previous.size(); i++) {
+      if (!Collections.disjoint(previous.get(i).references.keySet(), changedIds)) {
+        if (from == -1) from = i;
+        last = i;
+      }
+    }
+    if (from == -1) return this;
+    FragmentNumbering updated = new FragmentNumbering();
+    updated.fragmentIds.addAll(this.fragmentIds);
+    updated.fragmentNumbers.putAll(this.fragmentNumbers);
+    updated.rootId = this.rootId;
+    updated.config = config;
+    updated.checkpoints = new ArrayList<>(previous.subList(0, from));
+    final int start = from;
+    updated.numbering.putAll(this.numbering, tag -> tag < start);
+    updated.transcludedNumbering.putAll(this.transcludedNumbering, tag -> tag < start);
+    // restore state before the first changed part
+    Map<Long,Integer> doccount = new HashMap<>();
+    for (Checkpoint checkpoint : updated.checkpoints) {
+      for (Entry<Long,Integer> count : checkpoint.references.entrySet()) {
+        if (count.getValue() > 0) doccount.merge(count.getKey(), count.getValue(), Integer::sum);
+      }
+    }
+    Checkpoint checkpoint = previous.get(from);
+    final int end = updated.processRoot(pub, config, Checkpoint.copy(checkpoint.numbers), doccount,
+        checkpoint.location.copy(), from, previous, last, new HashMap<>());
+    updated.checkpoints.addAll(previous.subList(end, previous.size()));
+    updated.numbering.putAll(this.numbering, tag -> tag >= end);
+    updated.transcludedNumbering.putAll(this.transcludedNumbering, tag -> tag >= end);
+    return updated;
+  }
+
+  /**
+   * Process numbering for the top level parts of the root tree, saving the numbering state before each part
+   * if the numbering can be updated.
+   *
+   * @param pub           The publication tree
+   * @param config        The publication config to get numbering config
+   * @param numbers       The numbering generators
+   * @param doccount      Map of [uriid], [number of uses]
+   * @param location      The original location for transcluded content
+   * @param from          The index of the first part to process
+   * @param previous      The checkpoints of the previous numbering to stop when the state is the same (optional)
+   * @param last          The index of the last part which must be processed
+   * @param transclusions Map of transcluded Id to a list of it's parent Ids
+   *
+   * @return the index of the first part which was not processed
+   *
+   * @throws XRefLoopException if an XRef loop is detected
+   */
+  private int processRoot(PublicationTree pub, PublicationConfig config, Map<String, NumberingGenerator> numbers,
+      Map<Long,Integer> doccount, Location location, int from, @Nullable List<Checkpoint> previous, int last,
+      Map<Long,List<Long>> transclusions) throws XRefLoopException {
+    DocumentTree root = pub.root();
+    List<Checkpoint> saved = this.checkpoints;
+    List<String> ancestors = new ArrayList<>();
+    ancestors.add(root.id() + "-" + Reference.DEFAULT_FRAGMENT);
+    List<Part<?>> parts = root.parts();
+    // difference between the current and previous document counts
+    Map<Long,Integer> countDiff = new HashMap<>();
+    for (int i = from; i < parts.size(); i++) {
+      if (previous != null && i > last && countDiff.isEmpty() && previous.get(i).isSame(numbers, location)) {
+        this.part = -1;
+        return i;
+      }
+      Checkpoint checkpoint = null;
+      if (saved != null) {
+        checkpoint = new Checkpoint(numbers, location);
+        saved.add(checkpoint);
+      }
+      this.part = i;
+      processPart(pub, root.id(), 1, 1, parts.get(i), config, numbers, doccount, 1, ancestors, location, transclusions);
+      if (previous != null && checkpoint != null) {
+        for (Entry<Long,Integer> count : checkpoint.references.entrySet()) {
+          addCount(countDiff, count.getKey(), count.getValue());
+        }
+        for (Entry<Long,Integer> count : previous.get(i).references.entrySet()) {
+          addCount(countDiff, count.getKey(), -count.getValue());
+        }
+      }
+    }
+    this.part = -1;
+    return parts.size();
+  }
+
+  /**
+   * Add to a count removing it if it becomes 0.
+   *
+   * @param counts  Map of [uriid], [count]
+   * @param id      The document ID
+   * @param count   The count to add
+   */
+  private static void addCount(Map<Long,Integer> counts, long id, int count) {
+    if (count == 0) return;
+    counts.merge(id, count, (a, b) -> a + b == 0 ? null : a + b);
+  }
+
+  /**
+   * Record a reference in the top level part of the root currently being numbered.
+   *
+   * @param id      The target document ID
+   * @param counted Whether the reference is counted as a use of the document
+   */
+  private void addReference(long id, boolean counted) {
+    List<Checkpoint> saved = this.checkpoints;
+    if (this.part < 0 || saved == null) return;
+    saved.get(saved.size() - 1).references.merge(id, counted ? 1 : 0, Integer::sum);
+  }
+
   /**
    * Get a map of all new numbering generators for the config specified,
    * keyed on the document-label.
@@ -252,7 +531,9 @@ public final class FragmentNumbering implements Serializable {
       next = ref.uri();
       nextTree = pub.tree(next);
       // can only be numbered if the referenced tree exists
-      if (nextTree != null || Reference.Type.TRANSCLUDE.equals(refType)) {
+      boolean counted = nextTree != null || Reference.Type.TRANSCLUDE.equals(refType);
+      addReference(next, counted);
+      if (counted) {
         nextCount = doccount.get(next);
         nextCount = nextCount == null ? 1 : nextCount + 1;
         doccount.put(next, nextCount);
@@ -267,8 +548,8 @@ public final class FragmentNumbering implements Serializable {
             processReference(ref, nextLevel - 1, nextTree, nextNumber, nextCount);
           } else {
             // always store prefix on default fragment with level as an adjustment to the first heading in the document
-            this.numbering.put(nextTree.id() + "-" + nextCount + "-default",
-                new Prefix(DocumentTree.NO_PREFIX, null, nextLevel + 1 - nextTree.level(), null));
+            this.numbering.put(nextTree.id(), nextCount, intern(Reference.DEFAULT_FRAGMENT), 0,
+                new Prefix(DocumentTree.NO_PREFIX, null, nextLevel + 1 - nextTree.level(), null), this.part);
           }
           // add -1 to transclusion map
           addTransclusionParents(ref.uri(), -1, transclusions);
@@ -354,13 +635,13 @@ public final class FragmentNumbering implements Serializable {
       pref = new Prefix(p, null, level, null);
     }
     // always store prefix on default fragment with level as an adjustment to the first heading in the document
-    this.numbering.put(target.id() + "-" + count + "-default",
-        new Prefix(pref.value, pref.canonical, level + 2 - target.level(), pref.parentNumber));
+    this.numbering.put(target.id(), count, intern(Reference.DEFAULT_FRAGMENT), 0,
+        new Prefix(pref.value, pref.canonical, level + 2 - target.level(), pref.parentNumber), this.part);
     if (NO_PREFIX.equals(pref.value)) return;
     // store prefix on the first heading fragment (must have index=1 for reference to have a prefix)
-    String key = target.id() + "-" + count + "-" + target.titlefragment() + "-1";
-    this.numbering.put(key, pref);
-    this.transcludedNumbering.put(key, pref);
+    int fragment = intern(target.titlefragment());
+    this.numbering.put(target.id(), count, fragment, 1, pref, this.part);
+    this.transcludedNumbering.put(target.id(), count, fragment, 1, pref, this.part);
   }
 
   /**
@@ -387,10 +668,10 @@ public final class FragmentNumbering implements Serializable {
     updateLocation(h, location);
     if (pref == null) return;
     // store prefix on fragment
-    this.transcludedNumbering.put(id + "-" + count + "-" + h.fragment() + "-" + h.index(), pref);
+    this.transcludedNumbering.put(id, count, intern(h.fragment()), h.index(), pref, this.part);
     // if not a nested transclusion then store it on original fragment
     if (location.transclusions <= 1) {
-      this.numbering.put(location.uriid + "-" + location.position + "-" + location.fragment + "-" + location.index, pref);
+      this.numbering.put(location.uriid, location.position, intern(location.fragment), location.index, pref, this.part);
     }
   }
 
@@ -444,10 +725,10 @@ public final class FragmentNumbering implements Serializable {
     updateLocation(para, location);
     if (pref == null) return;
     // store prefix on fragment
-    this.transcludedNumbering.put(id + "-" + count + "-" + para.fragment() + "-" + para.index(), pref);
+    this.transcludedNumbering.put(id, count, intern(para.fragment()), para.index(), pref, this.part);
     // if not a nested transclusion then store it on original fragment
     if (location.transclusions <= 1) {
-      this.numbering.put(location.uriid + "-" + location.position + "-" + location.fragment + "-" + location.index, pref);
+      this.numbering.put(location.uriid, location.position, intern(location.fragment), location.index, pref, this.part);
     }
   }
 
@@ -460,7 +741,7 @@ public final class FragmentNumbering implements Serializable {
    * @return the prefix
    */
   public @Nullable Prefix getPrefix(long uriid, int position) {
-    Prefix pref = this.numbering.get(uriid + "-" + position + "-default");
+    Prefix pref = get(this.numbering, uriid, position, Reference.DEFAULT_FRAGMENT, 0);
     if (pref == null) {
       LOGGER.debug("Numbering not found for uriid: {}, position: {}, fragment default",
           uriid, position);
@@ -482,7 +763,7 @@ public final class FragmentNumbering implements Serializable {
     if ("default".equals(fragment)) {
       return getPrefix(uriid, position);
     }
-    Prefix pref = this.numbering.get(uriid + "-" + position + "-" + fragment + "-" + index);
+    Prefix pref = get(this.numbering, uriid, position, fragment, index);
     if (pref == null) {
       LOGGER.debug("Numbering not found for uriid: {}, position: {}, fragment: {}, index: {}",
           uriid, position, fragment, index);
@@ -516,7 +797,7 @@ public final class FragmentNumbering implements Serializable {
    * @return the prefix
    */
   public @Nullable Prefix getTranscludedPrefix(long uriid, int position, String fragment, int index, boolean undefined) {
-    Prefix pref = this.transcludedNumbering.get(uriid + "-" + position + "-" + fragment + "-" + index);
+    Prefix pref = get(this.transcludedNumbering, uriid, position, fragment, index);
     // don't return undefined prefix unless required
     if (pref != null && pref.value.isEmpty() && pref.canonical == null && !undefined) {
       return null;
@@ -524,14 +805,49 @@ public final class FragmentNumbering implements Serializable {
     return pref;
   }
 
+  /**
+   * Look up a prefix without allocating any key.
+   *
+   * @param index     the prefix index
+   * @param uriid     the URI ID of the document
+   * @param position  the document position (occurrence number) in the tree
+   * @param fragment  the fragment ID
+   * @param i         the heading/para number within the fragment (0 for default fragment)
+   *
+   * @return the prefix or <code>null</code>
+   */
+  private @Nullable Prefix get(PrefixIndex index, long uriid, int position, String fragment, int i) {
+    Integer number = this.fragmentNumbers.get(fragment);
+    return number == null ? null : index.get(uriid, position, number, i);
+  }
+
+  /**
+   * Intern a fragment ID.
+   *
+   * @param fragment the fragment ID
+   *
+   * @return the interned fragment number
+   */
+  private int intern(String fragment) {
+    Integer number = this.fragmentNumbers.get(fragment);
+    if (number == null) {
+      number = this.fragmentIds.size();
+      this.fragmentIds.add(fragment);
+      this.fragmentNumbers.put(fragment, number);
+    }
+    return number;
+  }
+
   /**
    * Get all prefixes as a map with key [uriid]-[position]-[fragment][-index]].
    *
+   * <p>The map is built on each call, it is intended for debugging and testing only.
+   *
    * @return  the unmodifiable map
    *
    */
   public Map<String,Prefix> getAllPrefixes() {
-    return Collections.unmodifiableMap(this.numbering);
+    return Collections.unmodifiableMap(this.numbering.toMap(this.fragmentIds));
   }
 
   /**
@@ -542,7 +858,7 @@ public final class FragmentNumbering implements Serializable {
    *
    */
   public Map<String,Prefix> getAllTranscludedPrefixes() {
-    return Collections.unmodifiableMap(this.transcludedNumbering);
+    return Collections.unmodifiableMap(this.transcludedNumbering.toMap(this.fragmentIds));
   }
 
   /**
@@ -45,7 +45,7 @@ public final class Heading extends Element implements Serializable {
    * @param prefix        Any prefix given to this heading.
    * @param blockLabel    Parent block label.
    */
-  private Heading(int level, String title, String fragment, String originalfrag,
+  Heading(int level, String title, String fragment, String originalfrag,
       int index, boolean numbered, String prefix, String blockLabel) {
     super(level, title, fragment, originalfrag);
     this.index = index;
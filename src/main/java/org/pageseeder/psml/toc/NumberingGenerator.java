@@ -14,7 +14,7 @@ import java.util.*;
  * @author Philip Rutherford
  * @author Christophe Lauret
  *
- * @version 1.7.1
+ * @version 1.9.0
  * @since 1.0
  */
 public final class NumberingGenerator {
@@ -39,6 +39,31 @@ public final class NumberingGenerator {
     this.numberingLevels.put("", new ArrayDeque<>(9));
   }
 
+  /**
+   * @return a copy of this generator with the same current numbering levels
+   */
+  NumberingGenerator copy() {
+    NumberingGenerator copy = new NumberingGenerator(this.numberConfig);
+    for (Map.Entry<String,ArrayDeque<Integer>> levels : this.numberingLevels.entrySet()) {
+      copy.numberingLevels.put(levels.getKey(), levels.getValue().clone());
+    }
+    return copy;
+  }
+
+  /**
+   * @param other another generator for the same numbering config
+   *
+   * @return whether the other generator has the same current numbering levels
+   */
+  boolean hasSameLevels(NumberingGenerator other) {
+    if (!this.numberingLevels.keySet().equals(other.numberingLevels.keySet())) return false;
+    for (Map.Entry<String,ArrayDeque<Integer>> levels : this.numberingLevels.entrySet()) {
+      if (!Arrays.equals(levels.getValue().toArray(), other.numberingLevels.get(levels.getKey()).toArray()))
+        return false;
+    }
+    return true;
+  }
+
   /**
    * Get the numbering config.
    *
@@ -45,7 +45,7 @@ public final class Paragraph extends Element implements Serializable {
    * @param prefix   Any prefix given to this paragraph.
    * @param blocklabel Parent block label.
    */
-  private Paragraph(int level, String title, String fragment, String originalfrag,
+  Paragraph(int level, String title, String fragment, String originalfrag,
       int index, boolean numbered, String prefix, String blocklabel) {
     super(level, title, fragment, originalfrag);
     this.index = index;
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.toc;
+
+import org.jspecify.annotations.Nullable;
+import org.pageseeder.psml.toc.FragmentNumbering.Prefix;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * An open addressing hash table of prefixes keyed on location
+ * [uriid], [position], [fragment], [index] without allocating any key object.
+ *
+ * <p>The fragment is the interned fragment number provided by {@link FragmentNumbering}
+ * and an index of 0 is used for the prefix on the default fragment of a document.
+ *
+ * <p>Each prefix is also tagged with the top level part of the publication root it was
+ * generated for, so that the prefixes of unchanged parts can be reused.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+final class PrefixIndex implements Serializable {
+
+  /** For serialization */
+  private static final long serialVersionUID = 20250101L;
+
+  /** Initial capacity (must be a power of 2) */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** URI IDs for each slot */
+  private long[] uriids = new long[INITIAL_CAPACITY];
+
+  /** Positions for each slot */
+  private int[] positions = new int[INITIAL_CAPACITY];
+
+  /** Interned fragments for each slot */
+  private int[] fragments = new int[INITIAL_CAPACITY];
+
+  /** Indexes for each slot */
+  private int[] indexes = new int[INITIAL_CAPACITY];
+
+  /** Tags for each slot */
+  private int[] tags = new int[INITIAL_CAPACITY];
+
+  /** Prefixes for each slot (null if slot is empty) */
+  private @Nullable Prefix[] prefixes = new Prefix[INITIAL_CAPACITY];
+
+  /** Number of prefixes */
+  private int size = 0;
+
+  /**
+   * @return the number of prefixes
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Get the prefix at a location.
+   *
+   * @param uriid     the URI ID of the document
+   * @param position  the document position (occurrence number) in the tree
+   * @param fragment  the interned fragment
+   * @param index     the heading/para number within the fragment (0 for default fragment)
+   *
+   * @return the prefix or <code>null</code>
+   */
+  @Nullable Prefix get(long uriid, int position, int fragment, int index) {
+    int mask = this.prefixes.length - 1;
+    for (int i = hash(uriid, position, fragment, index) & mask; this.prefixes[i] != null; i = (i + 1) & mask) {
+      if (matches(i, uriid, position, fragment, index)) return this.prefixes[i];
+    }
+    return null;
+  }
+
+  /**
+   * Set the prefix at a location, replacing any existing one.
+   *
+   * @param uriid     the URI ID of the document
+   * @param position  the document position (occurrence number) in the tree
+   * @param fragment  the interned fragment
+   * @param index     the heading/para number within the fragment (0 for default fragment)
+   * @param prefix    the prefix
+   * @param tag       the top level part of the root the prefix was generated for (-1 if none)
+   */
+  void put(long uriid, int position, int fragment, int index, Prefix prefix, int tag) {
+    int mask = this.prefixes.length - 1;
+    int i = hash(uriid, position, fragment, index) & mask;
+    while (this.prefixes[i] != null) {
+      if (matches(i, uriid, position, fragment, index)) {
+        this.prefixes[i] = prefix;
+        this.tags[i] = tag;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    this.uriids[i] = uriid;
+    this.positions[i] = position;
+    this.fragments[i] = fragment;
+    this.indexes[i] = index;
+    this.tags[i] = tag;
+    this.prefixes[i] = prefix;
+    // keep load factor under 0.5
+    if (++this.size * 2 > this.prefixes.length) resize();
+  }
+
+  /**
+   * Copy the prefixes from another index.
+   *
+   * @param other the index to copy from (must use the same interned fragments)
+   * @param tags  the tags of the prefixes to copy
+   */
+  void putAll(PrefixIndex other, IntPredicate tags) {
+    for (int i = 0; i < other.prefixes.length; i++) {
+      Prefix prefix = other.prefixes[i];
+      if (prefix != null && tags.test(other.tags[i])) {
+        put(other.uriids[i], other.positions[i], other.fragments[i], other.indexes[i], prefix, other.tags[i]);
+      }
+    }
+  }
+
+  /**
+   * Get all prefixes as a map with key [uriid]-[position]-[fragment][-index]].
+   *
+   * @param fragmentIds the fragment IDs by interned fragment
+   *
+   * @return a new map
+   */
+  Map<String,Prefix> toMap(List<String> fragmentIds) {
+    Map<String,Prefix> map = new HashMap<>(this.size * 2);
+    for (int i = 0; i < this.prefixes.length; i++) {
+      Prefix prefix = this.prefixes[i];
+      if (prefix == null) continue;
+      String key = this.uriids[i] + "-" + this.positions[i] + "-" + fragmentIds.get(this.fragments[i]);
+      map.put(this.indexes[i] == 0 ? key : key + "-" + this.indexes[i], prefix);
+    }
+    return map;
+  }
+
+  /**
+   * @return whether the slot has the location specified
+   */
+  private boolean matches(int i, long uriid, int position, int fragment, int index) {
+    return this.uriids[i] == uriid && this.positions[i] == position &&
+        this.fragments[i] == fragment && this.indexes[i] == index;
+  }
+
+  /**
+   * Double the capacity and reinsert all prefixes.
+   */
+  private void resize() {
+    long[] oldUriids = this.uriids;
+    int[] oldPositions = this.positions;
+    int[] oldFragments = this.fragments;
+    int[] oldIndexes = this.indexes;
+    int[] oldTags = this.tags;
+    Prefix[] oldPrefixes = this.prefixes;
+    int capacity = oldPrefixes.length * 2;
+    this.uriids = new long[capacity];
+    this.positions = new int[capacity];
+    this.fragments = new int[capacity];
+    this.indexes = new int[capacity];
+    this.tags = new int[capacity];
+    this.prefixes = new Prefix[capacity];
+    int mask = capacity - 1;
+    for (int j = 0; j < oldPrefixes.length; j++) {
+      if (oldPrefixes[j] == null) continue;
+      int i = hash(oldUriids[j], oldPositions[j], oldFragments[j], oldIndexes[j]) & mask;
+      while (this.prefixes[i] != null) i = (i + 1) & mask;
+      this.uriids[i] = oldUriids[j];
+      this.positions[i] = oldPositions[j];
+      this.fragments[i] = oldFragments[j];
+      this.indexes[i] = oldIndexes[j];
+      this.tags[i] = oldTags[j];
+      this.prefixes[i] = oldPrefixes[j];
+    }
+  }
+
+  /**
+   * @return the hash code for a location
+   */
+  private static int hash(long uriid, int position, int fragment, int index) {
+    long h = uriid * 0x9E3779B97F4A7C15L + position;
+    h = h * 0x9E3779B97F4A7C15L + fragment;
+    h = h * 0x9E3779B97F4A7C15L + index;
+    h ^= h >>> 32;
+    return (int) (h ^ (h >>> 16));
+  }
+
+}
@@ -21,7 +21,7 @@ import java.util.*;
  * @author Christophe Lauret
  * @author Philip Rutherford
  *
- * @version 1.7.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class PublicationTree implements Tree, Serializable, XMLWritable {
@@ -56,7 +56,12 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
     /**
      * The IDs of trees that cid is a descendant of (optional)
      */
-    private @Nullable List<Long> trees;
+    private @Nullable Set<Long> trees;
+
+    /**
+     * The occurrences of trees to visit, those with output and their ancestors (all if null)
+     */
+    private @Nullable Set<Occurrence> visit;
 
     /**
      * The fragment numbering for the publication (optional)
@@ -68,16 +73,6 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
      */
     private @Nullable PublicationConfig config;
 
-    /**
-     * Map of [uriid], [number of uses]
-     */
-    private Map<Long,Integer> doccount = new HashMap<>();
-
-    /**
-     * List of the current ancestor tree ID-fragment
-     */
-    private List<String> ancestors = new ArrayList<>();
-
     /**
      * Whether to output references to IDs not in this publication tree.
      */
@@ -89,21 +84,95 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
      * @param cid           The ID of the content tree (leaf).
      * @param cposition     If not -1 output content tree only at this position (occurrence number) in the tree.
      * @param trees         The IDs of trees that cid is a descendant of (optional)
+     * @param visit         The occurrences of trees to visit (all if null)
      * @param number        The fragment numbering for the publication (optional)
      * @param config        The config for the publication (optional)
      * @param externalrefs  Whether to output references to IDs not in this publication tree.
      */
-    private TOCState(long cid, int cposition, @Nullable List<Long> trees, @Nullable FragmentNumbering number,
-        @Nullable PublicationConfig config, boolean externalrefs) {
+    private TOCState(long cid, int cposition, @Nullable Set<Long> trees, @Nullable Set<Occurrence> visit,
+        @Nullable FragmentNumbering number, @Nullable PublicationConfig config, boolean externalrefs) {
       this.cid = cid;
       this.cposition = cposition;
       this.trees = trees;
+      this.visit = visit;
       this.number = number;
       this.config = config;
       this.externalrefs = externalrefs;
     }
   }
 
+  /**
+   * An occurrence of a tree in the publication, i.e. each time it is embedded or transcluded.
+   */
+  private static final class Occurrence {
+
+    /**
+     * The ID of the tree.
+     */
+    private final long id;
+
+    /**
+     * The position (occurrence number) of the tree in the publication.
+     */
+    private final int position;
+
+    /**
+     * The level of the tree parts.
+     */
+    private final int level;
+
+    /**
+     * The document fragment included.
+     */
+    private final String fragment;
+
+    /**
+     * Whether the tree is embedded in the publication (false if transcluded).
+     */
+    private final boolean embedded;
+
+    /**
+     * The occurrence the tree is included from (null for root).
+     */
+    private final @Nullable Occurrence parent;
+
+    /**
+     * The occurrences of trees included from this one in document order.
+     */
+    private final List<Occurrence> children = new ArrayList<>(0);
+
+    private Occurrence(long id, int position, int level, String fragment, boolean embedded, @Nullable Occurrence parent) {
+      this.id = id;
+      this.position = position;
+      this.level = level;
+      this.fragment = fragment;
+      this.embedded = embedded;
+      this.parent = parent;
+    }
+  }
+
+  /**
+   * Positional index of all the tree occurrences in the publication so that the TOC for a content tree
+   * only needs to visit the path from the root to that tree.
+   */
+  private static final class TOCIndex {
+
+    /**
+     * The occurrence of the root tree.
+     */
+    private final Occurrence root;
+
+    /**
+     * Map of [uriid], [occurrences in position order]
+     */
+    private final Map<Long,List<Occurrence>> occurrences;
+
+    private TOCIndex(Occurrence root, Map<Long,List<Occurrence>> occurrences) {
+      this.root = root;
+      this.occurrences = occurrences;
+    }
+  }
+
   /**
    * The ID of the root of the tree (-1 for blank tree).
    */
@@ -120,6 +189,11 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
    */
   private final Map<Long,List<Long>> _transclusions;
 
+  /**
+   * The positional index for the TOC (built when first needed).
+   */
+  private transient volatile @Nullable TOCIndex index;
+
   /**
    * Creates a blank publication tree
    */
@@ -140,6 +214,19 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
     this._transclusions = new HashMap<>();
   }
 
+  /**
+   * Creates a publication tree from its content (used when reading a tree back).
+   *
+   * @param rootid        The ID of the root tree
+   * @param trees         The map of document trees
+   * @param transclusions Map of transcluded Id to a list of it's parent Ids in this publication.
+   */
+  PublicationTree(long rootid, Map<Long, DocumentTree> trees, Map<Long,List<Long>> transclusions) {
+    this._map = Collections.unmodifiableMap(trees);
+    this._rootid = rootid;
+    this._transclusions = Collections.unmodifiableMap(transclusions);
+  }
+
   /**
    * Creates a new tree wrapping existing publication tree with another document tree.
    *
@@ -452,22 +539,128 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
       if (this._map.size() == 1 || cposition != -1) {
         xml.attribute("content", "true");
       }
-      List<Long> trees = null;
+      TOCIndex index = index();
+      Set<Long> trees = null;
+      Set<Occurrence> visit = null;
       // Collect partial tree nodes
       if (cid != -1) {
-        trees = new ArrayList<>();
+        trees = new HashSet<>();
+        visit = new HashSet<>();
         if (cposition != -1) {
           trees.add(cid);
+          if (index.root.id == cid && cposition == 1) addPath(index.root, visit);
+          List<Occurrence> occurrences = index.occurrences.get(cid);
+          if (occurrences != null && cposition <= occurrences.size()) {
+            addPath(occurrences.get(cposition - 1), visit);
+          }
         } else {
           collectReferences(cid, trees);
+          for (Long id : trees) {
+            if (index.root.id == id) addPath(index.root, visit);
+            for (Occurrence occurrence : index.occurrences.getOrDefault(id, Collections.emptyList())) {
+              addPath(occurrence, visit);
+            }
+          }
         }
       }
-      toXML(xml, this._rootid, 1, 1, Reference.DEFAULT_FRAGMENT,
-          new TOCState(cid, cposition, trees, number, config, externalrefs));
+      if (visit == null || visit.contains(index.root)) {
+        toXML(xml, index.root, new TOCState(cid, cposition, trees, visit, number, config, externalrefs));
+      }
     }
     xml.closeElement();
   }
 
+  /**
+   * Add an embedded occurrence and all its ancestors to the occurrences to visit.
+   *
+   * @param occurrence  the occurrence
+   * @param visit       the occurrences to visit
+   */
+  private static void addPath(Occurrence occurrence, Set<Occurrence> visit) {
+    if (!occurrence.embedded) return;
+    for (Occurrence o = occurrence; o != null && visit.add(o); o = o.parent) {
+      // all ancestors must be visited
+    }
+  }
+
+  /**
+   * @return the positional index for the TOC.
+   *
+   * @throws IllegalStateException If an XRef loop is detected
+   */
+  private TOCIndex index() {
+    TOCIndex index = this.index;
+    if (index == null) {
+      Occurrence root = new Occurrence(this._rootid, 1, 1, Reference.DEFAULT_FRAGMENT, true, null);
+      Map<Long,List<Occurrence>> occurrences = new HashMap<>();
+      index(root, occurrences, new ArrayList<>());
+      index = new TOCIndex(root, occurrences);
+      this.index = index;
+    }
+    return index;
+  }
+
+  /**
+   * Index the occurrences of trees included from an occurrence.
+   *
+   * @param occurrence   the occurrence of the tree
+   * @param occurrences  the occurrences found so far by tree ID
+   * @param ancestors    List of the current ancestor tree ID-fragment
+   */
+  private void index(Occurrence occurrence, Map<Long,List<Occurrence>> occurrences, List<String> ancestors) {
+    String key = occurrence.id + "-" + occurrence.fragment;
+    if (ancestors.contains(key)) throw new IllegalStateException("XRef loop detected on URIID-fragment " + occurrence.id);
+    ancestors.add(key);
+    for (Part<?> part : parts(occurrence)) {
+      index(occurrence, occurrence.level, part, occurrences, ancestors);
+    }
+    ancestors.remove(key);
+  }
+
+  /**
+   * Index the occurrences of trees included from a part.
+   *
+   * @param occurrence   the occurrence of the tree containing the part
+   * @param level        The level that we are currently at
+   * @param part         The part
+   * @param occurrences  the occurrences found so far by tree ID
+   * @param ancestors    List of the current ancestor tree ID-fragment
+   */
+  private void index(Occurrence occurrence, int level, Part<?> part, Map<Long,List<Occurrence>> occurrences,
+      List<String> ancestors) {
+    Element element = part.element();
+    if (element instanceof TransclusionEnd || element instanceof Toc) return;
+    if (element instanceof Reference) {
+      Reference ref = (Reference)element;
+      boolean embedded = Reference.Type.EMBED.equals(ref.type());
+      DocumentTree nextTree = tree(ref.uri());
+      if (nextTree != null || !embedded) {
+        List<Occurrence> positions = occurrences.computeIfAbsent(ref.uri(), id -> new ArrayList<>());
+        Occurrence next = new Occurrence(ref.uri(), positions.size() + 1, level + 1, ref.targetfragment(),
+            nextTree != null && embedded, occurrence);
+        positions.add(next);
+        occurrence.children.add(next);
+        if (next.embedded) {
+          index(next, occurrences, ancestors);
+        }
+      }
+    }
+    for (Part<?> r : part.parts()) {
+      index(occurrence, level + 1, r, occurrences, ancestors);
+    }
+  }
+
+  /**
+   * @return the parts of the tree for an occurrence.
+   */
+  private List<Part<?>> parts(Occurrence occurrence) {
+    DocumentTree current = tree(occurrence.id);
+    if (!Reference.DEFAULT_FRAGMENT.equals(occurrence.fragment)) {
+      current = current.singleFragmentTree(occurrence.fragment);
+    }
+    return current.parts();
+  }
+
   /**
    * Collect all the ancestor references to a tree.
    *
@@ -476,7 +669,7 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
    *
    * @return whether ID is embedded/transcluded in publication
    */
-  private boolean collectReferences(long id, List<Long> trees) {
+  private boolean collectReferences(long id, Set<Long> trees) {
     if (trees.contains(id)) return true;
     int count = 0;
     DocumentTree t = tree(id);
@@ -505,26 +698,16 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
    * Serialize a tree as XML.
    *
    * @param xml         The XML writer
-   * @param id          The ID of the tree to serialize.
-   * @param level       The level that we are currently at
-   * @param count       No. of times ID has been used.
-   * @param fragment    The document fragment to serialize.
+   * @param occurrence  The occurrence of the tree to serialize.
    * @param state       The current state of the TOC
    *
    * @throws IOException If thrown by XML writer
    */
-  private void toXML(XMLWriter xml, long id, int level, Integer count, String fragment, TOCState state) throws IOException {
-    String key = id + "-" + fragment;
-    if (state.ancestors.contains(key)) throw new IllegalStateException("XRef loop detected on URIID-fragment " + id);
-    state.ancestors.add(key);
-    DocumentTree current = tree(id);
-    if (!Reference.DEFAULT_FRAGMENT.equals(fragment)) {
-      current = current.singleFragmentTree(fragment);
+  private void toXML(XMLWriter xml, Occurrence occurrence, TOCState state) throws IOException {
+    Iterator<Occurrence> next = occurrence.children.iterator();
+    for (Part<?> part : parts(occurrence)) {
+      toXML(xml, occurrence.id, occurrence.level, part, occurrence.position, next, state);
     }
-    for (Part<?> part : current.parts()) {
-      toXML(xml, id, level, part, count, state);
-    }
-    state.ancestors.remove(key);
   }
 
   /**
@@ -535,11 +718,13 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
    * @param level       The level that we are currently at
    * @param part        The part to serialize
    * @param count       No. of times ID has been used.
+   * @param children    The occurrences of trees included from the remaining parts
    * @param state       The current state of the TOC
    *
    * @throws IOException If thrown by XML writer
    */
-  private void toXML(XMLWriter xml, long id, int level, Part<?> part, Integer count, TOCState state) throws IOException {
+  private void toXML(XMLWriter xml, long id, int level, Part<?> part, Integer count, Iterator<Occurrence> children,
+      TOCState state) throws IOException {
     Element element = part.element();
     // ignore paragraphs
     if (element instanceof TransclusionEnd || element instanceof Toc) return;
@@ -563,10 +748,9 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
         Paragraph para = (Paragraph) element;
         if (para.isVisible(state.config)) {
           element.toXML(xml, level, state.number, id, count);
-          return;
-        } else {
-          return;
         }
+        skip(part.parts(), children);
+        return;
       } else {
         xml.openElement("part", !part.parts().isEmpty() ||
             (toNext && (state.trees == null || state.trees.contains(next) || state.cid == id)));
@@ -581,10 +765,10 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
 
     // Output the element
     Integer nextcount = null;
+    Occurrence nextOccurrence = null;
     if (nextTree != null || Reference.Type.TRANSCLUDE.equals(refType)) {
-      nextcount = state.doccount.get(next);
-      nextcount = nextcount == null ? 1 : nextcount + 1;
-      state.doccount.put(next, nextcount);
+      nextOccurrence = children.next();
+      nextcount = nextOccurrence.position;
       Reference ref = (Reference)element;
       if (Reference.Type.EMBED.equals(refType)) {
         if (Reference.DEFAULT_FRAGMENT.equals(targetFragment)) {
@@ -610,19 +794,37 @@ public final class PublicationTree implements Tree, Serializable, XMLWritable {
       if (output) element.toXML(xml, level, state.number, id, count);
     }
 
-    // Expand found reference
-    if (toNext) {
+    // Expand found reference unless nothing is output in that tree
+    if (toNext && (state.visit == null || state.visit.contains(nextOccurrence))) {
       // Moving to the next tree (increase the level by 1)
-      toXML(xml, next, level + 1, nextcount, targetFragment, state);
+      toXML(xml, nextOccurrence, state);
     }
 
     // Process all child parts
     for (Part<?> r : part.parts()) {
-      toXML(xml, id, level+1, r, count, state);
+      toXML(xml, id, level+1, r, count, children, state);
     }
     if (output && !Reference.Type.TRANSCLUDE.equals(refType)) xml.closeElement();
   }
 
+  /**
+   * Skip the occurrences of trees included from parts which are not serialized.
+   *
+   * @param parts     The parts
+   * @param children  The occurrences of trees included from the remaining parts
+   */
+  private void skip(List<Part<?>> parts, Iterator<Occurrence> children) {
+    for (Part<?> part : parts) {
+      Element element = part.element();
+      if (element instanceof TransclusionEnd || element instanceof Toc) continue;
+      if (element instanceof Reference) {
+        Reference ref = (Reference)element;
+        if (tree(ref.uri()) != null || Reference.Type.TRANSCLUDE.equals(ref.type())) children.next();
+      }
+      skip(part.parts(), children);
+    }
+  }
+
   /**
    * @return list of tree IDs
    */
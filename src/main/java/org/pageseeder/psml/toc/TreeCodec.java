@@ -0,0 +1,589 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.toc;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * A compact binary format for publication and document trees.
+ *
+ * <p>This is much faster and smaller than Java serialization and intended for caching trees.
+ * The format starts with the magic bytes <code>PSTC</code>, the format version and the kind
+ * of tree, followed by a table of all the strings used (titles, fragments, etc...) and the
+ * tree content. Numbers are written as variable length integers, strings as indexes in the
+ * string table and parts as a flat array in document order, each part followed by its number
+ * of children.
+ *
+ * <p>Trees written with a different version of the format cannot be read and should be rebuilt.
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class TreeCodec {
+
+  /**
+   * The current version of the format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The magic bytes starting the data.
+   */
+  private static final byte[] MAGIC = {'P', 'S', 'T', 'C'};
+
+  /** Kind of tree: publication */
+  private static final int PUBLICATION_TREE = 'P';
+
+  /** Kind of tree: document */
+  private static final int DOCUMENT_TREE = 'D';
+
+  /** Element types */
+  private static final int HEADING = 1;
+  private static final int PARAGRAPH = 2;
+  private static final int REFERENCE = 3;
+  private static final int PHANTOM = 4;
+  private static final int TOC = 5;
+  private static final int TRANSCLUSION_END = 6;
+  private static final int DOCUMENT_TITLE = 7;
+
+  /** Utility class */
+  private TreeCodec() {
+  }
+
+  /**
+   * Write a publication tree.
+   *
+   * @param publication The publication tree
+   * @param out         Where to write the data (not closed)
+   *
+   * @throws IOException If thrown by the output stream
+   */
+  public static void write(PublicationTree publication, OutputStream out) throws IOException {
+    Encoder encoder = new Encoder();
+    encoder.writeLong(publication.id());
+    Set<Long> ids = publication.ids();
+    encoder.writeCount(ids.size());
+    for (Long id : ids) {
+      encoder.writeDocument(publication.tree(id));
+    }
+    Map<Long,List<Long>> transclusions = publication.transclusions();
+    encoder.writeCount(transclusions.size());
+    for (Map.Entry<Long,List<Long>> entry : transclusions.entrySet()) {
+      encoder.writeLong(entry.getKey());
+      encoder.writeLongs(entry.getValue());
+    }
+    encoder.writeTo(out, PUBLICATION_TREE);
+  }
+
+  /**
+   * Write a document tree.
+   *
+   * @param tree The document tree
+   * @param out  Where to write the data (not closed)
+   *
+   * @throws IOException If thrown by the output stream
+   */
+  public static void write(DocumentTree tree, OutputStream out) throws IOException {
+    Encoder encoder = new Encoder();
+    encoder.writeDocument(tree);
+    encoder.writeTo(out, DOCUMENT_TREE);
+  }
+
+  /**
+   * Read a publication tree.
+   *
+   * @param in The data written by {@link #write(PublicationTree, OutputStream)} (not closed)
+   *
+   * @return the publication tree
+   *
+   * @throws IOException If thrown by the input stream or the data is invalid
+   */
+  public static PublicationTree readPublication(InputStream in) throws IOException {
+    Decoder decoder = new Decoder(in.readAllBytes(), PUBLICATION_TREE);
+    try {
+      long rootid = decoder.readLong();
+      int count = decoder.readSize(2);
+      Map<Long, DocumentTree> trees = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        DocumentTree tree = decoder.readDocument();
+        trees.put(tree.id(), tree);
+      }
+      count = decoder.readSize(2);
+      Map<Long,List<Long>> transclusions = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        transclusions.put(decoder.readLong(), decoder.readLongs());
+      }
+      decoder.end();
+      return new PublicationTree(rootid, trees, transclusions);
+    } catch (IllegalArgumentException | DateTimeException ex) {
+      throw new IOException("Invalid tree data: " + ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Read a document tree.
+   *
+   * @param in The data written by {@link #write(DocumentTree, OutputStream)} (not closed)
+   *
+   * @return the document tree
+   *
+   * @throws IOException If thrown by the input stream or the data is invalid
+   */
+  public static DocumentTree readDocument(InputStream in) throws IOException {
+    Decoder decoder = new Decoder(in.readAllBytes(), DOCUMENT_TREE);
+    try {
+      DocumentTree tree = decoder.readDocument();
+      decoder.end();
+      return tree;
+    } catch (IllegalArgumentException | DateTimeException ex) {
+      throw new IOException("Invalid tree data: " + ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Writes the tree content to a buffer while collecting the string table.
+   */
+  private static final class Encoder {
+
+    /**
+     * The tree content.
+     */
+    private byte[] buffer = new byte[4096];
+
+    /**
+     * Number of bytes in the buffer.
+     */
+    private int length = 0;
+
+    /**
+     * Index of each string in the string table.
+     */
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * The string table in index order.
+     */
+    private final List<String> table = new ArrayList<>();
+
+    /**
+     * Write the header, string table and content.
+     *
+     * @param out  the output stream
+     * @param kind the kind of tree
+     *
+     * @throws IOException If thrown by the output stream
+     */
+    void writeTo(OutputStream out, int kind) throws IOException {
+      Encoder header = new Encoder();
+      header.writeCount(VERSION);
+      header.writeByte(kind);
+      header.writeCount(this.table.size());
+      for (String s : this.table) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        header.writeCount(bytes.length);
+        header.writeBytes(bytes);
+      }
+      out.write(MAGIC);
+      out.write(header.buffer, 0, header.length);
+      out.write(this.buffer, 0, this.length);
+    }
+
+    void writeDocument(DocumentTree tree) {
+      writeLong(tree.id());
+      writeInt(tree.level());
+      writeString(tree.title());
+      writeString(tree.labels());
+      writeLongs(tree.listReverseReferences());
+      writeString(tree.titlefragment());
+      writeBoolean(tree.numbered());
+      writeString(tree.prefix());
+      writeString(tree.blocklabel());
+      OffsetDateTime lastedited = tree.lastedited();
+      writeBoolean(lastedited != null);
+      if (lastedited != null) {
+        writeLong(lastedited.toEpochSecond());
+        writeCount(lastedited.getNano());
+        writeInt(lastedited.getOffset().getTotalSeconds());
+      }
+      writeString(tree.path());
+      Map<String,String> headings = tree.fragmentheadings();
+      writeCount(headings.size());
+      for (Map.Entry<String,String> heading : headings.entrySet()) {
+        writeString(heading.getKey());
+        writeString(heading.getValue());
+      }
+      writeBoolean(tree.xmlheadings());
+      Map<String,Integer> levels = tree.fragmentlevels();
+      writeCount(levels.size());
+      for (Map.Entry<String,Integer> level : levels.entrySet()) {
+        writeString(level.getKey());
+        writeInt(level.getValue());
+      }
+      writeParts(tree.parts());
+    }
+
+    /**
+     * Parts are written as a flat array in document order, each part followed by its number
+     * of children, after the number of top level parts and the total number of parts.
+     */
+    private void writeParts(List<Part<?>> parts) {
+      List<Part<?>> flat = new ArrayList<>();
+      Deque<Part<?>> stack = new ArrayDeque<>();
+      for (int i = parts.size() - 1; i >= 0; i--) stack.push(parts.get(i));
+      while (!stack.isEmpty()) {
+        Part<?> part = stack.pop();
+        flat.add(part);
+        List<Part<?>> children = part.parts();
+        for (int i = children.size() - 1; i >= 0; i--) stack.push(children.get(i));
+      }
+      writeCount(parts.size());
+      writeCount(flat.size());
+      for (Part<?> part : flat) {
+        writeElement(part.element());
+        writeCount(part.parts().size());
+      }
+    }
+
+    private void writeElement(Element element) {
+      if (element instanceof Heading) {
+        Heading heading = (Heading) element;
+        writeCommon(HEADING, element);
+        writeCount(heading.index());
+        writeBoolean(heading.numbered());
+        writeString(heading.prefix());
+        writeString(heading.blocklabel());
+      } else if (element instanceof Paragraph) {
+        Paragraph para = (Paragraph) element;
+        writeCommon(PARAGRAPH, element);
+        writeCount(para.index());
+        writeBoolean(para.numbered());
+        writeString(para.prefix());
+        writeString(para.blocklabel());
+      } else if (element instanceof Reference) {
+        Reference ref = (Reference) element;
+        writeCommon(REFERENCE, element);
+        writeLong(ref.uri());
+        writeByte(ref.type().ordinal());
+        writeString(ref.documenttype());
+        writeString(ref.targetfragment());
+        Boolean display = ref.displaydocument();
+        writeByte(display == null ? 0 : display ? 2 : 1);
+      } else if (element instanceof Phantom) {
+        writeCommon(PHANTOM, element);
+      } else if (element instanceof Toc) {
+        writeByte(TOC);
+      } else if (element instanceof TransclusionEnd) {
+        writeCommon(TRANSCLUSION_END, element);
+      } else if (element instanceof DocumentTitle) {
+        writeByte(DOCUMENT_TITLE);
+        writeString(element.title());
+      } else {
+        throw new IllegalArgumentException("Unsupported element " + element.getClass().getName());
+      }
+    }
+
+    private void writeCommon(int type, Element element) {
+      writeByte(type);
+      writeCount(element.level());
+      writeString(element.title());
+      writeString(element.fragment());
+      writeString(element.originalFragment());
+    }
+
+    /**
+     * Strings are written as their index in the table plus one, 0 for null.
+     */
+    void writeString(@Nullable String s) {
+      if (s == null) {
+        writeCount(0);
+        return;
+      }
+      Integer index = this.strings.get(s);
+      if (index == null) {
+        index = this.table.size();
+        this.table.add(s);
+        this.strings.put(s, index);
+      }
+      writeCount(index + 1);
+    }
+
+    void writeLongs(List<Long> values) {
+      writeCount(values.size());
+      for (Long value : values) writeLong(value);
+    }
+
+    void writeBoolean(boolean value) {
+      writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Signed values use zig-zag encoding.
+     */
+    void writeInt(int value) {
+      writeLong(value);
+    }
+
+    void writeLong(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Counts, indexes and lengths are never negative.
+     */
+    void writeCount(int value) {
+      writeVarLong(value);
+    }
+
+    private void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        this.buffer[this.length++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      this.buffer[this.length++] = (byte) value;
+    }
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      this.buffer[this.length++] = (byte) value;
+    }
+
+    void writeBytes(byte[] bytes) {
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+      this.length += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+      if (this.length + extra > this.buffer.length) {
+        this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + extra));
+      }
+    }
+  }
+
+  /**
+   * Reads the tree content from the data.
+   */
+  private static final class Decoder {
+
+    /**
+     * The data.
+     */
+    private final byte[] data;
+
+    /**
+     * The current position in the data.
+     */
+    private int position = 0;
+
+    /**
+     * The string table.
+     */
+    private final String[] strings;
+
+    /**
+     * @param data the data
+     * @param kind the kind of tree expected
+     *
+     * @throws IOException If the header is invalid
+     */
+    Decoder(byte[] data, int kind) throws IOException {
+      this.data = data;
+      if (data.length < MAGIC.length || !Arrays.equals(MAGIC, Arrays.copyOf(data, MAGIC.length)))
+        throw new IOException("Invalid tree data");
+      this.position = MAGIC.length;
+      int version = readCount();
+      if (version != VERSION) throw new IOException("Unsupported tree data version " + version);
+      int actual = readByte();
+      if (actual != kind) throw new IOException("Unexpected kind of tree " + (char) actual);
+      this.strings = new String[readSize(1)];
+      for (int i = 0; i < this.strings.length; i++) {
+        int length = readCount();
+        if (length > this.data.length - this.position) throw new EOFException("Truncated tree data");
+        this.strings[i] = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+        this.position += length;
+      }
+    }
+
+    /**
+     * @throws IOException if there is data left
+     */
+    void end() throws IOException {
+      if (this.position != this.data.length) throw new IOException("Unexpected data after tree");
+    }
+
+    DocumentTree readDocument() throws IOException {
+      long id = readLong();
+      int level = readInt();
+      String title = readString();
+      String labels = readString();
+      List<Long> reverse = readLongs();
+      String titlefragment = readString();
+      boolean numbered = readBoolean();
+      String prefix = readString();
+      String blocklabel = readString();
+      OffsetDateTime lastedited = null;
+      if (readBoolean()) {
+        long seconds = readLong();
+        int nanos = readCount();
+        lastedited = OffsetDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos),
+            ZoneOffset.ofTotalSeconds(readInt()));
+      }
+      String path = readString();
+      int count = readSize(2);
+      Map<String,String> headings = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        headings.put(readString(), readString());
+      }
+      boolean xmlheadings = readBoolean();
+      count = readSize(2);
+      Map<String,Integer> levels = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        levels.put(readString(), readInt());
+      }
+      List<Part<?>> parts = readParts();
+      return new DocumentTree(id, level, title, labels, reverse, titlefragment, numbered, prefix, blocklabel,
+          lastedited, path, parts, headings, xmlheadings, levels);
+    }
+
+    private List<Part<?>> readParts() throws IOException {
+      int roots = readCount();
+      int count = readSize(2);
+      Element[] elements = new Element[count];
+      int[] children = new int[count];
+      for (int i = 0; i < count; i++) {
+        elements[i] = readElement();
+        children[i] = readCount();
+      }
+      // build from the last part so that the children of each part are built before it
+      Deque<Part<?>> built = new ArrayDeque<>();
+      for (int i = count - 1; i >= 0; i--) {
+        if (children[i] > built.size()) throw new IOException("Invalid number of children " + children[i]);
+        built.push(new Part<>(elements[i], pop(built, children[i])));
+      }
+      if (built.size() != roots) throw new IOException("Invalid number of parts " + roots);
+      return pop(built, roots);
+    }
+
+    /**
+     * @return the specified number of parts from the top of the stack in document order
+     */
+    private static List<Part<?>> pop(Deque<Part<?>> built, int count) {
+      if (count == 0) return Collections.emptyList();
+      List<Part<?>> parts = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) parts.add(built.pop());
+      return parts;
+    }
+
+    private Element readElement() throws IOException {
+      int type = readByte();
+      if (type == TOC) return new Toc();
+      if (type == DOCUMENT_TITLE) {
+        String title = readString();
+        return Element.NO_TITLE.equals(title) ? DocumentTitle.UNTITLED : new DocumentTitle(title);
+      }
+      int level = readCount();
+      String title = readString();
+      String fragment = readString();
+      String originalFragment = readString();
+      switch (type) {
+        case HEADING:
+          return new Heading(level, title, fragment, originalFragment, readCount(), readBoolean(),
+              readString(), readString());
+        case PARAGRAPH:
+          return new Paragraph(level, title, fragment, originalFragment, readCount(), readBoolean(),
+              readString(), readString());
+        case REFERENCE:
+          long uri = readLong();
+          int ordinal = readByte();
+          if (ordinal >= Reference.Type.values().length) throw new IOException("Invalid reference type " + ordinal);
+          String documenttype = readString();
+          String targetfragment = readString();
+          int display = readByte();
+          return new Reference(level, title, fragment, originalFragment, uri, Reference.Type.values()[ordinal],
+              documenttype, targetfragment, display == 0 ? null : display == 2);
+        case PHANTOM:
+          return new Phantom(level, fragment, originalFragment);
+        case TRANSCLUSION_END:
+          return new TransclusionEnd(fragment, originalFragment);
+        default:
+          throw new IOException("Invalid element type " + type);
+      }
+    }
+
+    @Nullable String readString() throws IOException {
+      int index = readCount();
+      if (index > this.strings.length) throw new IOException("Invalid string index " + index);
+      return index == 0 ? null : this.strings[index - 1];
+    }
+
+    List<Long> readLongs() throws IOException {
+      int count = readSize(1);
+      List<Long> values = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) values.add(readLong());
+      return values;
+    }
+
+    boolean readBoolean() throws IOException {
+      return readByte() != 0;
+    }
+
+    int readInt() throws IOException {
+      return (int) readLong();
+    }
+
+    long readLong() throws IOException {
+      long value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readCount() throws IOException {
+      long value = readVarLong();
+      if (value < 0 || value > Integer.MAX_VALUE) throw new IOException("Invalid count " + value);
+      return (int) value;
+    }
+
+    /**
+     * Read the number of items in a collection so that it can be allocated safely.
+     *
+     * @param minBytes the minimum number of bytes taken by each item
+     *
+     * @throws IOException if there is not enough data left for that many items
+     */
+    int readSize(int minBytes) throws IOException {
+      int count = readCount();
+      if ((long) count * minBytes > this.data.length - this.position) throw new EOFException("Truncated tree data");
+      return count;
+    }
+
+    private long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) return value;
+      }
+      throw new IOException("Invalid variable length integer");
+    }
+
+    int readByte() throws IOException {
+      if (this.position >= this.data.length) throw new EOFException("Truncated tree data");
+      return this.data[this.position++] & 0xFF;
+    }
+  }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 1999-2025 Allette Systems Pty Ltd
+ */
+package org.pageseeder.psml.util;
+
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A thread-safe LRU cache with an optional time to live.
+ *
+ * <p>Entries are spread over independently locked segments, each segment evicting its least
+ * recently used entries, so that threads using different keys do not contend on the same lock.
+ * As a result, the eviction order is only approximately LRU across the whole cache.
+ *
+ * <p>The cache keeps count of hits, misses and evictions (including expired entries).
+ *
+ * <p>Null keys and values are not supported.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ *
+ * @author Philip Rutherford
+ *
+ * @version 1.9.0
+ * @since 1.9.0
+ */
+public final class ConcurrentCache<K, V> {
+
+  /**
+   * Maximum number of segments.
+   */
+  private static final int MAX_SEGMENTS = 16;
+
+  /**
+   * Minimum number of entries per segment.
+   */
+  private static final int MIN_SEGMENT_SIZE = 16;
+
+  /**
+   * The segments.
+   */
+  private final Segment<K, V>[] segments;
+
+  /**
+   * Maximum number of entries in the cache.
+   */
+  private final int maxSize;
+
+  /**
+   * Time to live of entries in nanoseconds (0 for no expiry).
+   */
+  private final long ttl;
+
+  /**
+   * Source of time in nanoseconds.
+   */
+  private final LongSupplier clock;
+
+  /**
+   * Number of successful lookups.
+   */
+  private final LongAdder hits = new LongAdder();
+
+  /**
+   * Number of failed lookups.
+   */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Number of entries evicted or expired.
+   */
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Create a cache where entries do not expire.
+   *
+   * @param maxSize Maximum number of entries in the cache
+   *
+   * @throws IllegalArgumentException If the maximum size is less than 1
+   */
+  public ConcurrentCache(int maxSize) {
+    this(maxSize, Duration.ZERO);
+  }
+
+  /**
+   * Create a cache.
+   *
+   * @param maxSize Maximum number of entries in the cache
+   * @param ttl     Time to live of entries after they are added (zero for no expiry)
+   *
+   * @throws IllegalArgumentException If the maximum size is less than 1 or the time to live is negative
+   */
+  public ConcurrentCache(int maxSize, Duration ttl) {
+    this(maxSize, ttl, System::nanoTime);
+  }
+
+  /**
+   * Create a cache using the specified clock.
+   *
+   * @param maxSize Maximum number of entries in the cache
+   * @param ttl     Time to live of entries after they are added (zero for no expiry)
+   * @param clock   Source of time in nanoseconds
+   */
+  @SuppressWarnings("unchecked")
+  ConcurrentCache(int maxSize, Duration ttl, LongSupplier clock) {
+    if (maxSize < 1) throw new IllegalArgumentException("Cache size must be at least 1");
+    if (ttl.isNegative()) throw new IllegalArgumentException("Cache time to live must not be negative");
+    this.maxSize = maxSize;
+    this.ttl = ttl.toNanos();
+    this.clock = clock;
+    int count = 1;
+    while (count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_SIZE <= maxSize) count *= 2;
+    this.segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      // spread the remainder over the first segments
+      this.segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0));
+    }
+  }
+
+  /**
+   * Get a value from the cache.
+   *
+   * @param key The key
+   *
+   * @return the value or <code>null</code> if not in the cache or expired
+   */
+  public @Nullable V get(K key) {
+    Segment<K, V> segment = segment(key);
+    segment.lock.lock();
+    try {
+      Entry<V> entry = segment.map.get(key);
+      if (entry != null && isExpired(entry)) {
+        segment.map.remove(key);
+        this.evictions.increment();
+        entry = null;
+      }
+      if (entry == null) {
+        this.misses.increment();
+        return null;
+      }
+      this.hits.increment();
+      return entry.value;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  /**
+   * Put a value in the cache, evicting the least recently used entry of its segment if it is full.
+   *
+   * @param key   The key
+   * @param value The value
+   */
+  public void put(K key, V value) {
+    Segment<K, V> segment = segment(key);
+    Entry<V> entry = new Entry<>(value, expiry());
+    segment.lock.lock();
+    try {
+      segment.map.put(key, entry);
+      evict(segment);
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  /**
+   * Get a value from the cache, computing it if not in the cache.
+   *
+   * <p>The value is computed without holding any lock, so it may be computed more than once when
+   * several threads request the same key at the same time; the first value cached is returned.
+   *
+   * @param key    The key
+   * @param loader Computes the value for the key
+   *
+   * @return the cached or computed value
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+    V value = get(key);
+    if (value != null) return value;
+    value = loader.apply(key);
+    Segment<K, V> segment = segment(key);
+    segment.lock.lock();
+    try {
+      Entry<V> existing = segment.map.get(key);
+      if (existing != null && !isExpired(existing)) return existing.value;
+      segment.map.put(key, new Entry<>(value, expiry()));
+      evict(segment);
+    } finally {
+      segment.lock.unlock();
+    }
+    return value;
+  }
+
+  /**
+   * Remove a value from the cache.
+   *
+   * @param key The key
+   */
+  public void remove(K key) {
+    Segment<K, V> segment = segment(key);
+    segment.lock.lock();
+    try {
+      segment.map.remove(key);
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  /**
+   * Remove all values from the cache (statistics are not reset).
+   */
+  public void clear() {
+    for (Segment<K, V> segment : this.segments) {
+      segment.lock.lock();
+      try {
+        segment.map.clear();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return the number of entries in the cache (including expired entries not removed yet)
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : this.segments) {
+      segment.lock.lock();
+      try {
+        size += segment.map.size();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return the maximum number of entries in the cache
+   */
+  public int maxSize() {
+    return this.maxSize;
+  }
+
+  /**
+   * @return the number of lookups which found a value
+   */
+  public long hitCount() {
+    return this.hits.sum();
+  }
+
+  /**
+   * @return the number of lookups which did not find a value
+   */
+  public long missCount() {
+    return this.misses.sum();
+  }
+
+  /**
+   * @return the number of entries removed because the cache was full or they expired
+   */
+  public long evictionCount() {
+    return this.evictions.sum();
+  }
+
+  /**
+   * @return the ratio of lookups which found a value (1 if there was no lookup)
+   */
+  public double hitRate() {
+    long hits = hitCount();
+    long total = hits + missCount();
+    return total == 0 ? 1.0 : (double) hits / total;
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentCache[size=" + size() + "/" + this.maxSize + ", hits=" + hitCount() +
+        ", misses=" + missCount() + ", evictions=" + evictionCount() + "]";
+  }
+
+  /**
+   * @return the segment for the key
+   */
+  private Segment<K, V> segment(K key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return this.segments[h & (this.segments.length - 1)];
+  }
+
+  /**
+   * @return the expiry time for a new entry
+   */
+  private long expiry() {
+    return this.ttl == 0 ? 0 : this.clock.getAsLong() + this.ttl;
+  }
+
+  /**
+   * @return whether the entry has expired
+   */
+  private boolean isExpired(Entry<V> entry) {
+    return entry.expiry != 0 && this.clock.getAsLong() - entry.expiry >= 0;
+  }
+
+  /**
+   * Remove the least recently used entries while the segment is over capacity (must hold the lock).
+   */
+  private void evict(Segment<K, V> segment) {
+    while (segment.map.size() > segment.capacity) {
+      segment.map.remove(segment.map.keySet().iterator().next());
+      this.evictions.increment();
+    }
+  }
+
+  /**
+   * A cached value.
+   */
+  private static final class Entry<V> {
+
+    /** The value */
+    private final V value;
+
+    /** Time when the entry expires in nanoseconds (0 for no expiry) */
+    private final long expiry;
+
+    private Entry(V value, long expiry) {
+      this.value = value;
+      this.expiry = expiry;
+    }
+  }
+
+  /**
+   * A part of the cache with its own lock.
+   */
+  private static final class Segment<K, V> {
+
+    /** Lock for this segment */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Entries in access order */
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    /** Maximum number of entries in this segment */
+    private final int capacity;
+
+    private Segment(int capacity) {
+      this.capacity = capacity;
+      this.map = new LinkedHashMap<>(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, true);
+    }
+  }
+
+}
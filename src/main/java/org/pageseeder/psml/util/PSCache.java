@@ -7,9 +7,12 @@ import java.util.Objects;
 /**
  * An LRU Cache implementation
  *
- * @version 1.7.3
+ * @deprecated Not thread-safe, use {@link ConcurrentCache} instead
+ *
+ * @version 1.9.0
  * @since 0.6.5
  */
+@Deprecated
 public class PSCache<K, V> extends LinkedHashMap<K, V> {
 
   private final int maxSize;
@@ -9,8 +9,6 @@ import javax.xml.transform.stream.StreamSource;
 
 import java.io.*;
 import java.net.URL;
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -19,7 +17,7 @@ import java.util.Map.Entry;
  *
  * @author Christophe Lauret
  *
- * @version 1.7.0
+ * @version 1.9.0
  * @since 1.0
  */
 public final class XSLT {
@@ -28,13 +26,7 @@ public final class XSLT {
    * Maps XSLT templates to their URL as a string for easy retrieval.
    * Only keep the last 10 entries.
    */
-  private static final Map<String, Templates> CACHE =
-      Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest) {
-          return size() > 10;
-        }
-      });
+  private static final ConcurrentCache<String, Templates> CACHE = new ConcurrentCache<>(10);
 
   /** Utility class. */
   private XSLT() {
@@ -52,15 +44,7 @@ public final class XSLT {
    * @throws XSLTException If XSLT templates could not be loaded from the specified URL.
    */
   public static Templates getTemplates(URL url) {
-    final String key = url.toString();
-    synchronized (CACHE) {
-      Templates templates = CACHE.get(key);
-      if (templates == null) {
-        templates = toTemplates(url);
-        CACHE.put(key, templates);
-      }
-      return templates;
-    }
+    return CACHE.computeIfAbsent(url.toString(), key -> toTemplates(url));
   }
 
   /**
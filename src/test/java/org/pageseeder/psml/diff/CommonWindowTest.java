@@ -0,0 +1,76 @@
+package org.pageseeder.psml.diff;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.diffx.token.XMLToken;
+import org.pageseeder.diffx.token.impl.WordToken;
+import org.pageseeder.diffx.token.impl.XMLAttribute;
+import org.pageseeder.diffx.token.impl.XMLEndElement;
+import org.pageseeder.diffx.token.impl.XMLStartElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommonWindowTest {
+
+  @Test
+  void testIdentical() {
+    CommonWindow window = CommonWindow.of(fragment("One", "Two"), fragment("One", "Two"));
+    assertTrue(window.identical);
+  }
+
+  @Test
+  void testOneParagraphEdit() {
+    CommonWindow window = CommonWindow.of(fragment("One", "Two", "Three"), fragment("One", "Changed", "Three"));
+    assertFalse(window.identical);
+    // only the text of the second paragraph is left
+    assertEquals(7, window.prefix);
+    assertEquals(6, window.suffix);
+  }
+
+  @Test
+  void testParagraphDeleted() {
+    CommonWindow window = CommonWindow.of(fragment("One", "Two"), fragment("One"));
+    assertFalse(window.identical);
+    // the whole second paragraph is left on one side
+    assertEquals(5, window.prefix);
+    assertEquals(1, window.suffix);
+  }
+
+  @Test
+  void testAttributeNotSplit() {
+    XMLStartElement para = new XMLStartElement("para");
+    List<XMLToken> a = List.of(para, new XMLAttribute("indent", "1"), new WordToken("One"), new XMLEndElement(para));
+    List<XMLToken> b = List.of(para, new XMLAttribute("indent", "2"), new WordToken("One"), new XMLEndElement(para));
+    CommonWindow window = CommonWindow.of(a, b);
+    // the attributes cannot be separated from their element
+    assertTrue(window.isEmpty());
+  }
+
+  @Test
+  void testNoCommonTokens() {
+    List<XMLToken> a = List.of(new WordToken("One"));
+    List<XMLToken> b = List.of(new WordToken("Two"));
+    assertTrue(CommonWindow.of(a, b).isEmpty());
+  }
+
+  /**
+   * @return the tokens of a fragment with a paragraph for each word
+   */
+  private static List<XMLToken> fragment(String... words) {
+    List<XMLToken> tokens = new ArrayList<>();
+    XMLStartElement fragment = new XMLStartElement("fragment");
+    tokens.add(fragment);
+    for (String word : words) {
+      XMLStartElement para = new XMLStartElement("para");
+      tokens.add(para);
+      tokens.add(new XMLAttribute("indent", "1"));
+      tokens.add(new WordToken(word));
+      tokens.add(new XMLEndElement(para));
+    }
+    tokens.add(new XMLEndElement(fragment));
+    return tokens;
+  }
+
+}
@@ -0,0 +1,117 @@
+package org.pageseeder.psml.diff;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiffCacheTest {
+
+  private static final File CACHE = new File("build/test/diff/cache");
+
+  @Test
+  void testKey() {
+    String key = new DiffCache.Key().add("a").add("b").build();
+    assertEquals(64, key.length());
+    assertEquals(key, new DiffCache.Key().add("a").add("b").build());
+    assertNotEquals(key, new DiffCache.Key().add("ab").add("").build());
+    assertNotEquals(key, new DiffCache.Key().add("a").add(null).add("b").build());
+  }
+
+  @Test
+  void testMemory() {
+    DiffCache cache = new DiffCache(10);
+    String key = new DiffCache.Key().add("x").build();
+    assertNull(cache.get(key));
+    cache.put(key, new DiffCache.Result("<p/>", true, DiffReport.Engine.GASHERBRUM));
+    DiffCache.Result result = cache.get(key);
+    assertNotNull(result);
+    assertEquals("<p/>", result.output);
+    assertTrue(result.changed);
+    assertEquals(DiffReport.Engine.GASHERBRUM, result.engine);
+    assertEquals(1, cache.memoryHitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  @Test
+  void testDisk() throws IOException {
+    if (CACHE.exists()) {
+      FileUtils.deleteDirectory(CACHE);
+    }
+    Path directory = CACHE.toPath();
+    String key = new DiffCache.Key().add("x").build();
+    new DiffCache(10, directory).put(key, new DiffCache.Result("<p>\nText</p>", false, DiffReport.Engine.LINEAR));
+
+    // a new cache finds the result on disk
+    DiffCache cache = new DiffCache(10, directory);
+    DiffCache.Result result = cache.get(key);
+    assertNotNull(result);
+    assertEquals("<p>\nText</p>", result.output);
+    assertFalse(result.changed);
+    assertEquals(DiffReport.Engine.LINEAR, result.engine);
+    assertEquals(1, cache.diskHitCount());
+    assertNotNull(cache.get(key));
+    assertEquals(1, cache.memoryHitCount());
+
+    cache.clear();
+    assertNull(cache.get(key));
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  void testDiffer() throws Exception {
+    String a = "<fragment id=\"1\"><para>Some content.</para></fragment>";
+    String b = "<fragment id=\"1\"><para>Some new content.</para></fragment>";
+    DiffCache cache = new DiffCache(10);
+    PSMLDiffer differ = new PSMLDiffer(4000000);
+    differ.setCache(cache);
+    StringWriter first = new StringWriter();
+    DiffReport report = differ.diffWithReport(new StringReader(a), new StringReader(b), first);
+    assertTrue(report.hasChanges());
+    assertFalse(report.fromCache());
+
+    StringWriter second = new StringWriter();
+    report = differ.diffWithReport(new StringReader(a), new StringReader(b), second);
+    assertTrue(report.hasChanges());
+    assertTrue(report.fromCache());
+    assertEquals(first.toString(), second.toString());
+
+    // different settings use a different key
+    differ.setTextNormalizer(LexicalNormalizer.all());
+    report = differ.diffWithReport(new StringReader(a), new StringReader(b), new StringWriter());
+    assertFalse(report.fromCache());
+  }
+
+  @Test
+  void testDifferNormalizedText() throws Exception {
+    DiffCache cache = new DiffCache(10);
+    PSMLDiffer differ = new PSMLDiffer(4000000);
+    differ.setCache(cache);
+    differ.setTextNormalizer(LexicalNormalizer.all());
+    String a1 = "<fragment id=\"1\"><para>Some content.</para></fragment>";
+    String b1 = "<fragment id=\"1\"><para>Some new content.</para></fragment>";
+    // same text once normalized, but the output must use the original text
+    String a2 = "<fragment id=\"1\"><para>SOME CONTENT!</para></fragment>";
+    String b2 = "<fragment id=\"1\"><para>SOME NEW CONTENT!</para></fragment>";
+    StringWriter first = new StringWriter();
+    differ.diffWithReport(new StringReader(a1), new StringReader(b1), first);
+    StringWriter second = new StringWriter();
+    DiffReport report = differ.diffWithReport(new StringReader(a2), new StringReader(b2), second);
+    assertFalse(report.fromCache());
+    assertEquals(2, cache.missCount());
+    assertTrue(second.toString().contains("CONTENT"), second.toString());
+    assertFalse(second.toString().contains("content"), second.toString());
+  }
+
+}
@@ -12,6 +12,7 @@ import java.nio.file.Files;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -151,6 +152,68 @@ class DiffTest {
     assertThat(xml, hasXPath("count(//diff)", equalTo("2")));
   }
 
+  @Test
+  void testDiffSinglePass() throws IOException, DiffException {
+    Diff d = new Diff();
+    d.setSrc(new File(SOURCE_FOLDER + "2"));
+    if (DEST2.exists()) {
+      FileUtils.deleteDirectory(DEST2);
+    }
+    DEST2.mkdirs();
+    d.setDest(DEST2);
+    d.addDiffElements(false);
+    String expected = Files.readString(CM.toPath());
+
+    d.setSinglePass(true);
+    FileUtils.deleteDirectory(DEST2);
+    DEST2.mkdirs();
+    d.addDiffElements(false);
+    assertTrue(CM.exists());
+    assertEquals(expected, Files.readString(CM.toPath()));
+  }
+
+  @Test
+  void testDiffSinglePassNoCompare() throws IOException, DiffException {
+    File dest = new File(DEST_FOLDER + "-single");
+    if (dest.exists()) {
+      FileUtils.deleteDirectory(dest);
+    }
+    dest.mkdirs();
+    Diff d = new Diff();
+    d.setSrc(new File(SOURCE_FOLDER));
+    d.setDest(dest);
+    d.setSinglePass(true);
+    d.addDiffElements(false);
+
+    // only files with compare fragments are written and no temporary file is left
+    assertTrue(new File(dest, C1.getName()).exists());
+    assertFalse(new File(dest, C4.getName()).exists());
+    assertTrue(FileUtils.listFiles(dest, new String[]{"tmp"}, true).isEmpty());
+  }
+
+  @Test
+  void testDiffParallel() throws IOException, DiffException {
+    Diff d = new Diff();
+    d.setSrc(new File(SOURCE_FOLDER + "2"));
+    if (DEST2.exists()) {
+      FileUtils.deleteDirectory(DEST2);
+    }
+    DEST2.mkdirs();
+    d.setDest(DEST2);
+    d.addDiffElements(false);
+    String expected = Files.readString(CM.toPath());
+
+    for (boolean singlePass : new boolean[]{false, true}) {
+      d.setThreads(4);
+      d.setSinglePass(singlePass);
+      FileUtils.deleteDirectory(DEST2);
+      DEST2.mkdirs();
+      d.addDiffElements(false);
+      assertTrue(CM.exists());
+      assertEquals(expected, Files.readString(CM.toPath()));
+    }
+  }
+
   private static EvaluateXPathMatcher hasXPath(String xPath, Matcher<String> valueMatcher) {
     return new EvaluateXPathMatcher(xPath, valueMatcher);
   }
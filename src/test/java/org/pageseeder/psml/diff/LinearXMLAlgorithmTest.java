@@ -0,0 +1,133 @@
+package org.pageseeder.psml.diff;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.diffx.action.Operation;
+import org.pageseeder.diffx.action.OperationsBuffer;
+import org.pageseeder.diffx.api.Operator;
+import org.pageseeder.diffx.token.XMLToken;
+import org.pageseeder.diffx.token.impl.WordToken;
+import org.pageseeder.diffx.token.impl.XMLEndElement;
+import org.pageseeder.diffx.token.impl.XMLStartElement;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinearXMLAlgorithmTest {
+
+  @Test
+  void testWords() {
+    List<XMLToken> a = words("The quick brown fox jumps over the lazy dog");
+    List<XMLToken> b = words("The quick red fox jumped over the dog");
+    OperationsBuffer<XMLToken> buffer = new OperationsBuffer<>();
+    new LinearXMLAlgorithm().diff(a, b, buffer);
+    assertEquals(a, side(buffer, Operator.INS));
+    assertEquals(b, side(buffer, Operator.DEL));
+    assertEquals(6, count(buffer, Operator.MATCH));
+  }
+
+  @Test
+  void testLargeSequences() {
+    Random random = new Random(42);
+    List<XMLToken> a = new ArrayList<>();
+    List<XMLToken> b = new ArrayList<>();
+    XMLStartElement para = new XMLStartElement("para");
+    for (int i = 0; i < 20000; i++) {
+      a.add(para);
+      b.add(para);
+      for (int j = 0; j < 10; j++) {
+        WordToken word = new WordToken("w" + random.nextInt(1000));
+        a.add(word);
+        b.add(random.nextInt(50) == 0 ? new WordToken("changed") : word);
+      }
+      a.add(new XMLEndElement(para));
+      b.add(new XMLEndElement(para));
+    }
+    LinearXMLAlgorithm algorithm = new LinearXMLAlgorithm();
+    OperationsBuffer<XMLToken> buffer = new OperationsBuffer<>();
+    algorithm.diff(a, b, buffer);
+    assertFalse(algorithm.hasError());
+    assertEquals(a, side(buffer, Operator.INS));
+    assertEquals(b, side(buffer, Operator.DEL));
+  }
+
+  @Test
+  void testManyHeuristicSplits() {
+    // with a cost limit of 1 every split only moves forward by a few tokens
+    Random random = new Random(7);
+    List<XMLToken> a = new ArrayList<>();
+    List<XMLToken> b = new ArrayList<>();
+    for (int i = 0; i < 200000; i++) {
+      a.add(new WordToken("w" + random.nextInt(8)));
+      b.add(new WordToken("w" + random.nextInt(8)));
+    }
+    LinearXMLAlgorithm algorithm = new LinearXMLAlgorithm(1);
+    OperationsBuffer<XMLToken> buffer = new OperationsBuffer<>();
+    algorithm.diff(a, b, buffer);
+    assertFalse(algorithm.hasError());
+    assertEquals(a, side(buffer, Operator.INS));
+    assertEquals(b, side(buffer, Operator.DEL));
+  }
+
+  @Test
+  void testInvalidCostLimit() {
+    assertThrows(IllegalArgumentException.class, () -> new LinearXMLAlgorithm(0));
+  }
+
+  @Test
+  void testDifferReportsEngine() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 50; i++) text.append(" word").append(i);
+    String a = "<fragment id=\"1\"><para>Start" + text + " end.</para></fragment>";
+    String b = "<fragment id=\"1\"><para>Begin" + text + " finish.</para></fragment>";
+    PSMLDiffer differ = new PSMLDiffer(4000000);
+    DiffReport report = differ.diffWithReport(new StringReader(a), new StringReader(b), new StringWriter());
+    assertEquals(DiffReport.Engine.GASHERBRUM, report.engine());
+    assertFalse(report.fallbackUsed());
+
+    // the heap budget only applies to the matrix so Gasherbrum is still used
+    differ.setHeapBudget(20000);
+    StringWriter out = new StringWriter();
+    report = differ.diffWithReport(new StringReader(a), new StringReader(b), out);
+    assertEquals(DiffReport.Engine.GASHERBRUM, report.engine());
+    assertFalse(report.fallbackUsed());
+    assertTrue(report.hasChanges());
+    assertTrue(out.toString().contains("finish"));
+
+    report = differ.diffWithReport(new StringReader(a), new StringReader(a), new StringWriter());
+    assertEquals(DiffReport.Engine.NONE, report.engine());
+    assertFalse(report.hasChanges());
+  }
+
+  private static List<XMLToken> words(String text) {
+    List<XMLToken> tokens = new ArrayList<>();
+    for (String word : text.split(" ")) {
+      tokens.add(new WordToken(word));
+    }
+    return tokens;
+  }
+
+  /**
+   * @return the tokens of one side of the diff by excluding the specified operator
+   */
+  private static List<XMLToken> side(OperationsBuffer<XMLToken> buffer, Operator exclude) {
+    List<XMLToken> tokens = new ArrayList<>();
+    for (Operation<XMLToken> operation : buffer.getOperations()) {
+      if (operation.operator() != exclude) tokens.add(operation.token());
+    }
+    return tokens;
+  }
+
+  private static int count(OperationsBuffer<XMLToken> buffer, Operator operator) {
+    int count = 0;
+    for (Operation<XMLToken> operation : buffer.getOperations()) {
+      if (operation.operator() == operator) count++;
+    }
+    return count;
+  }
+
+}
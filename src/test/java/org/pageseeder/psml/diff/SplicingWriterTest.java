@@ -0,0 +1,67 @@
+package org.pageseeder.psml.diff;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SplicingWriterTest {
+
+  @Test
+  void testWriteThrough() throws IOException {
+    StringWriter out = new StringWriter();
+    SplicingWriter writer = new SplicingWriter(out);
+    writer.write("<a>");
+    assertEquals("<a>", out.toString());
+    writer.splice(CompletableFuture.completedFuture("<b/>"));
+    writer.write("</a>");
+    assertEquals("<a><b/></a>", out.toString());
+  }
+
+  @Test
+  void testSpliceInOrder() throws IOException {
+    StringWriter out = new StringWriter();
+    SplicingWriter writer = new SplicingWriter(out);
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> second = new CompletableFuture<>();
+    writer.write("<a>");
+    writer.splice(first);
+    writer.write("<b/>");
+    writer.splice(second);
+    writer.write("</a>");
+    second.complete("2");
+    writer.flush();
+    assertEquals("<a>", out.toString());
+    first.complete("1");
+    writer.flush();
+    assertEquals("<a>1<b/>2</a>", out.toString());
+    writer.write("<c/>");
+    writer.finish();
+    assertEquals("<a>1<b/>2</a><c/>", out.toString());
+  }
+
+  @Test
+  void testFinishWaits() throws IOException {
+    StringWriter out = new StringWriter();
+    SplicingWriter writer = new SplicingWriter(out);
+    writer.splice(CompletableFuture.supplyAsync(() -> "1"));
+    writer.write("<a/>");
+    writer.finish();
+    assertEquals("1<a/>", out.toString());
+  }
+
+  @Test
+  void testFailure() throws IOException {
+    SplicingWriter writer = new SplicingWriter(new StringWriter());
+    CompletableFuture<String> failed = new CompletableFuture<>();
+    writer.splice(failed);
+    failed.completeExceptionally(new UncheckedIOException(new IOException("Failed")));
+    IOException ex = assertThrows(IOException.class, writer::finish);
+    assertEquals("Failed", ex.getMessage());
+  }
+
+}
@@ -0,0 +1,118 @@
+package org.pageseeder.psml.diff;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.diffx.load.text.TextTokenizer;
+import org.pageseeder.diffx.token.TextToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenPoolTest {
+
+  @Test
+  void testLexical() {
+    TokenPool pool = new TokenPool(100);
+    LexicalToken a = pool.lexical("Hello", LexicalNormalizer.all());
+    LexicalToken b = pool.lexical("Hello", LexicalNormalizer.all());
+    assertSame(a, b);
+    assertEquals("Hello", a.getCharacters());
+    assertEquals("hello", a.getValue());
+    assertEquals(1, pool.size());
+    assertEquals(1, pool.hitCount());
+    assertEquals(1, pool.missCount());
+  }
+
+  @Test
+  void testLexicalNormalizers() {
+    TokenPool pool = new TokenPool(100);
+    LexicalToken a = pool.lexical("Hello", LexicalNormalizer.none());
+    LexicalToken b = pool.lexical("Hello", LexicalNormalizer.none().withCaseFolding(true));
+    assertNotSame(a, b);
+    assertEquals("Hello", a.getValue());
+    assertEquals("hello", b.getValue());
+    // equivalent normalizers share the same tokens
+    LexicalToken c = pool.lexical("Hello", LexicalNormalizer.none().withCaseFolding(true).withDashFolding(false));
+    assertSame(b, c);
+  }
+
+  @Test
+  void testIntern() {
+    TokenPool pool = new TokenPool(100);
+    TextToken a = new LexicalToken("Hello", "hello");
+    TextToken b = new LexicalToken("Hello", "hello");
+    TextToken c = new LexicalToken("Hello", "Hello");
+    assertSame(a, pool.intern(a));
+    assertSame(a, pool.intern(b));
+    assertSame(c, pool.intern(c));
+  }
+
+  @Test
+  void testWrap() {
+    TokenPool pool = new TokenPool(100);
+    TextTokenizer tokenizer = pool.wrap(text -> List.of(new LexicalToken(text.toString(), text.toString())));
+    List<TextToken> first = tokenizer.tokenize("word");
+    List<TextToken> second = tokenizer.tokenize("word");
+    assertEquals(1, first.size());
+    assertSame(first.get(0), second.get(0));
+  }
+
+  @Test
+  void testBounded() {
+    TokenPool pool = new TokenPool(50);
+    for (int i = 0; i < 1000; i++) {
+      pool.lexical("w" + i, LexicalNormalizer.none());
+    }
+    assertTrue(pool.size() <= 50);
+    assertEquals(50, pool.maxSize());
+    assertEquals(1000 - pool.size(), pool.evictionCount());
+  }
+
+  @Test
+  void testTokenizer() {
+    TokenPool pool = new TokenPool(100);
+    LexicalTokenizer tokenizer = new LexicalTokenizer(LexicalNormalizer.none());
+    tokenizer.setTokenPool(pool);
+    List<TextToken> tokens = tokenizer.tokenize("the cat the cat");
+    assertEquals(4, tokens.size());
+    assertSame(tokens.get(1), tokens.get(3));
+    assertEquals(3, pool.size());
+    // a new tokenizer reuses the same tokens
+    LexicalTokenizer other = new LexicalTokenizer(LexicalNormalizer.none());
+    other.setTokenPool(pool);
+    assertSame(tokens.get(0), other.tokenize("the").get(0));
+  }
+
+  @Test
+  void testConcurrent() throws Exception {
+    TokenPool pool = new TokenPool(1000);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<TextToken>>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        results.add(executor.submit(() -> {
+          List<TextToken> tokens = new ArrayList<>();
+          for (int i = 0; i < 500; i++) {
+            tokens.add(pool.lexical("w" + (i % 100), LexicalNormalizer.none()));
+          }
+          return tokens;
+        }));
+      }
+      for (Future<List<TextToken>> result : results) {
+        List<TextToken> tokens = result.get();
+        for (int i = 0; i < tokens.size(); i++) {
+          assertEquals("w" + (i % 100), tokens.get(i).getCharacters());
+        }
+      }
+      assertEquals(100, pool.size());
+      assertEquals(4000, pool.hitCount() + pool.missCount());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
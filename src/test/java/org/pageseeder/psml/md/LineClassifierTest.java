@@ -0,0 +1,95 @@
+package org.pageseeder.psml.md;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the line classifier matches the same lines as the regular expressions it replaces.
+ */
+class LineClassifierTest {
+
+  private static final String[] SAMPLES = {
+      "", " ", "    ", "\t", "==", "=", " ==", "  ==", "== ", "--", "-", " --", "---  ", "==-", "=\r",
+      "***", "* * *", "*  * *", " ***  **", "**", "* *", "*** x",
+      "- item", "-item", "- ", "-  ", "+ x", "* x", "1. x", "12. x", "1.x", ". x", "a. x", "  - x", "- x\r",
+      "    code", "   code", "\t\t\t\tcode", "    \r",
+      "> quote", ">quote", ">> x", "  > x", "> \r", "> x\r", ">",
+      "title: x", "title:x", ":x", "a b: c", "my-title: c", "ti_tle: x", "title: ", "title:\t ",
+      "|---|---|", "|---|", "| :-- | --: |", "|---|--", "|---||", "|", "| a |", "|-|-|-|",
+      "**bold**", "****", "***", "**a*", "*a**",
+  };
+
+  private static final char[] ALPHABET = {' ', '\t', '\r', '\n', '=', '-', '*', '+', '>', ':', '|', '.', '1', '9', 'a', '_', '#', ' '};
+
+  @Test
+  void testSamples() {
+    for (String line : SAMPLES) {
+      assertSameAsRegex(line);
+    }
+  }
+
+  @Test
+  void testRandom() {
+    Random random = new Random(7);
+    for (String line : randomLines(random, 20000)) {
+      assertSameAsRegex(line);
+    }
+  }
+
+  @Test
+  void testTableDelimiter() {
+    assertTrue(LineClassifier.isTableDelimiter("|---|---|", 2));
+    assertFalse(LineClassifier.isTableDelimiter("|---|---|", 3));
+    assertTrue(LineClassifier.isTableDelimiter("| :-- | --: | :-: |", 3));
+    assertFalse(LineClassifier.isTableDelimiter("| a | b |", 2));
+    Random random = new Random(11);
+    for (String line : randomLines(random, 5000)) {
+      for (int columns = 0; columns < 4; columns++) {
+        assertEquals(line.matches("^\\|([\\s:-]+\\|){" + columns + "}"), LineClassifier.isTableDelimiter(line, columns), escape(line));
+      }
+    }
+  }
+
+  private static void assertSameAsRegex(String line) {
+    String message = escape(line);
+    assertEquals(line.matches("\\s*"), LineClassifier.isBlank(line), message);
+    assertEquals(line.matches("\\s?(==+|--+)\\s*"), LineClassifier.isSetextUnderline(line), message);
+    assertEquals(line.matches("\\s*==+\\s*"), LineClassifier.isSetextHeading1(line), message);
+    assertEquals(line.matches("\\s*--+\\s*"), LineClassifier.isSetextHeading2(line), message);
+    assertEquals(line.matches("\\s*\\*\\s?\\*\\s?\\*[\\s*]*"), LineClassifier.isSeparator(line), message);
+    assertEquals(line.matches("\\s*(-|\\+|\\*|\\d+\\.)\\s.+"), LineClassifier.isListItem(line), message);
+    assertEquals(line.matches("\\s{4}.*"), LineClassifier.isIndented(line), message);
+    assertEquals(line.matches("\\s*+>++\\s*+.*"), LineClassifier.isQuote(line), message);
+    assertEquals(line.matches("^[^:]+:\\s.*"), LineClassifier.isProperty(line), message);
+    assertEquals(line.matches("^\\w+:\\s.*"), LineClassifier.isWordProperty(line), message);
+    assertEquals(line.matches("^\\*\\*(.*)\\*\\*$"), LineClassifier.isStrong(line), message);
+  }
+
+  private static List<String> randomLines(Random random, int count) {
+    List<String> lines = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int length = random.nextInt(9);
+      StringBuilder line = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        line.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+      }
+      lines.add(line.toString());
+    }
+    return lines;
+  }
+
+  private static String escape(String line) {
+    StringBuilder escaped = new StringBuilder("\"");
+    for (char c : line.toCharArray()) {
+      if (c < ' ' || c > '~') escaped.append(String.format("\\u%04x", (int) c));
+      else escaped.append(c);
+    }
+    return escaped.append('"').toString();
+  }
+
+}
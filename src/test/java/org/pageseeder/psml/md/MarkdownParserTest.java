@@ -23,7 +23,10 @@ import org.pageseeder.xmlwriter.XMLStringWriter;
 import org.pageseeder.xmlwriter.XMLWriter;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -114,6 +117,111 @@ class MarkdownParserTest {
     assertEquals(expected, result);
   }
 
+  @Test
+  void testStreamXML() throws IOException {
+    String[] filenames = {"example1.md", "headings.md", "metadata.md", "table.md"};
+    for (String filename : filenames) {
+      for (boolean isFragment : new boolean[]{true, false}) {
+        MarkdownParser parser = new MarkdownParser();
+        parser.getConfig().setFragmentMode(isFragment);
+        XMLStringWriter xml = new XMLStringWriter(NamespaceAware.No);
+        xml.setIndentChars("  ");
+        try (Reader reader = loadMarkdown(filename)) {
+          parser.parse(reader, xml);
+        }
+        assertEquals(toXML(parseMarkdown(filename, isFragment)), xml.toString(), filename);
+      }
+    }
+  }
+
+  @Test
+  void testStreamXML_Files() throws IOException {
+    for (String filename : new String[]{"test.md", "test2.md"}) {
+      File md = new File(SOURCE_FOLDER, filename);
+      MarkdownParser parser = new MarkdownParser();
+      parser.getConfig().setFragmentMode(false);
+      PSMLElement document = parser.parse(Files.newBufferedReader(md.toPath(), StandardCharsets.UTF_8));
+      XMLStringWriter xml = new XMLStringWriter(NamespaceAware.No);
+      xml.setIndentChars("  ");
+      try (Reader reader = Files.newBufferedReader(md.toPath(), StandardCharsets.UTF_8)) {
+        parser.parse(reader, xml);
+      }
+      assertEquals(toXML(document), xml.toString(), filename);
+    }
+  }
+
+  @Test
+  void testStreamXML_Empty() throws IOException {
+    MarkdownParser parser = new MarkdownParser();
+    parser.getConfig().setFragmentMode(false);
+    XMLStringWriter xml = new XMLStringWriter(NamespaceAware.No);
+    parser.parse(new StringReader(""), xml);
+    assertEquals(toXML(parser.parse(new StringReader(""))), xml.toString());
+  }
+
+  @Test
+  void testStreamHandler() throws IOException {
+    String md = "# Title\n"
+               + "\n"
+               + "## Part 1\n"
+               + "First paragraph.\n"
+               + "\n"
+               + "## Part 2\n"
+               + "Second paragraph.\n";
+    MarkdownParser parser = new MarkdownParser();
+    parser.getConfig().setFragmentMode(false);
+    List<String> events = new ArrayList<>();
+    parser.parse(new StringReader(md), new BlockHandler() {
+      @Override
+      public void startElement(PSMLElement element) {
+        assertTrue(element.getNodes().isEmpty());
+        events.add("start " + element.getElement().element());
+      }
+      @Override
+      public void element(PSMLElement element) {
+        events.add(element.getElement().element() + " " + element.getAttributeOrElse("id", ""));
+      }
+      @Override
+      public void endElement(PSMLElement element) {
+        events.add("end " + element.getElement().element());
+      }
+    });
+    assertEquals(List.of(
+        "start document",
+        "start section", "fragment 1", "end section",
+        "start section", "fragment 2", "fragment 3", "end section",
+        "end document"), events);
+  }
+
+  @Test
+  void testStreamHandler_Fragment() throws IOException {
+    MarkdownParser parser = new MarkdownParser();
+    parser.getConfig().setFragmentMode(true);
+    List<String> events = new ArrayList<>();
+    Reader reader = new StringReader("First paragraph.\n\nSecond paragraph.\n\n- item\n");
+    parser.parse(reader, new BlockHandler() {
+      @Override
+      public void startElement(PSMLElement element) {
+        events.add("start " + element.getElement().element());
+      }
+      @Override
+      public void element(PSMLElement element) {
+        events.add(element.getElement().element());
+      }
+      @Override
+      public void endElement(PSMLElement element) {
+        events.add("end " + element.getElement().element());
+      }
+    });
+    assertEquals(List.of("start fragment", "para", "para", "list", "end fragment"), events);
+    // the reader is left open for the caller (a closed reader would throw)
+    assertEquals(-1, reader.read());
+  }
+
+  private static Reader loadMarkdown(String filename) {
+    return new InputStreamReader(Tests.class.getResourceAsStream("/org/pageseeder/psml/md/" + filename), StandardCharsets.UTF_8);
+  }
+
   private static PSMLElement parseMarkdown(String filename, boolean isFragment) {
     try (BufferedReader reader = new BufferedReader(new InputStreamReader(Tests.class.getResourceAsStream("/org/pageseeder/psml/md/" + filename)))) {
       MarkdownParser parser = new MarkdownParser();
@@ -19,8 +19,10 @@ import org.junit.jupiter.api.Test;
 import org.pageseeder.psml.PSML;
 import org.pageseeder.psml.model.PSMLElement;
 import org.pageseeder.psml.toc.Tests;
+import org.xml.sax.InputSource;
 
 import java.io.*;
+import java.util.List;
 import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -217,6 +219,68 @@ final class MarkdownSerializerTest {
     serializer.serialize(psml, out);
   }
 
+  @Test
+  void testStream() throws IOException {
+    List<MarkdownOutputOptions> options = List.of(
+        MarkdownOutputOptions.defaultOptions(),
+        MarkdownOutputOptions.defaultOptions().metadata(true).properties(MarkdownOutputOptions.PropertiesFormat.TABLE),
+        MarkdownOutputOptions.defaultOptions().metadata(false).block(MarkdownOutputOptions.BlockFormat.QUOTED),
+        MarkdownOutputOptions.defaultOptions().table(MarkdownOutputOptions.TableFormat.HTML).image(MarkdownOutputOptions.ImageFormat.EXTERNAL)
+    );
+    String[] filenames = {"kitchen_sink.psml", "clock_synchronisation.psml", "list1.psml", "list2.psml",
+        "list3.psml", "list4.psml", "list5.psml", "table1.psml", "table2.psml"};
+    for (MarkdownOutputOptions option : options) {
+      for (String filename : filenames) {
+        assertEquals(serialize(getTestFile(filename), option), stream(getTestSource(filename), option), filename);
+      }
+    }
+  }
+
+  @Test
+  void testStream_Document() throws IOException {
+    String psml = "<document level=\"portable\" status=\"Draft\">"
+        + "<documentinfo><uri><displaytitle>Test</displaytitle></uri></documentinfo>"
+        + "<metadata><properties><property name=\"a\" title=\"A\" value=\"1\"/></properties></metadata>"
+        + "<section id=\"title\"><fragment id=\"1\"><heading level=\"1\">Title</heading></fragment></section>"
+        + "<section id=\"content\">Some text"
+        + "<fragment id=\"2\"><nlist start=\"3\"><item>One</item><item>Two <bold>*</bold><list><item>Sub</item></list></item></nlist></fragment>"
+        + "<properties-fragment id=\"3\"><property name=\"b\" title=\"B\" value=\"2\"/></properties-fragment>"
+        + "</section></document>";
+    MarkdownOutputOptions options = MarkdownOutputOptions.defaultOptions().metadata(true);
+    String expected = serialize(PSML.load(new StringReader(psml)), options);
+    assertEquals(expected, stream(new InputSource(new StringReader(psml)), options));
+    assertEquals("---\nTitle: Test\nStatus: Draft\nA: 1\n---\n", expected.substring(0, expected.indexOf("---\n", 4) + 4));
+    // No section
+    String empty = "<document level=\"portable\"><documentinfo><uri><displaytitle>Test</displaytitle></uri></documentinfo></document>";
+    assertEquals("---\nTitle: Test\n---\n", stream(new InputSource(new StringReader(empty)), options));
+  }
+
+  @Test
+  void testStream_Inline() throws IOException {
+    String psml = "<wrapper>A <bold>test</bold>!</wrapper>";
+    assertEquals(toMarkdown(psml), stream(new InputSource(new StringReader(psml)), MarkdownOutputOptions.defaultOptions()));
+  }
+
+  private static String serialize(PSMLElement psml, MarkdownOutputOptions options) throws IOException {
+    MarkdownSerializer serializer = new MarkdownSerializer();
+    serializer.setOptions(options);
+    StringWriter out = new StringWriter();
+    serializer.serialize(psml, out);
+    return out.toString();
+  }
+
+  private static String stream(InputSource source, MarkdownOutputOptions options) throws IOException {
+    MarkdownSerializer serializer = new MarkdownSerializer();
+    serializer.setOptions(options);
+    StringWriter out = new StringWriter();
+    serializer.serialize(source, out);
+    return out.toString();
+  }
+
+  private static InputSource getTestSource(String filename) {
+    return new InputSource(new InputStreamReader(Objects.requireNonNull(Tests.class.getResourceAsStream("/org/pageseeder/psml/md/" + filename))));
+  }
+
   private static String toMarkdown(String text) {
     return toMarkdown(text, MarkdownOutputOptions.defaultOptions());
   }
@@ -0,0 +1,102 @@
+package org.pageseeder.psml.process;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.psml.process.config.Images.ImageSrc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCacheTest {
+
+  private static final File META_INF = new File("src/test/data/process/META-INF");
+
+  @Test
+  void testUniqueFilename() {
+    ImageCache cache = new ImageCache(META_INF);
+    assertEquals("a.png", cache.getImageNewPath("x/a.png", ImageSrc.FILENAME, "1"));
+    assertEquals("a-2.png", cache.getImageNewPath("y/a.png", ImageSrc.FILENAME, "2"));
+    assertEquals("a-3.png", cache.getImageNewPath("z/a.png", ImageSrc.FILENAME, "3"));
+    // already cached
+    assertEquals("a-2.png", cache.getImageNewPath("y/a.png", ImageSrc.FILENAME, "2"));
+    // names with a '-' suffix are potential clashes
+    assertEquals("a-b.png", cache.getImageNewPath("x/a-b.png", ImageSrc.FILENAME, "4"));
+    assertEquals("a-5.png", cache.getImageNewPath("w/a.png", ImageSrc.FILENAME, "5"));
+    assertEquals("a-2", cache.getImageNewPath("x/a", ImageSrc.FILENAME, "6"));
+    assertEquals("b.png", cache.getImageNewPath("x/b.png", ImageSrc.FILENAME, "7"));
+    // paths cached as is are counted too
+    cache.cacheImagePath("w/c.png");
+    cache.cacheImagePath("w/c.png");
+    assertEquals("c-2.png", cache.getImageNewPath("x/c.png", ImageSrc.FILENAME, "8"));
+  }
+
+  @Test
+  void testUniqueFilenameMatchesScan() {
+    Random random = new Random(42);
+    String[] names = {"a", "a-b", "a-b-c", "b", "a-", "-a", "b-a"};
+    String[] extensions = {".png", ".jpg", ""};
+    ImageCache cache = new ImageCache(META_INF);
+    List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      String filename = names[random.nextInt(names.length)] + extensions[random.nextInt(extensions.length)];
+      String path = "folder" + random.nextInt(50) + '/' + filename;
+      String expected = scan(keys, filename);
+      if (keys.contains(path)) continue;
+      assertEquals(expected, cache.buildUniqueFilename(filename), path);
+      cache.getImageNewPath(path, ImageSrc.FILENAME, String.valueOf(i));
+      keys.add(path);
+    }
+  }
+
+  @Test
+  void testConcurrent() throws Exception {
+    ImageCache cache = new ImageCache(META_INF);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<String>>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int thread = t;
+        results.add(executor.submit(() -> {
+          List<String> paths = new ArrayList<>();
+          for (int i = 0; i < 200; i++) {
+            paths.add(cache.getImageNewPath("t" + thread + "/f" + i + "/image.png", ImageSrc.FILENAME, "1"));
+          }
+          return paths;
+        }));
+      }
+      Set<String> unique = new HashSet<>();
+      for (Future<List<String>> result : results) {
+        unique.addAll(result.get());
+      }
+      assertEquals(800, unique.size());
+      assertTrue(unique.contains("image.png"));
+      assertTrue(unique.contains("image-800.png"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Reference implementation scanning all the keys.
+   */
+  private static String scan(List<String> keys, String filename) {
+    int lastDot = filename.lastIndexOf('.');
+    String extension = lastDot != -1 ? filename.substring(lastDot) : "";
+    String name = lastDot != -1 ? filename.substring(0, lastDot) : filename;
+    int count = 0;
+    for (String key : keys) {
+      String keyname = key.substring(key.lastIndexOf('/') + 1);
+      if (keyname.equals(filename) || keyname.startsWith(name + "-")) count++;
+    }
+    return count == 0 ? filename : name + "-" + (count + 1) + extension;
+  }
+
+}
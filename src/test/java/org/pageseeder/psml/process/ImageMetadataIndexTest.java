@@ -0,0 +1,96 @@
+package org.pageseeder.psml.process;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.pageseeder.psml.process.config.Images.ImageSrc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageMetadataIndexTest {
+
+  private static final File META_INF = new File("src/test/data/process/META-INF");
+
+  private static final String COPY_FOLDER = "build/test/process/image-index";
+
+  @Test
+  void testLoad() throws Exception {
+    File metaInf = copy();
+    ImageMetadataIndex index = ImageMetadataIndex.load(metaInf, 2, false);
+    assertFalse(index.isReused());
+    ImageMetadataIndex.Metadata metadata = index.get("images/diagram1.jpg");
+    assertNotNull(metadata);
+    assertEquals("219290", metadata.getUriID());
+    assertEquals("jpg", metadata.getExtension());
+    assertNotNull(index.get("images/diagram space.jpg"));
+    assertNull(index.get("images/unknown.jpg"));
+    assertFalse(new File(metaInf, ImageMetadataIndex.SIDECAR).exists());
+  }
+
+  @Test
+  void testSidecar() throws Exception {
+    File metaInf = copy();
+    ImageMetadataIndex first = ImageMetadataIndex.load(metaInf, 2, true);
+    assertFalse(first.isReused());
+    assertTrue(new File(metaInf, ImageMetadataIndex.SIDECAR).isFile());
+    ImageMetadataIndex second = ImageMetadataIndex.load(metaInf, 2, true);
+    assertTrue(second.isReused());
+    assertEquals(first.size(), second.size());
+    assertEquals("219290", second.get("images/diagram1.jpg").getUriID());
+    assertEquals("jpg", second.get("images/diagram1.jpg").getExtension());
+    // modified metadata file
+    File modified = new File(metaInf, "images/diagram1.jpg.psml");
+    String psml = Files.readString(modified.toPath(), StandardCharsets.UTF_8);
+    Files.writeString(modified.toPath(), psml.replace("219290", "219291"), StandardCharsets.UTF_8);
+    assertTrue(modified.setLastModified(modified.lastModified() + 2000));
+    ImageMetadataIndex third = ImageMetadataIndex.load(metaInf, 2, false);
+    assertFalse(third.isReused());
+    assertEquals("219291", third.get("images/diagram1.jpg").getUriID());
+  }
+
+  @Test
+  void testOnlyImages() throws Exception {
+    File metaInf = copy();
+    // document metadata is not parsed
+    File document = new File(metaInf, "images/document.psml.psml");
+    Files.copy(new File(metaInf, "images/diagram1.jpg.psml").toPath(), document.toPath());
+    ImageMetadataIndex index = ImageMetadataIndex.load(metaInf, 2, false);
+    assertEquals(2, index.size());
+    assertNull(index.get("images/document.psml"));
+    assertTrue(ImageMetadataIndex.isImage("diagram.PNG"));
+    assertFalse(ImageMetadataIndex.isImage("document.psml"));
+    assertFalse(ImageMetadataIndex.isImage("content"));
+  }
+
+  @Test
+  void testMissingFolder() throws Exception {
+    ImageMetadataIndex index = ImageMetadataIndex.load(new File(COPY_FOLDER, "missing"), 1, true);
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  void testImageCache() throws Exception {
+    File metaInf = copy();
+    ImageMetadataIndex index = ImageMetadataIndex.load(metaInf, 2, false);
+    // the index is used instead of the metadata file
+    Files.delete(new File(metaInf, "images/diagram1.jpg.psml").toPath());
+    ImageCache cache = new ImageCache(metaInf, ProcessListener.NONE, index);
+    assertEquals("219290.jpg", cache.getImageNewPath("images/diagram1.jpg", ImageSrc.URIID));
+    ImageCache folders = new ImageCache(metaInf, ProcessListener.NONE, index);
+    assertEquals("000/000/219/219290.jpg", folders.getImageNewPath("images/diagram1.jpg", ImageSrc.URIIDFOLDERS));
+    assertThrows(ProcessException.class, () -> new ImageCache(metaInf).getImageNewPath("images/diagram1.jpg", ImageSrc.URIID));
+  }
+
+  private static File copy() throws IOException {
+    File copy = new File(COPY_FOLDER, "META-INF");
+    if (copy.exists())
+      FileUtils.deleteDirectory(copy);
+    FileUtils.copyDirectory(META_INF, copy);
+    return copy;
+  }
+
+}
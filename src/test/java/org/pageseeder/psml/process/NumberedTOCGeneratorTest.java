@@ -5,10 +5,13 @@ import org.pageseeder.psml.toc.*;
 import org.pageseeder.xmlwriter.XML.NamespaceAware;
 import org.pageseeder.xmlwriter.XMLStringWriter;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.pageseeder.psml.toc.Tests.*;
 
 class NumberedTOCGeneratorTest {
@@ -94,4 +97,33 @@ class NumberedTOCGeneratorTest {
     }
   }
 
+  @Test
+  void testDocumentTrees() throws IOException, XRefLoopException {
+    DocumentTree root = new DocumentTree.Builder(1).title("T")
+        .part(h1("T", "1", 1,
+            ref(1, "A", "2", 100L),
+            ref(1, "B", "2", 101L))).build().normalize(TitleCollapse.auto);
+    DocumentTree scanned = new DocumentTree.Builder(100).title("A")
+        .part(h1("A", "1", 1)).addReverseReference(1L).build().normalize(TitleCollapse.auto);
+    DocumentTree added = new DocumentTree.Builder(101).title("B")
+        .part(h1("B", "1", 1)).addReverseReference(1L).build().normalize(TitleCollapse.auto);
+    File file = new File("a.psml");
+    NumberedTOCGenerator toc = new NumberedTOCGenerator(new PublicationTree(root));
+    toc.setDocumentTrees(Collections.singletonMap(NumberedTOCGenerator.toKey(file), scanned));
+    assertSame(scanned, toc.getDocumentTree(file));
+    assertSame(scanned, toc.publicationTree().tree(100L));
+    FragmentNumbering numbering = new FragmentNumbering(toc.publicationTree(),
+        Tests.parseConfig("publication-config-process.xml"));
+    toc.setFragmentNumbering(numbering);
+    // trees built before processing do not change the publication
+    toc.addTree(scanned);
+    toc.updatePublication();
+    assertSame(numbering, toc.fragmentNumbering());
+    // other trees require the numbering to be computed again
+    toc.addTree(added);
+    toc.updatePublication();
+    assertSame(added, toc.publicationTree().tree(101L));
+    assertNull(toc.fragmentNumbering());
+  }
+
 }
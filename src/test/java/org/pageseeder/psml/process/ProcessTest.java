@@ -38,6 +38,10 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -1237,6 +1241,79 @@ public class ProcessTest {
     assertTrue(new File(image, "21944.jpg").exists(), "Image 4 missing");
   }
 
+  @Test
+  void testProcessThreads() throws IOException, ProcessException {
+    File sequential = new File(DEST_FOLDER + "-sequential");
+    File parallel = new File(DEST_FOLDER + "-parallel");
+    for (File dest : new File[]{sequential, parallel}) {
+      if (dest.exists())
+        FileUtils.deleteDirectory(dest);
+      dest.mkdirs();
+      Process p = new Process();
+      p.setPreserveSrc(true);
+      p.setFailOnError(false);
+      p.setSrc(new File(SOURCE_FOLDER));
+      p.setDest(dest);
+      p.setThreads(dest == parallel ? 4 : 1);
+      XRefsTransclude xrefs = new XRefsTransclude();
+      xrefs.setTypes("embed,transclude");
+      p.setXrefs(xrefs);
+      Images images = new Images();
+      images.setImageSrc(ImageSrc.URIID);
+      p.setImages(images);
+      p.process();
+    }
+
+    // check results are identical
+    for (String path : new String[]{"ref_0.psml", "ref_1.psml", "images.psml", "content/content_1.psml", "META-INF/content.psml"}) {
+      assertArrayEquals(Files.readAllBytes(new File(sequential, path).toPath()),
+          Files.readAllBytes(new File(parallel, path).toPath()), path);
+    }
+  }
+
+  @Test
+  void testProcessThreadsInvalid() {
+    Process p = new Process();
+    assertThrows(IllegalArgumentException.class, () -> p.setThreads(0));
+  }
+
+  @Test
+  void testGenerateTOCThreads() throws IOException, ProcessException {
+    String filename = "toc.psml";
+    File sequential = new File(DEST_FOLDER + "-sequential");
+    File parallel = new File(DEST_FOLDER + "-parallel");
+    for (File dest : new File[]{sequential, parallel}) {
+      if (dest.exists())
+        FileUtils.deleteDirectory(dest);
+      dest.mkdirs();
+      Process p = new Process();
+      p.setPreserveSrc(true);
+      p.setSrc(new File(SOURCE_FOLDER));
+      p.setDest(dest);
+      p.setThreads(dest == parallel ? 4 : 1);
+      p.setPrescanPublication(dest == parallel);
+      Set<ProcessListener.Stage> stages = ConcurrentHashMap.newKeySet();
+      p.setListener(new ProcessListener() {
+        @Override
+        public void stage(Stage stage, long nanos) {
+          stages.add(stage);
+        }
+      });
+      PublicationConfig config = Tests.parseConfig("publication-config-process.xml");
+      p.setPublicationConfig(config, filename, true);
+      XRefsTransclude xrefs = new XRefsTransclude();
+      xrefs.setTypes("embed,transclude,alternate");
+      xrefs.setIncludes(filename);
+      p.setXrefs(xrefs);
+      p.process();
+      assertEquals(dest == parallel, stages.contains(ProcessListener.Stage.PRESCAN));
+    }
+
+    // publication scanned concurrently must give the same TOC and numbering
+    assertArrayEquals(Files.readAllBytes(new File(sequential, filename).toPath()),
+        Files.readAllBytes(new File(parallel, filename).toPath()), filename);
+  }
+
   @Test
   void testProcessImagesUriidFolders() throws IOException, ProcessException {
     String filename = "images.psml";
@@ -1481,7 +1558,46 @@ public class ProcessTest {
     ErrorHandling error = new ErrorHandling();
     error.setXrefAmbiguous(true);
     p.setError(error);
+    List<String> events = new ArrayList<>();
+    p.setListener(new ProcessListener() {
+      @Override
+      public void complete(long nanos) {
+        events.add("complete");
+      }
+      @Override
+      public void failed(Stage stage, Exception ex) {
+        events.add("failed " + stage + " " + ex.getClass().getSimpleName());
+      }
+    });
     assertThrows(ProcessException.class, p::process);
+    // a document failed so no stage is specified
+    assertEquals(List.of("failed null ProcessException"), events);
+  }
+
+  @Test
+  void testProcessMetricsFailed() throws IOException {
+    Process p = new Process();
+    p.setPreserveSrc(true);
+    p.setSrc(new File(SOURCE_FOLDER));
+    File dest = new File(DEST_FOLDER);
+    if (dest.exists())
+      FileUtils.deleteDirectory(dest);
+    dest.mkdirs();
+    p.setDest(dest);
+    XRefsTransclude xrefs = new XRefsTransclude();
+    xrefs.setTypes("embed,transclude");
+    xrefs.setIncludes("ref_0a.psml");
+    p.setXrefs(xrefs);
+    ErrorHandling error = new ErrorHandling();
+    error.setXrefAmbiguous(true);
+    p.setError(error);
+    ProcessMetrics metrics = new ProcessMetrics();
+    p.setListener(metrics);
+    assertThrows(ProcessException.class, p::process);
+    assertTrue(metrics.isFailed());
+    String report = metrics.report();
+    assertTrue(report.startsWith("Process failed: "), report);
+    assertFalse(report.contains("Process completed"), report);
   }
 
   @Test
@@ -1976,6 +2092,46 @@ public class ProcessTest {
     assertThrows(ProcessException.class, p::process);
   }
 
+  @Test
+  void testListener() throws IOException, ProcessException {
+    Process p = new Process();
+    p.setPreserveSrc(true);
+    p.setSrc(new File(SOURCE_FOLDER));
+    File dest = new File(DEST_FOLDER);
+    if (dest.exists())
+      FileUtils.deleteDirectory(dest);
+    dest.mkdirs();
+    p.setDest(dest);
+    XRefsTransclude xrefs = new XRefsTransclude();
+    xrefs.setTypes("embed,transclude");
+    xrefs.setIncludes("ref_0.psml");
+    p.setXrefs(xrefs);
+    Images images = new Images();
+    images.setImageSrc(ImageSrc.URIID);
+    images.setIncludes("images.psml");
+    p.setImages(images);
+    ProcessMetrics metrics = new ProcessMetrics(3);
+    p.setListener(metrics);
+    p.process();
+
+    // check metrics
+    assertTrue(metrics.getDocumentCount() > 1);
+    assertTrue(metrics.getDocumentTime("ref_0.psml") > 0);
+    assertTrue(metrics.getStageTime(ProcessListener.Stage.COLLECT) > 0);
+    assertTrue(metrics.getStageTime(ProcessListener.Stage.FIRST_PASS) > 0);
+    assertTrue(metrics.getStageTime(ProcessListener.Stage.SECOND_PASS) > 0);
+    assertTrue(metrics.getStageTime(ProcessListener.Stage.MOVE_FILES) > 0);
+    assertEquals(0, metrics.getStageTime(ProcessListener.Stage.PRE_TRANSFORM));
+    assertTrue(metrics.getTransclusionCount() > 0);
+    assertTrue(metrics.getImageMetadataCount() >= 4);
+    assertTrue(metrics.getCachedImageMetadataCount() < metrics.getImageMetadataCount());
+    assertTrue(metrics.getTotalTime() > 0);
+    assertEquals(3, metrics.getSlowestDocuments().size());
+    String report = metrics.report();
+    assertTrue(report.contains("FIRST_PASS"), report);
+    assertTrue(report.contains("Image metadata: " + metrics.getImageMetadataCount() + " lookups"), report);
+  }
+
   private static EvaluateXPathMatcher hasXPath(String xPath, Matcher<String> valueMatcher) {
     return new EvaluateXPathMatcher(xPath, valueMatcher);
   }
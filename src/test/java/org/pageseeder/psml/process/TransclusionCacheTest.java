@@ -0,0 +1,135 @@
+package org.pageseeder.psml.process;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.psml.process.util.XMLUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransclusionCacheTest {
+
+  private static final File SOURCE = new File("src/test/data/process/ref_1.psml");
+
+  @Test
+  void testReplay() throws ProcessException {
+    TransclusionCache cache = new TransclusionCache(TransclusionCache.DEFAULT_MAX_WEIGHT);
+    EventCollector direct = new EventCollector();
+    XMLUtils.parse(SOURCE, direct);
+    EventCollector first = new EventCollector();
+    cache.parse(SOURCE, first);
+    EventCollector second = new EventCollector();
+    cache.parse(SOURCE, second);
+    assertEquals(direct.toString(), first.toString());
+    assertEquals(direct.toString(), second.toString());
+    assertEquals(1, cache.misses());
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  void testReplayLocator() throws ProcessException {
+    TransclusionCache cache = new TransclusionCache(TransclusionCache.DEFAULT_MAX_WEIGHT);
+    PositionCollector direct = new PositionCollector();
+    XMLUtils.parse(SOURCE, direct);
+    cache.parse(SOURCE, new PositionCollector());
+    PositionCollector replayed = new PositionCollector();
+    cache.parse(SOURCE, replayed);
+    assertEquals(1, cache.hits());
+    assertTrue(direct.toString().contains("@2:"), direct.toString());
+    assertEquals(direct.toString(), replayed.toString());
+  }
+
+  @Test
+  void testModified() throws ProcessException, IOException {
+    File temp = File.createTempFile("cache", ".psml");
+    try {
+      TransclusionCache cache = new TransclusionCache(TransclusionCache.DEFAULT_MAX_WEIGHT);
+      Files.write(temp.toPath(), "<document><section id=\"a\"/></document>".getBytes(StandardCharsets.UTF_8));
+      EventCollector first = new EventCollector();
+      cache.parse(temp, first);
+      Files.write(temp.toPath(), "<document><section id=\"b\"/></document>".getBytes(StandardCharsets.UTF_8));
+      assertTrue(temp.setLastModified(temp.lastModified() + 2000));
+      EventCollector second = new EventCollector();
+      cache.parse(temp, second);
+      assertEquals("<document><section id=a></section></document>", first.toString());
+      assertEquals("<document><section id=b></section></document>", second.toString());
+      assertEquals(2, cache.misses());
+      assertEquals(1, cache.size());
+    } finally {
+      temp.delete();
+    }
+  }
+
+  @Test
+  void testBounded() throws ProcessException {
+    TransclusionCache cache = new TransclusionCache(1);
+    cache.parse(SOURCE, new EventCollector());
+    cache.parse(SOURCE, new EventCollector());
+    assertEquals(2, cache.misses());
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.weight());
+  }
+
+  @Test
+  void testInvalid() {
+    TransclusionCache cache = new TransclusionCache(TransclusionCache.DEFAULT_MAX_WEIGHT);
+    assertThrows(ProcessException.class, () -> cache.parse(new File("src/test/data/process/transform1.xsl.missing"), new EventCollector()));
+  }
+
+  private static class PositionCollector extends DefaultHandler {
+    private final StringBuilder out = new StringBuilder();
+    private Locator locator;
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+      this.locator = locator;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+      this.out.append(qName).append('@').append(this.locator.getLineNumber())
+          .append(':').append(this.locator.getColumnNumber()).append('\n');
+    }
+
+    @Override
+    public String toString() {
+      return this.out.toString();
+    }
+  }
+
+  private static class EventCollector extends DefaultHandler {
+    private final StringBuilder out = new StringBuilder();
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+      this.out.append('<').append(qName);
+      for (int i = 0; i < atts.getLength(); i++) {
+        this.out.append(' ').append(atts.getQName(i)).append('=').append(atts.getValue(i));
+      }
+      this.out.append('>');
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      this.out.append("</").append(qName).append('>');
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      this.out.append(ch, start, length);
+    }
+
+    @Override
+    public String toString() {
+      return this.out.toString();
+    }
+  }
+
+}
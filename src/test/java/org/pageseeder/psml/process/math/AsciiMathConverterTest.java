@@ -0,0 +1,49 @@
+package org.pageseeder.psml.process.math;
+
+import org.junit.jupiter.api.Test;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsciiMathConverterTest {
+
+  /**
+   * AMsymbols is local to the script so it is reached through the scope of one of its functions.
+   */
+  private static final String SYMBOL_COUNT = "asciimath.initSymbols.__parent__.AMsymbols.length";
+
+  @Test
+  void testSymbolsInitialisedOnce() throws Exception {
+    Invocable engine = AsciiMathConverter.load();
+    ScriptEngine script = (ScriptEngine) engine;
+    int initial = ((Number) script.eval(SYMBOL_COUNT)).intValue();
+    String first = engine.invokeFunction("parse", "x^2").toString();
+    for (int i = 0; i < 100; i++) {
+      assertEquals(first, engine.invokeFunction("parse", "x^2").toString());
+    }
+    assertEquals(initial, ((Number) script.eval(SYMBOL_COUNT)).intValue());
+  }
+
+  @Test
+  void testSetCache() {
+    try {
+      AsciiMathConverter.setCache(1, Duration.ofMinutes(1));
+      assertEquals(1, AsciiMathConverter.getCacheSize());
+      assertEquals(AsciiMathConverter.convert("`x+1`"), AsciiMathConverter.convert("`x+1`"));
+      assertThrows(IllegalArgumentException.class, () -> AsciiMathConverter.setCache(0, Duration.ZERO));
+      assertThrows(IllegalArgumentException.class, () -> AsciiMathConverter.setCache(1, Duration.ofSeconds(-1)));
+    } finally {
+      AsciiMathConverter.setCache(AsciiMathConverter.DEFAULT_CACHE_SIZE, Duration.ZERO);
+    }
+  }
+
+  @Test
+  void testConvert() {
+    String mathml = AsciiMathConverter.convert("`sqrt(x)`");
+    assertTrue(mathml.contains("<msqrt>"), mathml);
+  }
+
+}
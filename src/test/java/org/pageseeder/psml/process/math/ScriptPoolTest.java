@@ -0,0 +1,120 @@
+package org.pageseeder.psml.process.math;
+
+import org.junit.jupiter.api.Test;
+
+import javax.script.Invocable;
+import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptPoolTest {
+
+  @Test
+  void testWarmUp() throws Exception {
+    AtomicInteger loaded = new AtomicInteger();
+    ScriptPool pool = new ScriptPool(() -> new EchoScript(loaded.incrementAndGet()), 3);
+    pool.warmUp();
+    assertEquals(3, loaded.get());
+    assertEquals("x", pool.invokeFunction("parse", "x"));
+    assertEquals(3, loaded.get());
+  }
+
+  @Test
+  void testReset() throws Exception {
+    AtomicInteger loaded = new AtomicInteger();
+    ScriptPool pool = new ScriptPool(() -> new EchoScript(loaded.incrementAndGet()), 2);
+    pool.invokeFunction("parse", "x");
+    pool.invokeFunction("parse", "x");
+    assertEquals(1, loaded.get());
+    pool.reset();
+    pool.invokeFunction("parse", "x");
+    assertEquals(2, loaded.get());
+  }
+
+  @Test
+  void testLoadFailure() {
+    ScriptPool pool = new ScriptPool(() -> { throw new ScriptException("Invalid script"); }, 1);
+    assertThrows(ScriptException.class, () -> pool.invokeFunction("parse", "x"));
+    // the failed engine does not count towards the pool size
+    assertThrows(ScriptException.class, () -> pool.invokeFunction("parse", "x"));
+  }
+
+  @Test
+  void testInvalidSize() {
+    assertThrows(IllegalArgumentException.class, () -> new ScriptPool(() -> new EchoScript(1), 0));
+  }
+
+  @Test
+  void testConcurrentInvocations() throws Exception {
+    AtomicInteger loaded = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(2);
+    ScriptPool pool = new ScriptPool(() -> new EchoScript(loaded.incrementAndGet()) {
+      @Override
+      public Object invokeFunction(String name, Object... args) {
+        // only returns when two engines are used at the same time
+        latch.countDown();
+        try {
+          assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException ex) {
+          throw new IllegalStateException(ex);
+        }
+        return args[0];
+      }
+    }, 2);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Object>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        String arg = "x" + i;
+        futures.add(executor.submit(() -> pool.invokeFunction("parse", arg)));
+      }
+      for (int i = 0; i < 8; i++) {
+        assertEquals("x" + i, futures.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(2, loaded.get());
+  }
+
+  /**
+   * Returns the first argument of any function.
+   */
+  private static class EchoScript implements Invocable {
+
+    private final int id;
+
+    EchoScript(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public Object invokeMethod(Object thiz, String name, Object... args) {
+      return args[0];
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... args) {
+      return args[0];
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> clasz) {
+      throw new UnsupportedOperationException("Script " + this.id);
+    }
+
+    @Override
+    public <T> T getInterface(Object thiz, Class<T> clasz) {
+      throw new UnsupportedOperationException("Script " + this.id);
+    }
+  }
+
+}
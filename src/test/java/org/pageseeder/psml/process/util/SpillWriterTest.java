@@ -0,0 +1,62 @@
+package org.pageseeder.psml.process.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillWriterTest {
+
+  @Test
+  void testInMemory() throws IOException {
+    SpillWriter writer = new SpillWriter(100);
+    writer.write("<document level=\"processed\">");
+    writer.write("</document>");
+    writer.close();
+    assertFalse(writer.isSpilled());
+    assertEquals("<document level=\"processed\"></document>", read(writer));
+    assertTrue(writer.delete());
+  }
+
+  @Test
+  void testSpilled() throws IOException {
+    SpillWriter writer = new SpillWriter(10);
+    writer.write("<document>");
+    assertFalse(writer.isSpilled());
+    writer.write("café</document>");
+    writer.close();
+    assertTrue(writer.isSpilled());
+    assertEquals("<document>café</document>", read(writer));
+    // can be read more than once
+    assertEquals("<document>café</document>", read(writer));
+    assertTrue(writer.delete());
+  }
+
+  @Test
+  void testNoThreshold() throws IOException {
+    SpillWriter writer = new SpillWriter(0);
+    writer.write('x');
+    writer.close();
+    assertTrue(writer.isSpilled());
+    assertEquals("x", read(writer));
+    assertTrue(writer.delete());
+  }
+
+  @Test
+  void testNegativeThreshold() {
+    assertThrows(IllegalArgumentException.class, () -> new SpillWriter(-1));
+  }
+
+  private static String read(SpillWriter writer) throws IOException {
+    StringBuilder out = new StringBuilder();
+    try (Reader reader = writer.getReader()) {
+      char[] chars = new char[4];
+      int read;
+      while ((read = reader.read(chars)) != -1) out.append(chars, 0, read);
+    }
+    return out.toString();
+  }
+
+}
@@ -0,0 +1,110 @@
+package org.pageseeder.psml.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentTemplateTest {
+
+  private static final String FRAGMENTS = "<document xmlns:t='http://pageseeder.com/psml/template'>"
+      + "<t:fragment type='note'><fragment><para>Note: <t:value name='note'/></para></fragment></t:fragment>"
+      + "<section id='a' title='{$title}'>"
+      + "<t:fragment-ref id='1' type='note'/>"
+      + "<t:fragment-ref id='2' type='note'/>"
+      + "</section>"
+      + "</document>";
+
+  @Test
+  void testFragmentRefs() throws IOException, TemplateException {
+    Template template = parse(FRAGMENTS, StandardCharsets.UTF_8);
+    Map<String, String> values = Map.of("title", "A & B", "note", "<x>");
+    String expected = print(template, values);
+    assertTrue(expected.contains("<fragment id=\"2\" type=\"note\"><para>Note: &lt;x"), expected);
+    assertEquals(expected, write(template, values));
+  }
+
+  @Test
+  void testNonASCII() throws IOException, TemplateException {
+    String psml = "<document title='{$title}'><para>Café – 漢字</para></document>";
+    Map<String, String> values = Map.of("title", "Résumé");
+    for (Charset charset : new Charset[]{StandardCharsets.US_ASCII, StandardCharsets.UTF_8}) {
+      Template template = parse(psml, charset);
+      assertEquals(print(template, values), write(template, values), charset.name());
+    }
+    String ascii = write(parse(psml, StandardCharsets.US_ASCII), values);
+    assertTrue(ascii.chars().allMatch(c -> c < 128), ascii);
+  }
+
+  @Test
+  void testPlaceholders() throws IOException, TemplateException {
+    String[] psml = {"<document/>", "<document docid='{$a}'/>", "<document docid='{$a}{$b}{$c}'/>",
+        "<document docid='{$a}-{$b}-{$c}'/>"};
+    List<Map<String, String>> parameters = List.of(Map.of(), Map.of("a", "x"), Map.of("a", "x", "b", "y", "c", "z"));
+    for (String source : psml) {
+      Template template = parse(source, StandardCharsets.UTF_8);
+      for (Map<String, String> values : parameters) {
+        String expected = print(template, values);
+        assertEquals(expected, write(template, values), source);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.process(Channels.newChannel(out), values, false);
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8), source);
+      }
+    }
+  }
+
+  @Test
+  void testChunks() throws IOException {
+    EncodedChunks chunks = EncodedChunks.encode(List.of(new TData("<a>"), new TValue("x", "", ParameterType.TEXT, false),
+        new TData("</a>"), new TData("<b/>")), StandardCharsets.UTF_8);
+    // consecutive static text is merged
+    assertEquals(1, chunks.tokenCount());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chunks.write(out, Map.of("x", "1"));
+    assertEquals("<a>1</a><b/>", out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testFailOnError() throws IOException, TemplateException {
+    Template template = parse("<document xmlns:t='http://pageseeder.com/psml/template'><t:fragment-ref id='1' type='missing'/></document>",
+        StandardCharsets.UTF_8);
+    assertTrue(write(template, Map.of()).contains("Template error"));
+    assertThrows(TemplateException.class, () -> template.process(new ByteArrayOutputStream(), Map.of(), true));
+  }
+
+  @Test
+  void testChannel() throws IOException, TemplateException {
+    Template template = parse(FRAGMENTS, StandardCharsets.UTF_8);
+    Map<String, String> values = Map.of("title", "T", "note", "N");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    template.process(Channels.newChannel(out), values, false);
+    assertEquals(print(template, values), out.toString(StandardCharsets.UTF_8));
+  }
+
+  private static Template parse(String psml, Charset charset) throws IOException, TemplateException {
+    return new TemplateFactory(charset).parse(new StringReader(psml));
+  }
+
+  private static String print(Template template, Map<String, String> values) {
+    StringWriter psml = new StringWriter();
+    template.process(new PrintWriter(psml), values);
+    return psml.toString();
+  }
+
+  private static String write(Template template, Map<String, String> values) throws IOException, TemplateException {
+    ByteArrayOutputStream psml = new ByteArrayOutputStream();
+    template.process(psml, values, false);
+    return psml.toString(template.charset());
+  }
+
+}
@@ -9,10 +9,13 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
 
 class ProcessorTest {
 
@@ -67,4 +70,76 @@ class ProcessorTest {
     }
   }
 
+  @Test
+  void testCompileCached() throws IOException, TemplateException {
+    File template = new File("src/test/data/template/template1.psml");
+    TemplateCache cache = new TemplateCache(10);
+    Processor processor = new Processor(StandardCharsets.UTF_8);
+    processor.setCache(cache);
+    Template first = processor.compile(template);
+    Template second = processor.compile(new InputSource(template.toURI().toASCIIString()));
+    assertSame(first, second);
+    assertEquals(1, cache.misses());
+    assertEquals(1, cache.hits());
+    // different charset
+    Processor ascii = new Processor(StandardCharsets.US_ASCII);
+    ascii.setCache(cache);
+    assertNotSame(first, ascii.compile(template));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  void testCompileModified() throws IOException, TemplateException {
+    File template = new File("build/test/template/modified.psml");
+    template.getParentFile().mkdirs();
+    Files.writeString(template.toPath(), "<document><section id=\"a\"/></document>", StandardCharsets.UTF_8);
+    Processor processor = new Processor(StandardCharsets.UTF_8);
+    processor.setCache(new TemplateCache(10));
+    Template first = processor.compile(template);
+    assertSame(first, processor.compile(template));
+    Files.writeString(template.toPath(), "<document><section id=\"b\"/></document>", StandardCharsets.UTF_8);
+    assertTrue(template.setLastModified(template.lastModified() + 2000));
+    Template second = processor.compile(template);
+    assertNotSame(first, second);
+    StringWriter raw = new StringWriter();
+    processor.process(second, new PrintWriter(raw), new HashMap<>());
+    assertTrue(raw.toString().contains("id=\"b\""), raw.toString());
+  }
+
+  @Test
+  void testProcessAll() throws IOException, TemplateException {
+    File template = new File("src/test/data/template/template1.psml");
+    Processor processor = new Processor(StandardCharsets.UTF_8);
+    processor.setFailOnError(true);
+    Template compiled = processor.compile(template);
+    List<String> instances = processor.processAll(compiled, List.of(
+        Map.of("ps.title", "First"), Map.of("ps.title", "Second"), Map.of()));
+    assertEquals(3, instances.size());
+    assertTrue(instances.get(0).contains("value=\"First\""));
+    assertTrue(instances.get(1).contains("value=\"Second\""));
+    assertFalse(instances.get(1).contains("First"));
+    assertTrue(instances.get(2).contains("<document"));
+    // same output as processing each one
+    StringWriter raw = new StringWriter();
+    processor.process(new InputSource(template.toURI().toASCIIString()), new PrintWriter(raw), Map.of("ps.title", "Second"));
+    assertEquals(raw.toString(), instances.get(1));
+  }
+
+  @Test
+  void testProcessAllFiles() throws IOException, TemplateException {
+    File template = new File("src/test/data/template/template1.psml");
+    File folder = new File("build/test/template/batch");
+    folder.mkdirs();
+    Processor processor = new Processor(StandardCharsets.UTF_8);
+    Map<File, Map<String, String>> instances = new HashMap<>();
+    for (int i = 0; i < 5; i++) {
+      instances.put(new File(folder, "instance-" + i + ".psml"), Map.of("ps.title", "Title " + i));
+    }
+    processor.processAll(processor.compile(template), instances);
+    for (int i = 0; i < 5; i++) {
+      String psml = Files.readString(new File(folder, "instance-" + i + ".psml").toPath(), StandardCharsets.UTF_8);
+      assertTrue(psml.contains("value=\"Title " + i + "\""));
+    }
+  }
+
 }
@@ -0,0 +1,118 @@
+package org.pageseeder.psml.toc;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.psml.toc.DocumentTree.Builder;
+import org.pageseeder.psml.toc.FragmentNumbering.Prefix;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.pageseeder.psml.toc.Tests.*;
+
+final class FragmentNumberingTest {
+
+  private static final int DOCUMENTS = 50;
+
+  @Test
+  void testUpdateUnchangedNumbering() throws IOException, XRefLoopException {
+    PublicationConfig config = Tests.parseConfig("publication-config-paras.xml");
+    PublicationTree publication = publication();
+    FragmentNumbering numbering = FragmentNumbering.updatable(publication, config);
+    // same number of headings in changed document
+    PublicationTree modified = publication.modify(Collections.emptyList(),
+        Collections.singletonMap(1020L, document(1020, 2, 3)), 1L);
+    FragmentNumbering updated = numbering.update(modified, config, Collections.singleton(1020L));
+    assertPrefixesEqual(new FragmentNumbering(modified, config), updated);
+  }
+
+  @Test
+  void testUpdateShiftedNumbering() throws IOException, XRefLoopException {
+    PublicationConfig config = Tests.parseConfig("publication-config-paras.xml");
+    PublicationTree publication = publication();
+    FragmentNumbering numbering = FragmentNumbering.updatable(publication, config);
+    // extra top level heading shifts the numbering of all following documents
+    PublicationTree modified = publication.modify(Collections.emptyList(),
+        Collections.singletonMap(1010L, document(1010, 2, 2)), 1L);
+    FragmentNumbering updated = numbering.update(modified, config, Collections.singleton(1010L));
+    assertPrefixesEqual(new FragmentNumbering(modified, config), updated);
+    // update again from the updated numbering
+    PublicationTree modified2 = modified.modify(Collections.singletonList(1030L), Collections.emptyMap(), 1L);
+    FragmentNumbering updated2 = updated.update(modified2, config, Collections.singleton(1030L));
+    assertPrefixesEqual(new FragmentNumbering(modified2, config), updated2);
+  }
+
+  @Test
+  void testUpdateNoChange() throws IOException, XRefLoopException {
+    PublicationConfig config = Tests.parseConfig("publication-config-paras.xml");
+    PublicationTree publication = publication();
+    FragmentNumbering numbering = FragmentNumbering.updatable(publication, config);
+    assertSame(numbering, numbering.update(publication, config, Collections.singleton(999L)));
+  }
+
+  @Test
+  void testUpdateNotUpdatable() throws IOException, XRefLoopException {
+    PublicationConfig config = Tests.parseConfig("publication-config-paras.xml");
+    PublicationTree publication = publication();
+    FragmentNumbering numbering = new FragmentNumbering(publication, config);
+    // numbered again in full
+    PublicationTree modified = publication.modify(Collections.emptyList(),
+        Collections.singletonMap(1010L, document(1010, 2, 2)), 1L);
+    FragmentNumbering updated = numbering.update(modified, config, Collections.singleton(1010L));
+    assertPrefixesEqual(new FragmentNumbering(modified, config), updated);
+    assertNotSame(numbering, numbering.update(publication, config, Collections.singleton(999L)));
+  }
+
+  @Test
+  void testUpdateRoot() throws IOException, XRefLoopException {
+    PublicationConfig config = Tests.parseConfig("publication-config-paras.xml");
+    PublicationTree publication = publication();
+    FragmentNumbering numbering = FragmentNumbering.updatable(publication, config);
+    Builder builder = new DocumentTree.Builder(1).title("T");
+    for (int i = DOCUMENTS - 1; i >= 0; i--) {
+      builder = builder.part(ref(0, "A", 1000L + i));
+    }
+    PublicationTree modified = publication.root(builder.build().normalize(TitleCollapse.auto));
+    FragmentNumbering updated = numbering.update(modified, config, Collections.singleton(1L));
+    assertPrefixesEqual(new FragmentNumbering(modified, config), updated);
+  }
+
+  private static PublicationTree publication() {
+    Builder builder = new DocumentTree.Builder(1).title("T");
+    for (int i = 0; i < DOCUMENTS; i++) {
+      builder = builder.part(ref(0, "A", 1000L + i));
+    }
+    PublicationTree publication = new PublicationTree(builder.build().normalize(TitleCollapse.auto));
+    for (int i = 0; i < DOCUMENTS; i++) {
+      publication = publication.add(document(1000 + i, 1, 3));
+    }
+    return publication;
+  }
+
+  private static DocumentTree document(long id, int chapters, int sections) {
+    Builder builder = new DocumentTree.Builder(id).title("X");
+    int fragment = 0;
+    for (int c = 0; c < chapters; c++) {
+      List<Part<?>> parts = new ArrayList<>();
+      for (int s = 0; s < sections; s++) {
+        parts.add(h2("s" + s, String.valueOf(++fragment), 1, true, ""));
+        parts.add(p(1, String.valueOf(++fragment), 1, true, ""));
+      }
+      builder = builder.part(h1("X" + c, String.valueOf(++fragment), 1, true, "", parts.toArray(new Part<?>[0])));
+    }
+    return builder.addReverseReference(1L).build().normalize(TitleCollapse.auto);
+  }
+
+  private static void assertPrefixesEqual(FragmentNumbering expected, FragmentNumbering actual) {
+    assertEquals(toString(expected.getAllPrefixes()), toString(actual.getAllPrefixes()));
+    assertEquals(toString(expected.getAllTranscludedPrefixes()), toString(actual.getAllTranscludedPrefixes()));
+  }
+
+  private static String toString(Map<String,Prefix> prefixes) {
+    return prefixes.entrySet().stream().sorted(Map.Entry.comparingByKey())
+        .map(entry -> entry.getKey() + " - " + entry.getValue())
+        .collect(Collectors.joining("\n"));
+  }
+
+}
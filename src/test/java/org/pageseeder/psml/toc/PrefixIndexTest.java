@@ -0,0 +1,59 @@
+package org.pageseeder.psml.toc;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.psml.toc.FragmentNumbering.Prefix;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class PrefixIndexTest {
+
+  @Test
+  void testGetPut() {
+    PrefixIndex index = new PrefixIndex();
+    Prefix a = new Prefix("1.", null, 1, null);
+    Prefix b = new Prefix("2.", null, 1, null);
+    index.put(1000L, 1, 0, 0, a, 0);
+    index.put(1000L, 1, 1, 1, b, 0);
+    assertSame(a, index.get(1000L, 1, 0, 0));
+    assertSame(b, index.get(1000L, 1, 1, 1));
+    assertNull(index.get(1000L, 2, 1, 1));
+    assertNull(index.get(1000L, 1, 1, 2));
+    assertNull(index.get(1001L, 1, 1, 1));
+    assertEquals(2, index.size());
+    // replace
+    index.put(1000L, 1, 1, 1, a, 0);
+    assertSame(a, index.get(1000L, 1, 1, 1));
+    assertEquals(2, index.size());
+  }
+
+  @Test
+  void testResize() {
+    PrefixIndex index = new PrefixIndex();
+    for (int i = 1; i <= 10000; i++) {
+      index.put(i % 100, i / 100 + 1, i % 7, i, new Prefix(i + ".", null, 1, null), 0);
+    }
+    assertEquals(10000, index.size());
+    for (int i = 1; i <= 10000; i++) {
+      Prefix p = index.get(i % 100, i / 100 + 1, i % 7, i);
+      assertNotNull(p);
+      assertEquals(i + ".", p.value);
+    }
+  }
+
+  @Test
+  void testToMap() {
+    PrefixIndex index = new PrefixIndex();
+    Prefix a = new Prefix("1.", null, 1, null);
+    Prefix b = new Prefix("2.", null, 1, null);
+    index.put(1000L, 1, 0, 0, a, 0);
+    index.put(1000L, 2, 1, 3, b, 0);
+    Map<String,Prefix> map = index.toMap(Arrays.asList("default", "2"));
+    assertEquals(2, map.size());
+    assertSame(a, map.get("1000-1-default"));
+    assertSame(b, map.get("1000-2-2-3"));
+  }
+
+}
@@ -1499,6 +1499,47 @@ final class PublicationTreeTest {
     assertEquals(11, prefixes.size());
   }
 
+  @Test
+  void testContextualTOC() throws IOException, XRefLoopException {
+    DocumentTree root = new DocumentTree.Builder(1).title("T")
+        .part(h1("T", "1", 1, ref(1, "A", "2", 100L), ref(1, "A", "2", 100L), ref(1, "X", "2", 1000L)))
+        .build().normalize(TitleCollapse.auto);
+    DocumentTree inter = new DocumentTree.Builder(100).title("A")
+        .part(h1("A", "1", 1, true, "",
+            ref(0, "X", "2", 1000L),
+            ref(0, "X3", "3", 1000L, Reference.DEFAULT_TYPE, "3")))
+        .addReverseReference(1L).build().normalize(TitleCollapse.auto);
+    DocumentTree tree = new DocumentTree.Builder(1000).title("X")
+        .part(h1("X", "1", 1, true, "", h2("a", "2", 1, true, ""), h2("b", "3", 1, true, "")))
+        .addReverseReference(100L).addReverseReference(1L).build().normalize(TitleCollapse.auto);
+    PublicationTree publication = new PublicationTree(root).add(inter).add(tree);
+    PublicationConfig config = Tests.parseConfig("publication-config.xml");
+    FragmentNumbering number = new FragmentNumbering(publication, config);
+    // Content at a position
+    assertEquals("<publication-tree uriid=\"1000\" title=\"X\" path=\"\" content=\"true\">" +
+        "<part level=\"3\" uriid=\"1000\"><heading-ref level=\"2\" title=\"b\" fragment=\"3\" index=\"1\"" +
+        " numbered=\"true\" prefix=\"2.1.3.\" canonical=\"2.1.3.\"/></part></publication-tree>",
+        toXML(publication, 1000, 4, number, config));
+    assertEquals("<publication-tree uriid=\"1000\" title=\"X\" path=\"\" content=\"true\"/>",
+        toXML(publication, 1000, 6, number, config));
+    // Path to content
+    String toc = toXML(publication, 100, -1, number, config);
+    assertTrue(toc.contains("uriid=\"100\" position=\"2\""));
+    assertTrue(toc.contains("uriid=\"1000\" position=\"5\""));
+    assertFalse(toc.contains("heading-ref"));
+    toc = toXML(publication, 1000, -1, number, config);
+    assertTrue(toc.contains("prefix=\"1.1.1.\""));
+    assertTrue(toc.contains("prefix=\"3.2.\""));
+  }
+
+  private static String toXML(PublicationTree publication, long cid, int cposition, FragmentNumbering number,
+      PublicationConfig config) throws IOException {
+    XMLStringWriter xml = new XMLStringWriter(NamespaceAware.No);
+    publication.toXML(xml, cid, cposition, number, config, true);
+    xml.flush();
+    return xml.toString();
+  }
+
   private static void assertValidPublication(PublicationTree publication) {
     try {
       assertThat(Tests.toDOMSource(publication), Tests.validates("publication-tree.xsd"));
@@ -0,0 +1,162 @@
+package org.pageseeder.psml.toc;
+
+import org.junit.jupiter.api.Test;
+import org.pageseeder.xmlwriter.XML.NamespaceAware;
+import org.pageseeder.xmlwriter.XMLStringWriter;
+
+import java.io.*;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.pageseeder.psml.toc.Tests.*;
+
+final class TreeCodecTest {
+
+  @Test
+  void testPublicationRoundTrip() throws IOException, XRefLoopException {
+    PublicationTree publication = publication();
+    byte[] data = encode(publication);
+    PublicationTree decoded = TreeCodec.readPublication(new ByteArrayInputStream(data));
+    assertEquals(publication.id(), decoded.id());
+    assertEquals(publication.ids(), decoded.ids());
+    assertEquals(publication.transclusions(), decoded.transclusions());
+    for (Long id : publication.ids()) {
+      assertDocumentTreeEquals(publication.tree(id), decoded.tree(id));
+    }
+    PublicationConfig config = Tests.parseConfig("publication-config.xml");
+    assertEquals(toXML(publication, new FragmentNumbering(publication, config)),
+        toXML(decoded, new FragmentNumbering(decoded, config)));
+  }
+
+  @Test
+  void testDocumentRoundTrip() throws IOException {
+    OffsetDateTime lastedited = OffsetDateTime.parse("2025-03-14T09:26:53.589+10:00");
+    DocumentTree tree = new DocumentTree.Builder(1000).title("X").labels("a,b").lastedited(lastedited)
+        .path("/ps/a/b/x.psml").putFragmentHeading("2", "Heading é").putFragmentLevel("2", 1)
+        .part(h1("X", "1", 1, true, "1.",
+            h2("a", "2", 1, true, "1.1."),
+            p(3, "2", 1, true, "(a)", "note"),
+            h2("b", "3", 2, false, "")))
+        .addReverseReference(100L).addReverseReference(101L).build().normalize(TitleCollapse.auto);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TreeCodec.write(tree, out);
+    DocumentTree decoded = TreeCodec.readDocument(new ByteArrayInputStream(out.toByteArray()));
+    assertDocumentTreeEquals(tree, decoded);
+    assertEquals(tree.id(), decoded.id());
+    assertEquals(tree.lastedited(), decoded.lastedited());
+    assertEquals(tree.path(), decoded.path());
+    assertEquals(tree.titlefragment(), decoded.titlefragment());
+    assertEquals(tree.fragmentheadings(), decoded.fragmentheadings());
+    assertEquals(tree.fragmentlevels(), decoded.fragmentlevels());
+    assertEquals(tree.xmlheadings(), decoded.xmlheadings());
+  }
+
+  @Test
+  void testSmallerThanSerialization() throws IOException {
+    PublicationTree publication = publication();
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+      out.writeObject(publication);
+    }
+    assertTrue(encode(publication).length * 4 < serialized.size());
+  }
+
+  @Test
+  void testInvalidData() throws IOException {
+    byte[] data = encode(publication());
+    // wrong kind of tree
+    assertThrows(IOException.class, () -> TreeCodec.readDocument(new ByteArrayInputStream(data)));
+    // wrong magic
+    byte[] magic = data.clone();
+    magic[0] = 'X';
+    assertThrows(IOException.class, () -> TreeCodec.readPublication(new ByteArrayInputStream(magic)));
+    // wrong version
+    byte[] version = data.clone();
+    version[4] = TreeCodec.VERSION + 1;
+    assertThrows(IOException.class, () -> TreeCodec.readPublication(new ByteArrayInputStream(version)));
+    // truncated
+    byte[] truncated = Arrays.copyOf(data, data.length - 3);
+    assertThrows(EOFException.class, () -> TreeCodec.readPublication(new ByteArrayInputStream(truncated)));
+    // trailing data
+    byte[] trailing = Arrays.copyOf(data, data.length + 1);
+    assertThrows(IOException.class, () -> TreeCodec.readPublication(new ByteArrayInputStream(trailing)));
+  }
+
+  @Test
+  void testInvalidCounts() {
+    byte[] max = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+    // string table larger than the data
+    byte[] strings = concat(new byte[]{'P', 'S', 'T', 'C', TreeCodec.VERSION, 'D'}, max);
+    assertThrows(IOException.class, () -> TreeCodec.readDocument(new ByteArrayInputStream(strings)));
+    // more document trees than the data
+    byte[] trees = concat(new byte[]{'P', 'S', 'T', 'C', TreeCodec.VERSION, 'P', 0, 0}, max);
+    assertThrows(IOException.class, () -> TreeCodec.readPublication(new ByteArrayInputStream(trees)));
+  }
+
+  @Test
+  void testCorruptData() throws IOException {
+    byte[] data = encode(publication());
+    for (int i = 0; i < data.length; i++) {
+      for (int value : new int[]{0x00, 0x7F, 0xFF}) {
+        byte[] corrupt = data.clone();
+        corrupt[i] = (byte) value;
+        try {
+          TreeCodec.readPublication(new ByteArrayInputStream(corrupt));
+        } catch (IOException ex) {
+          // expected unless the data is still valid
+        }
+      }
+    }
+  }
+
+  private static byte[] concat(byte[] a, byte[] b) {
+    byte[] c = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, c, a.length, b.length);
+    return c;
+  }
+
+  private static byte[] encode(PublicationTree publication) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TreeCodec.write(publication, out);
+    return out.toByteArray();
+  }
+
+  private static String toXML(PublicationTree publication, FragmentNumbering numbering) throws IOException {
+    XMLStringWriter xml = new XMLStringWriter(NamespaceAware.No);
+    publication.toXML(xml, -1, -1, numbering, true);
+    return xml.toString();
+  }
+
+  private static PublicationTree publication() {
+    DocumentTree root = new DocumentTree.Builder(1).title("T")
+        .part(h1("T", "1", 1,
+            toc(),
+            phantom(2,
+            ref(1, "A", "2", 100L),
+            ref(1, "B", "2", 101L)))).build().normalize(TitleCollapse.auto);
+    DocumentTree inter = new DocumentTree.Builder(100).title("A")
+        .part(h1("A", "1", 1, true, "",
+            ref(0, "X", "2", 1000L),
+            p(1, "3", 1, true, "", "note")))
+        .addReverseReference(1L).build().normalize(TitleCollapse.auto);
+    DocumentTree inter2 = new DocumentTree.Builder(101).title("B")
+        .part(h1("B", "1", 1, true, "x.x",
+            ref(0, "BX", "2", 1000L, Reference.Type.TRANSCLUDE, Reference.DEFAULT_TYPE, "2"),
+            h2("a", "2", "2", 1, true, "x.x.x"),
+            h2("b", "3", 2, true, "", tend("2"))))
+        .addReverseReference(1L).build().normalize(TitleCollapse.auto);
+    DocumentTree tree = new DocumentTree.Builder(1000).title("X")
+        .part(h1("X", "1", 1, true, "x.x",
+            h2("a", "2", 1, true, "x.x.x"),
+            h2("b", "2", 2, true, "", h3("x", "3", 1, true, "")),
+            h2("c", "4", 1, false, "")))
+        .addReverseReference(100L).addReverseReference(101L).build().normalize(TitleCollapse.auto);
+    PublicationTree publication = new PublicationTree(root);
+    publication = publication.add(inter);
+    publication = publication.add(inter2);
+    publication = publication.add(tree);
+    return publication;
+  }
+
+}
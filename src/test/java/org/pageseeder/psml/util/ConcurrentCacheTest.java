@@ -0,0 +1,109 @@
+package org.pageseeder.psml.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentCacheTest {
+
+  @Test
+  void testGetPut() {
+    ConcurrentCache<String, String> cache = new ConcurrentCache<>(10);
+    assertNull(cache.get("a"));
+    cache.put("a", "A");
+    assertEquals("A", cache.get("a"));
+    cache.put("a", "B");
+    assertEquals("B", cache.get("a"));
+    assertEquals(1, cache.size());
+    cache.remove("a");
+    assertNull(cache.get("a"));
+    assertEquals(2, cache.hitCount());
+    assertEquals(2, cache.missCount());
+    assertEquals(0.5, cache.hitRate());
+  }
+
+  @Test
+  void testLeastRecentlyUsedEvicted() {
+    ConcurrentCache<Integer, String> cache = new ConcurrentCache<>(3);
+    cache.put(1, "1");
+    cache.put(2, "2");
+    cache.put(3, "3");
+    cache.get(1);
+    cache.put(4, "4");
+    assertEquals(3, cache.size());
+    assertNull(cache.get(2));
+    assertEquals("1", cache.get(1));
+    assertEquals("3", cache.get(3));
+    assertEquals("4", cache.get(4));
+    assertEquals(1, cache.evictionCount());
+  }
+
+  @Test
+  void testMaxSize() {
+    ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(200);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, i);
+    }
+    assertEquals(200, cache.size());
+    assertEquals(800, cache.evictionCount());
+  }
+
+  @Test
+  void testTimeToLive() {
+    AtomicLong time = new AtomicLong(1000);
+    ConcurrentCache<String, String> cache = new ConcurrentCache<>(10, Duration.ofNanos(100), time::get);
+    cache.put("a", "A");
+    time.addAndGet(99);
+    assertEquals("A", cache.get("a"));
+    time.addAndGet(1);
+    assertNull(cache.get("a"));
+    assertEquals(1, cache.evictionCount());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void testComputeIfAbsent() {
+    ConcurrentCache<String, String> cache = new ConcurrentCache<>(10);
+    assertEquals("A", cache.computeIfAbsent("a", key -> "A"));
+    assertEquals("A", cache.computeIfAbsent("a", key -> fail("Should be cached")));
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  @Test
+  void testInvalidArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrentCache<>(0));
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrentCache<>(10, Duration.ofSeconds(-1)));
+  }
+
+  @Test
+  void testConcurrentAccess() throws Exception {
+    ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(100);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            int key = i % 150;
+            assertEquals(Integer.valueOf(key * 2), cache.computeIfAbsent(key, k -> k * 2));
+          }
+        }));
+      }
+      for (Future<?> future : futures) future.get();
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(cache.size() <= 100);
+    assertEquals(40000, cache.hitCount() + cache.missCount());
+  }
+
+}